@@ -174,7 +174,7 @@ public final class IdentityApiTest extends BaseCleanStartedEachTest {
             }
         });
 
-        MParticleUtils.awaitUploadRunnables();
+        MParticleUtils.awaitIdentityRunnables();
 
         request = IdentityApiRequest.withEmptyUser().build();
         result = MParticle.getInstance().Identity().identify(request);
@@ -240,7 +240,7 @@ public final class IdentityApiTest extends BaseCleanStartedEachTest {
             }
         });
 
-        MParticleUtils.awaitUploadRunnables();
+        MParticleUtils.awaitIdentityRunnables();
 
         request = IdentityApiRequest.withUser(MParticle.getInstance().Identity().getUser(mpid2)).build();
         result = MParticle.getInstance().Identity().identify(request);
@@ -255,7 +255,7 @@ public final class IdentityApiTest extends BaseCleanStartedEachTest {
 
 
 
-        MParticleUtils.awaitUploadRunnables();
+        MParticleUtils.awaitIdentityRunnables();
 
         request = IdentityApiRequest.withUser(MParticle.getInstance().Identity().getUser(mpid3)).build();
         result = MParticle.getInstance().Identity().identify(request);
@@ -269,7 +269,7 @@ public final class IdentityApiTest extends BaseCleanStartedEachTest {
             }
         });
 
-        MParticleUtils.awaitUploadRunnables();
+        MParticleUtils.awaitIdentityRunnables();
 
         TestingUtils.checkAllBool(called, 1, 10);
     }
@@ -324,7 +324,7 @@ public final class IdentityApiTest extends BaseCleanStartedEachTest {
             }
         });
 
-        MParticleUtils.awaitUploadRunnables();
+        MParticleUtils.awaitIdentityRunnables();
         MParticleUtils.awaitStoreMessage();
 
         MParticle.getInstance().Identity().removeIdentityStateListener(identityStateListener2);
@@ -340,7 +340,7 @@ public final class IdentityApiTest extends BaseCleanStartedEachTest {
             }
         });
 
-        MParticleUtils.awaitUploadRunnables();
+        MParticleUtils.awaitIdentityRunnables();
         MParticleUtils.awaitStoreMessage();
 
 
@@ -358,7 +358,7 @@ public final class IdentityApiTest extends BaseCleanStartedEachTest {
         request = IdentityApiRequest.withUser(MParticle.getInstance().Identity().getUser(mpid3)).build();
         MParticle.getInstance().Identity().identify(request);
 
-        MParticleUtils.awaitUploadRunnables();
+        MParticleUtils.awaitIdentityRunnables();
         MParticleUtils.awaitStoreMessage();
 
         TestingUtils.checkAllBool(called, 1, 10);
@@ -0,0 +1,35 @@
+package com.mparticle.internal;
+
+import android.util.Log;
+
+import com.mparticle.testutils.BaseCleanInstallEachTest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the per-message cost of sampling the device state for every message against reusing a
+ * cached sample.
+ */
+public class DeviceStateSamplerBenchmark extends BaseCleanInstallEachTest {
+    private static final int MESSAGE_COUNT = 1000;
+
+    @Test
+    public void testCachedSampleIsCheaper() {
+        long uncachedNanos = timeSnapshots(new DeviceStateSampler(mContext, 0));
+        long cachedNanos = timeSnapshots(new DeviceStateSampler(mContext, 60 * 1000));
+        Log.i("DeviceStateSampler", "per-message device state cost, sampled every message: " + uncachedNanos / MESSAGE_COUNT + "ns, cached: " + cachedNanos / MESSAGE_COUNT + "ns");
+        assertTrue(cachedNanos < uncachedNanos);
+    }
+
+    private long timeSnapshots(DeviceStateSampler sampler) {
+        //warm up
+        sampler.getSnapshot();
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            sampler.getSnapshot();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,45 @@
+package com.mparticle.internal.database.services.mp;
+
+import com.mparticle.internal.dto.KitQueueEntry;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+public class KitQueueServiceTest extends BaseMPServiceTest {
+
+    @Test
+    public void testPagesAreInInsertionOrder() {
+        for (int i = 0; i < 25; i++) {
+            KitQueueService.insertEntry(database, 1, "event " + i);
+            KitQueueService.insertEntry(database, 2, "attribute " + i);
+        }
+        List<KitQueueEntry> page = KitQueueService.getEntries(database, 1, 0, 10);
+        assertEquals(10, page.size());
+        assertEquals("event 0", page.get(0).getPayload());
+        assertEquals("event 9", page.get(9).getPayload());
+
+        page = KitQueueService.getEntries(database, 1, page.get(9).getId(), 100);
+        assertEquals(15, page.size());
+        assertEquals("event 10", page.get(0).getPayload());
+        assertEquals(25, KitQueueService.getEntries(database, 2, 0, 100).size());
+    }
+
+    @Test
+    public void testDeleteEntries() {
+        for (int i = 0; i < 10; i++) {
+            KitQueueService.insertEntry(database, 1, "event " + i);
+            KitQueueService.insertEntry(database, 2, "attribute " + i);
+        }
+        List<KitQueueEntry> page = KitQueueService.getEntries(database, 1, 0, 5);
+        assertEquals(5, KitQueueService.deleteEntries(database, 1, page.get(4).getId()));
+        assertEquals(5, KitQueueService.getEntries(database, 1, 0, 100).size());
+        assertEquals("event 5", KitQueueService.getEntries(database, 1, 0, 100).get(0).getPayload());
+        assertEquals(10, KitQueueService.getEntries(database, 2, 0, 100).size());
+
+        assertEquals(15, KitQueueService.deleteAll(database));
+        assertEquals(0, KitQueueService.getEntries(database, 1, 0, 100).size());
+    }
+}
@@ -0,0 +1,64 @@
+package com.mparticle.internal.database.services.mp;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.mparticle.internal.Constants;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertTrue;
+
+public class QueryPlanTest extends BaseMPServiceTest {
+
+    @Test
+    public void testMessagesForUploadUsesIndex() {
+        String query = SQLiteQueryBuilder.buildQueryString(false, "messages", null, MessageService.getMessagesForUploadSelection(false), null, null, "_id asc", "100");
+        assertUsesIndex("idx_messages_status", query, new String[]{String.valueOf(Constants.TEMPORARY_MPID)});
+
+        query = SQLiteQueryBuilder.buildQueryString(false, "messages", null, MessageService.getMessagesForUploadSelection(true), null, null, "_id asc", "100");
+        assertUsesIndex("idx_messages_status", query, new String[]{"1"});
+    }
+
+    @Test
+    public void testSessionHistoryUsesIndex() {
+        String query = SQLiteQueryBuilder.buildQueryString(false, "messages", null, MessageService.getSessionHistorySelection(false), null, null, "_id asc", "100");
+        assertUsesIndex("idx_messages_status", query, new String[]{"sessionId", String.valueOf(Constants.TEMPORARY_MPID)});
+    }
+
+    @Test
+    public void testReadyUploadsUsesIndex() {
+        assertUsesIndex("idx_uploads_time", "SELECT _id, message FROM uploads ORDER BY message_time", null);
+    }
+
+    @Test
+    public void testBreadcrumbsUsesIndex() {
+        assertUsesIndex("idx_breadcrumbs_mpid", "SELECT _id FROM breadcrumbs WHERE mp_id = ? ORDER BY _id asc", new String[]{"1"});
+        assertUsesIndex("idx_breadcrumbs_mpid", "SELECT breadcrumb_time, message FROM breadcrumbs WHERE mp_id = ? ORDER BY breadcrumb_time desc limit 50", new String[]{"1"});
+    }
+
+    private void assertUsesIndex(String index, String query, String[] args) {
+        List<String> plan = new ArrayList<String>();
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query, args);
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex));
+            }
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+        for (String step : plan) {
+            if (step.contains("INDEX " + index)) {
+                return;
+            }
+        }
+        assertTrue("Expected " + index + " to be used by \"" + query + "\", query plan was: " + plan, false);
+    }
+}
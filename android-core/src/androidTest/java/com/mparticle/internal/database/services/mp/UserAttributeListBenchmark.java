@@ -0,0 +1,66 @@
+package com.mparticle.internal.database.services.mp;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the cost of updating a list attribute by deleting and re-inserting every value against
+ * updating it by diff, when one value is appended to lists of 10, 100 and 1000 values.
+ */
+public class UserAttributeListBenchmark extends BaseMPServiceTest {
+    private static final int UPDATE_COUNT = 20;
+
+    @Test
+    public void testDiffIsCheaperForLongLists() {
+        for (int size : new int[]{10, 100, 1000}) {
+            long reinsertNanos = timeUpdates("reinsert" + size, size, false);
+            long diffNanos = timeUpdates("diff" + size, size, true);
+            Log.i("UserAttributes", "per-update cost of appending to a " + size + " value list, reinserted: " + reinsertNanos / UPDATE_COUNT + "ns, diffed: " + diffNanos / UPDATE_COUNT + "ns");
+            if (size == 1000) {
+                assertTrue(diffNanos < reinsertNanos);
+            }
+        }
+    }
+
+    private long timeUpdates(String key, int size, boolean diff) {
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            values.add("value" + i);
+        }
+        update(key, values, diff);
+        long start = System.nanoTime();
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            values.remove(0);
+            values.add("value" + (size + i));
+            update(key, values, diff);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(values, UserAttributesService.getUserAttributesLists(database, 1L).get(key));
+        return elapsed;
+    }
+
+    private void update(String key, List<String> values, boolean diff) {
+        long time = System.currentTimeMillis();
+        database.beginTransaction();
+        try {
+            if (diff) {
+                UserAttributesService.updateAttributeList(database, key, values, time, 1L);
+            } else {
+                UserAttributesService.deleteAttributes(database, key, 1L);
+                for (String value : values) {
+                    UserAttributesService.insertAttribute(database, key, value, time, true, 1L);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+}
@@ -2,9 +2,13 @@ package com.mparticle.internal.database.services.mp;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
 
 public class UserAttributesServiceTest extends BaseMPServiceTest {
     @Test
@@ -95,4 +99,30 @@ public class UserAttributesServiceTest extends BaseMPServiceTest {
             testDeleteByMpid(false);
         }
     }
+
+    @Test
+    public void testUpdateAttributeList() {
+        assertEquals(0, UserAttributesService.updateAttributeList(database, "list", Arrays.asList("a", "b", "c"), 1, 2L));
+        assertEquals(Arrays.asList("a", "b", "c"), UserAttributesService.getUserAttributesLists(database, 2L).get("list"));
+
+        //append, and remove from the middle
+        assertEquals(3, UserAttributesService.updateAttributeList(database, "list", Arrays.asList("a", "c", "d", null), 2, 2L));
+        assertEquals(Arrays.asList("a", "c", "d", null), UserAttributesService.getUserAttributesLists(database, 2L).get("list"));
+
+        //reorder, and change the key's case
+        assertEquals(4, UserAttributesService.updateAttributeList(database, "LIST", Arrays.asList("d", "c", "a"), 3, 2L));
+        List<String> list = UserAttributesService.getUserAttributesLists(database, 2L).get("list");
+        assertEquals(Arrays.asList("d", "c", "a"), list);
+        assertEquals("LIST", UserAttributesService.getUserAttributesLists(database, 2L).firstKey());
+
+        //replace a single value
+        UserAttributesService.insertAttribute(database, "single", "value", 4, false, 2L);
+        assertEquals(1, UserAttributesService.updateAttributeList(database, "single", Arrays.asList("value"), 5, 2L));
+        assertNull(UserAttributesService.getUserAttributesSingles(database, 2L).get("single"));
+        assertEquals(Arrays.asList("value"), UserAttributesService.getUserAttributesLists(database, 2L).get("single"));
+
+        assertEquals(3, UserAttributesService.updateAttributeList(database, "list", new ArrayList<String>(), 6, 2L));
+        assertNull(UserAttributesService.getUserAttributesLists(database, 2L).get("list"));
+        assertEquals(0, UserAttributesService.getUserAttributesLists(database, 3L).size());
+    }
 }
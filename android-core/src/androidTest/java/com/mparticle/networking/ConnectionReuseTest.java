@@ -0,0 +1,74 @@
+package com.mparticle.networking;
+
+import android.util.Log;
+
+import com.mparticle.internal.AccessUtils;
+import com.mparticle.internal.MParticleApiClient;
+import com.mparticle.testutils.BaseCleanStartedEachTest;
+import com.mparticle.testutils.RandomUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Benchmarks a multi-batch drain against the test server, counting the connections (and so TLS
+ * handshakes, against a real server) it takes.
+ */
+public class ConnectionReuseTest extends BaseCleanStartedEachTest {
+    private static final int BATCH_COUNT = 20;
+
+    @Test
+    public void testDrainReusesConnection() throws Exception {
+        MParticleApiClient apiClient = AccessUtils.getApiClient();
+        String batch = getBatch();
+        //make sure the first connection is made, so it isn't counted against the drain
+        assertEquals(202, apiClient.sendMessageBatch(batch));
+        mServer.resetConnectionCount();
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            assertEquals(202, apiClient.sendMessageBatch(batch));
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        Log.i("ConnectionReuseTest", BATCH_COUNT + " batches uploaded in " + elapsed + "ms, using " + mServer.getConnectionCount() + " new connections");
+        assertEquals(0, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void testFailedUploadReusesConnection() throws Exception {
+        mServer.getServer().resetAll();
+        mServer.getServer().stubFor(post(urlPathMatching("/v([0-9]*)/([0-9a-zA-Z]*)/events"))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("{\"error\":\"unavailable\"}")));
+        MParticleApiClient apiClient = AccessUtils.getApiClient();
+        String batch = getBatch();
+        assertEquals(500, apiClient.sendMessageBatch(batch));
+        mServer.resetConnectionCount();
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            assertEquals(500, apiClient.sendMessageBatch(batch));
+        }
+        //an unread error body would otherwise force a new connection for every batch
+        assertEquals(0, mServer.getConnectionCount());
+    }
+
+    private String getBatch() throws Exception {
+        RandomUtils random = RandomUtils.getInstance();
+        JSONArray messages = new JSONArray();
+        for (int i = 0; i < 50; i++) {
+            messages.put(new JSONObject()
+                    .put("dt", "e")
+                    .put("n", random.getAlphaNumericString(20)));
+        }
+        return new JSONObject()
+                .put("dt", "h")
+                .put("msgs", messages)
+                .toString();
+    }
+}
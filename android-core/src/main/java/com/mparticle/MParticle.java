@@ -51,6 +51,7 @@ import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The primary access point to the mParticle SDK. In order to use this class, you must first call {@link #start(MParticleOptions)}. You can then retrieve a reference
@@ -98,6 +99,27 @@ public class MParticle {
         configManager.setSessionTimeout(options.getSessionTimeout());
         configManager.setIdentityConnectionTimeout(options.getConnectionTimeout());
         configManager.setNetworkOptions(options.getNetworkOptions());
+        if (options.hasMessageBatching()) {
+            MParticleOptions.MessageBatching messageBatching = options.getMessageBatching();
+            configManager.setMessageBatching(messageBatching.maxMessages, messageBatching.maxBytes, messageBatching.maxDelayMillis);
+        }
+        if (options.hasEventQueue()) {
+            MParticleOptions.EventQueueOptions eventQueueOptions = options.getEventQueueOptions();
+            configManager.setEventQueue(eventQueueOptions.capacity, eventQueueOptions.policy);
+        }
+        configManager.setDeviceStateSamplingInterval(options.getDeviceStateSamplingInterval());
+        if (options.hasKitDispatch()) {
+            MParticleOptions.KitDispatchOptions kitDispatchOptions = options.getKitDispatchOptions();
+            configManager.setKitDispatch(kitDispatchOptions.queueCapacity, kitDispatchOptions.latencyBudgetMillis);
+        }
+        if (options.hasKitQueue()) {
+            MParticleOptions.KitQueueOptions kitQueueOptions = options.getKitQueueOptions();
+            configManager.setKitQueue(kitQueueOptions.maxBytes, kitQueueOptions.persist);
+        }
+        if (options.hasParallelKitInitialization()) {
+            configManager.setKitInitializationThreads(options.getKitInitializationThreads());
+        }
+        configManager.getAdvertisingIdProvider().refresh(null);
         AppStateManager appStateManager = new AppStateManager(options.getContext());
         appStateManager.setConfigManager(configManager);
         
@@ -942,6 +964,19 @@ public class MParticle {
         return mKitManager.isKitActive(serviceProviderId);
     }
 
+    /**
+     * Retrieve the Ids of kits which have taken longer than the latency budget to handle a call, when
+     * kits are called on their own threads.
+     *
+     * @return the Ids of slow kits, empty if there are none or kit dispatch is not enabled
+     *
+     * @see MParticleOptions.Builder#kitDispatch(int, long)
+     */
+    @NonNull
+    public Set<Integer> getSlowKits() {
+        return mKitManager.getSlowKits();
+    }
+
     /**
      * Retrieve the underlying object for the given Kit Id for direct calls. Results will be null if
      * kit is not active, or if the application just started, and the kit has not yet been initialized
@@ -38,6 +38,12 @@ public class MParticleOptions {
     private PushRegistrationHelper.PushRegistration mPushRegistration;
     private Integer mIdentityConnectionTimeout = ConfigManager.DEFAULT_CONNECTION_TIMEOUT_SECONDS;
     private NetworkOptions mNetworkOptions;
+    private MessageBatching mMessageBatching;
+    private EventQueueOptions mEventQueueOptions;
+    private long mDeviceStateSamplingInterval = 0;
+    private KitDispatchOptions mKitDispatchOptions;
+    private KitQueueOptions mKitQueueOptions;
+    private Integer mKitInitializationThreads;
 
     private MParticleOptions() {
     }
@@ -103,6 +109,48 @@ public class MParticleOptions {
             Logger.warning(String.format("Connection Timeout milliseconds must be a positive number, greater than %s second. Defaulting to %s seconds", String.valueOf(ConfigManager.MINIMUM_CONNECTION_TIMEOUT_SECONDS), String.valueOf(ConfigManager.DEFAULT_CONNECTION_TIMEOUT_SECONDS)));
         }
         this.mNetworkOptions = NetworkOptionsManager.validateAndResolve(builder.networkOptions);
+        if (builder.messageBatching != null) {
+            if (builder.messageBatching.maxMessages <= 1 || builder.messageBatching.maxBytes <= 0 || builder.messageBatching.maxDelayMillis <= 0) {
+                Logger.warning("Message batching limits must be positive numbers, and at least 2 messages, disregarding value");
+            } else {
+                this.mMessageBatching = builder.messageBatching;
+            }
+        }
+        if (builder.eventQueueOptions != null) {
+            if (builder.eventQueueOptions.capacity <= 0) {
+                Logger.warning("Event queue capacity must be a positive number, disregarding value");
+            } else {
+                this.mEventQueueOptions = builder.eventQueueOptions;
+            }
+        }
+        if (builder.deviceStateSamplingInterval != null) {
+            if (builder.deviceStateSamplingInterval < 0) {
+                Logger.warning("Device state sampling interval must be a positive number, disregarding value");
+            } else {
+                this.mDeviceStateSamplingInterval = builder.deviceStateSamplingInterval;
+            }
+        }
+        if (builder.kitDispatchOptions != null) {
+            if (builder.kitDispatchOptions.queueCapacity <= 0 || builder.kitDispatchOptions.latencyBudgetMillis <= 0) {
+                Logger.warning("Kit dispatch queue capacity and latency budget must be positive numbers, disregarding value");
+            } else {
+                this.mKitDispatchOptions = builder.kitDispatchOptions;
+            }
+        }
+        if (builder.kitQueueOptions != null) {
+            if (builder.kitQueueOptions.maxBytes <= 0) {
+                Logger.warning("Kit queue size must be a positive number, disregarding value");
+            } else {
+                this.mKitQueueOptions = builder.kitQueueOptions;
+            }
+        }
+        if (builder.kitInitializationThreads != null) {
+            if (builder.kitInitializationThreads <= 0) {
+                Logger.warning("Kit initialization threads must be a positive number, disregarding value");
+            } else {
+                this.mKitInitializationThreads = builder.kitInitializationThreads;
+            }
+        }
     }
 
     /**
@@ -225,6 +273,50 @@ public class MParticleOptions {
         return mNetworkOptions;
     }
 
+    public boolean hasMessageBatching() {
+        return mMessageBatching != null;
+    }
+
+    public MessageBatching getMessageBatching() {
+        return mMessageBatching;
+    }
+
+    public boolean hasEventQueue() {
+        return mEventQueueOptions != null;
+    }
+
+    public EventQueueOptions getEventQueueOptions() {
+        return mEventQueueOptions;
+    }
+
+    public long getDeviceStateSamplingInterval() {
+        return mDeviceStateSamplingInterval;
+    }
+
+    public boolean hasKitDispatch() {
+        return mKitDispatchOptions != null;
+    }
+
+    public KitDispatchOptions getKitDispatchOptions() {
+        return mKitDispatchOptions;
+    }
+
+    public boolean hasKitQueue() {
+        return mKitQueueOptions != null;
+    }
+
+    public KitQueueOptions getKitQueueOptions() {
+        return mKitQueueOptions;
+    }
+
+    public boolean hasParallelKitInitialization() {
+        return mKitInitializationThreads != null;
+    }
+
+    public int getKitInitializationThreads() {
+        return mKitInitializationThreads != null ? mKitInitializationThreads : 0;
+    }
+
     public static class Builder {
         private Context context;
         private String apiKey;
@@ -245,6 +337,12 @@ public class MParticleOptions {
         private PushRegistrationHelper.PushRegistration pushRegistration;
         private Integer identityConnectionTimeout = null;
         private NetworkOptions networkOptions;
+        private MessageBatching messageBatching;
+        private EventQueueOptions eventQueueOptions;
+        private Long deviceStateSamplingInterval;
+        private KitDispatchOptions kitDispatchOptions;
+        private KitQueueOptions kitQueueOptions;
+        private Integer kitInitializationThreads = null;
 
         private Builder(Context context) {
             this.context = context;
@@ -472,6 +570,108 @@ public class MParticleOptions {
             return this;
         }
 
+        /**
+         * Coalesce logged messages into a single database write. Messages are held in memory until
+         * any one of the limits is reached, and are always written immediately when the app is
+         * backgrounded or crashes. Disabled by default.
+         *
+         * @param maxMessages    the number of messages to hold before writing, must be at least 2
+         * @param maxBytes       the serialized size of the held messages, in bytes, to trigger a write
+         * @param maxDelayMillis the maximum time (in milliseconds) a message may be held before it is written
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        public Builder messageBatching(int maxMessages, int maxBytes, long maxDelayMillis) {
+            this.messageBatching = new MessageBatching(maxMessages, maxBytes, maxDelayMillis);
+            return this;
+        }
+
+        /**
+         * Hand logged {@link MPEvent}s to a bounded in-memory queue instead of building their messages
+         * on the calling thread. The calling thread only copies the event's fields into a preallocated
+         * slot, and the messages are built and stored in bulk on the SDK's background thread. Disabled
+         * by default.
+         *
+         * @param capacity the number of events the queue holds, rounded up to the nearest power of 2
+         * @param policy   what to do when an event is logged while the queue is full
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        public Builder eventQueue(int capacity, @NonNull BackpressurePolicy policy) {
+            this.eventQueueOptions = new EventQueueOptions(capacity, policy);
+            return this;
+        }
+
+        /**
+         * Reuse the device state attached to each message - disk space, memory, orientation, network
+         * type and so on - for up to this long, rather than querying it again for every message.
+         * Orientation, storage and connectivity broadcasts discard the cached state early. Defaults
+         * to 0, which queries the device state for every message.
+         *
+         * @param samplingIntervalMillis the maximum age of the cached device state, in milliseconds
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        public Builder deviceStateSamplingInterval(long samplingIntervalMillis) {
+            this.deviceStateSamplingInterval = samplingIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Call each kit on its own serial background thread, rather than calling every kit in turn on
+         * the thread which logged the event or received the lifecycle callback. A slow kit then only
+         * delays itself. Kits which need to be called on the main thread still are. Disabled by
+         * default.
+         *
+         * Any kit which takes longer than the latency budget to handle a call is reported by
+         * {@link MParticle#getSlowKits()}.
+         *
+         * @param queueCapacity       the number of calls which may be waiting for each kit, further
+         *                            calls to that kit are dropped until it catches up
+         * @param latencyBudgetMillis how long a kit may take to handle a single call, in milliseconds
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        public Builder kitDispatch(int queueCapacity, long latencyBudgetMillis) {
+            this.kitDispatchOptions = new KitDispatchOptions(queueCapacity, latencyBudgetMillis);
+            return this;
+        }
+
+        /**
+         * Bound the events and user attribute changes which are held for the kits while they load,
+         * by their approximate size in memory rather than the default of the first 10 events. Whatever
+         * is held is replayed to the kits, in batches, once they have loaded.
+         *
+         * @param maxBytes the approximate number of bytes the held events and attribute changes may
+         *                 occupy in memory
+         * @param persist  if true, events and attribute changes which don't fit in memory are written
+         *                 to the mParticle database instead of being dropped, and anything which hadn't
+         *                 been replayed when the app was last stopped is replayed on the next launch.
+         *                 Commerce events are only ever held in memory
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        public Builder kitQueue(int maxBytes, boolean persist) {
+            this.kitQueueOptions = new KitQueueOptions(maxBytes, persist);
+            return this;
+        }
+
+        /**
+         * Parse the kit configuration on a background thread, and start the kits which implement
+         * {@link com.mparticle.kits.KitIntegration.ThreadSafeInitialization} concurrently, rather than
+         * starting every kit in turn on the main thread. Other kits are still started on the main
+         * thread, and the new set of kits is only made active once they have all started. Disabled
+         * by default.
+         *
+         * @param threads the maximum number of kits to start at once
+         *
+         * @return the instance of the builder, for chaining calls
+         */
+        public Builder parallelKitInitialization(int threads) {
+            this.kitInitializationThreads = threads;
+            return this;
+        }
+
         /**
          * Builds this Builder into an MParticleOptions object which can be used to start the SDK
          *
@@ -534,6 +734,66 @@ public class MParticleOptions {
         }
     }
 
+    static class MessageBatching {
+        int maxMessages;
+        int maxBytes;
+        long maxDelayMillis;
+
+        protected MessageBatching(int maxMessages, int maxBytes, long maxDelayMillis) {
+            this.maxMessages = maxMessages;
+            this.maxBytes = maxBytes;
+            this.maxDelayMillis = maxDelayMillis;
+        }
+    }
+
+    static class EventQueueOptions {
+        int capacity;
+        BackpressurePolicy policy;
+
+        protected EventQueueOptions(int capacity, BackpressurePolicy policy) {
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+    }
+
+    static class KitDispatchOptions {
+        int queueCapacity;
+        long latencyBudgetMillis;
+
+        protected KitDispatchOptions(int queueCapacity, long latencyBudgetMillis) {
+            this.queueCapacity = queueCapacity;
+            this.latencyBudgetMillis = latencyBudgetMillis;
+        }
+    }
+
+    static class KitQueueOptions {
+        int maxBytes;
+        boolean persist;
+
+        protected KitQueueOptions(int maxBytes, boolean persist) {
+            this.maxBytes = maxBytes;
+            this.persist = persist;
+        }
+    }
+
+    /**
+     * What to do when an event is logged while the event queue is full.
+     */
+    public enum BackpressurePolicy {
+        /**
+         * Discard the oldest queued event to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the event being logged.
+         */
+        DROP_NEWEST,
+        /**
+         * Wait on the calling thread until there is room.
+         */
+        BLOCK
+    }
+
     static class LocationTracking {
         boolean enabled = true;
         String provider;
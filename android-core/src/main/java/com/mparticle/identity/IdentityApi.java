@@ -34,7 +34,7 @@ public class IdentityApi {
     public static int SERVER_ERROR = 500;
 
     private Context mContext;
-    private Handler mBackgroundHandler;
+    IdentityExecutor mIdentityExecutor = new IdentityExecutor();
     ConfigManager mConfigManager;
     MessageManager mMessageManager;
     KitManager mKitManager;
@@ -49,7 +49,6 @@ public class IdentityApi {
 
     public IdentityApi(Context context, AppStateManager appStateManager, MessageManager messageManager, ConfigManager configManager, KitManager kitManager) {
         this.mContext = context;
-        this.mBackgroundHandler = messageManager.mUploadHandler;
         this.mUserDelegate = new MParticleUserDelegate(appStateManager, configManager, messageManager, kitManager, new MParticleDBManager(context, DatabaseTables.getInstance(context)));
         this.mConfigManager = configManager;
         this.mMessageManager = messageManager;
@@ -143,7 +142,7 @@ public class IdentityApi {
      * @see IdentityApiResult
      */
     public MParticleTask<IdentityApiResult> logout(final IdentityApiRequest logoutRequest) {
-        return makeIdentityRequest(logoutRequest, new IdentityNetworkRequestRunnable() {
+        return makeIdentityRequest(IdentityExecutor.LOGOUT, logoutRequest, new IdentityNetworkRequestRunnable() {
             @Override
             public IdentityHttpResponse request(IdentityApiRequest request) throws Exception {
                 return getApiClient().logout(request);
@@ -179,7 +178,7 @@ public class IdentityApi {
      * @see IdentityApiResult
      */
     public MParticleTask<IdentityApiResult> login(@Nullable final IdentityApiRequest loginRequest) {
-        return makeIdentityRequest(loginRequest, new IdentityNetworkRequestRunnable() {
+        return makeIdentityRequest(IdentityExecutor.LOGIN, loginRequest, new IdentityNetworkRequestRunnable() {
             @Override
             public IdentityHttpResponse request(IdentityApiRequest request) throws Exception {
                 return getApiClient().login(request);
@@ -203,7 +202,7 @@ public class IdentityApi {
      * @see IdentityApiResult
      */
     public MParticleTask<IdentityApiResult> identify(final IdentityApiRequest identifyRequest) {
-        return makeIdentityRequest(identifyRequest, new IdentityNetworkRequestRunnable() {
+        return makeIdentityRequest(IdentityExecutor.IDENTIFY, identifyRequest, new IdentityNetworkRequestRunnable() {
             @Override
             public IdentityHttpResponse request(IdentityApiRequest request) throws Exception {
                 return getApiClient().identify(request);
@@ -239,7 +238,7 @@ public class IdentityApi {
             }
             task.setFailed(new IdentityHttpResponse(IdentityApi.UNKNOWN_ERROR, message));
         } else {
-            mBackgroundHandler.post(new Runnable() {
+            mIdentityExecutor.execute(IdentityExecutor.MODIFY, new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -270,14 +269,14 @@ public class IdentityApi {
     }
 
 
-    private BaseIdentityTask makeIdentityRequest(IdentityApiRequest request, final IdentityNetworkRequestRunnable networkRequest) {
+    private BaseIdentityTask makeIdentityRequest(String callType, IdentityApiRequest request, final IdentityNetworkRequestRunnable networkRequest) {
         if (request == null) {
             request = IdentityApiRequest.withEmptyUser().build();
         }
         final BaseIdentityTask task = new BaseIdentityTask();
         ConfigManager.setIdentityRequestInProgress(true);
         final IdentityApiRequest identityApiRequest = request;
-        mBackgroundHandler.post(new Runnable() {
+        mIdentityExecutor.execute(callType, new Runnable() {
             @Override
             public void run() {
                 synchronized (lock) {
@@ -310,6 +309,13 @@ public class IdentityApi {
         return task;
     }
 
+    /**
+     * @return the number of requests of a call type, such as "login", with their queue wait and latency
+     */
+    IdentityExecutor.CallMetrics getCallMetrics(String callType) {
+        return mIdentityExecutor.getMetrics(callType);
+    }
+
     MParticleIdentityClient getApiClient() {
         if (mApiClient == null) {
             mApiClient = new MParticleIdentityClientImpl(mContext, mConfigManager);
@@ -46,10 +46,10 @@ public final class IdentityApiRequest {
         if (MParticle.getInstance() != null) {
             ConfigManager configManager = MParticle.getInstance().getConfigManager();
             if (builder.mpid != null) {
-                oldUserIdentities = configManager.getUserIdentities(builder.mpid);
+                oldUserIdentities = new HashMap<MParticle.IdentityType, String>(configManager.getUserIdentities(builder.mpid));
                 mpid = builder.mpid;
             } else {
-                oldUserIdentities = configManager.getUserIdentities(configManager.getMpid());
+                oldUserIdentities = new HashMap<MParticle.IdentityType, String>(configManager.getUserIdentities(configManager.getMpid()));
             }
         }
     }
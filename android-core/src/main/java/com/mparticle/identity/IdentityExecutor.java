@@ -0,0 +1,136 @@
+package com.mparticle.identity;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.mparticle.internal.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs identity requests, one at a time and in the order they were made, on a thread of their own.
+ *
+ * Identity requests used to share the upload thread, so a login made during a long upload would wait
+ * for the whole upload to finish. This thread runs at the default priority, above the background
+ * priority of the message and upload threads, and is only started with the first identity request.
+ * The time each request spends waiting, and then running, is recorded per call type.
+ */
+class IdentityExecutor {
+    static final String IDENTIFY = "identify";
+    static final String LOGIN = "login";
+    static final String LOGOUT = "logout";
+    static final String MODIFY = "modify";
+
+    private static HandlerThread sIdentityThread;
+    private Handler mHandler;
+    private final Map<String, CallMetrics> mMetrics = new HashMap<String, CallMetrics>();
+
+    void execute(String callType, Runnable request) {
+        getHandler().post(wrap(callType, request));
+    }
+
+    /**
+     * @return the request, recording how long it waits to start and how long it takes
+     */
+    Runnable wrap(final String callType, final Runnable request) {
+        final long queuedAt = System.nanoTime();
+        return new Runnable() {
+            @Override
+            public void run() {
+                long startedAt = System.nanoTime();
+                try {
+                    request.run();
+                } finally {
+                    long finishedAt = System.nanoTime();
+                    long queueWaitMillis = TimeUnit.NANOSECONDS.toMillis(startedAt - queuedAt);
+                    long latencyMillis = TimeUnit.NANOSECONDS.toMillis(finishedAt - startedAt);
+                    record(callType, queueWaitMillis, latencyMillis);
+                    Logger.verbose("Identity " + callType + " request waited " + queueWaitMillis + "ms and took " + latencyMillis + "ms");
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the metrics for a call type, or null if no request of that type has completed
+     */
+    CallMetrics getMetrics(String callType) {
+        synchronized (mMetrics) {
+            CallMetrics metrics = mMetrics.get(callType);
+            return metrics != null ? new CallMetrics(metrics) : null;
+        }
+    }
+
+    private void record(String callType, long queueWaitMillis, long latencyMillis) {
+        synchronized (mMetrics) {
+            CallMetrics metrics = mMetrics.get(callType);
+            if (metrics == null) {
+                metrics = new CallMetrics();
+                mMetrics.put(callType, metrics);
+            }
+            metrics.count++;
+            metrics.totalQueueWaitMillis += queueWaitMillis;
+            metrics.maxQueueWaitMillis = Math.max(metrics.maxQueueWaitMillis, queueWaitMillis);
+            metrics.totalLatencyMillis += latencyMillis;
+            metrics.maxLatencyMillis = Math.max(metrics.maxLatencyMillis, latencyMillis);
+        }
+    }
+
+    synchronized Handler getHandler() {
+        if (mHandler == null) {
+            mHandler = new Handler(getIdentityLooper());
+        }
+        return mHandler;
+    }
+
+    private static synchronized Looper getIdentityLooper() {
+        if (sIdentityThread == null) {
+            sIdentityThread = new HandlerThread("mParticleIdentityHandler", Process.THREAD_PRIORITY_DEFAULT);
+            sIdentityThread.start();
+        }
+        return sIdentityThread.getLooper();
+    }
+
+    static class CallMetrics {
+        private int count;
+        private long totalQueueWaitMillis;
+        private long maxQueueWaitMillis;
+        private long totalLatencyMillis;
+        private long maxLatencyMillis;
+
+        CallMetrics() {
+        }
+
+        CallMetrics(CallMetrics metrics) {
+            count = metrics.count;
+            totalQueueWaitMillis = metrics.totalQueueWaitMillis;
+            maxQueueWaitMillis = metrics.maxQueueWaitMillis;
+            totalLatencyMillis = metrics.totalLatencyMillis;
+            maxLatencyMillis = metrics.maxLatencyMillis;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        long getTotalQueueWaitMillis() {
+            return totalQueueWaitMillis;
+        }
+
+        long getMaxQueueWaitMillis() {
+            return maxQueueWaitMillis;
+        }
+
+        long getTotalLatencyMillis() {
+            return totalLatencyMillis;
+        }
+
+        long getMaxLatencyMillis() {
+            return maxLatencyMillis;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 
 import com.mparticle.BuildConfig;
 import com.mparticle.MParticle;
+import com.mparticle.internal.AdvertisingIdProvider;
 import com.mparticle.internal.ConfigManager;
 import com.mparticle.internal.Constants;
 import com.mparticle.internal.Logger;
@@ -135,7 +136,7 @@ import java.util.UUID;
         JSONObject jsonObject = getBaseJson();
 
         JSONObject identitiesJson = new JSONObject();
-        MPUtility.AndroidAdIdInfo adIdInfo = MPUtility.getGoogleAdIdInfo(mContext);
+        MPUtility.AndroidAdIdInfo adIdInfo = AdvertisingIdProvider.getAdIdInfo(mContext, mConfigManager);
         if (adIdInfo != null) {
             identitiesJson.put(ANDROID_AAID, adIdInfo.id);
         }
@@ -238,7 +239,7 @@ import java.util.UUID;
         } else {
             url = getUrl(mpId, endpoint);
         }
-        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        HttpURLConnection connection = openConnection(url);
         connection.setConnectTimeout(mConfigManager.getIdentityConnectionTimeout());
         connection.setReadTimeout(mConfigManager.getIdentityConnectionTimeout());
         connection.setRequestMethod("POST");
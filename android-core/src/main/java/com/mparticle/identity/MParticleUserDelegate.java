@@ -23,6 +23,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -50,7 +51,7 @@ import java.util.Map;
     }
 
     public Map<MParticle.IdentityType, String> getUserIdentities(long mpId){
-        return mMessageManager.getUserIdentities(mpId);
+        return new HashMap<MParticle.IdentityType, String>(mMessageManager.getUserIdentities(mpId));
     }
 
     public boolean setUserIdentity(String id, MParticle.IdentityType identityType, long mpId) {
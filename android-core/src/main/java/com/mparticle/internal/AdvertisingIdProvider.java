@@ -0,0 +1,164 @@
+package com.mparticle.internal;
+
+import android.content.Context;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up the Google Play Advertising ID and limit-ad-tracking flag in the background, and caches them,
+ * so identity requests and upload batches don't each make the blocking call into Play Services.
+ *
+ * The cached value is refreshed in the background once it's older than the TTL, and when the app returns
+ * to the foreground, which is when the user may have reset the ID or changed the flag. Only a read made
+ * before the first lookup has finished waits for it. Each read served from the cache is counted as
+ * saving the average time a lookup has taken. Background lookups share a single thread, which exits
+ * once it has been idle for a while.
+ */
+public class AdvertisingIdProvider {
+    static final long DEFAULT_TTL_MILLIS = 60 * 60 * 1000;
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+    private static ThreadPoolExecutor sLookupExecutor;
+
+    private final Context mContext;
+    private final long mTtlMillis;
+    private final Object mLookupLock = new Object();
+    private volatile boolean mLookedUp;
+    private volatile MPUtility.AndroidAdIdInfo mAdIdInfo;
+    //when the last lookup started
+    private volatile long mLookupTime;
+    private boolean mRefreshing;
+    private int mLookupCount;
+    private long mTotalLookupMillis;
+    private int mCachedReadCount;
+
+    AdvertisingIdProvider(Context context) {
+        this(context, DEFAULT_TTL_MILLIS);
+    }
+
+    AdvertisingIdProvider(Context context, long ttlMillis) {
+        mContext = context;
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the Advertising ID info from the ConfigManager's provider, or looked up directly if there isn't one
+     */
+    public static MPUtility.AndroidAdIdInfo getAdIdInfo(Context context, ConfigManager configManager) {
+        AdvertisingIdProvider provider = configManager != null ? configManager.getAdvertisingIdProvider() : null;
+        if (provider == null) {
+            return MPUtility.getGoogleAdIdInfo(context);
+        }
+        return provider.getAdIdInfo();
+    }
+
+    /**
+     * @return the cached Advertising ID info, or null if Play Services is unavailable. Blocks only if the
+     * first lookup hasn't finished.
+     */
+    public MPUtility.AndroidAdIdInfo getAdIdInfo() {
+        if (!mLookedUp) {
+            //wait for the lookup already running, if there is one, rather than starting another
+            synchronized (mLookupLock) {
+                if (!mLookedUp) {
+                    lookUp();
+                }
+                return mAdIdInfo;
+            }
+        }
+        synchronized (this) {
+            mCachedReadCount++;
+        }
+        if (MPUtility.millitime() - mLookupTime >= mTtlMillis) {
+            refresh(null);
+        }
+        return mAdIdInfo;
+    }
+
+    /**
+     * Look up the Advertising ID info again in the background, unless a lookup is already running.
+     *
+     * @param onRefreshed run on the background thread once the lookup has finished, or null
+     */
+    public void refresh(final Runnable onRefreshed) {
+        synchronized (this) {
+            if (mRefreshing) {
+                return;
+            }
+            mRefreshing = true;
+        }
+        final long requestedAt = MPUtility.millitime();
+        getLookupExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (mLookupLock) {
+                        //a read may have made the first lookup while this one was waiting to run
+                        if (!mLookedUp || mLookupTime < requestedAt) {
+                            lookUp();
+                        }
+                    }
+                } finally {
+                    synchronized (AdvertisingIdProvider.this) {
+                        mRefreshing = false;
+                    }
+                }
+                if (onRefreshed != null) {
+                    onRefreshed.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the time saved by reads served from the cache, based on the average lookup time
+     */
+    public synchronized long getSavedMillis() {
+        return mLookupCount > 0 ? mCachedReadCount * (mTotalLookupMillis / mLookupCount) : 0;
+    }
+
+    synchronized int getLookupCount() {
+        return mLookupCount;
+    }
+
+    synchronized int getCachedReadCount() {
+        return mCachedReadCount;
+    }
+
+    private static synchronized ThreadPoolExecutor getLookupExecutor() {
+        if (sLookupExecutor == null) {
+            sLookupExecutor = new ThreadPoolExecutor(1, 1, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "mParticleAdIdLookup");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sLookupExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sLookupExecutor;
+    }
+
+    protected MPUtility.AndroidAdIdInfo lookUpAdIdInfo() {
+        return MPUtility.getGoogleAdIdInfo(mContext);
+    }
+
+    private void lookUp() {
+        long start = MPUtility.millitime();
+        MPUtility.AndroidAdIdInfo adIdInfo = lookUpAdIdInfo();
+        long lookupMillis = MPUtility.millitime() - start;
+        mAdIdInfo = adIdInfo;
+        mLookupTime = start;
+        mLookedUp = true;
+        int cachedReadCount;
+        synchronized (this) {
+            mLookupCount++;
+            mTotalLookupMillis += lookupMillis;
+            cachedReadCount = mCachedReadCount;
+        }
+        Logger.verbose("Advertising ID lookup took " + lookupMillis + "ms, " + cachedReadCount + " reads served from the cache so far saved about " + getSavedMillis() + "ms");
+    }
+}
@@ -172,7 +172,7 @@ import java.util.concurrent.atomic.AtomicLong;
                 initialize(mCurrentActivityName, previousSessionUri, previousSessionParameters, previousSessionPackage);
             } else if (isBackgrounded() && mLastStoppedTime.get() > 0) {
                 isBackToForeground = true;
-                checkGoogleAdIdChanged();
+                refreshGoogleAdId();
                 logStateTransition(Constants.StateTransitionType.STATE_TRANS_FORE,
                         mCurrentActivityName,
                         mLastStoppedTime.get() - mLastForegroundTime,
@@ -400,9 +400,31 @@ import java.util.concurrent.atomic.AtomicLong;
         return mCurrentActivityReference;
     }
 
+    /**
+     * The Advertising ID can't be looked up on the main thread, so it's refreshed in the background, and
+     * then checked for a change.
+     */
+    private void refreshGoogleAdId() {
+        AdvertisingIdProvider advertisingIdProvider = mConfigManager.getAdvertisingIdProvider();
+        if (advertisingIdProvider == null) {
+            checkGoogleAdIdChanged();
+            return;
+        }
+        advertisingIdProvider.refresh(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkGoogleAdIdChanged();
+                } catch (Exception e) {
+                    Logger.debug("Failed to check for a new Advertising ID: ", e.toString());
+                }
+            }
+        });
+    }
+
     private void checkGoogleAdIdChanged() {
         String previousGoogleAdId = mConfigManager.getPreviousGoogleAdId();
-        MPUtility.AndroidAdIdInfo adIdInfo =  MPUtility.getGoogleAdIdInfo(mContext);
+        MPUtility.AndroidAdIdInfo adIdInfo = AdvertisingIdProvider.getAdIdInfo(mContext, mConfigManager);
         String currentGoogleAdId = adIdInfo == null ? null : adIdInfo.id;
         if (currentGoogleAdId != null && !currentGoogleAdId.equals(previousGoogleAdId)) {
             MParticleUser user = MParticle.getInstance().Identity().getCurrentUser();
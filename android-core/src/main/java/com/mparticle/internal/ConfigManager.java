@@ -6,6 +6,7 @@ import android.os.Build;
 
 import com.mparticle.ExceptionHandler;
 import com.mparticle.MParticle;
+import com.mparticle.MParticleOptions;
 import com.mparticle.consent.ConsentState;
 import com.mparticle.identity.IdentityApi;
 import com.mparticle.internal.networking.BaseMPMessage;
@@ -19,10 +20,12 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -48,6 +51,7 @@ public class ConfigManager {
     static final String KEY_RAMP = "rp";
 
     private static final int DEVMODE_UPLOAD_INTERVAL_MILLISECONDS = 10 * 1000;
+    private static final int USER_STORAGE_CACHE_SIZE = 8;
     private Context mContext;
 
     static SharedPreferences sPreferences;
@@ -55,7 +59,13 @@ public class ConfigManager {
     AppConfig mLocalPrefs;
 
     private static JSONArray sPushKeys;
-    private static UserStorage sUserStorage;
+    //the most recently used UserStorage of each MPID, so that alternating between users doesn't recreate them
+    private static final Map<Long, UserStorage> sUserStorages = new LinkedHashMap<Long, UserStorage>(USER_STORAGE_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, UserStorage> eldest) {
+            return size() > USER_STORAGE_CACHE_SIZE;
+        }
+    };
     private String mLogUnhandledExceptions = VALUE_APP_DEFINED;
 
     private boolean mSendOoEvents;
@@ -75,9 +85,26 @@ public class ConfigManager {
     public static final int MINIMUM_CONNECTION_TIMEOUT_SECONDS = 1;
     public static final int DEFAULT_SESSION_TIMEOUT_SECONDS = 60;
     public static final int DEFAULT_UPLOAD_INTERVAL = 600;
+    public static final int DEFAULT_MESSAGE_BATCH_MAX_BYTES = 64 * 1024;
+    public static final long DEFAULT_MESSAGE_BATCH_MAX_DELAY_MILLIS = 2 * 1000;
+    private int mMessageBatchMaxMessages = 0;
+    private int mMessageBatchMaxBytes = DEFAULT_MESSAGE_BATCH_MAX_BYTES;
+    private long mMessageBatchMaxDelayMillis = DEFAULT_MESSAGE_BATCH_MAX_DELAY_MILLIS;
+    private int mEventQueueCapacity = 0;
+    private long mDeviceStateSamplingInterval = 0;
+    private int mKitDispatchQueueCapacity = 0;
+    private long mKitDispatchLatencyBudgetMillis = 0;
+    private int mKitQueueMaxBytes = 0;
+    private boolean mKitQueuePersisted = false;
+    private int mKitInitializationThreads = 0;
+    //the kit configuration from the stored config JSON, so that it's only parsed once at startup
+    private JSONArray mLatestKitConfiguration;
+    private boolean mLatestKitConfigurationLoaded = false;
+    private final AdvertisingIdProvider mAdvertisingIdProvider;
+    private MParticleOptions.BackpressurePolicy mEventQueuePolicy = MParticleOptions.BackpressurePolicy.DROP_NEWEST;
 
     private ConfigManager() {
-
+        mAdvertisingIdProvider = null;
     }
 
     public ConfigManager(Context context) {
@@ -88,7 +115,10 @@ public class ConfigManager {
         mContext = context.getApplicationContext();
         sPreferences = getPreferences(mContext);
         mLocalPrefs = new AppConfig(mContext, environment, sPreferences, apiKey, apiSecret);
-        sUserStorage = UserStorage.create(mContext, getMpid());
+        mAdvertisingIdProvider = new AdvertisingIdProvider(mContext);
+        synchronized (sUserStorages) {
+            sUserStorages.clear();
+        }
         restoreOldConfig();
     }
 
@@ -97,6 +127,7 @@ public class ConfigManager {
         if (!MPUtility.isEmpty(oldConfig)) {
             try {
                 JSONObject oldConfigJson = new JSONObject(oldConfig);
+                setLatestKitConfiguration(oldConfigJson);
                 updateConfig(oldConfigJson, false);
             } catch (Exception jse) {
 
@@ -108,6 +139,9 @@ public class ConfigManager {
      * The is called on startup. The only thing that's completely necessary is that we fire up kits.
      */
     public JSONArray getLatestKitConfiguration() {
+        if (mLatestKitConfigurationLoaded) {
+            return mLatestKitConfiguration;
+        }
         String oldConfig = sPreferences.getString(CONFIG_JSON, null);
         if (!MPUtility.isEmpty(oldConfig)) {
             try {
@@ -121,33 +155,31 @@ public class ConfigManager {
     }
 
     UserStorage getUserStorage() {
-        return sUserStorage;
+        return getUserStorage(getMpid());
     }
 
     UserStorage getUserStorage(long mpId) {
-        if (sUserStorage == null || sUserStorage.getMpid() != mpId) {
-            sUserStorage = UserStorage.create(mContext, mpId);
-        }
-        return sUserStorage;
+        return getUserStorage(mContext, mpId);
     }
 
     public static UserStorage getUserStorage(Context context) {
-        if (sUserStorage == null) {
-            sUserStorage = UserStorage.create(context, getMpid(context));
-        }
-        return sUserStorage;
+        return getUserStorage(context, getMpid(context));
     }
 
     public static UserStorage getUserStorage(Context context, long mpid) {
-        if (sUserStorage == null || sUserStorage.getMpid() != mpid) {
-            sUserStorage = UserStorage.create(context, mpid);
+        synchronized (sUserStorages) {
+            UserStorage userStorage = sUserStorages.get(mpid);
+            if (userStorage == null) {
+                userStorage = UserStorage.create(context, mpid);
+                sUserStorages.put(mpid, userStorage);
+            }
+            return userStorage;
         }
-        return sUserStorage;
     }
 
     public static void deleteUserStorage(Context context, long mpid) {
-        if (sUserStorage != null && sUserStorage.getMpid() == mpid) {
-            sUserStorage = null;
+        synchronized (sUserStorages) {
+            sUserStorages.remove(mpid);
         }
         UserStorage.deleteUserConfig(context, mpid);
     }
@@ -171,9 +203,15 @@ public class ConfigManager {
     void saveConfigJson(JSONObject json) {
         if (json != null) {
             sPreferences.edit().putString(CONFIG_JSON, json.toString()).apply();
+            setLatestKitConfiguration(json);
         }
     }
 
+    private void setLatestKitConfiguration(JSONObject configJson) {
+        mLatestKitConfiguration = configJson.optJSONArray(KEY_EMBEDDED_KITS);
+        mLatestKitConfigurationLoaded = true;
+    }
+
     public synchronized void updateConfig(JSONObject responseJSON) throws JSONException {
         updateConfig(responseJSON, true);
     }
@@ -359,6 +397,100 @@ public class ConfigManager {
         mLocalPrefs.uploadInterval = uploadInterval;
     }
 
+    public void setMessageBatching(int maxMessages, int maxBytes, long maxDelayMillis) {
+        mMessageBatchMaxMessages = maxMessages;
+        mMessageBatchMaxBytes = maxBytes;
+        mMessageBatchMaxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * @return the number of messages to coalesce into a single database transaction, batching is disabled if 1 or less
+     */
+    public int getMessageBatchMaxMessages() {
+        return mMessageBatchMaxMessages;
+    }
+
+    public int getMessageBatchMaxBytes() {
+        return mMessageBatchMaxBytes;
+    }
+
+    public long getMessageBatchMaxDelayMillis() {
+        return mMessageBatchMaxDelayMillis;
+    }
+
+    public void setEventQueue(int capacity, MParticleOptions.BackpressurePolicy policy) {
+        mEventQueueCapacity = capacity;
+        mEventQueuePolicy = policy;
+    }
+
+    /**
+     * @return the capacity of the event ingestion queue, the queue is disabled if 0
+     */
+    public int getEventQueueCapacity() {
+        return mEventQueueCapacity;
+    }
+
+    public MParticleOptions.BackpressurePolicy getEventQueuePolicy() {
+        return mEventQueuePolicy;
+    }
+
+    public void setDeviceStateSamplingInterval(long samplingIntervalMillis) {
+        mDeviceStateSamplingInterval = samplingIntervalMillis;
+    }
+
+    /**
+     * @return how long, in milliseconds, a sample of the device state may be reused across messages, 0 to sample for every message
+     */
+    public long getDeviceStateSamplingInterval() {
+        return mDeviceStateSamplingInterval;
+    }
+
+    public void setKitDispatch(int queueCapacity, long latencyBudgetMillis) {
+        mKitDispatchQueueCapacity = queueCapacity;
+        mKitDispatchLatencyBudgetMillis = latencyBudgetMillis;
+    }
+
+    /**
+     * @return the number of calls which may be queued for each kit, kits are called synchronously if 0
+     */
+    public int getKitDispatchQueueCapacity() {
+        return mKitDispatchQueueCapacity;
+    }
+
+    public long getKitDispatchLatencyBudgetMillis() {
+        return mKitDispatchLatencyBudgetMillis;
+    }
+
+    public void setKitQueue(int maxBytes, boolean persist) {
+        mKitQueueMaxBytes = maxBytes;
+        mKitQueuePersisted = persist;
+    }
+
+    /**
+     * @return the approximate size, in bytes, of the events and attribute changes held while kits load, or 0 to hold the first 10 events
+     */
+    public int getKitQueueMaxBytes() {
+        return mKitQueueMaxBytes;
+    }
+
+    /**
+     * @return whether events and attribute changes which don't fit in the kit queue are written to the database
+     */
+    public boolean isKitQueuePersisted() {
+        return mKitQueuePersisted;
+    }
+
+    public void setKitInitializationThreads(int threads) {
+        mKitInitializationThreads = threads;
+    }
+
+    /**
+     * @return the number of kits which may be started at once, kits are started one at a time on the main thread if 0
+     */
+    public int getKitInitializationThreads() {
+        return mKitInitializationThreads;
+    }
+
     public int getSessionTimeout() {
         if (mSessionTimeoutInterval > 0) {
             return mSessionTimeoutInterval * 1000;
@@ -521,9 +653,7 @@ public class ConfigManager {
             triggerMpidChangeListenerCallbacks(mpid);
         }
         sPreferences.edit().putLong(Constants.PrefKeys.MPID, mpid).apply();
-        if (sUserStorage == null || sUserStorage.getMpid() != mpid) {
-            sUserStorage = UserStorage.create(mContext, mpid);
-        }
+        getUserStorage(mpid);
     }
 
     //for testing
@@ -722,8 +852,14 @@ public class ConfigManager {
         return jsonAttributes;
     }
 
+    /**
+     * @return the user's identities, which may not be changed
+     */
     public Map<MParticle.IdentityType, String> getUserIdentities(long mpId) {
-        JSONArray userIdentitiesJson = getUserIdentityJson(mpId);
+        return getUserIdentityState(mpId).identities;
+    }
+
+    private static Map<MParticle.IdentityType, String> parseUserIdentities(JSONArray userIdentitiesJson) {
         Map<MParticle.IdentityType, String> identityTypeStringMap = new HashMap<MParticle.IdentityType, String>(userIdentitiesJson.length());
 
         for (int i = 0; i < userIdentitiesJson.length(); i++) {
@@ -738,27 +874,48 @@ public class ConfigManager {
             }
         }
 
-        return identityTypeStringMap;
+        return Collections.unmodifiableMap(identityTypeStringMap);
     }
 
     public JSONArray getUserIdentityJson() {
         return getUserIdentityJson(getMpid());
     }
 
+    /**
+     * @return a copy of the user's identities, which the caller may change
+     */
     public JSONArray getUserIdentityJson(long mpId) {
-        JSONArray userIdentities = null;
-        String userIds = getUserStorage(mpId).getUserIdentities();
-
         try {
-            userIdentities = new JSONArray(userIds);
-            boolean changeMade = fixUpUserIdentities(userIdentities);
-            if (changeMade) {
-                saveUserIdentityJson(userIdentities, mpId);
+            return new JSONArray(getUserIdentityState(mpId).json);
+        } catch (JSONException e) {
+            return new JSONArray();
+        }
+    }
+
+    /**
+     * The user's identities are parsed, and fixed up, once each time they're written, rather than on
+     * every read.
+     */
+    private UserStorage.UserIdentityState getUserIdentityState(long mpId) {
+        UserStorage userStorage = getUserStorage(mpId);
+        synchronized (userStorage) {
+            UserStorage.UserIdentityState userIdentityState = userStorage.getUserIdentityState();
+            if (userIdentityState == null) {
+                JSONArray userIdentities;
+                try {
+                    userIdentities = new JSONArray(userStorage.getUserIdentities());
+                    boolean changeMade = fixUpUserIdentities(userIdentities);
+                    if (changeMade) {
+                        userStorage.setUserIdentities(userIdentities.toString());
+                    }
+                } catch (Exception e) {
+                    userIdentities = new JSONArray();
+                }
+                userIdentityState = new UserStorage.UserIdentityState(userIdentities.toString(), parseUserIdentities(userIdentities));
+                userStorage.setUserIdentityState(userIdentityState);
             }
-        } catch (Exception e) {
-            userIdentities = new JSONArray();
+            return userIdentityState;
         }
-        return userIdentities;
     }
 
     public void saveUserIdentityJson(JSONArray userIdentities) {
@@ -900,8 +1057,12 @@ public class ConfigManager {
         sPreferences.edit().putString(Constants.PrefKeys.PUSH_TOKEN, token).apply();
     }
 
+    public AdvertisingIdProvider getAdvertisingIdProvider() {
+        return mAdvertisingIdProvider;
+    }
+
     public String getPreviousGoogleAdId() {
-        MPUtility.AndroidAdIdInfo adInfo = MPUtility.getGoogleAdIdInfo(mContext);
+        MPUtility.AndroidAdIdInfo adInfo = AdvertisingIdProvider.getAdIdInfo(mContext, this);
         String currentAdId = null;
         if (adInfo != null) {
             currentAdId = adInfo.id;
@@ -910,7 +1071,7 @@ public class ConfigManager {
     }
 
     public void setPreviousGoogleAdId() {
-        MPUtility.AndroidAdIdInfo adInfo = MPUtility.getGoogleAdIdInfo(mContext);
+        MPUtility.AndroidAdIdInfo adInfo = AdvertisingIdProvider.getAdIdInfo(mContext, this);
         String currentAdId = null;
         if (adInfo != null) {
             currentAdId = adInfo.id;
@@ -19,6 +19,13 @@ public class Constants {
     public static final int BATCH_LIMIT = 50;
     // delay (millis) before processing uploads to allow app to get started
     public static final long INITIAL_UPLOAD_DELAY = 10 * 1000;
+    // number of messages waiting for upload above which a single upload pass will send several batches
+    public static final int DRAIN_BACKLOG_THRESHOLD = 200;
+    // maximum bytes and time (millis) spent sending batches in a single upload pass
+    public static final long DRAIN_BYTE_LIMIT = 2 * 1024 * 1024;
+    public static final long DRAIN_TIME_LIMIT = 30 * 1000;
+    // number of kit reporting messages held in memory before they're written to the database
+    public static final int REPORTING_MESSAGE_BUFFER_LIMIT = 100;
 
     // preferences persistence
     public static final String PREFS_FILE = "mParticlePrefs";
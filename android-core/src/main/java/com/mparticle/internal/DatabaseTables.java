@@ -5,12 +5,14 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import com.mparticle.internal.database.services.SQLiteOpenHelperWrapper;
+import com.mparticle.internal.database.services.UserAttributeCache;
 import com.mparticle.internal.database.tables.mp.MParticleDatabaseHelper;
 
 public class DatabaseTables {
 
 
     private SQLiteOpenHelper mMParticleDatabase;
+    private final UserAttributeCache mUserAttributeCache = new UserAttributeCache();
     private static DatabaseTables instance;
 
     public static DatabaseTables getInstance(Context context) {
@@ -35,6 +37,10 @@ public class DatabaseTables {
         return null;
     }
 
+    public UserAttributeCache getUserAttributeCache() {
+        return mUserAttributeCache;
+    }
+
     class MParticleDatabase extends AbstractDatabase {
 
         public MParticleDatabase(Context context) {
@@ -229,7 +229,8 @@ public class DeviceAttributes {
     public void updateDeviceInfo(Context context, JSONObject deviceInfo) {
         deviceInfo.remove(MessageKey.LIMIT_AD_TRACKING);
         deviceInfo.remove(MessageKey.GOOGLE_ADV_ID);
-        MPUtility.AndroidAdIdInfo adIdInfo = MPUtility.getGoogleAdIdInfo(context);
+        MParticle instance = MParticle.getInstance();
+        MPUtility.AndroidAdIdInfo adIdInfo = AdvertisingIdProvider.getAdIdInfo(context, instance != null ? instance.getConfigManager() : null);
         String message = "Failed to collect Google Play Advertising ID, be sure to add Google Play services or com.google.android.gms:play-services-ads to your app's dependencies.";
         if (adIdInfo != null) {
             try {
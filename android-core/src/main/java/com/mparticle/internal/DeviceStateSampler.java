@@ -0,0 +1,96 @@
+package com.mparticle.internal;
+
+import android.content.Context;
+import android.telephony.TelephonyManager;
+
+/**
+ * Samples the device state attached to every message - disk space, system memory, orientation, GPS
+ * and network type - which is expensive to query, since most of it involves a system service call or
+ * a filesystem stat. Samples are cached for up to the sampling interval, or until
+ * {@link #invalidate()} is called when a broadcast tells us something has changed.
+ *
+ * A sampling interval of 0 disables the cache, and samples for every message.
+ */
+/* package-private */ class DeviceStateSampler {
+    private final Context mContext;
+    private volatile long mSamplingIntervalMillis;
+    private volatile Snapshot mSnapshot;
+    private volatile boolean mDiskSamplingEnabled = true;
+    private TelephonyManager mTelephonyManager;
+
+    DeviceStateSampler(Context context, long samplingIntervalMillis) {
+        mContext = context;
+        mSamplingIntervalMillis = samplingIntervalMillis;
+    }
+
+    void setSamplingInterval(long samplingIntervalMillis) {
+        mSamplingIntervalMillis = samplingIntervalMillis;
+        mSnapshot = null;
+    }
+
+    /**
+     * Disk space is only reported with device performance metrics, so skip the stat calls if those are disabled.
+     */
+    void setDiskSamplingEnabled(boolean enabled) {
+        mDiskSamplingEnabled = enabled;
+        mSnapshot = null;
+    }
+
+    /**
+     * Discard the cached sample, so the next call to {@link #getSnapshot()} takes a new one.
+     */
+    void invalidate() {
+        mSnapshot = null;
+    }
+
+    Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        long now = MPUtility.millitime();
+        if (snapshot == null || mSamplingIntervalMillis <= 0 || now - snapshot.sampleTime >= mSamplingIntervalMillis) {
+            snapshot = sample(now);
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    protected Snapshot sample(long sampleTime) {
+        boolean sampleDisk = mDiskSamplingEnabled;
+        return new Snapshot(sampleTime,
+                sampleDisk ? MPUtility.getAvailableInternalDisk(mContext) : 0,
+                sampleDisk ? MPUtility.getAvailableExternalDisk(mContext) : 0,
+                MPUtility.getAvailableMemory(mContext),
+                MPUtility.isSystemMemoryLow(mContext),
+                MPUtility.getOrientation(mContext),
+                MPUtility.getGpsEnabled(mContext),
+                getTelephonyManager().getNetworkType());
+    }
+
+    private TelephonyManager getTelephonyManager() {
+        if (mTelephonyManager == null) {
+            mTelephonyManager = (TelephonyManager) mContext.getSystemService(Context.TELEPHONY_SERVICE);
+        }
+        return mTelephonyManager;
+    }
+
+    static final class Snapshot {
+        final long sampleTime;
+        final long availableInternalDisk;
+        final long availableExternalDisk;
+        final long availableMemory;
+        final boolean memoryLow;
+        final int orientation;
+        final String gpsEnabled;
+        final int networkType;
+
+        Snapshot(long sampleTime, long availableInternalDisk, long availableExternalDisk, long availableMemory, boolean memoryLow, int orientation, String gpsEnabled, int networkType) {
+            this.sampleTime = sampleTime;
+            this.availableInternalDisk = availableInternalDisk;
+            this.availableExternalDisk = availableExternalDisk;
+            this.availableMemory = availableMemory;
+            this.memoryLow = memoryLow;
+            this.orientation = orientation;
+            this.gpsEnabled = gpsEnabled;
+            this.networkType = networkType;
+        }
+    }
+}
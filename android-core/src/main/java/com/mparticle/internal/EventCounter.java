@@ -0,0 +1,76 @@
+package com.mparticle.internal;
+
+import android.content.SharedPreferences;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The number of events logged since the last session end, which is attached to each event and to the
+ * session end message.
+ *
+ * The count is kept in memory and only written back to SharedPreferences by {@link #checkpoint()}, which
+ * is called on a timer, when the app goes to the background and when a session ends, rather than on
+ * every event. Anything counted after the last checkpoint is lost if the process dies, and is recovered
+ * from the stored messages when the orphaned session is ended, see {@link #recover(int)}.
+ */
+/* package-private */ class EventCounter {
+    private final SharedPreferences mPreferences;
+    private final AtomicInteger mCount;
+    private final AtomicBoolean mDirty = new AtomicBoolean(false);
+    private final AtomicBoolean mCheckpointScheduled = new AtomicBoolean(false);
+
+    EventCounter(SharedPreferences preferences) {
+        mPreferences = preferences;
+        mCount = new AtomicInteger(preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0));
+    }
+
+    int get() {
+        return mCount.get();
+    }
+
+    int getAndIncrement() {
+        int count = mCount.getAndIncrement();
+        mDirty.set(true);
+        return count;
+    }
+
+    /**
+     * Reset the count when a session ends. This is checkpointed immediately, so that a crash can't
+     * attribute the ended session's events to the next one.
+     */
+    int getAndReset() {
+        int count = mCount.getAndSet(0);
+        mDirty.set(true);
+        checkpoint();
+        return count;
+    }
+
+    /**
+     * Raise the count to at least the given value, for events which were stored but never checkpointed.
+     */
+    void recover(int minimum) {
+        int count;
+        do {
+            count = mCount.get();
+            if (count >= minimum) {
+                return;
+            }
+        } while (!mCount.compareAndSet(count, minimum));
+        mDirty.set(true);
+    }
+
+    /**
+     * @return true if the caller should schedule a checkpoint, false if one is already pending
+     */
+    boolean shouldScheduleCheckpoint() {
+        return mCheckpointScheduled.compareAndSet(false, true);
+    }
+
+    void checkpoint() {
+        mCheckpointScheduled.set(false);
+        if (mDirty.getAndSet(false)) {
+            mPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, mCount.get()).apply();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.mparticle.internal;
+
+import android.location.Location;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.MParticleOptions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated queue of logged events, sitting between the threads which log events and
+ * the MessageHandler thread which turns them into messages and stores them.
+ *
+ * Producers claim a slot with a single CAS and copy only the event's fields and references into it,
+ * so logging an event no longer builds any JSON on the caller's thread. Each slot carries a sequence
+ * number which tells producers and the consumer whether it is free, written or being read, in the
+ * manner of Dmitry Vyukov's bounded MPMC queue.
+ */
+/* package-private */ class EventRingBuffer {
+    private static final long BLOCK_PARK_NANOS = 100 * 1000;
+
+    private final EventRecord[] mSlots;
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+    private final MParticleOptions.BackpressurePolicy mPolicy;
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /**
+     * @param capacity the number of events to hold, rounded up to the nearest power of 2, and at
+     *                 least 2, since a single slot can't tell a full queue from an empty one
+     */
+    EventRingBuffer(int capacity, MParticleOptions.BackpressurePolicy policy) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mSlots = new EventRecord[size];
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new EventRecord();
+            mSequences.set(i, i);
+        }
+        mMask = size - 1;
+        mPolicy = policy != null ? policy : MParticleOptions.BackpressurePolicy.DROP_NEWEST;
+    }
+
+    int getCapacity() {
+        return mSlots.length;
+    }
+
+    /**
+     * @return the number of events which have been discarded because the queue was full
+     */
+    long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Queue an event, applying the backpressure policy if the queue is full.
+     *
+     * @param mayBlock false if the caller is the consumer thread, in which case BLOCK falls back to
+     *                 DROP_NEWEST, since nothing else would ever make room
+     * @return true if the event was queued
+     */
+    boolean offer(MPEvent event, String currentActivity, String sessionId, long sessionStartTime, Location location, long mpId, long timestamp, boolean mayBlock) {
+        while (!tryOffer(event, currentActivity, sessionId, sessionStartTime, location, mpId, timestamp)) {
+            switch (mPolicy) {
+                case DROP_OLDEST:
+                    if (discardOldest()) {
+                        mDroppedCount.incrementAndGet();
+                    }
+                    break;
+                case BLOCK:
+                    if (mayBlock) {
+                        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                        break;
+                    }
+                    //fall through
+                default:
+                    mDroppedCount.incrementAndGet();
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean tryOffer(MPEvent event, String currentActivity, String sessionId, long sessionStartTime, Location location, long mpId, long timestamp) {
+        long position = mTail.get();
+        while (true) {
+            int index = (int) (position & mMask);
+            long difference = mSequences.get(index) - position;
+            if (difference == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    mSlots[index].set(event, currentActivity, sessionId, sessionStartTime, location, mpId, timestamp);
+                    mSequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = mTail.get();
+            } else if (difference < 0) {
+                //the consumer hasn't freed this slot yet, so we're full
+                return false;
+            } else {
+                //another producer claimed this slot first
+                position = mTail.get();
+            }
+        }
+    }
+
+    /**
+     * Copy the oldest event into the given record and free its slot.
+     *
+     * @return false if the queue is empty
+     */
+    boolean poll(EventRecord into) {
+        return take(into, Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #poll(EventRecord)}, but only takes events queued before the given position.
+     *
+     * @param before a position returned by {@link #getTailPosition()}
+     */
+    boolean poll(EventRecord into, long before) {
+        return take(into, before);
+    }
+
+    /**
+     * @return the position the next queued event will take
+     */
+    long getTailPosition() {
+        return mTail.get();
+    }
+
+    private boolean discardOldest() {
+        return take(null, Long.MAX_VALUE);
+    }
+
+    private boolean take(EventRecord into, long before) {
+        long position = mHead.get();
+        while (true) {
+            if (position >= before) {
+                return false;
+            }
+            int index = (int) (position & mMask);
+            long difference = mSequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (mHead.compareAndSet(position, position + 1)) {
+                    EventRecord slot = mSlots[index];
+                    if (into != null) {
+                        into.copy(slot);
+                    }
+                    slot.clear();
+                    mSequences.lazySet(index, position + mMask + 1);
+                    return true;
+                }
+                position = mHead.get();
+            } else if (difference < 0) {
+                //empty, or the next producer hasn't finished writing its slot
+                return false;
+            } else {
+                position = mHead.get();
+            }
+        }
+    }
+
+    /**
+     * The fields of a logged event which are needed to build its message. Instances are reused, so
+     * they must be copied out before the slot is released.
+     */
+    static class EventRecord {
+        String name;
+        MParticle.EventType eventType;
+        Double length;
+        Map<String, String> info;
+        Map<String, List<String>> customFlags;
+        String currentActivity;
+        String sessionId;
+        long sessionStartTime;
+        Location location;
+        long mpId;
+        long timestamp;
+
+        void set(MPEvent event, String currentActivity, String sessionId, long sessionStartTime, Location location, long mpId, long timestamp) {
+            this.name = event.getEventName();
+            this.eventType = event.getEventType();
+            this.length = event.getLength();
+            this.info = event.getInfo();
+            this.customFlags = event.getCustomFlags();
+            this.currentActivity = currentActivity;
+            this.sessionId = sessionId;
+            this.sessionStartTime = sessionStartTime;
+            this.location = location;
+            this.mpId = mpId;
+            this.timestamp = timestamp;
+        }
+
+        void copy(EventRecord record) {
+            name = record.name;
+            eventType = record.eventType;
+            length = record.length;
+            info = record.info;
+            customFlags = record.customFlags;
+            currentActivity = record.currentActivity;
+            sessionId = record.sessionId;
+            sessionStartTime = record.sessionStartTime;
+            location = record.location;
+            mpId = record.mpId;
+            timestamp = record.timestamp;
+        }
+
+        void clear() {
+            name = null;
+            eventType = null;
+            length = null;
+            info = null;
+            customFlags = null;
+            currentActivity = null;
+            sessionId = null;
+            location = null;
+        }
+    }
+}
@@ -14,21 +14,36 @@ import com.mparticle.commerce.CommerceEvent;
 import com.mparticle.consent.ConsentState;
 import com.mparticle.identity.IdentityApiRequest;
 import com.mparticle.identity.MParticleUser;
+import com.mparticle.internal.database.services.MParticleDBManager;
+import com.mparticle.internal.dto.KitQueueEntry;
 
 import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class KitFrameworkWrapper implements KitManager {
+    //it's an edge case to even need this, so 10
+    //should be enough, unless the kit queue is configured
+    private static final int DEFAULT_EVENT_QUEUE_LIMIT = 10;
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final int REPLAY_BATCH_SIZE = 100;
+    static final int SPILLED_EVENTS = 1;
+    static final int SPILLED_ATTRIBUTES = 2;
+
     private final Context mContext;
+    private final Context mDatabaseContext;
     private final AppStateManager mAppStateManager;
     private final ConfigManager mConfigManager;
     private final ReportingManager mReportingManager;
@@ -42,12 +57,21 @@ public class KitFrameworkWrapper implements KitManager {
     private volatile boolean registerForPush = false;
     private static KitsLoadedListener kitsLoadedListener;
 
+    private long mQueuedBytes = 0;
+    private boolean mSpillingEvents = false;
+    private boolean mSpillingAttributes = false;
+    private MParticleDBManager mDBManager;
+    private final AtomicLong mQueuedCount = new AtomicLong();
+    private final AtomicLong mReplayedCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
     public KitFrameworkWrapper(Context context, ReportingManager reportingManager, ConfigManager configManager, AppStateManager appStateManager, BackgroundTaskHandler backgroundTaskHandler) {
         this(context, reportingManager, configManager, appStateManager, backgroundTaskHandler, false);
     }
 
     public KitFrameworkWrapper(Context context, ReportingManager reportingManager, ConfigManager configManager, AppStateManager appStateManager, BackgroundTaskHandler backgroundTaskHandler, boolean testing) {
         this.mContext = testing ? context : new KitContext(context);
+        this.mDatabaseContext = context;
         this.mReportingManager = reportingManager;
         this.mConfigManager = configManager;
         this.mAppStateManager = appStateManager;
@@ -88,10 +112,35 @@ public class KitFrameworkWrapper implements KitManager {
         return attributeQueue;
     }
 
+    /**
+     * @return the number of events and user attribute changes which have been held for the kits while they loaded
+     */
+    public long getKitQueueQueuedCount() {
+        return mQueuedCount.get();
+    }
+
+    /**
+     * @return the number of held events and user attribute changes which have been replayed to the kits
+     */
+    public long getKitQueueReplayedCount() {
+        return mReplayedCount.get();
+    }
+
+    /**
+     * @return the number of events and user attribute changes which were dropped because the kit queue was full
+     */
+    public long getKitQueueDroppedCount() {
+        return mDroppedCount.get();
+    }
+
     void setKitManager(KitManager manager) {
         mKitManager = manager;
     }
 
+    void setDBManager(MParticleDBManager dbManager) {
+        mDBManager = dbManager;
+    }
+
     public static boolean getKitsLoaded() {
         return kitsLoaded;
     }
@@ -112,21 +161,48 @@ public class KitFrameworkWrapper implements KitManager {
         }
     }
 
-    synchronized void disableQueuing() {
-        setKitsLoaded(true);
-        if (eventQueue != null) {
-            eventQueue.clear();
-            eventQueue = null;
-            Logger.debug("Kit initialization complete. Disabling event queueing.");
+    void disableQueuing() {
+        synchronized (this) {
+            if (eventQueue != null) {
+                eventQueue.clear();
+                eventQueue = null;
+            }
+            if (attributeQueue != null) {
+                attributeQueue.clear();
+                attributeQueue = null;
+            }
+            stopQueuing();
+        }
+        logReplayCounts();
+        if (isKitQueuePersisted()) {
+            //there are no kits to replay anything spilled to
+            runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    deleteSpilled();
+                }
+            });
         }
+    }
 
-        if (attributeQueue != null) {
-            attributeQueue.clear();
-            attributeQueue = null;
+    /**
+     * Called with the lock held, once the queues have been taken or cleared.
+     */
+    private void stopQueuing() {
+        setKitsLoaded(true);
+        Logger.debug("Kit initialization complete. Disabling event queueing.");
+        mQueuedBytes = 0;
+        mSpillingEvents = false;
+        mSpillingAttributes = false;
+    }
+
+    private void logReplayCounts() {
+        if (mQueuedCount.get() > 0) {
+            Logger.debug("Replayed " + mReplayedCount.get() + " of " + mQueuedCount.get() + " events and attribute changes queued for kits, " + mDroppedCount.get() + " dropped.");
         }
     }
 
-    void replayEvents() {
+    private void replayEvents(Queue events, Queue<AttributeChange> attributeChanges) {
         if (mKitManager == null) {
             return;
         }
@@ -140,9 +216,9 @@ public class KitFrameworkWrapper implements KitManager {
             }
         }
 
-        if (eventQueue != null && eventQueue.size() > 0) {
+        if (events != null && events.size() > 0) {
             Logger.debug("Replaying events after receiving first kit configuration.");
-            for (Object event : eventQueue) {
+            for (Object event : events) {
                 if (event instanceof MPEvent) {
                     MPEvent mpEvent = (MPEvent) event;
                     if (mpEvent.isScreenEvent()) {
@@ -153,42 +229,114 @@ public class KitFrameworkWrapper implements KitManager {
                 } else if (event instanceof CommerceEvent) {
                     mKitManager.logCommerceEvent((CommerceEvent) event);
                 }
+                mReplayedCount.incrementAndGet();
             }
         }
 
-        if (attributeQueue != null && attributeQueue.size() > 0) {
+        if (attributeChanges != null && attributeChanges.size() > 0) {
             Logger.debug("Replaying user attributes after receiving first kit configuration.");
-            for (AttributeChange attributeChange : attributeQueue) {
-                switch (attributeChange.type) {
-                    case AttributeChange.SET_ATTRIBUTE:
-                        if (attributeChange.value == null) {
-                            mKitManager.setUserAttribute(attributeChange.key, null, attributeChange.mpid);
-                        } else if (attributeChange.value instanceof String) {
-                            mKitManager.setUserAttribute(attributeChange.key, (String) attributeChange.value, attributeChange.mpid);
-                        } else if (attributeChange.value instanceof List) {
-                            mKitManager.setUserAttributeList(attributeChange.key, (List<String>) attributeChange.value, attributeChange.mpid);
-                        }
-                        break;
-                    case AttributeChange.REMOVE_ATTRIBUTE:
-                        mKitManager.removeUserAttribute(attributeChange.key, attributeChange.mpid);
-                        break;
-                    case AttributeChange.INCREMENT_ATTRIBUTE:
-                        if (attributeChange.value instanceof String) {
-                            mKitManager.incrementUserAttribute(attributeChange.key, (String)attributeChange.value, attributeChange.mpid);
-                        }
-                        break;
-                    case AttributeChange.TAG:
-                        mKitManager.setUserTag(attributeChange.key, attributeChange.mpid);
-                        break;
-                }
+            for (AttributeChange attributeChange : attributeChanges) {
+                replayAttributeChange(attributeChange);
             }
         }
     }
 
-    synchronized public void replayAndDisableQueue() {
-        setKitsLoaded(true);
-        replayEvents();
-        disableQueuing();
+    private void replayAttributeChange(AttributeChange attributeChange) {
+        switch (attributeChange.type) {
+            case AttributeChange.SET_ATTRIBUTE:
+                if (attributeChange.value == null) {
+                    mKitManager.setUserAttribute(attributeChange.key, null, attributeChange.mpid);
+                } else if (attributeChange.value instanceof String) {
+                    mKitManager.setUserAttribute(attributeChange.key, (String) attributeChange.value, attributeChange.mpid);
+                } else if (attributeChange.value instanceof List) {
+                    mKitManager.setUserAttributeList(attributeChange.key, (List<String>) attributeChange.value, attributeChange.mpid);
+                }
+                break;
+            case AttributeChange.REMOVE_ATTRIBUTE:
+                mKitManager.removeUserAttribute(attributeChange.key, attributeChange.mpid);
+                break;
+            case AttributeChange.INCREMENT_ATTRIBUTE:
+                if (attributeChange.value instanceof String) {
+                    mKitManager.incrementUserAttribute(attributeChange.key, (String)attributeChange.value, attributeChange.mpid);
+                }
+                break;
+            case AttributeChange.TAG:
+                mKitManager.setUserTag(attributeChange.key, attributeChange.mpid);
+                break;
+        }
+        mReplayedCount.incrementAndGet();
+    }
+
+    /**
+     * Replay the events or attribute changes which were written to the database, a page at a time so
+     * that only one page is ever in memory. This includes any left over from a previous launch which
+     * ended before the kits loaded.
+     */
+    private void replaySpilled(int queue) {
+        try {
+            MParticleDBManager dbManager = getDBManager();
+            List<KitQueueEntry> entries = dbManager.getKitQueueEntries(queue, 0, REPLAY_BATCH_SIZE);
+            while (!entries.isEmpty()) {
+                for (KitQueueEntry entry : entries) {
+                    try {
+                        JSONObject payload = new JSONObject(entry.getPayload());
+                        if (queue == SPILLED_EVENTS) {
+                            MPEvent event = MPEvent.Builder.parseString(payload.getString(SpilledKeys.EVENT)).build();
+                            if (payload.optBoolean(SpilledKeys.SCREEN)) {
+                                mKitManager.logScreen(event);
+                            } else {
+                                mKitManager.logEvent(event);
+                            }
+                            mReplayedCount.incrementAndGet();
+                        } else {
+                            replayAttributeChange(AttributeChange.fromJson(payload));
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to replay queued kit " + (queue == SPILLED_EVENTS ? "event" : "attribute change") + ": " + e.getMessage());
+                    }
+                }
+                long lastId = entries.get(entries.size() - 1).getId();
+                dbManager.deleteKitQueueEntries(queue, lastId);
+                entries = dbManager.getKitQueueEntries(queue, lastId, REPLAY_BATCH_SIZE);
+            }
+        } catch (Exception e) {
+            Logger.warning("Failed to replay queued kit events: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replay the queued events and attribute changes to the kits, and stop queuing. Only swapping out
+     * the queues is done with the lock held. Anything spilled is replayed and cleared on the background
+     * task thread, after the in-memory queues. Spills are written on that thread too, so every spill
+     * made before queuing stopped is in the database by the time it's read.
+     */
+    public void replayAndDisableQueue() {
+        Queue events;
+        Queue<AttributeChange> attributeChanges;
+        synchronized (this) {
+            events = eventQueue;
+            attributeChanges = attributeQueue;
+            eventQueue = null;
+            attributeQueue = null;
+            stopQueuing();
+        }
+        replayEvents(events, attributeChanges);
+        if (!isKitQueuePersisted()) {
+            logReplayCounts();
+            return;
+        }
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                if (mKitManager != null) {
+                    replaySpilled(SPILLED_EVENTS);
+                    replaySpilled(SPILLED_ATTRIBUTES);
+                }
+                //anything spilled has been replayed, or there are no kits to replay it to
+                deleteSpilled();
+                logReplayCounts();
+            }
+        });
     }
 
     synchronized boolean queueEvent(Object event) {
@@ -199,11 +347,30 @@ public class KitFrameworkWrapper implements KitManager {
         if (eventQueue == null) {
             eventQueue = new ConcurrentLinkedQueue<Object>();
         }
-        //it's an edge case to even need this, so 10
-        //should be enough.
-        if (eventQueue.size() < 10) {
+        int maxBytes = mConfigManager.getKitQueueMaxBytes();
+        if (maxBytes <= 0) {
+            if (eventQueue.size() < DEFAULT_EVENT_QUEUE_LIMIT) {
+                Logger.debug("Queuing Kit event while waiting for initial configuration.");
+                eventQueue.add(event);
+                mQueuedCount.incrementAndGet();
+            } else {
+                mDroppedCount.incrementAndGet();
+            }
+            return true;
+        }
+        //once anything has been spilled, everything after it is too, so that replay keeps the original order
+        int size = estimateSize(event);
+        if (!mSpillingEvents && mQueuedBytes + size <= maxBytes) {
             Logger.debug("Queuing Kit event while waiting for initial configuration.");
             eventQueue.add(event);
+            mQueuedBytes += size;
+            mQueuedCount.incrementAndGet();
+        } else if (spill(SPILLED_EVENTS, serializeEvent(event))) {
+            mSpillingEvents = true;
+            mQueuedCount.incrementAndGet();
+        } else {
+            Logger.debug("Kit queue is full, dropping event while waiting for initial configuration.");
+            mDroppedCount.incrementAndGet();
         }
         return true;
     }
@@ -232,10 +399,150 @@ public class KitFrameworkWrapper implements KitManager {
         if (attributeQueue == null) {
             attributeQueue = new ConcurrentLinkedQueue<AttributeChange>();
         }
-        attributeQueue.add(change);
+        int maxBytes = mConfigManager.getKitQueueMaxBytes();
+        if (maxBytes <= 0) {
+            attributeQueue.add(change);
+            mQueuedCount.incrementAndGet();
+            return true;
+        }
+        int size = change.estimateSize();
+        if (!mSpillingAttributes && mQueuedBytes + size <= maxBytes) {
+            attributeQueue.add(change);
+            mQueuedBytes += size;
+            mQueuedCount.incrementAndGet();
+        } else if (spill(SPILLED_ATTRIBUTES, change.toJson())) {
+            mSpillingAttributes = true;
+            mQueuedCount.incrementAndGet();
+        } else {
+            Logger.debug("Kit queue is full, dropping user attribute change while waiting for initial configuration.");
+            mDroppedCount.incrementAndGet();
+        }
         return true;
     }
 
+    private boolean isKitQueuePersisted() {
+        return mConfigManager.getKitQueueMaxBytes() > 0 && mConfigManager.isKitQueuePersisted();
+    }
+
+    /**
+     * Write an event or attribute change which doesn't fit in memory to the database on the background
+     * task thread, if the kit queue is persisted. If the write then fails, it's counted as dropped.
+     *
+     * @return false if it can't be written, and should be dropped
+     */
+    private boolean spill(final int queue, final String payload) {
+        if (payload == null || !isKitQueuePersisted()) {
+            return false;
+        }
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getDBManager().insertKitQueueEntry(queue, payload);
+                } catch (Exception e) {
+                    Logger.warning("Failed to write to the kit queue: " + e.getMessage());
+                    mQueuedCount.decrementAndGet();
+                    mDroppedCount.incrementAndGet();
+                }
+            }
+        });
+        return true;
+    }
+
+    private void deleteSpilled() {
+        try {
+            getDBManager().deleteAllKitQueueEntries();
+        } catch (Exception e) {
+            Logger.warning("Failed to clear the kit queue: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Kit queue database work is done on the upload thread, which runs it in the order it was posted.
+     */
+    private void runInBackground(Runnable runnable) {
+        if (mBackgroundTaskHandler != null) {
+            mBackgroundTaskHandler.executeNetworkRequest(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    private MParticleDBManager getDBManager() {
+        if (mDBManager == null) {
+            mDBManager = new MParticleDBManager(mDatabaseContext, DatabaseTables.getInstance(mDatabaseContext));
+        }
+        return mDBManager;
+    }
+
+    /**
+     * @return the serialized event, or null for commerce events, which can't be deserialized
+     */
+    static String serializeEvent(Object event) {
+        if (!(event instanceof MPEvent)) {
+            return null;
+        }
+        MPEvent mpEvent = (MPEvent) event;
+        try {
+            return new JSONObject()
+                    .put(SpilledKeys.EVENT, new MPEvent.Builder(mpEvent).toString())
+                    .put(SpilledKeys.SCREEN, mpEvent.isScreenEvent())
+                    .toString();
+        } catch (JSONException jse) {
+            return null;
+        }
+    }
+
+    /**
+     * An approximation of the memory an event occupies, counting 2 bytes per character and a fixed
+     * overhead for each object, which is all the byte bound needs.
+     */
+    static int estimateSize(Object event) {
+        int size = ENTRY_OVERHEAD_BYTES;
+        if (event instanceof MPEvent) {
+            MPEvent mpEvent = (MPEvent) event;
+            size += sizeOf(mpEvent.getEventName()) + sizeOf(mpEvent.getCategory());
+            Map<String, String> info = mpEvent.getInfo();
+            if (info != null) {
+                for (Map.Entry<String, String> entry : info.entrySet()) {
+                    size += ENTRY_OVERHEAD_BYTES + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+                }
+            }
+            Map<String, List<String>> customFlags = mpEvent.getCustomFlags();
+            if (customFlags != null) {
+                for (Map.Entry<String, List<String>> entry : customFlags.entrySet()) {
+                    size += ENTRY_OVERHEAD_BYTES + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+                }
+            }
+        } else if (event != null) {
+            size += sizeOf(event.toString());
+        }
+        return size;
+    }
+
+    static int sizeOf(String value) {
+        return value != null ? value.length() * 2 : 0;
+    }
+
+    static int sizeOf(List<String> values) {
+        int size = 0;
+        if (values != null) {
+            for (String value : values) {
+                size += ENTRY_OVERHEAD_BYTES + sizeOf(value);
+            }
+        }
+        return size;
+    }
+
+    interface SpilledKeys {
+        String EVENT = "event";
+        String SCREEN = "screen";
+        String KEY = "key";
+        String VALUE = "value";
+        String MPID = "mpid";
+        String TYPE = "type";
+    }
+
     static class AttributeChange {
         final String key;
         final Object value;
@@ -267,6 +574,49 @@ public class KitFrameworkWrapper implements KitManager {
             this.mpid = mpid;
             this.type = type;
         }
+
+        int estimateSize() {
+            int size = ENTRY_OVERHEAD_BYTES + sizeOf(key);
+            if (value instanceof String) {
+                size += sizeOf((String) value);
+            } else if (value instanceof List) {
+                size += sizeOf((List<String>) value);
+            }
+            return size;
+        }
+
+        String toJson() {
+            try {
+                JSONObject json = new JSONObject()
+                        .put(SpilledKeys.KEY, key)
+                        .put(SpilledKeys.MPID, mpid)
+                        .put(SpilledKeys.TYPE, type);
+                if (value instanceof List) {
+                    json.put(SpilledKeys.VALUE, new JSONArray((List<String>) value));
+                } else if (value != null) {
+                    json.put(SpilledKeys.VALUE, value.toString());
+                }
+                return json.toString();
+            } catch (JSONException jse) {
+                return null;
+            }
+        }
+
+        static AttributeChange fromJson(JSONObject json) throws JSONException {
+            Object value = null;
+            Object jsonValue = json.opt(SpilledKeys.VALUE);
+            if (jsonValue instanceof JSONArray) {
+                JSONArray array = (JSONArray) jsonValue;
+                List<String> values = new ArrayList<String>(array.length());
+                for (int i = 0; i < array.length(); i++) {
+                    values.add(array.getString(i));
+                }
+                value = values;
+            } else if (jsonValue != null) {
+                value = jsonValue.toString();
+            }
+            return new AttributeChange(json.getString(SpilledKeys.KEY), value, json.getLong(SpilledKeys.MPID), json.getInt(SpilledKeys.TYPE));
+        }
     }
 
     public WeakReference<Activity> getCurrentActivity() {
@@ -426,6 +776,14 @@ public class KitFrameworkWrapper implements KitManager {
         return false;
     }
 
+    @Override
+    public Set<Integer> getSlowKits() {
+        if (mKitManager != null) {
+            return mKitManager.getSlowKits();
+        }
+        return new HashSet<Integer>();
+    }
+
     @Override
     public Object getKitInstance(int kitId) {
         if (mKitManager != null) {
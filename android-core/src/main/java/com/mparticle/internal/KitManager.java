@@ -71,6 +71,8 @@ public interface KitManager {
 
     boolean isKitActive(int kitId);
 
+    Set<Integer> getSlowKits();
+
     Object getKitInstance(int kitId);
 
     Set<Integer> getSupportedKits();
@@ -118,6 +118,10 @@ public class Logger {
         }
     }
 
+    public static boolean isLoggable(LogLevel priority) {
+        return isLoggable(priority.logLevel);
+    }
+
     private static boolean isLoggable(int logLevel) {
         boolean isAPILoggable = logLevel >= Logger.sMinLogLevel.logLevel;
         boolean isADBLoggable;
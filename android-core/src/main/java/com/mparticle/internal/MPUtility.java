@@ -33,7 +33,10 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.net.HttpURLConnection;
@@ -62,6 +65,7 @@ public class MPUtility {
     static final String NO_BLUETOOTH = "none";
     private static String sOpenUDID;
     private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+    private static final int UTF8_CHUNK_SIZE = 4096;
 
     public static long getAvailableMemory(Context context) {
         ActivityManager.MemoryInfo mi = new ActivityManager.MemoryInfo();
@@ -179,6 +183,62 @@ public class MPUtility {
         return asHex(sha256_HMAC.doFinal(data.getBytes("utf-8")));
     }
 
+    /**
+     * Sign the concatenation of the given Strings, encoding them into the Mac incrementally so that
+     * large payloads aren't concatenated or copied into a single byte array first.
+     */
+    public static String hmacSha256Encode(String key, String... data) throws NoSuchAlgorithmException,
+            InvalidKeyException, UnsupportedEncodingException {
+        final Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
+        SecretKeySpec secret_key = new SecretKeySpec(key.getBytes("utf-8"), "HmacSHA256");
+        sha256_HMAC.init(secret_key);
+        OutputStream macStream = new OutputStream() {
+            @Override
+            public void write(int b) {
+                sha256_HMAC.update((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                sha256_HMAC.update(b, off, len);
+            }
+        };
+        try {
+            Writer writer = new OutputStreamWriter(macStream, "UTF-8");
+            for (String value : data) {
+                if (value != null) {
+                    writeUtf8(value, writer);
+                }
+            }
+            writer.flush();
+        } catch (UnsupportedEncodingException e) {
+            throw e;
+        } catch (IOException e) {
+            //the Mac stream doesn't throw
+        }
+        return asHex(sha256_HMAC.doFinal());
+    }
+
+    /**
+     * Write a String to the stream as UTF-8. The String is encoded a chunk at a time, instead of
+     * allocating an encoded copy of the whole thing, as {@link String#getBytes()} would.
+     */
+    public static void writeUtf8(String value, OutputStream outputStream) throws IOException {
+        Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+        writeUtf8(value, writer);
+        writer.flush();
+    }
+
+    private static void writeUtf8(String value, Writer writer) throws IOException {
+        char[] buffer = new char[UTF8_CHUNK_SIZE];
+        int length = value.length();
+        for (int start = 0; start < length; start += UTF8_CHUNK_SIZE) {
+            int end = Math.min(start + UTF8_CHUNK_SIZE, length);
+            value.getChars(start, end, buffer, 0);
+            writer.write(buffer, 0, end - start);
+        }
+    }
+
     private static String asHex(byte[] buf) {
         char[] chars = new char[2 * buf.length];
         for (int i = 0; i < buf.length; ++i) {
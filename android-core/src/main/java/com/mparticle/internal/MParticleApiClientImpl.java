@@ -4,6 +4,7 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import com.mparticle.MParticle;
+import com.mparticle.networking.BaseNetworkConnection;
 import com.mparticle.networking.MParticleBaseClientImpl;
 
 import org.json.JSONArray;
@@ -120,11 +121,12 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
                 return;
             }
         }
+        HttpURLConnection connection = null;
         try {
             if (mConfigUrl == null){
                 mConfigUrl = getUrl(Endpoint.CONFIG);
             }
-            HttpURLConnection connection = (HttpURLConnection) mConfigUrl.openConnection();
+            connection = openConnection(mConfigUrl);
             connection.setConnectTimeout(mConfigManager.getConnectionTimeout());
             connection.setReadTimeout(mConfigManager.getConnectionTimeout());
             connection.setRequestProperty(HEADER_ENVIRONMENT, Integer.toString(mConfigManager.getEnvironment().getValue()));
@@ -186,6 +188,8 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
             //some devices do not have MD5, and therefore cannot process SSL certificates
             //there's not much to do in that case except catch the error
             Logger.error("Config request failed " + e.toString());
+        } finally {
+            BaseNetworkConnection.drainAndClose(connection);
         }
     }
 
@@ -194,7 +198,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         JSONObject response = null;
         try {
             Logger.debug("Starting Segment Network request");
-            HttpURLConnection connection = (HttpURLConnection) getUrl(Endpoint.AUDIENCE).openConnection();
+            HttpURLConnection connection = openConnection(getUrl(Endpoint.AUDIENCE));
             connection.setConnectTimeout(mConfigManager.getConnectionTimeout());
             connection.setReadTimeout(mConfigManager.getConnectionTimeout());
             connection.setRequestProperty("User-Agent", mUserAgent);
@@ -229,7 +233,7 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
         if (mEventUrl == null){
             mEventUrl = getUrl(Endpoint.EVENTS);
         }
-        HttpURLConnection connection = (HttpURLConnection) mEventUrl.openConnection();
+        HttpURLConnection connection = openConnection(mEventUrl);
         connection.setConnectTimeout(mConfigManager.getConnectionTimeout());
         connection.setReadTimeout(mConfigManager.getConnectionTimeout());
         connection.setDoOutput(true);
@@ -251,33 +255,42 @@ public class MParticleApiClientImpl extends MParticleBaseClientImpl implements M
 
         logUpload(message);
 
-        makeUrlRequest(Endpoint.EVENTS, connection, message, true);
+        try {
+            makeUrlRequest(Endpoint.EVENTS, connection, message, true);
 
-        Logger.verbose("Upload request attempt:\n" +
-                "URL- " + mEventUrl.toString());
+            Logger.verbose("Upload request attempt:\n" +
+                    "URL- " + mEventUrl.toString());
 
-        Logger.verbose(message);
+            Logger.verbose(message);
 
-        int responseCode = connection.getResponseCode();
+            int responseCode = connection.getResponseCode();
 
-        if (responseCode >= 200 && responseCode < 300) {
-            JSONObject response = MPUtility.getJsonResponse(connection);
-            if (response == null) {
-                response = new JSONObject();
-            }
+            if (responseCode >= 200 && responseCode < 300) {
+                JSONObject response = MPUtility.getJsonResponse(connection);
+                if (response == null) {
+                    response = new JSONObject();
+                }
 
-            Logger.verbose("Upload result response: \n" +
-                    connection.getResponseCode() + ": " +
-                        connection.getResponseMessage() + "\n" +
-                        "response:\n" + response.toString());
-            parseCookies(response);
-        } else {
-            Logger.error("Upload request failed- " + connection.getResponseCode() + ": " + connection.getResponseMessage());
+                Logger.verbose("Upload result response: \n" +
+                        connection.getResponseCode() + ": " +
+                            connection.getResponseMessage() + "\n" +
+                            "response:\n" + response.toString());
+                parseCookies(response);
+            } else {
+                Logger.error("Upload request failed- " + connection.getResponseCode() + ": " + connection.getResponseMessage());
+            }
+            return responseCode;
+        } finally {
+            //consume the response so that the connection can be reused by the next batch
+            BaseNetworkConnection.drainAndClose(connection);
         }
-        return connection.getResponseCode();
     }
 
     private void logUpload(String message) {
+        //parsing the batch is only worth it if anyone will see the result
+        if (!Logger.isLoggable(MParticle.LogLevel.VERBOSE)) {
+            return;
+        }
         try {
             JSONObject messageJson = new JSONObject(message);
             if (messageJson.has(Constants.MessageKey.MESSAGES)) {
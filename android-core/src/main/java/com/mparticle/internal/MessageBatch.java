@@ -9,11 +9,18 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 public class MessageBatch extends JSONObject {
     private long messageLengthBytes;
+    private final List<String> serializedMessages = new ArrayList<String>();
+    private final List<String> serializedHistoryMessages = new ArrayList<String>();
 
     private MessageBatch() {
         super();
@@ -107,6 +114,21 @@ public class MessageBatch extends JSONObject {
         }
     }
 
+    /**
+     * Add a message which has already been serialized. It will be spliced into the batch as-is
+     * when the batch is written, so it is never parsed.
+     */
+    public void addMessage(String message) {
+        serializedMessages.add(message);
+    }
+
+    /**
+     * @see #addMessage(String)
+     */
+    public void addSessionHistoryMessage(String message) {
+        serializedHistoryMessages.add(message);
+    }
+
     public void addReportingMessage(JSONObject reportingMessage) {
         try {
             if (!has(Constants.MessageKey.REPORTING)) {
@@ -188,4 +210,81 @@ public class MessageBatch extends JSONObject {
     public void incrementMessageLengthBytes(long bytes) {
         messageLengthBytes = messageLengthBytes + bytes;
     }
+
+    @Override
+    public String toString() {
+        if (serializedMessages.isEmpty() && serializedHistoryMessages.isEmpty()) {
+            return super.toString();
+        }
+        StringWriter writer = new StringWriter((int) messageLengthBytes + 1024);
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            return null;
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Write the batch, splicing in any pre-serialized messages after those which were added as
+     * JSONObjects.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        JSONArray messages = null;
+        JSONArray history = null;
+        if (!serializedMessages.isEmpty()) {
+            messages = (JSONArray) remove(Constants.MessageKey.MESSAGES);
+        }
+        if (!serializedHistoryMessages.isEmpty()) {
+            history = (JSONArray) remove(Constants.MessageKey.HISTORY);
+        }
+        try {
+            String envelope = super.toString();
+            if (envelope == null) {
+                throw new IOException("Unable to serialize message batch.");
+            }
+            //drop the closing brace, the message arrays are appended to the envelope
+            writer.write(envelope, 0, envelope.length() - 1);
+            boolean empty = length() == 0;
+            empty = writeMessages(writer, Constants.MessageKey.MESSAGES, messages, serializedMessages, empty);
+            writeMessages(writer, Constants.MessageKey.HISTORY, history, serializedHistoryMessages, empty);
+            writer.write('}');
+        } finally {
+            try {
+                if (messages != null) {
+                    put(Constants.MessageKey.MESSAGES, messages);
+                }
+                if (history != null) {
+                    put(Constants.MessageKey.HISTORY, history);
+                }
+            } catch (JSONException ignored) {
+            }
+        }
+    }
+
+    private static boolean writeMessages(Writer writer, String key, JSONArray parsedMessages, List<String> messages, boolean empty) throws IOException {
+        if (messages.isEmpty()) {
+            return empty;
+        }
+        if (!empty) {
+            writer.write(',');
+        }
+        writer.write(JSONObject.quote(key));
+        writer.write(":[");
+        boolean first = true;
+        if (parsedMessages != null && parsedMessages.length() > 0) {
+            String parsed = parsedMessages.toString();
+            writer.write(parsed, 1, parsed.length() - 2);
+            first = false;
+        }
+        for (String message : messages) {
+            if (!first) {
+                writer.write(',');
+            }
+            writer.write(message);
+            first = false;
+        }
+        writer.write(']');
+        return false;
+    }
 }
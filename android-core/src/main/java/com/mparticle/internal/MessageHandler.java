@@ -9,6 +9,7 @@ import com.mparticle.MParticle;
 import com.mparticle.internal.Constants.MessageKey;
 import com.mparticle.internal.Constants.MessageType;
 import com.mparticle.internal.database.services.MParticleDBManager;
+import com.mparticle.internal.database.services.mp.MessageService;
 import com.mparticle.internal.database.tables.mp.SessionTable;
 import com.mparticle.internal.dto.AttributionChange;
 import com.mparticle.internal.dto.UserAttributeRemoval;
@@ -18,8 +19,10 @@ import com.mparticle.internal.networking.BaseMPMessage;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,9 +47,38 @@ import java.util.UUID;
     public static final int INCREMENT_USER_ATTRIBUTE = 12;
     public static final int INSTALL_REFERRER_UPDATED = 13;
     public static final int CLEAR_MESSAGES_FOR_UPLOAD = 14;
+    public static final int FLUSH_PENDING_MESSAGES = 15;
+    public static final int DRAIN_EVENT_QUEUE = 16;
+    public static final int CHECKPOINT_COUNTERS = 17;
+
+    static final long CHECKPOINT_DELAY_MILLIS = 10 * 1000;
 
     private final MessageManagerCallbacks mMessageManagerCallbacks;
 
+    /**
+     * When batching is enabled, STORE_MESSAGE items are held here and written in a single transaction
+     * once one of the count, byte or time limits below is reached.
+     */
+    private final List<PendingMessage> mPendingMessages = new ArrayList<PendingMessage>();
+    private int mPendingBytes = 0;
+    private int mBatchMaxMessages = 0;
+    private int mBatchMaxBytes = 0;
+    private long mBatchMaxDelayMillis = 0;
+
+    /**
+     * The latest message time of each session, written to the sessions table by
+     * {@link #checkpointSessionEndTimes()} rather than once per stored message. Only touched on the handler thread.
+     */
+    private final Map<String, Long> mSessionEndTimes = new HashMap<String, Long>();
+
+    /**
+     * Event queue positions which the posted DRAIN_EVENT_QUEUE messages may drain up to, oldest first.
+     * The open drain window is closed whenever any other message is sent, so that events logged after
+     * that message are left for a drain posted behind it, and stored after it.
+     */
+    private final LinkedList<Long> mDrainBounds = new LinkedList<Long>();
+    private boolean mDrainScheduled = false;
+
     public MessageHandler(Looper looper, MessageManagerCallbacks messageManager, Context context) {
         super(looper);
         mMessageManagerCallbacks = messageManager;
@@ -54,6 +86,16 @@ import java.util.UUID;
         mMParticleDBManager = new MParticleDBManager(context, DatabaseTables.getInstance(context));
     }
 
+    /**
+     *
+     * Only used for unit testing
+     */
+    MessageHandler(MessageManagerCallbacks messageManager, Context context, MParticleDBManager dbManager) {
+        mMessageManagerCallbacks = messageManager;
+        mContext = context;
+        mMParticleDBManager = dbManager;
+    }
+
     private boolean databaseAvailable() {
         return mMParticleDBManager.isAvailable();
     }
@@ -67,36 +109,43 @@ import java.util.UUID;
         }catch (Exception e) {
             Logger.verbose(e.toString());
         }
+        if (msg.what != STORE_MESSAGE) {
+            //anything else may read or modify state which depends on queued messages, so persist them first
+            flushPendingMessages();
+            checkpointSessionEndTimes();
+        }
         switch (msg.what) {
             case STORE_MESSAGE:
                 try {
-
                     BaseMPMessage message = (BaseMPMessage) msg.obj;
                     message.put(MessageKey.STATE_INFO_KEY, MessageManager.getStateInfo());
-                    String messageType = message.getString(MessageKey.TYPE);
-                    // handle the special case of session-start by creating the
-                    // session record first
-                    if (MessageType.SESSION_START.equals(messageType)) {
-                        dbInsertSession(message);
-                    }else{
-                        mMParticleDBManager.updateSessionEndTime(message.getSessionId(), message.getLong(MessageKey.TIMESTAMP), 0);
-                        message.put(Constants.MessageKey.ID, UUID.randomUUID().toString());
-                    }
-                    if (MessageType.ERROR.equals(messageType)){
-                        mMParticleDBManager.appendBreadcrumbs(message);
-                    }
-                    try {
-                        mMParticleDBManager.insertMessage(mMessageManagerCallbacks.getApiKey(), message);
-                    } catch (MParticleApiClientImpl.MPNoConfigException e) {
-                        Logger.error("Unable to process uploads, API key and/or API Secret are missing");
-                        return;
+                    if (isBatchingEnabled()) {
+                        queueMessage(message);
+                    } else {
+                        storeMessage(message, null, mSessionEndTimes);
+                        if (requiresImmediateFlush(message)) {
+                            checkpointSessionEndTimes();
+                        } else if (!hasMessages(CHECKPOINT_COUNTERS)) {
+                            sendEmptyMessageDelayed(CHECKPOINT_COUNTERS, CHECKPOINT_DELAY_MILLIS);
+                        }
+                        mMessageManagerCallbacks.checkForTrigger(message);
                     }
-                    mMessageManagerCallbacks.checkForTrigger(message);
-
+                } catch (MParticleApiClientImpl.MPNoConfigException e) {
+                    Logger.error("Unable to process uploads, API key and/or API Secret are missing");
                 } catch (Exception e) {
                     Logger.error(e, "Error saving message to mParticle DB.");
                 }
                 break;
+            case FLUSH_PENDING_MESSAGES:
+                //the flush has already been done above
+                break;
+            case DRAIN_EVENT_QUEUE:
+                drainEventQueue();
+                break;
+            case CHECKPOINT_COUNTERS:
+                //session end times have already been checkpointed above
+                MessageManager.checkpointEventCounter();
+                break;
             case INSTALL_REFERRER_UPDATED:
                 try {
                     mMParticleDBManager.updateSessionInstallReferrer((String) msg.obj, mMessageManagerCallbacks.getDeviceAttributes().getAppInfo(mContext, true));
@@ -125,25 +174,8 @@ import java.util.UUID;
             case CREATE_SESSION_END_MESSAGE:
                 try {
                     Map.Entry<String, Set<Long>> entry = (Map.Entry<String, Set<Long>>) msg.obj;
-                    BaseMPMessage endMessage = null;
-                    String sessionId = entry.getKey();
-                   try {
-                       endMessage = mMParticleDBManager.getSessionForSessionEndMessage(sessionId, ((MessageManager)mMessageManagerCallbacks).getLocation(), entry.getValue());
-                   }catch (JSONException jse){
-                       Logger.warning("Failed to create mParticle session end message");
-                   }
-                   if (endMessage != null) {
-                       try {
-                           Logger.verbose("Creating session end message for session ID: " + sessionId);
-                           mMParticleDBManager.insertMessage(mMessageManagerCallbacks.getApiKey(), endMessage);
-                           mMParticleDBManager.updateSessionStatus(sessionId, SessionTable.SessionStatus.CLOSED);
-                       } catch (MParticleApiClientImpl.MPNoConfigException e) {
-                           Logger.error("Unable to process uploads, API key and/or API Secret are missing");
-                           return;
-                       }
-
-                    } else {
-                        Logger.error("Error creating session end, no entry for sessionId in mParticle DB");
+                    if (!createSessionEndMessage(entry.getKey(), entry.getValue())) {
+                        return;
                     }
                     //1 means this came from ending the session
                     if (msg.arg1 == 1){
@@ -151,8 +183,6 @@ import java.util.UUID;
                     }
                 } catch (Exception e) {
                     Logger.error(e, "Error creating session end message in mParticle DB");
-                }finally {
-
                 }
                 break;
             case END_ORPHAN_SESSIONS:
@@ -162,8 +192,15 @@ import java.util.UUID;
                     Long mpid = (Long)msg.obj;
                     List<String> sessionIds = mMParticleDBManager.getOrphanSessionIds(mMessageManagerCallbacks.getApiKey());
                     for (String sessionId: sessionIds) {
-                        Map.Entry<String, Set<Long>> entry = new HashMap.SimpleEntry<String, Set<Long>>(sessionId, Collections.singleton(mpid));
-                        sendMessage(obtainMessage(MessageHandler.CREATE_SESSION_END_MESSAGE, 0, 0, entry));
+                        //end times and event counts are only checkpointed periodically, so recover any lost to a crash from the stored messages.
+                        //Each session end message resets the event counter, so it has to be created before the next session's count is recovered.
+                        mMParticleDBManager.extendSessionEndTime(sessionId, mMParticleDBManager.getLatestMessageTime(sessionId));
+                        MessageManager.recoverEventCounter(mMParticleDBManager.getLatestEventCounter(sessionId) + 1);
+                        try {
+                            createSessionEndMessage(sessionId, Collections.singleton(mpid));
+                        } catch (Exception e) {
+                            Logger.error(e, "Error creating session end message in mParticle DB");
+                        }
                     }
                 } catch (MParticleApiClientImpl.MPNoConfigException ex) {
                     Logger.error("Unable to process initialization, API key and or API Secret is missing");
@@ -186,8 +223,7 @@ import java.util.UUID;
                 break;
             case STORE_REPORTING_MESSAGE_LIST:
                 try{
-                    MessageManager.ReportingMpidMessage reportingMessages = (MessageManager.ReportingMpidMessage)msg.obj;
-                    mMParticleDBManager.insertReportingMessages((List<JsonReportingMessage>)reportingMessages.reportingMessages, reportingMessages.mpid);
+                    mMParticleDBManager.insertReportingMessages(mMessageManagerCallbacks.drainReportingMessages());
                 }catch (Exception e) {
                     Logger.verbose(e, "Error while inserting reporting messages: ", e.toString());
                 }
@@ -220,6 +256,260 @@ import java.util.UUID;
         }
     }
 
+    /**
+     * @return false if the message couldn't be stored because the API key or secret is missing
+     */
+    private boolean createSessionEndMessage(String sessionId, Set<Long> mpIds) throws MParticleApiClientImpl.MPNoConfigException {
+        BaseMPMessage endMessage = null;
+        try {
+            endMessage = mMParticleDBManager.getSessionForSessionEndMessage(sessionId, ((MessageManager)mMessageManagerCallbacks).getLocation(), mpIds);
+        }catch (JSONException jse){
+            Logger.warning("Failed to create mParticle session end message");
+        }
+        if (endMessage != null) {
+            try {
+                Logger.verbose("Creating session end message for session ID: " + sessionId);
+                mMParticleDBManager.insertMessage(mMessageManagerCallbacks.getApiKey(), endMessage);
+                mMParticleDBManager.updateSessionStatus(sessionId, SessionTable.SessionStatus.CLOSED);
+            } catch (MParticleApiClientImpl.MPNoConfigException e) {
+                Logger.error("Unable to process uploads, API key and/or API Secret are missing");
+                return false;
+            }
+        } else {
+            Logger.error("Error creating session end, no entry for sessionId in mParticle DB");
+        }
+        return true;
+    }
+
+    /**
+     * Enable coalesced storage of STORE_MESSAGE items. Queued messages are written in a single
+     * transaction, with one session end-time update per session, once maxMessages messages or
+     * maxBytes serialized bytes are queued, or maxDelayMillis after the first message was queued.
+     * Backgrounding the app and fatal errors are always flushed immediately, as is the queue ahead
+     * of any other message this handler processes. A maxMessages value of 1 or less disables batching.
+     */
+    void setMessageBatching(int maxMessages, int maxBytes, long maxDelayMillis) {
+        mBatchMaxMessages = maxMessages;
+        mBatchMaxBytes = maxBytes;
+        mBatchMaxDelayMillis = maxDelayMillis;
+    }
+
+    boolean isBatchingEnabled() {
+        return mBatchMaxMessages > 1;
+    }
+
+    private void queueMessage(BaseMPMessage message) throws JSONException {
+        prepareMessage(message);
+        String messageString = MessageService.getMessageString(message);
+        boolean flush;
+        synchronized (mPendingMessages) {
+            mPendingMessages.add(new PendingMessage(message, messageString));
+            mPendingBytes += messageString.length();
+            flush = mPendingMessages.size() >= mBatchMaxMessages ||
+                    mPendingBytes >= mBatchMaxBytes ||
+                    requiresImmediateFlush(message);
+            if (!flush && mPendingMessages.size() == 1) {
+                sendEmptyMessageDelayed(FLUSH_PENDING_MESSAGES, mBatchMaxDelayMillis);
+            }
+        }
+        if (flush) {
+            flushPendingMessages();
+        }
+    }
+
+    /**
+     * The app may be killed any time after it is backgrounded or crashes, so don't hold on to those.
+     */
+    private boolean requiresImmediateFlush(BaseMPMessage message) {
+        String messageType = message.getMessageType();
+        if (MessageType.APP_STATE_TRANSITION.equals(messageType)) {
+            return Constants.StateTransitionType.STATE_TRANS_BG.equals(message.optString(MessageKey.STATE_TRANSITION_TYPE));
+        }
+        if (MessageType.ERROR.equals(messageType)) {
+            return "fatal".equals(message.optString(MessageKey.ERROR_SEVERITY));
+        }
+        return false;
+    }
+
+    @Override
+    public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+        if (msg.what != DRAIN_EVENT_QUEUE) {
+            closeDrainWindow();
+        }
+        return super.sendMessageAtTime(msg, uptimeMillis);
+    }
+
+    /**
+     * Called after an event has been added to the event queue, to make sure a drain will store it.
+     */
+    void scheduleDrain() {
+        synchronized (mDrainBounds) {
+            if (mDrainScheduled) {
+                return;
+            }
+            mDrainScheduled = true;
+        }
+        sendEmptyMessage(DRAIN_EVENT_QUEUE);
+    }
+
+    /**
+     * Limit the drain which has already been posted to the events queued so far.
+     */
+    void closeDrainWindow() {
+        synchronized (mDrainBounds) {
+            if (mDrainScheduled) {
+                mDrainBounds.add(mMessageManagerCallbacks.getEventQueuePosition());
+                mDrainScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Store the events in this drain's window of the event queue. With batching enabled they join the
+     * pending batch, otherwise they are written together in a single transaction.
+     */
+    void drainEventQueue() {
+        long before;
+        synchronized (mDrainBounds) {
+            Long bound = mDrainBounds.poll();
+            if (bound != null) {
+                before = bound;
+            } else {
+                //this drain's window is still open, close it here so that later events schedule another drain
+                mDrainScheduled = false;
+                before = mMessageManagerCallbacks.getEventQueuePosition();
+            }
+        }
+        List<BaseMPMessage> messages = mMessageManagerCallbacks.drainEventQueue(before);
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        List<PendingMessage> pendingMessages = new ArrayList<PendingMessage>(messages.size());
+        for (BaseMPMessage message : messages) {
+            try {
+                message.put(MessageKey.STATE_INFO_KEY, MessageManager.getStateInfo());
+                if (isBatchingEnabled()) {
+                    queueMessage(message);
+                } else {
+                    prepareMessage(message);
+                    pendingMessages.add(new PendingMessage(message, MessageService.getMessageString(message)));
+                }
+            } catch (Exception e) {
+                Logger.error(e, "Error saving message to mParticle DB.");
+            }
+        }
+        if (!pendingMessages.isEmpty()) {
+            storePendingMessages(pendingMessages);
+        }
+    }
+
+    void flushPendingMessages() {
+        List<PendingMessage> pendingMessages;
+        synchronized (mPendingMessages) {
+            if (mPendingMessages.isEmpty()) {
+                return;
+            }
+            pendingMessages = new ArrayList<PendingMessage>(mPendingMessages);
+            mPendingMessages.clear();
+            mPendingBytes = 0;
+            removeMessages(FLUSH_PENDING_MESSAGES);
+        }
+        storePendingMessages(pendingMessages);
+    }
+
+    private void storePendingMessages(List<PendingMessage> pendingMessages) {
+        Map<String, Long> sessionEndTimes = new HashMap<String, Long>();
+        List<BaseMPMessage> storedMessages = new ArrayList<BaseMPMessage>(pendingMessages.size());
+        try {
+            mMParticleDBManager.beginTransaction();
+            try {
+                for (PendingMessage pendingMessage : pendingMessages) {
+                    try {
+                        storeMessage(pendingMessage.message, pendingMessage.messageString, sessionEndTimes);
+                        storedMessages.add(pendingMessage.message);
+                    } catch (MParticleApiClientImpl.MPNoConfigException e) {
+                        Logger.error("Unable to process uploads, API key and/or API Secret are missing");
+                    } catch (Exception e) {
+                        Logger.error(e, "Error saving message to mParticle DB.");
+                    }
+                }
+                for (Map.Entry<String, Long> sessionEndTime : sessionEndTimes.entrySet()) {
+                    mMParticleDBManager.updateSessionEndTime(sessionEndTime.getKey(), sessionEndTime.getValue(), 0);
+                }
+                mMParticleDBManager.setTransactionSuccessful();
+            } finally {
+                mMParticleDBManager.endTransaction();
+            }
+        } catch (Exception e) {
+            Logger.error(e, "Error saving message batch to mParticle DB.");
+            return;
+        }
+        for (BaseMPMessage message : storedMessages) {
+            mMessageManagerCallbacks.checkForTrigger(message);
+        }
+    }
+
+    void checkpointSessionEndTimes() {
+        if (mSessionEndTimes.isEmpty()) {
+            return;
+        }
+        try {
+            mMParticleDBManager.beginTransaction();
+            try {
+                for (Map.Entry<String, Long> sessionEndTime : mSessionEndTimes.entrySet()) {
+                    mMParticleDBManager.updateSessionEndTime(sessionEndTime.getKey(), sessionEndTime.getValue(), 0);
+                }
+                mMParticleDBManager.setTransactionSuccessful();
+            } finally {
+                mMParticleDBManager.endTransaction();
+            }
+        } catch (Exception e) {
+            Logger.error(e, "Error updating session end times in mParticle DB.");
+        }
+        mSessionEndTimes.clear();
+    }
+
+    private void prepareMessage(BaseMPMessage message) throws JSONException {
+        String messageType = message.getString(MessageKey.TYPE);
+        if (!MessageType.SESSION_START.equals(messageType)) {
+            message.put(Constants.MessageKey.ID, UUID.randomUUID().toString());
+        }
+        if (MessageType.ERROR.equals(messageType)) {
+            mMParticleDBManager.appendBreadcrumbs(message);
+        }
+    }
+
+    /**
+     * @param messageString the pre-serialized message, or null if the message has not been prepared yet
+     * @param sessionEndTimes session end-time updates are collected here rather than written
+     */
+    private void storeMessage(BaseMPMessage message, String messageString, Map<String, Long> sessionEndTimes) throws JSONException, MParticleApiClientImpl.MPNoConfigException {
+        String messageType = message.getString(MessageKey.TYPE);
+        // handle the special case of session-start by creating the
+        // session record first
+        if (MessageType.SESSION_START.equals(messageType)) {
+            dbInsertSession(message);
+        } else {
+            sessionEndTimes.put(message.getSessionId(), message.getLong(MessageKey.TIMESTAMP));
+        }
+        if (messageString == null) {
+            prepareMessage(message);
+            mMParticleDBManager.insertMessage(mMessageManagerCallbacks.getApiKey(), message);
+        } else {
+            mMParticleDBManager.insertMessage(mMessageManagerCallbacks.getApiKey(), message, messageString);
+        }
+    }
+
+    private static class PendingMessage {
+        final BaseMPMessage message;
+        final String messageString;
+
+        PendingMessage(BaseMPMessage message, String messageString) {
+            this.message = message;
+            this.messageString = messageString;
+        }
+    }
+
     void setUserAttributes(UserAttributeResponse response) {
         List<AttributionChange> attributionChanges = mMParticleDBManager.setUserAttribute(response);
         for (AttributionChange attributionChange : attributionChanges) {
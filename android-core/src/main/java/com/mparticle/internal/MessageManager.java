@@ -13,9 +13,9 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.BatteryManager;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
 import android.os.Process;
-import android.telephony.TelephonyManager;
 
 import com.mparticle.MPEvent;
 import com.mparticle.MParticle;
@@ -40,6 +40,7 @@ import org.json.JSONObject;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -76,6 +77,18 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
      * These are the handlers which manage the queues and threads mentioned above.
      */
     MessageHandler mMessageHandler;
+    /**
+     * When enabled, logged MPEvents are queued here and turned into messages on the MessageHandler thread.
+     */
+    EventRingBuffer mEventQueue;
+    private final EventRingBuffer.EventRecord mDrainRecord = new EventRingBuffer.EventRecord();
+    /**
+     * Kit reporting messages waiting to be folded into the next upload batch. They're written to the
+     * database instead once {@link Constants#REPORTING_MESSAGE_BUFFER_LIMIT} are waiting, or when the app
+     * is backgrounded.
+     */
+    private final List<ReportingMpidMessage> mPendingReportingMessages = new ArrayList<ReportingMpidMessage>();
+    private int mPendingReportingMessageCount = 0;
     public UploadHandler mUploadHandler;
     /**
      * Ideally these threads would not be started in a static initializer
@@ -115,9 +128,10 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
      */
     MParticle.InstallType mInstallType = MParticle.InstallType.AutoDetect;
     /**
-     * Batches/messages need to communicate the current telephony status when available.
+     * Caches the expensive parts of the state info attached to every message.
      */
-    private static TelephonyManager sTelephonyManager;
+    private static DeviceStateSampler sDeviceStateSampler;
+    private static EventCounter sEventCounter;
 
     /**
      * Used solely for unit testing
@@ -139,6 +153,7 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         mMessageHandler = messageHandler;
         mUploadHandler = uploadHandler;
         sPreferences = appContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        resetEventCounter();
         mInstallType = installType;
     }
 
@@ -151,16 +166,66 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
         mAppStateManager.setMessageManager(this);
         mMParticleDBManager = new MParticleDBManager(appContext, DatabaseTables.getInstance(appContext));
         mMessageHandler = new MessageHandler(sMessageHandlerThread.getLooper(), this, appContext);
+        mMessageHandler.setMessageBatching(configManager.getMessageBatchMaxMessages(), configManager.getMessageBatchMaxBytes(), configManager.getMessageBatchMaxDelayMillis());
+        sDeviceStateSampler = new DeviceStateSampler(sContext, configManager.getDeviceStateSamplingInterval());
+        sDeviceStateSampler.setDiskSamplingEnabled(!devicePerformanceMetricsDisabled);
+        if (configManager.getEventQueueCapacity() > 0) {
+            mEventQueue = new EventRingBuffer(configManager.getEventQueueCapacity(), configManager.getEventQueuePolicy());
+        }
         mUploadHandler = new UploadHandler(appContext, sUploadHandlerThread.getLooper(), configManager, appStateManager, this);
         sPreferences = appContext.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
+        resetEventCounter();
         mInstallType = installType;
     }
 
-    private static TelephonyManager getTelephonyManager() {
-        if (sTelephonyManager == null) {
-            sTelephonyManager = (TelephonyManager) sContext.getSystemService(Context.TELEPHONY_SERVICE);
+    private static DeviceStateSampler getDeviceStateSampler() {
+        if (sDeviceStateSampler == null) {
+            sDeviceStateSampler = new DeviceStateSampler(sContext, 0);
+            sDeviceStateSampler.setDiskSamplingEnabled(!devicePerformanceMetricsDisabled);
+        }
+        return sDeviceStateSampler;
+    }
+
+    private static void resetEventCounter() {
+        if (sEventCounter != null) {
+            sEventCounter.checkpoint();
+        }
+        sEventCounter = new EventCounter(sPreferences);
+    }
+
+    private static EventCounter getEventCounter() {
+        if (sEventCounter == null) {
+            sEventCounter = new EventCounter(sPreferences);
+        }
+        return sEventCounter;
+    }
+
+    /**
+     * Reset the event counter for a session end message, returning the number of events logged in the session.
+     */
+    public static int getAndResetEventCounter() {
+        if (sPreferences == null) {
+            return 0;
+        }
+        return getEventCounter().getAndReset();
+    }
+
+    /**
+     * Raise the event counter after a crash, to account for stored events which were never checkpointed.
+     */
+    static void recoverEventCounter(int minimum) {
+        if (sPreferences != null) {
+            getEventCounter().recover(minimum);
+        }
+    }
+
+    /**
+     * Write the in-memory event counter back to SharedPreferences.
+     */
+    public static void checkpointEventCounter() {
+        if (sEventCounter != null) {
+            sEventCounter.checkpoint();
         }
-        return sTelephonyManager;
     }
 
     public boolean isDevicePerformanceMetricsDisabled() {
@@ -169,34 +234,38 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
 
     public void setDevicePerformanceMetricsDisabled(boolean disabled) {
         devicePerformanceMetricsDisabled = disabled;
+        if (sDeviceStateSampler != null) {
+            sDeviceStateSampler.setDiskSamplingEnabled(!disabled);
+        }
     }
 
     public static JSONObject getStateInfo() throws JSONException {
         JSONObject infoJson = new JSONObject();
+        DeviceStateSampler.Snapshot snapshot = getDeviceStateSampler().getSnapshot();
         if (!devicePerformanceMetricsDisabled) {
-            infoJson.put(MessageKey.STATE_INFO_AVAILABLE_DISK, MPUtility.getAvailableInternalDisk(sContext));
-            infoJson.put(MessageKey.STATE_INFO_AVAILABLE_EXT_DISK, MPUtility.getAvailableExternalDisk(sContext));
+            infoJson.put(MessageKey.STATE_INFO_AVAILABLE_DISK, snapshot.availableInternalDisk);
+            infoJson.put(MessageKey.STATE_INFO_AVAILABLE_EXT_DISK, snapshot.availableExternalDisk);
             final Runtime rt = Runtime.getRuntime();
             infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_USAGE, rt.totalMemory());
             infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_AVAIL, rt.freeMemory());
             infoJson.put(MessageKey.STATE_INFO_APP_MEMORY_MAX, rt.maxMemory());
         }
-        infoJson.put(MessageKey.STATE_INFO_AVAILABLE_MEMORY, MPUtility.getAvailableMemory(sContext));
+        infoJson.put(MessageKey.STATE_INFO_AVAILABLE_MEMORY, snapshot.availableMemory);
         infoJson.put(MessageKey.STATE_INFO_TOTAL_MEMORY, getTotalMemory());
         infoJson.put(MessageKey.STATE_INFO_BATTERY_LVL, sBatteryLevel);
         infoJson.put(MessageKey.STATE_INFO_TIME_SINCE_START, MPUtility.millitime() - sStartTime);
 
-        String gps = MPUtility.getGpsEnabled(sContext);
+        String gps = snapshot.gpsEnabled;
         if (gps != null){
             infoJson.put(MessageKey.STATE_INFO_GPS,Boolean.parseBoolean(gps));
         }
         infoJson.put(MessageKey.STATE_INFO_DATA_CONNECTION, sActiveNetworkName);
-        int orientation = MPUtility.getOrientation(sContext);
+        int orientation = snapshot.orientation;
         infoJson.put(MessageKey.STATE_INFO_ORIENTATION, orientation);
         infoJson.put(MessageKey.STATE_INFO_BAR_ORIENTATION, orientation);
-        infoJson.put(MessageKey.STATE_INFO_MEMORY_LOW, MPUtility.isSystemMemoryLow(sContext));
+        infoJson.put(MessageKey.STATE_INFO_MEMORY_LOW, snapshot.memoryLow);
         infoJson.put(MessageKey.STATE_INFO_MEMORY_THRESHOLD, getSystemMemoryThreshold());
-        infoJson.put(MessageKey.STATE_INFO_NETWORK_TYPE, getTelephonyManager().getNetworkType());
+        infoJson.put(MessageKey.STATE_INFO_NETWORK_TYPE, snapshot.networkType);
         return infoJson;
     }
 
@@ -310,34 +379,95 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
 
     public BaseMPMessage logEvent(MPEvent event, String currentActivity) {
         if (event != null) {
+            if (mEventQueue != null) {
+                queueEvent(event, currentActivity);
+                return null;
+            }
             try {
+                Session session = mAppStateManager.getSession();
+                BaseMPMessage message = createEventMessage(event.getEventName(), event.getEventType(), event.getLength(), event.getInfo(), event.getCustomFlags(),
+                        currentActivity, session, mLocation, mConfigManager.getMpid(), session.mLastEventTime);
+                mMessageHandler.sendMessage(mMessageHandler.obtainMessage(MessageHandler.STORE_MESSAGE, message));
+                return message;
+            } catch (JSONException e) {
+                Logger.warning("Failed to create mParticle log event message");
+            }
+        }
+        return null;
+    }
 
-                BaseMPMessage message = new MPEventMessage.Builder(MessageType.EVENT, mAppStateManager.getSession(), mLocation, mConfigManager.getMpid())
-                        .name(event.getEventName())
-                        .timestamp(mAppStateManager.getSession().mLastEventTime)
-                        .length(event.getLength())
-                        .flags(event.getCustomFlags())
-                        .attributes(MPUtility.enforceAttributeConstraints(event.getInfo()))
-                        .build();
-                message.put(MessageKey.EVENT_TYPE, event.getEventType());
-                message.put(MessageKey.EVENT_START_TIME, message.getTimestamp());
+    private BaseMPMessage createEventMessage(String name, MParticle.EventType eventType, Double length, Map<String, String> info, Map<String, List<String>> customFlags,
+                                             String currentActivity, Session session, Location location, long mpId, long timestamp) throws JSONException {
+        BaseMPMessage message = new MPEventMessage.Builder(MessageType.EVENT, session, location, mpId)
+                .name(name)
+                .timestamp(timestamp)
+                .length(length)
+                .flags(customFlags)
+                .attributes(MPUtility.enforceAttributeConstraints(info))
+                .build();
+        message.put(MessageKey.EVENT_TYPE, eventType);
+        message.put(MessageKey.EVENT_START_TIME, message.getTimestamp());
 
 
-                if (currentActivity != null) {
-                    message.put(MessageKey.CURRENT_ACTIVITY, currentActivity);
-                }
+        if (currentActivity != null) {
+            message.put(MessageKey.CURRENT_ACTIVITY, currentActivity);
+        }
+
+        EventCounter eventCounter = getEventCounter();
+        message.put(MessageKey.EVENT_COUNTER, eventCounter.getAndIncrement());
+        if (eventCounter.shouldScheduleCheckpoint()) {
+            mMessageHandler.sendEmptyMessageDelayed(MessageHandler.CHECKPOINT_COUNTERS, MessageHandler.CHECKPOINT_DELAY_MILLIS);
+        }
+        return message;
+    }
+
+    private void queueEvent(MPEvent event, String currentActivity) {
+        Session session = mAppStateManager.getSession();
+        //blocking the MessageHandler thread on its own queue would never end
+        boolean mayBlock = Looper.myLooper() != mMessageHandler.getLooper();
+        if (mEventQueue.offer(event, currentActivity, session.mSessionID, session.mSessionStartTime, mLocation, mConfigManager.getMpid(), session.mLastEventTime, mayBlock)) {
+            mMessageHandler.scheduleDrain();
+        } else {
+            Logger.warning("Event queue is full, dropping event: " + event.getEventName());
+        }
+    }
 
-                int count = sPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0);
-                message.put(MessageKey.EVENT_COUNTER, count);
-                sPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, ++count).apply();
+    @Override
+    public long getEventQueuePosition() {
+        return mEventQueue != null ? mEventQueue.getTailPosition() : 0;
+    }
 
-                mMessageHandler.sendMessage(mMessageHandler.obtainMessage(MessageHandler.STORE_MESSAGE, message));
-                return message;
+    /**
+     * Build messages for the events waiting in the event queue which were queued before the given
+     * position. Only called from the MessageHandler thread.
+     */
+    @Override
+    public List<BaseMPMessage> drainEventQueue(long before) {
+        if (mEventQueue == null) {
+            return Collections.emptyList();
+        }
+        List<BaseMPMessage> messages = new ArrayList<BaseMPMessage>();
+        while (mEventQueue.poll(mDrainRecord, before)) {
+            EventRingBuffer.EventRecord record = mDrainRecord;
+            Session session = new Session();
+            session.mSessionID = record.sessionId;
+            session.mSessionStartTime = record.sessionStartTime;
+            try {
+                messages.add(createEventMessage(record.name, record.eventType, record.length, record.info, record.customFlags,
+                        record.currentActivity, session, record.location, record.mpId, record.timestamp));
             } catch (JSONException e) {
                 Logger.warning("Failed to create mParticle log event message");
             }
+            record.clear();
         }
-        return null;
+        return messages;
+    }
+
+    /**
+     * @return the number of events dropped because the event queue was full
+     */
+    public long getDroppedEventCount() {
+        return mEventQueue != null ? mEventQueue.getDroppedCount() : 0;
     }
 
     public BaseMPMessage logEvent(CommerceEvent event) {
@@ -603,6 +733,8 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
 
                 if (stateTransInit.equals(Constants.StateTransitionType.STATE_TRANS_BG)) {
                     sPreferences.edit().putBoolean(Constants.PrefKeys.CRASHED_IN_FOREGROUND, false).apply();
+                    checkpointEventCounter();
+                    storeReportingMessages();
                 }
 
                 mMessageHandler.sendMessage(mMessageHandler.obtainMessage(MessageHandler.STORE_MESSAGE, message));
@@ -775,6 +907,10 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                 sStatusBroadcastReceiver = new StatusBroadcastReceiver();
                 // NOTE: if permissions are not correct all messages will be tagged as 'offline'
                 IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+                //orientation and disk space changes, so the cached device state can be resampled
+                filter.addAction(Intent.ACTION_CONFIGURATION_CHANGED);
+                filter.addAction(Intent.ACTION_DEVICE_STORAGE_LOW);
+                filter.addAction(Intent.ACTION_DEVICE_STORAGE_OK);
                 if (MPUtility.checkPermission(sContext, android.Manifest.permission.ACCESS_NETWORK_STATE)) {
                     //same as with battery, get current connection so we don't have to wait for the next change
                     ConnectivityManager connectivityManager = (ConnectivityManager) sContext
@@ -830,8 +966,55 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                 messageList.get(i).setDevMode(development);
                 messageList.get(i).setSessionId(sessionId);
             }
-            Message message = mMessageHandler.obtainMessage(MessageHandler.STORE_REPORTING_MESSAGE_LIST, new ReportingMpidMessage(messageList, mConfigManager.getMpid()));
-            mMessageHandler.sendMessage(message);
+            boolean store;
+            synchronized (mPendingReportingMessages) {
+                mPendingReportingMessages.add(new ReportingMpidMessage(messageList, mConfigManager.getMpid()));
+                mPendingReportingMessageCount += messageList.size();
+                store = mPendingReportingMessageCount >= Constants.REPORTING_MESSAGE_BUFFER_LIMIT;
+            }
+            if (store) {
+                storeReportingMessages();
+            }
+        }
+    }
+
+    /**
+     * Write any buffered reporting messages to the database.
+     */
+    void storeReportingMessages() {
+        if (!mMessageHandler.hasMessages(MessageHandler.STORE_REPORTING_MESSAGE_LIST)) {
+            mMessageHandler.sendEmptyMessage(MessageHandler.STORE_REPORTING_MESSAGE_LIST);
+        }
+    }
+
+    /**
+     * Remove and return the buffered reporting messages, oldest first.
+     */
+    @Override
+    public List<ReportingMpidMessage> drainReportingMessages() {
+        synchronized (mPendingReportingMessages) {
+            if (mPendingReportingMessages.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<ReportingMpidMessage> reportingMessages = new ArrayList<ReportingMpidMessage>(mPendingReportingMessages);
+            mPendingReportingMessages.clear();
+            mPendingReportingMessageCount = 0;
+            return reportingMessages;
+        }
+    }
+
+    /**
+     * Put drained reporting messages back at the front of the buffer, if they couldn't be uploaded or stored.
+     */
+    public void restoreReportingMessages(List<ReportingMpidMessage> reportingMessages) {
+        if (reportingMessages == null || reportingMessages.isEmpty()) {
+            return;
+        }
+        synchronized (mPendingReportingMessages) {
+            mPendingReportingMessages.addAll(0, reportingMessages);
+            for (ReportingMpidMessage reportingMessage : reportingMessages) {
+                mPendingReportingMessageCount += reportingMessage.reportingMessages.size();
+            }
         }
     }
 
@@ -952,6 +1135,12 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
                             .getSystemService(Context.CONNECTIVITY_SERVICE);
                     NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
                     MessageManager.this.setDataConnection(activeNetwork);
+                    //the network type may have changed too
+                    getDeviceStateSampler().invalidate();
+                } else if (Intent.ACTION_CONFIGURATION_CHANGED.equals(intent.getAction()) ||
+                        Intent.ACTION_DEVICE_STORAGE_LOW.equals(intent.getAction()) ||
+                        Intent.ACTION_DEVICE_STORAGE_OK.equals(intent.getAction())) {
+                    getDeviceStateSampler().invalidate();
                 } else if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
                     int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
                     int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
@@ -1004,5 +1193,13 @@ public class MessageManager implements MessageManagerCallbacks, ReportingManager
             this.mpid = mpid;
             this.reportingMessages = reportingMessages;
         }
+
+        public long getMpid() {
+            return mpid;
+        }
+
+        public List<? extends JsonReportingMessage> getReportingMessages() {
+            return reportingMessages;
+        }
     }
 }
@@ -2,6 +2,8 @@ package com.mparticle.internal;
 
 import com.mparticle.internal.networking.BaseMPMessage;
 
+import java.util.List;
+
 public interface MessageManagerCallbacks {
     String getApiKey() throws MParticleApiClientImpl.MPNoConfigException;
     void delayedStart();
@@ -12,4 +14,7 @@ public interface MessageManagerCallbacks {
     BaseMPMessage logUserAttributeChangeMessage(String userAttributeKey, Object newValue, Object oldValue, boolean deleted, boolean isNewAttribute, long time, long mpId);
     DeviceAttributes getDeviceAttributes();
     void messagesClearedForUpload();
+    long getEventQueuePosition();
+    List<BaseMPMessage> drainEventQueue(long before);
+    List<MessageManager.ReportingMpidMessage> drainReportingMessages();
 }
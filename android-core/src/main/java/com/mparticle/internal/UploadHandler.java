@@ -70,6 +70,12 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
      */
     volatile boolean isNetworkConnected = true;
 
+    /**
+     * Bytes sent by the last call to {@link #upload(boolean)}, and whether every batch it found was sent.
+     */
+    private long mUploadedBytes = 0;
+    private boolean mUploadsCompleted = true;
+
     /**
      *
      * Only used for unit testing
@@ -129,8 +135,7 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
                     long uploadInterval = mConfigManager.getUploadInterval();
                     if (isNetworkConnected && !mApiClient.isThrottled()) {
                         if (uploadInterval > 0 || msg.arg1 == 1) {
-                            prepareMessageUploads(false);
-                            boolean needsHistory = upload(false);
+                            boolean needsHistory = uploadBacklog();
                             if (needsHistory) {
                                 this.sendEmptyMessage(UPLOAD_HISTORY);
                             }
@@ -161,7 +166,7 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
      * This is the first processing step:
      * - query messages that have been persisted but not marked as uploaded
      * - group them into upload batches objects, one per session
-     * - query reporting messages and add them to their respective batches
+     * - query reporting messages, and those buffered in memory, and add them to their respective batches
      * - query app and device info, and add them to their respective batches
      * - persist all of the resulting upload batch objects
      * - mark the messages as having been uploaded.
@@ -173,6 +178,7 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
             throw new Exception("Low remaining heap space, deferring uploads.");
         }
         final boolean sessionHistoryEnabled = MParticle.getInstance().getConfigManager().getIncludeSessionHistory();
+        List<MessageManager.ReportingMpidMessage> pendingReportingMessages = null;
         try {
             mParticleDBManager.cleanupMessages();
             if (history && !sessionHistoryEnabled) {
@@ -182,10 +188,40 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
             if (history) {
                 mParticleDBManager.createSessionHistoryUploadMessage(mConfigManager, mMessageManager.getDeviceAttributes(), currentSessionId);
             } else {
-                mParticleDBManager.createMessagesForUploadMessage(mConfigManager, mMessageManager.getDeviceAttributes(), currentSessionId, sessionHistoryEnabled);
+                //buffered reporting messages go straight into the batches, rather than being stored first
+                pendingReportingMessages = mMessageManager.drainReportingMessages();
+                mParticleDBManager.createMessagesForUploadMessage(mConfigManager, mMessageManager.getDeviceAttributes(), currentSessionId, sessionHistoryEnabled, pendingReportingMessages);
             }
         } catch (Exception e) {
             Logger.verbose("Error preparing batch upload in mParticle DB: " + e.getMessage());
+            mMessageManager.restoreReportingMessages(pendingReportingMessages);
+        }
+    }
+
+    /**
+     * Prepare and upload batches. While more than {@link Constants#DRAIN_BACKLOG_THRESHOLD} messages are
+     * waiting, such as after a long time offline, keep preparing and uploading batches rather than
+     * waiting a full upload interval for each one. This stops once the pass has used its byte or time
+     * budget, an upload fails, or we're throttled.
+     */
+    boolean uploadBacklog() throws Exception {
+        long deadline = System.currentTimeMillis() + Constants.DRAIN_TIME_LIMIT;
+        long uploadedBytes = 0;
+        boolean needsHistory = false;
+        while (true) {
+            prepareMessageUploads(false);
+            needsHistory = upload(false) || needsHistory;
+            uploadedBytes += mUploadedBytes;
+            if (mUploadedBytes == 0 ||
+                    !mUploadsCompleted ||
+                    !isNetworkConnected ||
+                    uploadedBytes >= Constants.DRAIN_BYTE_LIMIT ||
+                    System.currentTimeMillis() >= deadline ||
+                    mApiClient.isThrottled() ||
+                    mParticleDBManager.getMessagesForUploadCount() <= Constants.DRAIN_BACKLOG_THRESHOLD) {
+                return needsHistory;
+            }
+            Logger.verbose("Upload backlog remaining, continuing upload.");
         }
     }
 
@@ -197,6 +233,9 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
     boolean upload(boolean history) {
         mParticleDBManager.cleanupUploadMessages();
         boolean processingSessionEnd = false;
+        mUploadedBytes = 0;
+        mUploadsCompleted = false;
+        boolean uploadFailed = false;
         try {
             List<ReadyUpload> readyUploads = mParticleDBManager.getReadyUploads();
             if (readyUploads.size() > 0) {
@@ -215,9 +254,14 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
                             processingSessionEnd = true;
                         }
                     }
-                    uploadMessage(readyUpload.getId(), readyUpload.getMessage());
+                    if (uploadMessage(readyUpload.getId(), readyUpload.getMessage())) {
+                        mUploadedBytes += readyUpload.getMessage().length();
+                    } else {
+                        uploadFailed = true;
+                    }
                 }
             }
+            mUploadsCompleted = !uploadFailed;
         } catch (MParticleApiClientImpl.MPThrottleException e) {
         } catch (SSLHandshakeException ssle) {
             Logger.debug("SSL handshake failed while preparing uploads - possible MITM attack detected.");
@@ -229,7 +273,10 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
         return processingSessionEnd;
     }
 
-    void uploadMessage(int id, String message) throws IOException, MParticleApiClientImpl.MPThrottleException {
+    /**
+     * @return false if the upload failed and will be retried
+     */
+    boolean uploadMessage(int id, String message) throws IOException, MParticleApiClientImpl.MPThrottleException {
         int responseCode = -1;
         boolean sampling = false;
         try {
@@ -247,8 +294,10 @@ public class UploadHandler extends Handler implements BackgroundTaskHandler {
 
         if (sampling || shouldDelete(responseCode)) {
             mParticleDBManager.deleteUpload(id);
+            return true;
         } else {
             Logger.warning("Upload failed and will be retried.");
+            return false;
         }
     }
 
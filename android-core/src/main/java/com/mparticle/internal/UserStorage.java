@@ -5,6 +5,8 @@ import android.content.SharedPreferences;
 import android.net.UrlQuerySanitizer;
 import android.os.Build;
 
+import com.mparticle.MParticle;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -12,6 +14,7 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
@@ -41,6 +44,8 @@ public class UserStorage {
     private long mpId;
     private SharedPreferences mPreferences;
     private Context mContext;
+    //the user identities as last parsed, so they're only parsed again once they've been written
+    private UserIdentityState mUserIdentityState;
 
     static List<UserStorage> getAllUsers(Context context) {
         Set<Long> userMpIds = getMpIdSet(context);
@@ -266,10 +271,22 @@ public class UserStorage {
         return mPreferences.getString(USER_IDENTITIES, "");
     }
 
-    void setUserIdentities(String userIdentities) {
+    synchronized void setUserIdentities(String userIdentities) {
+        mUserIdentityState = null;
         mPreferences.edit().putString(USER_IDENTITIES, userIdentities).apply();
     }
 
+    /**
+     * @return the user identities as last parsed by {@link ConfigManager}, or null if they've been written since
+     */
+    synchronized UserIdentityState getUserIdentityState() {
+        return mUserIdentityState;
+    }
+
+    synchronized void setUserIdentityState(UserIdentityState userIdentityState) {
+        mUserIdentityState = userIdentityState;
+    }
+
     void setSerializedConsentState(String consentState) {
         mPreferences.edit().putString(CONSENT_STATE, consentState).apply();
     }
@@ -571,4 +588,13 @@ public class UserStorage {
         }
     }
 
+    static class UserIdentityState {
+        final String json;
+        final Map<MParticle.IdentityType, String> identities;
+
+        UserIdentityState(String json, Map<MParticle.IdentityType, String> identities) {
+            this.json = json;
+            this.identities = identities;
+        }
+    }
 }
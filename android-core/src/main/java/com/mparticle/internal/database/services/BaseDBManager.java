@@ -18,4 +18,8 @@ public class BaseDBManager {
         return mDatabaseTables.getMParticleDatabase();
     }
 
+    protected UserAttributeCache getUserAttributeCache() {
+        return mDatabaseTables.getUserAttributeCache();
+    }
+
 }
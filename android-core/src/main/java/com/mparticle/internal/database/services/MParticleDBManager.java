@@ -1,7 +1,6 @@
 package com.mparticle.internal.database.services;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
@@ -21,12 +20,14 @@ import com.mparticle.internal.MessageManager;
 import com.mparticle.internal.MessageManagerCallbacks;
 import com.mparticle.internal.Session;
 import com.mparticle.internal.database.services.mp.BreadcrumbService;
+import com.mparticle.internal.database.services.mp.KitQueueService;
 import com.mparticle.internal.database.services.mp.MessageService;
 import com.mparticle.internal.database.services.mp.ReportingService;
 import com.mparticle.internal.database.services.mp.SessionService;
 import com.mparticle.internal.database.services.mp.UploadService;
 import com.mparticle.internal.database.services.mp.UserAttributesService;
 import com.mparticle.internal.dto.AttributionChange;
+import com.mparticle.internal.dto.KitQueueEntry;
 import com.mparticle.internal.dto.ReadyUpload;
 import com.mparticle.internal.dto.UserAttributeRemoval;
 import com.mparticle.internal.dto.UserAttributeResponse;
@@ -37,6 +38,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,11 +47,9 @@ import java.util.TreeMap;
 import java.util.UUID;
 
 public class MParticleDBManager extends BaseDBManager {
-    private SharedPreferences mPreferences;
 
     public MParticleDBManager(Context context, DatabaseTables databaseTables) {
         super(context, databaseTables);
-        mPreferences = context.getSharedPreferences(Constants.PREFS_FILE, Context.MODE_PRIVATE);
     }
 
     private long getMpid() {
@@ -75,6 +75,11 @@ public class MParticleDBManager extends BaseDBManager {
         new UserAttributesService().updateMpId(db, oldMpId, newMpId);
         db.setTransactionSuccessful();
         db.endTransaction();
+        UserAttributeCache userAttributeCache = getUserAttributeCache();
+        if (userAttributeCache != null) {
+            userAttributeCache.invalidate(oldMpId);
+            userAttributeCache.invalidate(newMpId);
+        }
     }
 
     /**
@@ -116,6 +121,32 @@ public class MParticleDBManager extends BaseDBManager {
         }
     }
 
+    /**
+     * Insert a message which has already been serialized via {@link MessageService#getMessageString(BaseMPMessage)}.
+     */
+    public void insertMessage(String apiKey, BaseMPMessage message, String messageString) throws JSONException {
+        MessageService.insertMessage(getMParticleDatabase(), apiKey, message, messageString, message.getMpId());
+        if (sMessageListener != null) {
+            sMessageListener.onMessageStored(message);
+        }
+    }
+
+    /**
+     * Transaction control, used to group several writes (such as a batch of stored messages)
+     * into a single commit.
+     */
+    public void beginTransaction() {
+        getMParticleDatabase().beginTransaction();
+    }
+
+    public void setTransactionSuccessful() {
+        getMParticleDatabase().setTransactionSuccessful();
+    }
+
+    public void endTransaction() {
+        getMParticleDatabase().endTransaction();
+    }
+
     private static MessageListener sMessageListener;
 
     static void setMessageListener(MessageListener messageListener){
@@ -163,11 +194,20 @@ public class MParticleDBManager extends BaseDBManager {
     }
 
     public void createMessagesForUploadMessage(ConfigManager configManager, DeviceAttributes deviceAttributes, String currentSessionId, boolean sessionHistoryEnabled) throws JSONException {
+        createMessagesForUploadMessage(configManager, deviceAttributes, currentSessionId, sessionHistoryEnabled, null);
+    }
+
+    /**
+     * @param pendingReportingMessages reporting messages which haven't been stored yet. They're added to the
+     *                                 batches directly, or stored if there are no messages to upload
+     */
+    public void createMessagesForUploadMessage(ConfigManager configManager, DeviceAttributes deviceAttributes, String currentSessionId, boolean sessionHistoryEnabled, List<MessageManager.ReportingMpidMessage> pendingReportingMessages) throws JSONException {
         SQLiteDatabase db = getMParticleDatabase();
         db.beginTransaction();
         try {
             List<MessageService.ReadyMessage> readyMessages = MessageService.getMessagesForUpload(db);
             if (readyMessages.size() <= 0) {
+                insertReportingMessages(db, pendingReportingMessages);
                 db.setTransactionSuccessful();
                 return;
             }
@@ -175,20 +215,21 @@ public class MParticleDBManager extends BaseDBManager {
 
             List<ReportingService.ReportingMessage> reportingMessages = ReportingService.getReportingMessagesForUpload(db);
             for (ReportingService.ReportingMessage reportingMessage : reportingMessages) {
-                Map<Long, MessageBatch> batchMap = uploadMessagesBySessionMpid.get(reportingMessage.getSessionId());
-                if (batchMap == null) {
-                    //if there's no matching session id then just use the first batch object
-                    batchMap = uploadMessagesBySessionMpid.values().iterator().next();
-                }
-                MessageBatch batch = batchMap.get(reportingMessage.getMpid());
-                if (batch == null) {
-                    batch = batchMap.values().iterator().next();
-                }
-                if (batch != null) {
-                    batch.addReportingMessage(reportingMessage.getMsgObject());
-                }
+                addReportingMessage(uploadMessagesBySessionMpid, reportingMessage.getSessionId(), reportingMessage.getMpid(), reportingMessage.getMsgObject());
                 ReportingService.deleteReportingMessage(db, reportingMessage.getReportingMessageId());
             }
+            if (pendingReportingMessages != null) {
+                for (MessageManager.ReportingMpidMessage pendingMessages : pendingReportingMessages) {
+                    //messages without an MPID yet have to wait in the database, as they would if they'd been stored
+                    if (pendingMessages.getMpid() == Constants.TEMPORARY_MPID) {
+                        insertReportingMessages(db, Collections.singletonList(pendingMessages));
+                        continue;
+                    }
+                    for (JsonReportingMessage reportingMessage : pendingMessages.getReportingMessages()) {
+                        addReportingMessage(uploadMessagesBySessionMpid, reportingMessage.getSessionId(), pendingMessages.getMpid(), reportingMessage.toJson());
+                    }
+                }
+            }
             List<JSONObject> deviceInfos = SessionService.processSessions(db, uploadMessagesBySessionMpid);
             for (JSONObject deviceInfo : deviceInfos) {
                 deviceAttributes.updateDeviceInfo(mContext, deviceInfo);
@@ -201,6 +242,25 @@ public class MParticleDBManager extends BaseDBManager {
         }
     }
 
+    private static void addReportingMessage(HashMap<String, Map<Long, MessageBatch>> uploadMessagesBySessionMpid, String sessionId, long mpid, JSONObject reportingMessage) {
+        Map<Long, MessageBatch> batchMap = uploadMessagesBySessionMpid.get(sessionId);
+        if (batchMap == null) {
+            //if there's no matching session id then just use the first batch object
+            batchMap = uploadMessagesBySessionMpid.values().iterator().next();
+        }
+        MessageBatch batch = batchMap.get(mpid);
+        if (batch == null) {
+            batch = batchMap.values().iterator().next();
+        }
+        if (batch != null) {
+            batch.addReportingMessage(reportingMessage);
+        }
+    }
+
+    public int getMessagesForUploadCount() {
+        return MessageService.getMessagesForUploadCount(getMParticleDatabase());
+    }
+
     public void deleteMessagesAndSessions(String currentSessionId) {
         SQLiteDatabase db = getMParticleDatabase();
         db.beginTransaction();
@@ -233,15 +293,10 @@ public class MParticleDBManager extends BaseDBManager {
                 }
             }
             int messageLength = readyMessage.getMessage().length();
-            JSONObject msgObject = new JSONObject(readyMessage.getMessage());
             if (messageLength + uploadMessage.getMessageLengthBytes() > Constants.LIMIT_MAX_UPLOAD_SIZE) {
                 break;
             }
-            if (isHistory) {
-                uploadMessage.addSessionHistoryMessage(msgObject);
-            } else {
-                uploadMessage.addMessage(msgObject);
-            }
+            addMessageToBatch(uploadMessage, readyMessage.getMessage(), isHistory);
             uploadMessage.incrementMessageLengthBytes(messageLength);
             highestUploadedMessageId = readyMessage.getMessageId();
         }
@@ -272,16 +327,13 @@ public class MParticleDBManager extends BaseDBManager {
                     if (uploadMessage.getDeviceInfo() == null || sessionId.equals(currentSessionId)) {
                         uploadMessage.setDeviceInfo(deviceAttributes.getDeviceInfo(mContext));
                     }
-                    JSONArray messages;
-                    if (historyMessages) {
-                        messages = uploadMessage.getSessionHistoryMessages();
-                    } else {
-                        messages = uploadMessage.getMessages();
+                    //if no UIC or UAC message in this batch set the end-state, use the current state
+                    if (!uploadMessage.has(Constants.MessageKey.USER_IDENTITIES)) {
+                        uploadMessage.setIdentities(configManager.getUserIdentityJson(mpidMessage.getKey()));
+                    }
+                    if (!uploadMessage.has(Constants.MessageKey.USER_ATTRIBUTES)) {
+                        uploadMessage.setUserAttributes(getAllUserAttributesJson(mpidMessage.getKey()));
                     }
-                    JSONArray identities = findIdentityState(configManager, messages, mpidMessage.getKey());
-                    uploadMessage.setIdentities(identities);
-                    JSONObject userAttributes = findUserAttributeState(messages, mpidMessage.getKey());
-                    uploadMessage.setUserAttributes(userAttributes);
                     UploadService.insertUpload(db, uploadMessage, configManager.getApiKey());
                     //if this was to process session history, or
                     //if we're never going to process history AND
@@ -294,55 +346,43 @@ public class MParticleDBManager extends BaseDBManager {
         }
     }
 
-    /**
-     * Look for the last UAC message to find the end-state of user attributes
-     */
-    private JSONObject findUserAttributeState(JSONArray messages, long mpId) {
-        JSONObject userAttributes = null;
-        if (messages != null) {
-            for (int i = 0; i < messages.length(); i++) {
-                try {
-                    if (messages.getJSONObject(i).get(Constants.MessageKey.TYPE).equals(Constants.MessageType.USER_ATTRIBUTE_CHANGE)) {
-                        userAttributes = messages.getJSONObject(i).getJSONObject(Constants.MessageKey.USER_ATTRIBUTES);
-                        messages.getJSONObject(i).remove(Constants.MessageKey.USER_ATTRIBUTES);
-                    }
-                }catch (JSONException jse) {
-
-                }catch (NullPointerException npe) {
-
-                }
-            }
-        }
-        if (userAttributes == null) {
-            return getAllUserAttributesJson(mpId);
-        } else {
-            return userAttributes;
-        }
-    }
+    private static final String USER_ATTRIBUTE_CHANGE_TYPE = "\"" + Constants.MessageKey.TYPE + "\":\"" + Constants.MessageType.USER_ATTRIBUTE_CHANGE + "\"";
+    private static final String USER_IDENTITY_CHANGE_TYPE = "\"" + Constants.MessageKey.TYPE + "\":\"" + Constants.MessageType.USER_IDENTITY_CHANGE + "\"";
 
     /**
-     * Look for the last UIC message to find the end-state of user identities
+     * Add a stored message to a batch without parsing it. UAC and UIC messages are the exception:
+     * their user attributes and identities are moved onto the batch, so that the last such message
+     * in a batch determines its end-state. A plain substring scan finds the candidates, so only
+     * those few messages are ever parsed.
      */
-    private JSONArray findIdentityState(ConfigManager configManager, JSONArray messages, long mpId) {
-        JSONArray identities = null;
-        if (messages != null) {
-            for (int i = 0; i < messages.length(); i++) {
-                try {
-                    if (messages.getJSONObject(i).get(Constants.MessageKey.TYPE).equals(Constants.MessageType.USER_IDENTITY_CHANGE)) {
-                        identities = messages.getJSONObject(i).getJSONArray(Constants.MessageKey.USER_IDENTITIES);
-                        messages.getJSONObject(i).remove(Constants.MessageKey.USER_IDENTITIES);
+    private void addMessageToBatch(MessageBatch uploadMessage, String message, boolean isHistory) {
+        if (message.contains(USER_ATTRIBUTE_CHANGE_TYPE) || message.contains(USER_IDENTITY_CHANGE_TYPE)) {
+            try {
+                JSONObject msgObject = new JSONObject(message);
+                Object type = msgObject.opt(Constants.MessageKey.TYPE);
+                if (Constants.MessageType.USER_ATTRIBUTE_CHANGE.equals(type)) {
+                    JSONObject userAttributes = msgObject.optJSONObject(Constants.MessageKey.USER_ATTRIBUTES);
+                    if (userAttributes != null) {
+                        uploadMessage.setUserAttributes(userAttributes);
+                        msgObject.remove(Constants.MessageKey.USER_ATTRIBUTES);
+                        message = msgObject.toString();
+                    }
+                } else if (Constants.MessageType.USER_IDENTITY_CHANGE.equals(type)) {
+                    JSONArray identities = msgObject.optJSONArray(Constants.MessageKey.USER_IDENTITIES);
+                    if (identities != null) {
+                        uploadMessage.setIdentities(identities);
+                        msgObject.remove(Constants.MessageKey.USER_IDENTITIES);
+                        message = msgObject.toString();
                     }
-                }catch (JSONException jse) {
-
-                }catch (NullPointerException npe) {
-
                 }
+            } catch (JSONException jse) {
+
             }
         }
-        if (identities == null) {
-            return configManager.getUserIdentityJson(mpId);
+        if (isHistory) {
+            uploadMessage.addSessionHistoryMessage(message);
         } else {
-            return identities;
+            uploadMessage.addMessage(message);
         }
     }
 
@@ -362,6 +402,13 @@ public class MParticleDBManager extends BaseDBManager {
         SessionService.updateSessionEndTime(getMParticleDatabase(), sessionId, endTime, sessionLength);
     }
 
+    /**
+     * Move the session's end time forward to endTime, if it is currently earlier.
+     */
+    public void extendSessionEndTime(String sessionId, long endTime) {
+        SessionService.extendSessionEndTime(getMParticleDatabase(), sessionId, endTime);
+    }
+
     public void updateSessionAttributes(String sessionId, String attributes) {
         SessionService.updateSessionAttributes(getMParticleDatabase(), sessionId, attributes);
     }
@@ -400,8 +447,7 @@ public class MParticleDBManager extends BaseDBManager {
     }
 
     BaseMPMessage createMessageSessionEnd(String sessionId, long start, long end, long foregroundLength, JSONObject sessionAttributes, Location location, Set<Long> mpIds) throws JSONException{
-        int eventCounter = mPreferences.getInt(Constants.PrefKeys.EVENT_COUNTER, 0);
-        resetEventCounter();
+        int eventCounter = MessageManager.getAndResetEventCounter();
         Session session = new Session();
         session.mSessionID = sessionId;
         session.mSessionStartTime = start;
@@ -426,15 +472,25 @@ public class MParticleDBManager extends BaseDBManager {
         return message;
     }
 
-    private void resetEventCounter(){
-        mPreferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, 0).apply();
-    }
-
 
     public List<String> getOrphanSessionIds(String apiKey) {
         return SessionService.getOrphanSessionIds(getMParticleDatabase(), apiKey);
     }
 
+    /**
+     * @return the timestamp of the most recent stored message in the session, or 0 if there are none
+     */
+    public long getLatestMessageTime(String sessionId) {
+        return MessageService.getLatestMessageTime(getMParticleDatabase(), sessionId);
+    }
+
+    /**
+     * @return the event counter of the most recent stored event in the session, or -1 if there are none
+     */
+    public int getLatestEventCounter(String sessionId) {
+        return MessageService.getLatestEventCounter(getMParticleDatabase(), sessionId);
+    }
+
 
     public void insertSession(BaseMPMessage message, String apiKey, JSONObject appInfo, JSONObject deviceInfo) throws JSONException {
         String appInfoString = appInfo.toString();
@@ -451,13 +507,17 @@ public class MParticleDBManager extends BaseDBManager {
      *
      */
 
-    public void insertReportingMessages(List<JsonReportingMessage> reportingMessages, long mpId) {
+    /**
+     * Store reporting messages which were buffered in memory, in a single transaction.
+     */
+    public void insertReportingMessages(List<MessageManager.ReportingMpidMessage> reportingMessages) {
+        if (reportingMessages == null || reportingMessages.isEmpty()) {
+            return;
+        }
         SQLiteDatabase db = getMParticleDatabase();
         try {
             db.beginTransaction();
-            for (int i = 0; i < reportingMessages.size(); i++) {
-                ReportingService.insertReportingMessage(db, reportingMessages.get(i), mpId);
-            }
+            insertReportingMessages(db, reportingMessages);
             db.setTransactionSuccessful();
         } catch (Exception e) {
             Logger.verbose("Error inserting reporting message: " + e.toString());
@@ -466,6 +526,17 @@ public class MParticleDBManager extends BaseDBManager {
         }
     }
 
+    private static void insertReportingMessages(SQLiteDatabase db, List<MessageManager.ReportingMpidMessage> reportingMessages) {
+        if (reportingMessages == null) {
+            return;
+        }
+        for (MessageManager.ReportingMpidMessage mpidMessages : reportingMessages) {
+            for (JsonReportingMessage reportingMessage : mpidMessages.getReportingMessages()) {
+                ReportingService.insertReportingMessage(db, reportingMessage, mpidMessages.getMpid());
+            }
+        }
+    }
+
 
 
     /**
@@ -500,6 +571,10 @@ public class MParticleDBManager extends BaseDBManager {
      */
 
     public TreeMap<String, String> getUserAttributeSingles(long mpId) {
+        UserAttributeCache userAttributeCache = getUserAttributeCache();
+        if (userAttributeCache != null && loadUserAttributes(userAttributeCache, mpId)) {
+            return userAttributeCache.getSingles(mpId);
+        }
         if (getMParticleDatabase() != null) {
             return UserAttributesService.getUserAttributesSingles(getMParticleDatabase(), mpId);
         }
@@ -507,12 +582,37 @@ public class MParticleDBManager extends BaseDBManager {
     }
 
     public TreeMap<String, List<String>> getUserAttributeLists(long mpId) {
+        UserAttributeCache userAttributeCache = getUserAttributeCache();
+        if (userAttributeCache != null && loadUserAttributes(userAttributeCache, mpId)) {
+            return userAttributeCache.getLists(mpId);
+        }
         if (getMParticleDatabase() != null) {
             return UserAttributesService.getUserAttributesLists(getMParticleDatabase(), mpId);
         }
         return null;
     }
 
+    /**
+     * Read the MPID's attributes into the cache, if they aren't already there.
+     *
+     * @return true if the MPID's attributes are cached, false if the table couldn't be read, or was
+     * written to while it was being read
+     */
+    private boolean loadUserAttributes(UserAttributeCache userAttributeCache, long mpId) {
+        if (userAttributeCache.contains(mpId)) {
+            return true;
+        }
+        SQLiteDatabase db = getMParticleDatabase();
+        if (db == null) {
+            return false;
+        }
+        long generation = userAttributeCache.getGeneration();
+        TreeMap<String, String> singles = UserAttributesService.getUserAttributesSingles(db, mpId);
+        TreeMap<String, List<String>> lists = UserAttributesService.getUserAttributesLists(db, mpId);
+        userAttributeCache.put(mpId, generation, singles, lists);
+        return userAttributeCache.contains(mpId);
+    }
+
 
     public JSONObject getAllUserAttributesJson(long mpId)  {
         Map<String, Object> attributes = getUserAttributes(null, mpId);
@@ -551,7 +651,9 @@ public class MParticleDBManager extends BaseDBManager {
 
     public Map<String, Object> getUserAttributes(final UserAttributeListener listener, final long mpId) {
         Map<String, Object> allUserAttributes = new HashMap<String, Object>();
-        if (listener == null || Looper.getMainLooper() != Looper.myLooper()) {
+        UserAttributeCache userAttributeCache = getUserAttributeCache();
+        boolean cached = userAttributeCache != null && userAttributeCache.contains(mpId);
+        if (listener == null || cached || Looper.getMainLooper() != Looper.myLooper()) {
             Map<String, String> userAttributes = getUserAttributeSingles(mpId);
             Map<String, List<String>> userAttributeLists = getUserAttributeLists(mpId);
             if (listener != null) {
@@ -591,6 +693,8 @@ public class MParticleDBManager extends BaseDBManager {
             return attributionChanges;
         }
         Map<String, Object> currentValues = getUserAttributes(null, userAttribute.mpId);
+        UserAttributeCache userAttributeCache = getUserAttributeCache();
+        boolean committed = false;
         SQLiteDatabase db = getMParticleDatabase();
         try {
             db.beginTransaction();
@@ -603,11 +707,8 @@ public class MParticleDBManager extends BaseDBManager {
                     if (oldValue != null && oldValue instanceof List && oldValue.equals(attributeValues)) {
                         continue;
                     }
-                    int deleted = UserAttributesService.deleteAttributes(db, key, userAttribute.mpId);
-                    boolean isNewAttribute = deleted == 0;
-                    for (String attributeValue : attributeValues) {
-                        UserAttributesService.insertAttribute(db, key, attributeValue, time, true, userAttribute.mpId);
-                    }
+                    int existingRows = UserAttributesService.updateAttributeList(db, key, attributeValues, time, userAttribute.mpId);
+                    boolean isNewAttribute = existingRows == 0;
                     attributionChanges.add(new AttributionChange(key, attributeValues, oldValue, false, isNewAttribute, userAttribute.time, userAttribute.mpId));
                 }
             }
@@ -626,17 +727,33 @@ public class MParticleDBManager extends BaseDBManager {
                 }
             }
             db.setTransactionSuccessful();
+            committed = true;
         }catch (Exception e){
             Logger.error(e, "Error while adding user attributes: ", e.toString());
         } finally {
             db.endTransaction();
         }
+        if (userAttributeCache != null) {
+            if (committed) {
+                for (AttributionChange change : attributionChanges) {
+                    if (change.getNewValue() instanceof List) {
+                        userAttributeCache.setList(userAttribute.mpId, change.getKey(), (List<String>) change.getNewValue());
+                    } else {
+                        userAttributeCache.setSingle(userAttribute.mpId, change.getKey(), (String) change.getNewValue());
+                    }
+                }
+            } else {
+                userAttributeCache.invalidate(userAttribute.mpId);
+            }
+        }
         return attributionChanges;
     }
 
 
     public void removeUserAttribute(UserAttributeRemoval container, MessageManagerCallbacks callbacks) {
         Map<String, Object> currentValues = getUserAttributes(null, container.mpId);
+        UserAttributeCache userAttributeCache = getUserAttributeCache();
+        boolean committed = false;
         SQLiteDatabase db = getMParticleDatabase();
         try {
             db.beginTransaction();
@@ -646,10 +763,43 @@ public class MParticleDBManager extends BaseDBManager {
                 callbacks.logUserAttributeChangeMessage(container.key, null, currentValues.get(container.key), true, false, container.time, container.mpId);
             }
             db.setTransactionSuccessful();
+            committed = true;
         }catch (Exception e) {
 
         } finally {
             db.endTransaction();
         }
+        if (userAttributeCache != null) {
+            if (committed) {
+                userAttributeCache.remove(container.mpId, container.key);
+            } else {
+                userAttributeCache.invalidate(container.mpId);
+            }
+        }
+    }
+
+
+    /**
+     *
+     *
+     * Kit Queue Service Methods
+     *
+     *
+     */
+
+    public void insertKitQueueEntry(int queue, String payload) {
+        KitQueueService.insertEntry(getMParticleDatabase(), queue, payload);
+    }
+
+    public List<KitQueueEntry> getKitQueueEntries(int queue, long afterId, int limit) {
+        return KitQueueService.getEntries(getMParticleDatabase(), queue, afterId, limit);
+    }
+
+    public void deleteKitQueueEntries(int queue, long throughId) {
+        KitQueueService.deleteEntries(getMParticleDatabase(), queue, throughId);
+    }
+
+    public void deleteAllKitQueueEntries() {
+        KitQueueService.deleteAll(getMParticleDatabase());
     }
 }
@@ -0,0 +1,121 @@
+package com.mparticle.internal.database.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The user attributes of each MPID, as last read from or written to the user attributes table.
+ *
+ * Attributes are read for every attribute change and every upload batch, so once an MPID's attributes
+ * have been loaded, reads are served from here rather than querying the table. Like the table queries,
+ * keys are case-insensitive. {@link MParticleDBManager} updates an MPID's attributes after each write
+ * to the table commits, and invalidates them when the write fails, or when the MPID's rows are moved to
+ * another MPID. Everything handed out is a copy, so callers may change what they're given.
+ */
+public class UserAttributeCache {
+    private final Map<Long, Attributes> mAttributes = new HashMap<Long, Attributes>();
+    private long mGeneration;
+
+    synchronized boolean contains(long mpId) {
+        return mAttributes.containsKey(mpId);
+    }
+
+    /**
+     * @return a copy of the MPID's single-value attributes, or null if they haven't been loaded
+     */
+    synchronized TreeMap<String, String> getSingles(long mpId) {
+        Attributes attributes = mAttributes.get(mpId);
+        if (attributes == null) {
+            return null;
+        }
+        TreeMap<String, String> singles = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        singles.putAll(attributes.singles);
+        return singles;
+    }
+
+    /**
+     * @return a copy of the MPID's list attributes, or null if they haven't been loaded
+     */
+    synchronized TreeMap<String, List<String>> getLists(long mpId) {
+        Attributes attributes = mAttributes.get(mpId);
+        if (attributes == null) {
+            return null;
+        }
+        return copyLists(attributes.lists);
+    }
+
+    /**
+     * @return the generation to pass to {@link #put(long, long, TreeMap, TreeMap)}, taken before reading the table
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Cache the MPID's attributes, as loaded from the table. If the cache has been written to or invalidated
+     * since the generation was taken, what was loaded may already be stale, so it isn't cached.
+     */
+    synchronized void put(long mpId, long generation, TreeMap<String, String> singles, TreeMap<String, List<String>> lists) {
+        if (generation != mGeneration) {
+            return;
+        }
+        Attributes attributes = new Attributes();
+        attributes.singles.putAll(singles);
+        attributes.lists = copyLists(lists);
+        mAttributes.put(mpId, attributes);
+    }
+
+    synchronized void setSingle(long mpId, String key, String value) {
+        Attributes attributes = prepareWrite(mpId, key);
+        if (attributes != null) {
+            attributes.singles.put(key, value);
+        }
+    }
+
+    synchronized void setList(long mpId, String key, List<String> values) {
+        Attributes attributes = prepareWrite(mpId, key);
+        if (attributes != null) {
+            attributes.lists.put(key, new ArrayList<String>(values));
+        }
+    }
+
+    synchronized void remove(long mpId, String key) {
+        prepareWrite(mpId, key);
+    }
+
+    synchronized void invalidate(long mpId) {
+        mGeneration++;
+        mAttributes.remove(mpId);
+    }
+
+    /**
+     * Remove the key's current value, in any case, as deleting its rows from the table does.
+     *
+     * @return the MPID's attributes, or null if they aren't cached
+     */
+    private Attributes prepareWrite(long mpId, String key) {
+        mGeneration++;
+        Attributes attributes = mAttributes.get(mpId);
+        if (attributes != null) {
+            attributes.singles.remove(key);
+            attributes.lists.remove(key);
+        }
+        return attributes;
+    }
+
+    private static TreeMap<String, List<String>> copyLists(Map<String, List<String>> lists) {
+        TreeMap<String, List<String>> copy = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> entry : lists.entrySet()) {
+            copy.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static class Attributes {
+        TreeMap<String, String> singles = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        TreeMap<String, List<String>> lists = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    }
+}
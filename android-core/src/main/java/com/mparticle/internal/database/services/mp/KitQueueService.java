@@ -0,0 +1,69 @@
+package com.mparticle.internal.database.services.mp;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.mparticle.internal.database.tables.mp.KitQueueTable;
+import com.mparticle.internal.dto.KitQueueEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class KitQueueService extends KitQueueTable {
+
+    private static final String[] entryColumns = {
+            KitQueueTableColumns._ID,
+            KitQueueTableColumns.PAYLOAD
+    };
+
+    public static long insertEntry(SQLiteDatabase db, int queue, String payload) {
+        ContentValues values = new ContentValues();
+        values.put(KitQueueTableColumns.QUEUE, queue);
+        values.put(KitQueueTableColumns.PAYLOAD, payload);
+        values.put(KitQueueTableColumns.CREATED_AT, System.currentTimeMillis());
+        return db.insert(KitQueueTableColumns.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Read a page of a queue, in the order its entries were inserted.
+     *
+     * @param afterId only entries inserted after this one are returned, pass 0 for the first page
+     * @param limit   the maximum number of entries to return
+     */
+    public static List<KitQueueEntry> getEntries(SQLiteDatabase db, int queue, long afterId, int limit) {
+        List<KitQueueEntry> entries = new ArrayList<KitQueueEntry>();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(KitQueueTableColumns.TABLE_NAME,
+                    entryColumns,
+                    KitQueueTableColumns.QUEUE + " = ? and " + KitQueueTableColumns._ID + " > ?",
+                    new String[]{String.valueOf(queue), String.valueOf(afterId)},
+                    null,
+                    null,
+                    KitQueueTableColumns._ID + " asc",
+                    String.valueOf(limit));
+            while (cursor.moveToNext()) {
+                entries.add(new KitQueueEntry(cursor.getLong(0), cursor.getString(1)));
+            }
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Delete the entries of a queue up to and including throughId.
+     */
+    public static int deleteEntries(SQLiteDatabase db, int queue, long throughId) {
+        return db.delete(KitQueueTableColumns.TABLE_NAME,
+                KitQueueTableColumns.QUEUE + " = ? and " + KitQueueTableColumns._ID + " <= ?",
+                new String[]{String.valueOf(queue), String.valueOf(throughId)});
+    }
+
+    public static int deleteAll(SQLiteDatabase db) {
+        return db.delete(KitQueueTableColumns.TABLE_NAME, null, null);
+    }
+}
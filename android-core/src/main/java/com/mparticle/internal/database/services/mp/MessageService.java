@@ -10,6 +10,7 @@ import com.mparticle.internal.networking.BaseMPMessage;
 import com.mparticle.internal.database.tables.mp.MessageTable;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,7 +20,7 @@ public class MessageService extends MessageTable {
     private final static String[] prepareSelection = new String[]{"_id", MessageTableColumns.MESSAGE, MessageTableColumns.CREATED_AT, MessageTableColumns.STATUS, MessageTableColumns.SESSION_ID, MessageTableColumns.MP_ID};
     private final static String prepareOrderBy =  MessageTableColumns._ID + " asc";
 
-    private static String getSessionHistorySelection(boolean includesMpid) {
+    static String getSessionHistorySelection(boolean includesMpid) {
         return String.format(
                 "(%s = %d) and (%s != ?) and (%s " + (includesMpid ? " = ?" : "!= ?") + ")",
                 MessageTableColumns.STATUS,
@@ -28,6 +29,20 @@ public class MessageService extends MessageTable {
                 MessageTableColumns.MP_ID);
     }
 
+    /**
+     * Status is matched with IN rather than != UPLOADED so that the status index can be used.
+     */
+    static String getMessagesForUploadSelection(boolean includesMpid) {
+        return String.format(
+                "%s in (%d, %d) and %s < %d and %s" + (includesMpid ? " = ?" : " != ?"),
+                MessageTableColumns.STATUS,
+                Constants.Status.READY,
+                Constants.Status.BATCH_READY,
+                MessageTableColumns.CREATED_AT,
+                System.currentTimeMillis(),
+                MessageTableColumns.MP_ID);
+    }
+
     public MessageService() {
     }
 
@@ -91,8 +106,8 @@ public class MessageService extends MessageTable {
             readyMessagesCursor = database.query(
                     MessageTableColumns.TABLE_NAME,
                     null,
-                    MessageTableColumns.STATUS + " != ? and " + MessageTableColumns.CREATED_AT + " < " + System.currentTimeMillis() + " and " + MessageTableColumns.MP_ID + (includes ? " = ?" : " != ?"),
-                    new String[]{Integer.toString(Constants.Status.UPLOADED), String.valueOf(mpid)},
+                    getMessagesForUploadSelection(includes),
+                    new String[]{String.valueOf(mpid)},
                     null,
                     null,
                     prepareOrderBy, "100");
@@ -116,6 +131,81 @@ public class MessageService extends MessageTable {
         return readyMessages;
     }
 
+    /**
+     * The number of messages which {@link #getMessagesForUpload(SQLiteDatabase)} would eventually return.
+     */
+    public static int getMessagesForUploadCount(SQLiteDatabase database) {
+        Cursor countCursor = null;
+        try {
+            countCursor = database.query(
+                    MessageTableColumns.TABLE_NAME,
+                    new String[]{"count(*)"},
+                    getMessagesForUploadSelection(false),
+                    new String[]{String.valueOf(Constants.TEMPORARY_MPID)},
+                    null,
+                    null,
+                    null);
+            if (countCursor.moveToFirst()) {
+                return countCursor.getInt(0);
+            }
+            return 0;
+        }
+        finally {
+            if (countCursor != null && !countCursor.isClosed()) {
+                countCursor.close();
+            }
+        }
+    }
+
+    public static long getLatestMessageTime(SQLiteDatabase database, String sessionId) {
+        Cursor cursor = null;
+        try {
+            cursor = database.query(
+                    MessageTableColumns.TABLE_NAME,
+                    new String[]{"max(" + MessageTableColumns.CREATED_AT + ")"},
+                    MessageTableColumns.SESSION_ID + " = ?",
+                    new String[]{sessionId},
+                    null,
+                    null,
+                    null);
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+            return 0;
+        }
+        finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
+    public static int getLatestEventCounter(SQLiteDatabase database, String sessionId) {
+        Cursor cursor = null;
+        try {
+            cursor = database.query(
+                    MessageTableColumns.TABLE_NAME,
+                    new String[]{MessageTableColumns.MESSAGE},
+                    MessageTableColumns.SESSION_ID + " = ? and " + MessageTableColumns.MESSAGE + " like ?",
+                    new String[]{sessionId, "%\"" + Constants.MessageKey.EVENT_COUNTER + "\":%"},
+                    null,
+                    null,
+                    MessageTableColumns._ID + " desc",
+                    "1");
+            if (cursor.moveToFirst()) {
+                return new JSONObject(cursor.getString(0)).optInt(Constants.MessageKey.EVENT_COUNTER, -1);
+            }
+            return -1;
+        } catch (JSONException e) {
+            return -1;
+        }
+        finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
     public static int cleanupMessages(SQLiteDatabase database) {
         return database.delete(MessageTableColumns.TABLE_NAME, "length(" + MessageTableColumns.MESSAGE + ") > " + Constants.LIMIT_MAX_MESSAGE_SIZE, null);
     }
@@ -150,16 +240,27 @@ public class MessageService extends MessageTable {
     }
 
     public static void insertMessage(SQLiteDatabase db, String apiKey, BaseMPMessage message, long mpId) throws JSONException {
+        insertMessage(db, apiKey, message, getMessageString(message), mpId);
+    }
+
+    /**
+     * Serialize a message exactly as it will be persisted. Callers that need the size of a message
+     * ahead of time can render it once here and pass the result to {@link #insertMessage(SQLiteDatabase, String, BaseMPMessage, String, long)}.
+     */
+    public static String getMessageString(BaseMPMessage message) {
+        if (Constants.NO_SESSION_ID.equals(message.getSessionId())) {
+            message.remove(Constants.MessageKey.SESSION_ID);
+        }
+        return message.toString();
+    }
+
+    public static void insertMessage(SQLiteDatabase db, String apiKey, BaseMPMessage message, String messageString, long mpId) throws JSONException {
         ContentValues contentValues = new ContentValues();
         contentValues.put(MessageTableColumns.API_KEY, apiKey);
         contentValues.put(MessageTableColumns.CREATED_AT, message.getLong(Constants.MessageKey.TIMESTAMP));
         String sessionID = message.getSessionId();
         contentValues.put(MessageTableColumns.SESSION_ID, sessionID);
         contentValues.put(MessageTableColumns.MP_ID, mpId);
-        if (Constants.NO_SESSION_ID.equals(sessionID)) {
-            message.remove(Constants.MessageKey.SESSION_ID);
-        }
-        String messageString = message.toString();
         if (messageString.length() > Constants.LIMIT_MAX_MESSAGE_SIZE) {
             Logger.error("Message logged of size " + messageString.length() + " that exceeds maximum safe size of " + Constants.LIMIT_MAX_MESSAGE_SIZE + " bytes.");
             return;
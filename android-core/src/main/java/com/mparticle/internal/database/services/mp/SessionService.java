@@ -48,6 +48,13 @@ public class SessionService extends SessionTable {
         db.update(TABLE_NAME, sessionValues, SessionTableColumns.SESSION_ID + "=?", whereArgs);
     }
 
+    public static void extendSessionEndTime(SQLiteDatabase db, String sessionId, long endTime) {
+        ContentValues sessionValues = new ContentValues();
+        sessionValues.put(SessionTableColumns.END_TIME, endTime);
+        String[] whereArgs = {sessionId, String.valueOf(endTime)};
+        db.update(TABLE_NAME, sessionValues, SessionTableColumns.SESSION_ID + "=? and " + SessionTableColumns.END_TIME + " < ?", whereArgs);
+    }
+
     public static void updateSessionAttributes(SQLiteDatabase db, String sessionId, String attributes) {
         ContentValues sessionValues = new ContentValues();
         sessionValues.put(SessionTableColumns.ATTRIBUTES, attributes);
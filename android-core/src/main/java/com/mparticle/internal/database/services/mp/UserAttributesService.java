@@ -3,6 +3,8 @@ package com.mparticle.internal.database.services.mp;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
 
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.database.tables.mp.UserAttributesTable;
@@ -28,6 +30,94 @@ public class UserAttributesService extends UserAttributesTable {
         return db.delete(UserAttributesTableColumns.TABLE_NAME, UserAttributesTableColumns.ATTRIBUTE_KEY + " = ? and " + UserAttributesTableColumns.MP_ID + " = ?", deleteWhereArgs);
     }
 
+    /**
+     * Replace a key's values with a list, by diffing the list against the key's rows rather than deleting
+     * and re-inserting every value.
+     *
+     * Lists are read back in row order, so the rows of the existing values which are a prefix of the new
+     * list, in order, are kept, the other rows are deleted, and the rest of the new list is inserted after
+     * the rows which were kept. Appending to or removing from a long list only touches the values which
+     * changed, while a reordered list falls back to replacing every row.
+     *
+     * @return the number of rows the key had, including any rows of a single value with the same key
+     */
+    public static int updateAttributeList(SQLiteDatabase db, String key, List<String> attributeValues, long time, long mpId) {
+        List<Long> deletedRowIds = new ArrayList<Long>();
+        int existingRows = 0;
+        int kept = 0;
+        Cursor cursor = null;
+        try {
+            String[] args = {key, String.valueOf(mpId)};
+            String[] columns = {BaseColumns._ID, UserAttributesTableColumns.ATTRIBUTE_VALUE, UserAttributesTableColumns.IS_LIST};
+            cursor = db.query(UserAttributesTableColumns.TABLE_NAME, columns, UserAttributesTableColumns.ATTRIBUTE_KEY + " = ? and " + UserAttributesTableColumns.MP_ID + " = ?", args, null, null, UserAttributesTableColumns.CREATED_AT + " desc, " + BaseColumns._ID);
+            int idIndex = cursor.getColumnIndex(BaseColumns._ID);
+            int valueIndex = cursor.getColumnIndex(UserAttributesTableColumns.ATTRIBUTE_VALUE);
+            int isListIndex = cursor.getColumnIndex(UserAttributesTableColumns.IS_LIST);
+            while (cursor.moveToNext()) {
+                existingRows++;
+                if (cursor.getInt(isListIndex) == 1 && kept < attributeValues.size() && isEqual(cursor.getString(valueIndex), attributeValues.get(kept))) {
+                    kept++;
+                } else {
+                    deletedRowIds.add(cursor.getLong(idIndex));
+                }
+            }
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+        if (kept == 0 && !deletedRowIds.isEmpty()) {
+            deleteAttributes(db, key, mpId);
+        } else if (!deletedRowIds.isEmpty()) {
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + UserAttributesTableColumns.TABLE_NAME + " WHERE " + BaseColumns._ID + " = ?");
+            try {
+                for (Long rowId : deletedRowIds) {
+                    delete.bindLong(1, rowId);
+                    delete.execute();
+                }
+            } finally {
+                delete.close();
+            }
+        }
+        if (kept > 0) {
+            //the kept rows take the new key, in case its case changed, and share the new time with the inserted rows, so the list is read back in row order
+            ContentValues values = new ContentValues();
+            values.put(UserAttributesTableColumns.ATTRIBUTE_KEY, key);
+            values.put(UserAttributesTableColumns.CREATED_AT, time);
+            String[] updateWhereArgs = {key, String.valueOf(mpId)};
+            db.update(UserAttributesTableColumns.TABLE_NAME, values, UserAttributesTableColumns.ATTRIBUTE_KEY + " = ? and " + UserAttributesTableColumns.MP_ID + " = ?", updateWhereArgs);
+        }
+        if (kept < attributeValues.size()) {
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + UserAttributesTableColumns.TABLE_NAME + " (" +
+                    UserAttributesTableColumns.MP_ID + ", " +
+                    UserAttributesTableColumns.ATTRIBUTE_KEY + ", " +
+                    UserAttributesTableColumns.ATTRIBUTE_VALUE + ", " +
+                    UserAttributesTableColumns.IS_LIST + ", " +
+                    UserAttributesTableColumns.CREATED_AT + ") VALUES (?, ?, ?, 1, ?)");
+            try {
+                insert.bindLong(1, mpId);
+                insert.bindString(2, key);
+                insert.bindLong(4, time);
+                for (int i = kept; i < attributeValues.size(); i++) {
+                    String value = attributeValues.get(i);
+                    if (value == null) {
+                        insert.bindNull(3);
+                    } else {
+                        insert.bindString(3, value);
+                    }
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+        }
+        return existingRows;
+    }
+
+    private static boolean isEqual(String value, String other) {
+        return value == null ? other == null : value.equals(other);
+    }
+
     public static TreeMap<String, String> getUserAttributesSingles(SQLiteDatabase db, long mpId) {
         TreeMap<String, String> attributes = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
         Cursor cursor = null;
@@ -55,7 +145,7 @@ public class UserAttributesService extends UserAttributesTable {
         Cursor cursor = null;
         try {
             String[] args =  {"1", String.valueOf(mpId)};
-            cursor = db.query(UserAttributesTableColumns.TABLE_NAME, null, UserAttributesTableColumns.IS_LIST + " = ? and " + UserAttributesTableColumns.MP_ID + " = ?", args, null, null, UserAttributesTableColumns.ATTRIBUTE_KEY + ", "+ UserAttributesTableColumns.CREATED_AT +" desc");
+            cursor = db.query(UserAttributesTableColumns.TABLE_NAME, null, UserAttributesTableColumns.IS_LIST + " = ? and " + UserAttributesTableColumns.MP_ID + " = ?", args, null, null, UserAttributesTableColumns.ATTRIBUTE_KEY + ", "+ UserAttributesTableColumns.CREATED_AT +" desc, " + BaseColumns._ID);
             int keyIndex = cursor.getColumnIndex(UserAttributesTableColumns.ATTRIBUTE_KEY);
             int valueIndex = cursor.getColumnIndex(UserAttributesTableColumns.ATTRIBUTE_VALUE);
             String previousKey = null;
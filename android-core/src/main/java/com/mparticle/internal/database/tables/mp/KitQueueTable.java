@@ -0,0 +1,25 @@
+package com.mparticle.internal.database.tables.mp;
+
+import android.provider.BaseColumns;
+
+/**
+ * Events and user attribute changes which were logged before the kits were loaded, and which didn't
+ * fit in the in-memory replay queue.
+ */
+public class KitQueueTable {
+
+    protected interface KitQueueTableColumns extends BaseColumns {
+        String TABLE_NAME = "kit_queue";
+        String QUEUE = "queue";
+        String PAYLOAD = "payload";
+        String CREATED_AT = "created_at";
+    }
+
+    static final String CREATE_KIT_QUEUE_DDL =
+            "CREATE TABLE IF NOT EXISTS " + KitQueueTableColumns.TABLE_NAME + " (" + BaseColumns._ID +
+                    " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    KitQueueTableColumns.QUEUE + " INTEGER NOT NULL, " +
+                    KitQueueTableColumns.PAYLOAD + " TEXT NOT NULL, " +
+                    KitQueueTableColumns.CREATED_AT + " INTEGER NOT NULL" +
+                    ");";
+}
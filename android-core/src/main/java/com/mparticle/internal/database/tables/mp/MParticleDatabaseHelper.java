@@ -18,7 +18,7 @@ import java.util.Iterator;
 
 public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
     private final Context mContext;
-    public static final int DB_VERSION = 8;
+    public static final int DB_VERSION = 10;
     public static final String DB_NAME = "mparticle.db";
 
     public MParticleDatabaseHelper(Context context) {
@@ -33,6 +33,8 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         db.execSQL(BreadcrumbTable.CREATE_BREADCRUMBS_DDL);
         db.execSQL(ReportingTable.CREATE_REPORTING_DDL);
         db.execSQL(UserAttributesTable.CREATE_USER_ATTRIBUTES_DDL);
+        db.execSQL(KitQueueTable.CREATE_KIT_QUEUE_DDL);
+        createIndexes(db);
     }
 
     @Override
@@ -43,6 +45,7 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         db.execSQL(BreadcrumbTable.CREATE_BREADCRUMBS_DDL);
         db.execSQL(ReportingTable.CREATE_REPORTING_DDL);
         db.execSQL(UserAttributesTable.CREATE_USER_ATTRIBUTES_DDL);
+        db.execSQL(KitQueueTable.CREATE_KIT_QUEUE_DDL);
         if (oldVersion < 5) {
             upgradeUserAttributes(db);
         }
@@ -57,6 +60,18 @@ public class MParticleDatabaseHelper implements SQLiteOpenHelperWrapper {
         if (oldVersion < 8) {
             removeGcmTable(db);
         }
+        if (oldVersion < 9) {
+            createIndexes(db);
+        }
+    }
+
+    /**
+     * Must run after the mp_id columns have been added, see {@link #upgradeMpId(SQLiteDatabase)}.
+     */
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL(MessageTable.CREATE_MESSAGES_STATUS_INDEX_DDL);
+        db.execSQL(UploadTable.CREATE_UPLOADS_TIME_INDEX_DDL);
+        db.execSQL(BreadcrumbTable.CREATE_BREADCRUMBS_MPID_INDEX_DDL);
     }
 
     private void upgradeSessionTable(SQLiteDatabase db) {
@@ -38,4 +38,14 @@ public class MessageTable extends MpIdDependentTable {
                     MessageTableColumns.MP_ID + " INTEGER" +
                     ");";
 
+    /**
+     * Serves both the upload query (status, time and mpid) and the session history query (status).
+     */
+    static final String CREATE_MESSAGES_STATUS_INDEX_DDL =
+            "CREATE INDEX IF NOT EXISTS idx_messages_status ON " + MessageTableColumns.TABLE_NAME + " (" +
+                    MessageTableColumns.STATUS + ", " +
+                    MessageTableColumns.CREATED_AT + ", " +
+                    MessageTableColumns.MP_ID +
+                    ");";
+
 }
@@ -0,0 +1,19 @@
+package com.mparticle.internal.dto;
+
+public class KitQueueEntry {
+    private long id;
+    private String payload;
+
+    public KitQueueEntry(long id, String payload) {
+        this.id = id;
+        this.payload = payload;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
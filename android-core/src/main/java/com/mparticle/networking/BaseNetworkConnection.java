@@ -8,6 +8,7 @@ import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 
 public abstract class BaseNetworkConnection {
@@ -49,4 +50,38 @@ public abstract class BaseNetworkConnection {
     public void setNextRequestTime(long timeMillis) {
         mPreferences.edit().putLong(Constants.PrefKeys.NEXT_REQUEST_TIME, timeMillis).apply();
     }
+
+    /**
+     * Read whatever is left of the response, successful or not, and close it. A connection is only
+     * returned to the keep-alive pool, and reused by the next request, once its response has been
+     * consumed in full.
+     */
+    public static void drainAndClose(HttpURLConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        InputStream inputStream = null;
+        try {
+            try {
+                inputStream = connection.getInputStream();
+            } catch (IOException ex) {
+                inputStream = connection.getErrorStream();
+            }
+            if (inputStream != null) {
+                byte[] buffer = new byte[1024];
+                while (inputStream.read(buffer) != -1) {
+                    //discard
+                }
+            }
+        } catch (IOException ignored) {
+            //the stream was already consumed and closed
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
 }
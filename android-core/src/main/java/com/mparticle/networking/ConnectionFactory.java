@@ -0,0 +1,26 @@
+package com.mparticle.networking;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens the connections used for config, identity, event and audience requests. Supply an
+ * implementation through {@link NetworkOptions.Builder#setConnectionFactory(ConnectionFactory)} to
+ * route SDK traffic through your own HTTP stack, for example by wrapping OkHttp's URL factory so that
+ * every request shares its connection pool and HTTP/2 connections.
+ *
+ * Returned connections should be {@link javax.net.ssl.HttpsURLConnection}s for https URLs, so that
+ * the SDK's certificate pinning is still applied.
+ */
+public interface ConnectionFactory {
+
+    HttpURLConnection openConnection(URL url) throws IOException;
+
+    ConnectionFactory DEFAULT = new ConnectionFactory() {
+        @Override
+        public HttpURLConnection openConnection(URL url) throws IOException {
+            return (HttpURLConnection) url.openConnection();
+        }
+    };
+}
@@ -65,6 +65,12 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
         return mRequestHandler.makeUrlRequest(endpoint, connection, payload, identity);
     }
 
+    protected HttpURLConnection openConnection(URL url) throws IOException {
+        NetworkOptions networkOptions = mConfigManager.getNetworkOptions();
+        ConnectionFactory connectionFactory = networkOptions != null ? networkOptions.getConnectionFactory() : ConnectionFactory.DEFAULT;
+        return connectionFactory.openConnection(url);
+    }
+
     protected String getHeaderDateString() {
         SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
         return format.format(new Date());
@@ -73,16 +79,15 @@ public class MParticleBaseClientImpl implements MParticleBaseClient {
     protected String getHeaderHashString(HttpURLConnection request, String date, String message, String apiSecret) throws NoSuchAlgorithmException, InvalidKeyException, UnsupportedEncodingException {
         String method = request.getRequestMethod();
         String path = request.getURL().getFile();
-        StringBuilder hashString = new StringBuilder()
+        String hashString = new StringBuilder()
                 .append(method)
                 .append("\n")
                 .append(date)
                 .append("\n")
-                .append(path);
-        if (message != null) {
-            hashString.append(message);
-        }
-        return MPUtility.hmacSha256Encode(apiSecret, hashString.toString());
+                .append(path)
+                .toString();
+        //the message is signed in place, rather than appended to a copy of itself
+        return MPUtility.hmacSha256Encode(apiSecret, hashString, message);
     }
 
     public long getNextRequestTime() {
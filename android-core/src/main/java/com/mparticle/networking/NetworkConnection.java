@@ -8,6 +8,7 @@ import com.mparticle.BuildConfig;
 import com.mparticle.MParticle;
 import com.mparticle.internal.ConfigManager;
 import com.mparticle.internal.Logger;
+import com.mparticle.internal.MPUtility;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
@@ -40,9 +41,26 @@ public class NetworkConnection extends BaseNetworkConnection {
     static final long DEFAULT_THROTTLE_MILLIS = 1000*60*60*2;
     static final long MAX_THROTTLE_MILLIS = 1000*60*60*24;
 
+    private static final String MAX_CONNECTIONS_PROPERTY = "http.maxConnections";
+
     NetworkConnection(ConfigManager configManager, SharedPreferences sharedPreferences) {
         super(sharedPreferences);
         this.mConfigManager = configManager;
+        setConnectionPoolSize(configManager.getNetworkOptions());
+    }
+
+    /**
+     * HttpURLConnection's keep-alive pool is process-wide and only configurable through system
+     * properties, so this only applies if a pool size was configured and the host app hasn't set its
+     * own value, and only if no connection has been made yet.
+     */
+    private static void setConnectionPoolSize(NetworkOptions networkOptions) {
+        try {
+            if (networkOptions != null && networkOptions.connectionPoolSize != null && System.getProperty(MAX_CONNECTIONS_PROPERTY) == null) {
+                System.setProperty(MAX_CONNECTIONS_PROPERTY, String.valueOf(networkOptions.connectionPoolSize));
+            }
+        } catch (SecurityException ignored) {
+        }
     }
 
     @Override
@@ -61,7 +79,7 @@ public class NetworkConnection extends BaseNetworkConnection {
             if (payload != null) {
                 OutputStream zos = getOutputStream(connection);
                 try {
-                    zos.write(payload.getBytes());
+                    MPUtility.writeUtf8(payload, zos);
                 } finally {
                     zos.close();
                 }
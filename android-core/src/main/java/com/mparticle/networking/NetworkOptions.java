@@ -19,8 +19,17 @@ import static com.mparticle.networking.MParticleBaseClientImpl.Endpoint.IDENTITY
 
 public class NetworkOptions {
 
+    /**
+     * The platform's default maximum number of idle keep-alive connections.
+     */
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 5;
+
     Map<Endpoint, DomainMapping> domainMappings = new HashMap<Endpoint, DomainMapping>();
     boolean pinningDisabledInDevelopment = false;
+    //null unless set, so the platform's own default is left alone
+    Integer connectionPoolSize;
+    //not serialized, this only lives as long as the process that set it
+    ConnectionFactory connectionFactory;
 
     private NetworkOptions() {}
 
@@ -31,6 +40,14 @@ public class NetworkOptions {
         if (builder.pinningDisabledInDevelopment != null) {
             pinningDisabledInDevelopment = builder.pinningDisabledInDevelopment;
         }
+        if (builder.connectionPoolSize != null) {
+            if (builder.connectionPoolSize <= 0) {
+                Logger.warning("Connection pool size must be a positive number, disregarding value");
+            } else {
+                connectionPoolSize = builder.connectionPoolSize;
+            }
+        }
+        connectionFactory = builder.connectionFactory;
     }
 
     public static Builder builder() {
@@ -45,6 +62,9 @@ public class NetworkOptions {
         try {
             JSONObject jsonObject = new JSONObject(jsonString);
             builder.setPinningDisabledInDevelopment(jsonObject.optBoolean("disableDevPinning", false));
+            if (jsonObject.has("connectionPoolSize")) {
+                builder.setConnectionPoolSize(jsonObject.getInt("connectionPoolSize"));
+            }
             JSONArray domainMappingsJson = jsonObject.getJSONArray("domainMappings");
             for (int i = 0; i < domainMappingsJson.length(); i++) {
                 builder.addDomainMapping(DomainMapping
@@ -77,6 +97,14 @@ public class NetworkOptions {
         return pinningDisabledInDevelopment;
     }
 
+    public int getConnectionPoolSize() {
+        return connectionPoolSize != null ? connectionPoolSize : DEFAULT_CONNECTION_POOL_SIZE;
+    }
+
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory != null ? connectionFactory : ConnectionFactory.DEFAULT;
+    }
+
     DomainMapping getDomain(Endpoint endpoint) {
         return domainMappings.get(endpoint);
     }
@@ -92,6 +120,9 @@ public class NetworkOptions {
         try {
             JSONArray domainMappingsJson = new JSONArray();
             networkOptions.put("disableDevPinning", pinningDisabledInDevelopment);
+            if (connectionPoolSize != null) {
+                networkOptions.put("connectionPoolSize", connectionPoolSize);
+            }
             networkOptions.put("domainMappings", domainMappingsJson);
             for (DomainMapping domainMapping: domainMappings.values()) {
                 domainMappingsJson.put(domainMapping.toString());
@@ -106,6 +137,8 @@ public class NetworkOptions {
     public static class Builder {
         private Map<Endpoint, DomainMapping> domainMappings = new HashMap<Endpoint, DomainMapping>();
         private Boolean pinningDisabledInDevelopment;
+        private Integer connectionPoolSize;
+        private ConnectionFactory connectionFactory;
 
         private Builder() {
         }
@@ -141,6 +174,25 @@ public class NetworkOptions {
             return this;
         }
 
+        /**
+         * Set the maximum number of idle connections kept alive for reuse, so that consecutive uploads
+         * don't each pay for a new connection and TLS handshake. If this isn't set, the platform's default,
+         * {@link #DEFAULT_CONNECTION_POOL_SIZE}, is left in place.
+         */
+        public Builder setConnectionPoolSize(int connectionPoolSize) {
+            this.connectionPoolSize = connectionPoolSize;
+            return this;
+        }
+
+        /**
+         * Set the {@link ConnectionFactory} used to open every SDK connection. This is not persisted,
+         * so it has to be set each time the SDK is started.
+         */
+        public Builder setConnectionFactory(ConnectionFactory connectionFactory) {
+            this.connectionFactory = connectionFactory;
+            return this;
+        }
+
         public NetworkOptions build() {
             return new NetworkOptions(this);
         }
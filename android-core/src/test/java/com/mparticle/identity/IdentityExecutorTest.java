@@ -0,0 +1,68 @@
+package com.mparticle.identity;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IdentityExecutorTest {
+
+    @Test
+    public void testMetricsAreRecordedPerCallType() throws Exception {
+        IdentityExecutor executor = new IdentityExecutor();
+        assertNull(executor.getMetrics(IdentityExecutor.LOGIN));
+
+        Runnable login = executor.wrap(IdentityExecutor.LOGIN, new Runnable() {
+            @Override
+            public void run() {
+                sleep(20);
+            }
+        });
+        //the time between being queued and being run counts as waiting
+        sleep(30);
+        login.run();
+        executor.wrap(IdentityExecutor.LOGIN, new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).run();
+        executor.wrap(IdentityExecutor.MODIFY, new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).run();
+
+        IdentityExecutor.CallMetrics loginMetrics = executor.getMetrics(IdentityExecutor.LOGIN);
+        assertEquals(2, loginMetrics.getCount());
+        assertTrue(loginMetrics.getMaxQueueWaitMillis() >= 30);
+        assertTrue(loginMetrics.getTotalQueueWaitMillis() >= loginMetrics.getMaxQueueWaitMillis());
+        assertTrue(loginMetrics.getMaxLatencyMillis() >= 20);
+        assertTrue(loginMetrics.getTotalLatencyMillis() >= loginMetrics.getMaxLatencyMillis());
+        assertEquals(1, executor.getMetrics(IdentityExecutor.MODIFY).getCount());
+        assertNull(executor.getMetrics(IdentityExecutor.LOGOUT));
+    }
+
+    @Test
+    public void testFailedRequestIsRecorded() throws Exception {
+        IdentityExecutor executor = new IdentityExecutor();
+        try {
+            executor.wrap(IdentityExecutor.IDENTIFY, new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException();
+                }
+            }).run();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, executor.getMetrics(IdentityExecutor.IDENTIFY).getCount());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.mparticle.internal;
+
+import com.mparticle.mock.MockContext;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AdvertisingIdProviderTest {
+
+    @Test
+    public void testLookedUpOnceWithinTtl() {
+        CountingProvider provider = new CountingProvider(60 * 1000);
+        MPUtility.AndroidAdIdInfo adIdInfo = provider.getAdIdInfo();
+        assertSame(adIdInfo, provider.getAdIdInfo());
+        assertSame(adIdInfo, provider.getAdIdInfo());
+        assertEquals(1, provider.getLookupCount());
+        assertEquals(2, provider.getCachedReadCount());
+        assertTrue(provider.getSavedMillis() >= 2 * 20);
+    }
+
+    @Test
+    public void testRefreshesInBackground() throws Exception {
+        CountingProvider provider = new CountingProvider(60 * 1000);
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        provider.refresh(new Runnable() {
+            @Override
+            public void run() {
+                refreshed.countDown();
+            }
+        });
+        //waits for the refresh rather than making a second lookup
+        MPUtility.AndroidAdIdInfo adIdInfo = provider.getAdIdInfo();
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, provider.getLookupCount());
+        assertSame(adIdInfo, provider.getAdIdInfo());
+    }
+
+    @Test
+    public void testStaleValueIsServedWhileRefreshing() throws Exception {
+        CountingProvider provider = new CountingProvider(0);
+        MPUtility.AndroidAdIdInfo adIdInfo = provider.getAdIdInfo();
+        assertSame(adIdInfo, provider.getAdIdInfo());
+        long timeout = System.currentTimeMillis() + 5000;
+        while (provider.getLookupCount() < 2 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, provider.getLookupCount());
+    }
+
+    private static class CountingProvider extends AdvertisingIdProvider {
+
+        CountingProvider(long ttlMillis) {
+            super(new MockContext(), ttlMillis);
+        }
+
+        @Override
+        protected MPUtility.AndroidAdIdInfo lookUpAdIdInfo() {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ignored) {
+            }
+            return new MPUtility.AndroidAdIdInfo("id", false);
+        }
+    }
+}
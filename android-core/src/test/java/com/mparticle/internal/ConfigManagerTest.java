@@ -21,7 +21,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class ConfigManagerTest {
@@ -483,6 +485,34 @@ public class ConfigManagerTest {
         assertEquals(0, manager.getUserIdentityJson().getJSONObject(0).getLong("dfs"));
     }
 
+    @Test
+    public void testUserIdentitiesAreParsedOnceUntilSaved() throws Exception {
+        JSONArray identities = new JSONArray();
+        identities.put(new JSONObject("{ \"n\": 7, \"i\": \"email value 1\", \"dfs\": 1473869816521, \"f\": true }"));
+        manager.saveUserIdentityJson(identities, 1);
+        Map<MParticle.IdentityType, String> userIdentities = manager.getUserIdentities(1);
+        assertEquals("email value 1", userIdentities.get(MParticle.IdentityType.Email));
+        assertSame(userIdentities, manager.getUserIdentities(1));
+
+        //the JSON is a copy
+        manager.getUserIdentityJson(1).getJSONObject(0).put("i", "changed");
+        assertEquals("email value 1", manager.getUserIdentityJson(1).getJSONObject(0).getString("i"));
+
+        identities.getJSONObject(0).put("i", "email value 2");
+        manager.saveUserIdentityJson(identities, 1);
+        assertEquals("email value 2", manager.getUserIdentities(1).get(MParticle.IdentityType.Email));
+    }
+
+    @Test
+    public void testUserStorageIsKeptPerMpid() throws Exception {
+        UserStorage first = manager.getUserStorage(1);
+        UserStorage second = manager.getUserStorage(2);
+        assertSame(first, manager.getUserStorage(1));
+        assertSame(second, manager.getUserStorage(2));
+        ConfigManager.deleteUserStorage(context, 2);
+        assertNotSame(second, manager.getUserStorage(2));
+    }
+
     @Test
     public void testMarkIdentitiesAsSeen() throws Exception {
         JSONArray identities = new JSONArray();
@@ -0,0 +1,64 @@
+package com.mparticle.internal;
+
+import com.mparticle.mock.MockContext;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeviceStateSamplerTest {
+
+    @Test
+    public void testSamplesEveryTimeWithoutInterval() {
+        CountingSampler sampler = new CountingSampler(0);
+        sampler.getSnapshot();
+        sampler.getSnapshot();
+        sampler.getSnapshot();
+        assertEquals(3, sampler.sampleCount);
+    }
+
+    @Test
+    public void testReusesSampleWithinInterval() {
+        CountingSampler sampler = new CountingSampler(60 * 1000);
+        DeviceStateSampler.Snapshot snapshot = sampler.getSnapshot();
+        assertSame(snapshot, sampler.getSnapshot());
+        assertSame(snapshot, sampler.getSnapshot());
+        assertEquals(1, sampler.sampleCount);
+    }
+
+    @Test
+    public void testInvalidate() {
+        CountingSampler sampler = new CountingSampler(60 * 1000);
+        DeviceStateSampler.Snapshot snapshot = sampler.getSnapshot();
+        sampler.invalidate();
+        assertNotSame(snapshot, sampler.getSnapshot());
+        assertEquals(2, sampler.sampleCount);
+
+        sampler.setDiskSamplingEnabled(false);
+        sampler.getSnapshot();
+        assertEquals(3, sampler.sampleCount);
+    }
+
+    @Test
+    public void testResamplesAfterInterval() throws Exception {
+        CountingSampler sampler = new CountingSampler(1);
+        sampler.getSnapshot();
+        Thread.sleep(5);
+        sampler.getSnapshot();
+        assertEquals(2, sampler.sampleCount);
+    }
+
+    static class CountingSampler extends DeviceStateSampler {
+        int sampleCount = 0;
+
+        CountingSampler(long samplingIntervalMillis) {
+            super(new MockContext(), samplingIntervalMillis);
+        }
+
+        @Override
+        protected Snapshot sample(long sampleTime) {
+            sampleCount++;
+            return new Snapshot(sampleTime, 1, 2, 3, false, 1, "true", 0);
+        }
+    }
+}
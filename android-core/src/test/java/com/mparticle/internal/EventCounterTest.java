@@ -0,0 +1,57 @@
+package com.mparticle.internal;
+
+import android.content.SharedPreferences;
+
+import com.mparticle.mock.MockSharedPreferences;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EventCounterTest {
+
+    @Test
+    public void testCheckpoint() {
+        SharedPreferences preferences = new MockSharedPreferences();
+        preferences.edit().putInt(Constants.PrefKeys.EVENT_COUNTER, 5).apply();
+        EventCounter counter = new EventCounter(preferences);
+        assertEquals(5, counter.getAndIncrement());
+        assertEquals(6, counter.getAndIncrement());
+        assertEquals(5, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+        counter.checkpoint();
+        assertEquals(7, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+    }
+
+    @Test
+    public void testGetAndResetCheckpoints() {
+        SharedPreferences preferences = new MockSharedPreferences();
+        EventCounter counter = new EventCounter(preferences);
+        counter.getAndIncrement();
+        counter.getAndIncrement();
+        assertEquals(2, counter.getAndReset());
+        assertEquals(0, counter.get());
+        assertEquals(0, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+    }
+
+    @Test
+    public void testRecover() {
+        SharedPreferences preferences = new MockSharedPreferences();
+        EventCounter counter = new EventCounter(preferences);
+        counter.getAndIncrement();
+        counter.recover(10);
+        assertEquals(10, counter.get());
+        counter.recover(3);
+        assertEquals(10, counter.get());
+        counter.checkpoint();
+        assertEquals(10, preferences.getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+    }
+
+    @Test
+    public void testShouldScheduleCheckpoint() {
+        EventCounter counter = new EventCounter(new MockSharedPreferences());
+        assertTrue(counter.shouldScheduleCheckpoint());
+        assertFalse(counter.shouldScheduleCheckpoint());
+        counter.checkpoint();
+        assertTrue(counter.shouldScheduleCheckpoint());
+    }
+}
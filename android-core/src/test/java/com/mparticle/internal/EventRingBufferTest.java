@@ -0,0 +1,155 @@
+package com.mparticle.internal;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.MParticleOptions;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class EventRingBufferTest {
+
+    @Test
+    public void testCapacityRoundsUp() {
+        assertEquals(2, new EventRingBuffer(1, MParticleOptions.BackpressurePolicy.DROP_NEWEST).getCapacity());
+        assertEquals(8, new EventRingBuffer(5, MParticleOptions.BackpressurePolicy.DROP_NEWEST).getCapacity());
+        assertEquals(16, new EventRingBuffer(16, MParticleOptions.BackpressurePolicy.DROP_NEWEST).getCapacity());
+    }
+
+    @Test
+    public void testOfferAndPoll() {
+        EventRingBuffer buffer = new EventRingBuffer(4, MParticleOptions.BackpressurePolicy.DROP_NEWEST);
+        EventRingBuffer.EventRecord record = new EventRingBuffer.EventRecord();
+        assertFalse(buffer.poll(record));
+
+        assertTrue(offer(buffer, "first", 1));
+        assertTrue(offer(buffer, "second", 2));
+        assertTrue(buffer.poll(record));
+        assertEquals("first", record.name);
+        assertEquals(MParticle.EventType.Other, record.eventType);
+        assertEquals("session", record.sessionId);
+        assertEquals(1, record.timestamp);
+        assertTrue(buffer.poll(record));
+        assertEquals("second", record.name);
+        assertFalse(buffer.poll(record));
+    }
+
+    @Test
+    public void testPollBefore() {
+        EventRingBuffer buffer = new EventRingBuffer(4, MParticleOptions.BackpressurePolicy.DROP_NEWEST);
+        EventRingBuffer.EventRecord record = new EventRingBuffer.EventRecord();
+        assertTrue(offer(buffer, "first", 1));
+        long position = buffer.getTailPosition();
+        assertTrue(offer(buffer, "second", 2));
+        assertTrue(buffer.poll(record, position));
+        assertEquals("first", record.name);
+        //queued after the position, so it's left for the next drain
+        assertFalse(buffer.poll(record, position));
+        assertTrue(buffer.poll(record, buffer.getTailPosition()));
+        assertEquals("second", record.name);
+    }
+
+    @Test
+    public void testDropNewest() {
+        EventRingBuffer buffer = new EventRingBuffer(2, MParticleOptions.BackpressurePolicy.DROP_NEWEST);
+        assertTrue(offer(buffer, "1", 1));
+        assertTrue(offer(buffer, "2", 2));
+        assertFalse(offer(buffer, "3", 3));
+        assertEquals(1, buffer.getDroppedCount());
+
+        EventRingBuffer.EventRecord record = new EventRingBuffer.EventRecord();
+        assertTrue(buffer.poll(record));
+        assertEquals("1", record.name);
+        assertTrue(buffer.poll(record));
+        assertEquals("2", record.name);
+        assertFalse(buffer.poll(record));
+    }
+
+    @Test
+    public void testDropOldest() {
+        EventRingBuffer buffer = new EventRingBuffer(2, MParticleOptions.BackpressurePolicy.DROP_OLDEST);
+        assertTrue(offer(buffer, "1", 1));
+        assertTrue(offer(buffer, "2", 2));
+        assertTrue(offer(buffer, "3", 3));
+        assertEquals(1, buffer.getDroppedCount());
+
+        EventRingBuffer.EventRecord record = new EventRingBuffer.EventRecord();
+        assertTrue(buffer.poll(record));
+        assertEquals("2", record.name);
+        assertTrue(buffer.poll(record));
+        assertEquals("3", record.name);
+        assertFalse(buffer.poll(record));
+    }
+
+    @Test
+    public void testBlockFallsBackToDropWhenNotAllowed() {
+        EventRingBuffer buffer = new EventRingBuffer(2, MParticleOptions.BackpressurePolicy.BLOCK);
+        assertTrue(offer(buffer, "1", 1));
+        assertTrue(offer(buffer, "2", 2));
+        assertFalse(buffer.offer(new MPEvent.Builder("3").build(), null, "session", 0, null, 0, 3, false));
+        assertEquals(1, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void testBlockWaitsForConsumer() throws Exception {
+        final EventRingBuffer buffer = new EventRingBuffer(2, MParticleOptions.BackpressurePolicy.BLOCK);
+        assertTrue(offer(buffer, "1", 1));
+        assertTrue(offer(buffer, "2", 2));
+        final CountDownLatch offered = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offer(buffer, "3", 3);
+                offered.countDown();
+            }
+        }).start();
+        EventRingBuffer.EventRecord record = new EventRingBuffer.EventRecord();
+        assertTrue(buffer.poll(record));
+        offered.await();
+        assertTrue(buffer.poll(record));
+        assertEquals("2", record.name);
+        assertTrue(buffer.poll(record));
+        assertEquals("3", record.name);
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int eventsPerProducer = 5000;
+        final EventRingBuffer buffer = new EventRingBuffer(64, MParticleOptions.BackpressurePolicy.BLOCK);
+        final CountDownLatch done = new CountDownLatch(producers);
+        for (int i = 0; i < producers; i++) {
+            final int producer = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < eventsPerProducer; j++) {
+                        offer(buffer, producer + ":" + j, j);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        Set<String> received = new HashSet<String>();
+        EventRingBuffer.EventRecord record = new EventRingBuffer.EventRecord();
+        while (received.size() < producers * eventsPerProducer) {
+            if (buffer.poll(record)) {
+                assertTrue(received.add(record.name));
+            }
+        }
+        done.await();
+        assertFalse(buffer.poll(record));
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    private static boolean offer(EventRingBuffer buffer, String name, long timestamp) {
+        MPEvent event = new MPEvent.Builder(name, MParticle.EventType.Other).build();
+        return buffer.offer(event, null, "session", 0, null, 0, timestamp, true);
+    }
+}
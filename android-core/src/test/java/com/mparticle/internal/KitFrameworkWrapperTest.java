@@ -4,16 +4,24 @@ import android.content.Context;
 
 import com.mparticle.MPEvent;
 import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.internal.database.services.MParticleDBManager;
+import com.mparticle.internal.dto.KitQueueEntry;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -436,4 +444,120 @@ public class KitFrameworkWrapperTest {
         Mockito.when(mockKitManager.getSupportedKits()).thenReturn(supportedKits);
         assertEquals(wrapper.getSupportedKits(), supportedKits);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testKitQueueByteBound() throws Exception {
+        ConfigManager configManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(configManager.getKitQueueMaxBytes()).thenReturn(1000);
+        KitFrameworkWrapper wrapper = new KitFrameworkWrapper(Mockito.mock(Context.class),
+                Mockito.mock(ReportingManager.class),
+                configManager,
+                Mockito.mock(AppStateManager.class),
+                mockBackgroundTaskHandler,
+                true);
+        wrapper.setKitsLoaded(false);
+        //each event is estimated at 64 + 2 * 100 bytes, so 3 fit
+        MPEvent event = new MPEvent.Builder(repeat('a', 100)).build();
+        for (int i = 0; i < 5; i++) {
+            wrapper.logEvent(event);
+        }
+        assertEquals(3, wrapper.getEventQueue().size());
+        assertEquals(3, wrapper.getKitQueueQueuedCount());
+        assertEquals(2, wrapper.getKitQueueDroppedCount());
+
+        KitManager mockKitManager = Mockito.mock(KitManager.class);
+        wrapper.setKitManager(mockKitManager);
+        wrapper.replayAndDisableQueue();
+        Mockito.verify(
+                mockKitManager, Mockito.times(3)
+        ).logEvent(Mockito.any(MPEvent.class));
+        assertEquals(3, wrapper.getKitQueueReplayedCount());
+        assertNull(wrapper.getEventQueue());
+    }
+
+    @Test
+    public void testKitQueueSpillsToDatabase() throws Exception {
+        ConfigManager configManager = Mockito.mock(ConfigManager.class);
+        Mockito.when(configManager.getKitQueueMaxBytes()).thenReturn(300);
+        Mockito.when(configManager.isKitQueuePersisted()).thenReturn(true);
+        final List<Runnable> backgroundTasks = new ArrayList<Runnable>();
+        KitFrameworkWrapper wrapper = new KitFrameworkWrapper(Mockito.mock(Context.class),
+                Mockito.mock(ReportingManager.class),
+                configManager,
+                Mockito.mock(AppStateManager.class),
+                new BackgroundTaskHandler() {
+                    @Override
+                    public void executeNetworkRequest(Runnable runnable) {
+                        backgroundTasks.add(runnable);
+                    }
+                },
+                true);
+        MParticleDBManager dbManager = Mockito.mock(MParticleDBManager.class);
+        wrapper.setDBManager(dbManager);
+        wrapper.setKitsLoaded(false);
+        wrapper.logEvent(new MPEvent.Builder("first").build());
+        wrapper.logEvent(new MPEvent.Builder(repeat('b', 200)).build());
+        wrapper.setUserAttributeList("a key", Arrays.asList("1", "2", "3"), 1);
+
+        //spills are written on the background task thread, not the caller's
+        Mockito.verifyZeroInteractions(dbManager);
+        runAll(backgroundTasks);
+        assertEquals(1, wrapper.getEventQueue().size());
+        assertEquals(3, wrapper.getKitQueueQueuedCount());
+        assertEquals(0, wrapper.getKitQueueDroppedCount());
+        ArgumentCaptor<String> eventPayload = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(dbManager).insertKitQueueEntry(Mockito.eq(KitFrameworkWrapper.SPILLED_EVENTS), eventPayload.capture());
+        ArgumentCaptor<String> attributePayload = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(dbManager).insertKitQueueEntry(Mockito.eq(KitFrameworkWrapper.SPILLED_ATTRIBUTES), attributePayload.capture());
+
+        Mockito.when(dbManager.getKitQueueEntries(KitFrameworkWrapper.SPILLED_EVENTS, 0, 100))
+                .thenReturn(Collections.singletonList(new KitQueueEntry(1, eventPayload.getValue())));
+        Mockito.when(dbManager.getKitQueueEntries(KitFrameworkWrapper.SPILLED_ATTRIBUTES, 0, 100))
+                .thenReturn(Collections.singletonList(new KitQueueEntry(2, attributePayload.getValue())));
+        Mockito.when(dbManager.getKitQueueEntries(Mockito.anyInt(), Mockito.longThat(new ArgumentMatcher<Long>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ((Long) argument) > 0;
+            }
+        }), Mockito.anyInt())).thenReturn(new ArrayList<KitQueueEntry>());
+        KitManager mockKitManager = Mockito.mock(KitManager.class);
+        wrapper.setKitManager(mockKitManager);
+        wrapper.replayAndDisableQueue();
+        //the in-memory queue is replayed right away, and the spilled entries once the background task runs
+        Mockito.verify(mockKitManager).logEvent(Mockito.any(MPEvent.class));
+        Mockito.verify(dbManager, Mockito.never()).getKitQueueEntries(Mockito.anyInt(), Mockito.anyLong(), Mockito.anyInt());
+        runAll(backgroundTasks);
+
+        InOrder inOrder = Mockito.inOrder(mockKitManager);
+        inOrder.verify(mockKitManager).logEvent(Mockito.argThat(new ArgumentMatcher<MPEvent>() {
+            @Override
+            public boolean matches(Object argument) {
+                return "first".equals(((MPEvent) argument).getEventName());
+            }
+        }));
+        inOrder.verify(mockKitManager).logEvent(Mockito.argThat(new ArgumentMatcher<MPEvent>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ((MPEvent) argument).getEventName().length() == 200;
+            }
+        }));
+        Mockito.verify(mockKitManager).setUserAttributeList("a key", Arrays.asList("1", "2", "3"), 1L);
+        Mockito.verify(dbManager).deleteKitQueueEntries(KitFrameworkWrapper.SPILLED_EVENTS, 1);
+        Mockito.verify(dbManager).deleteKitQueueEntries(KitFrameworkWrapper.SPILLED_ATTRIBUTES, 2);
+        Mockito.verify(dbManager).deleteAllKitQueueEntries();
+        assertEquals(3, wrapper.getKitQueueReplayedCount());
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        tasks.clear();
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
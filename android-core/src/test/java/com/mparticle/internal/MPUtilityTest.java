@@ -10,6 +10,7 @@ import org.json.JSONObject;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -80,6 +81,28 @@ public class MPUtilityTest {
         assertFalse(attributes.has("mykey"));
     }
 
+    @Test
+    public void testWriteUtf8() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        //enough multi-byte and surrogate pair characters to straddle the encoder's chunk boundaries
+        for (int i = 0; i < 5000; i++) {
+            builder.append("a\u00e9\u4e2d\ud83d\ude00");
+        }
+        String value = builder.toString();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MPUtility.writeUtf8(value, outputStream);
+        assertArrayEquals(value.getBytes("UTF-8"), outputStream.toByteArray());
+    }
+
+    @Test
+    public void testHmacSha256EncodeParts() throws Exception {
+        RandomUtils random = RandomUtils.getInstance();
+        String prefix = random.getAlphaNumericString(10, 100);
+        String message = random.getAlphaNumericString(5000, 20000) + "\u00e9\ud83d\ude00";
+        assertEquals(MPUtility.hmacSha256Encode("secret", prefix + message), MPUtility.hmacSha256Encode("secret", prefix, message));
+        assertEquals(MPUtility.hmacSha256Encode("secret", prefix), MPUtility.hmacSha256Encode("secret", prefix, null));
+    }
+
     @Test
     public void getGoogleAdIdInfoWithoutPlayServicesAvailable() throws Exception{
         assertNull(MPUtility.getGoogleAdIdInfo(new MockContext()));
@@ -7,6 +7,7 @@ import com.mparticle.consent.GDPRConsent;
 import com.mparticle.mock.MockContext;
 import com.mparticle.mock.MockSharedPreferences;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -91,4 +92,34 @@ public class MessageBatchTest {
         assertEquals("foo hardware id", consent.getString(Constants.MessageKey.CONSENT_STATE_GDPR_HARDWARE_ID));
         assertEquals("foo document", consent.getString(Constants.MessageKey.CONSENT_STATE_GDPR_DOCUMENT));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSerializedMessages() throws Exception {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        CommerceApi mockCommerce = Mockito.mock(CommerceApi.class);
+        Mockito.when(mockMp.Commerce()).thenReturn(mockCommerce);
+        MParticle.setInstance(mockMp);
+        ConfigManager manager = new ConfigManager(new MockContext(), MParticle.Environment.Production, "some api key", "some api secret");
+        MessageBatch batch = MessageBatch.create(false, manager, new JSONObject(), manager.getMpid());
+        batch.addMessage(new JSONObject().put("dt", "e").put("n", "parsed"));
+        batch.addMessage("{\"dt\":\"e\",\"n\":\"serialized 1\"}");
+        batch.addMessage("{\"dt\":\"e\",\"n\":\"serialized 2\"}");
+        batch.addSessionHistoryMessage("{\"dt\":\"ss\"}");
+
+        JSONObject written = new JSONObject(batch.toString());
+        assertEquals(batch.getString("id"), written.getString("id"));
+        JSONArray messages = written.getJSONArray(Constants.MessageKey.MESSAGES);
+        assertEquals(3, messages.length());
+        assertEquals("parsed", messages.getJSONObject(0).getString("n"));
+        assertEquals("serialized 1", messages.getJSONObject(1).getString("n"));
+        assertEquals("serialized 2", messages.getJSONObject(2).getString("n"));
+        JSONArray history = written.getJSONArray(Constants.MessageKey.HISTORY);
+        assertEquals(1, history.length());
+        assertEquals("ss", history.getJSONObject(0).getString("dt"));
+
+        //writing the batch must leave the parsed messages in place
+        assertEquals(1, batch.getMessages().length());
+        assertEquals(batch.toString(), batch.toString());
+    }
+}
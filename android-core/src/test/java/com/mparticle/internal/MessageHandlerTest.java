@@ -0,0 +1,197 @@
+package com.mparticle.internal;
+
+import android.location.Location;
+import android.os.Message;
+
+import com.mparticle.internal.database.services.MParticleDBManager;
+import com.mparticle.internal.networking.BaseMPMessage;
+import com.mparticle.mock.MockContext;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MessageManager.class})
+public class MessageHandlerTest {
+    private static final long MAX_DELAY_MILLIS = 30 * 1000;
+
+    private MParticleDBManager dbManager;
+    private MessageManagerCallbacks callbacks;
+    private MessageHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        PowerMockito.mockStatic(MessageManager.class);
+        dbManager = Mockito.mock(MParticleDBManager.class);
+        Mockito.when(dbManager.isAvailable()).thenReturn(true);
+        callbacks = Mockito.mock(MessageManagerCallbacks.class);
+        Mockito.when(callbacks.getApiKey()).thenReturn("key");
+        handler = Mockito.spy(new MessageHandler(callbacks, new MockContext(), dbManager));
+        Mockito.doReturn(true).when(handler).sendEmptyMessage(Mockito.anyInt());
+        Mockito.doReturn(true).when(handler).sendEmptyMessageDelayed(Mockito.anyInt(), Mockito.anyLong());
+        Mockito.doNothing().when(handler).removeMessages(Mockito.anyInt());
+        Mockito.doReturn(false).when(handler).hasMessages(Mockito.anyInt());
+    }
+
+    @Test
+    public void testFlushesAtMessageCount() throws Exception {
+        handler.setMessageBatching(3, Integer.MAX_VALUE, MAX_DELAY_MILLIS);
+        store(event());
+        store(event());
+        verifyStored(0);
+        store(event());
+        verifyStored(3);
+        Mockito.verify(dbManager, Mockito.times(1)).beginTransaction();
+    }
+
+    @Test
+    public void testFlushesAtByteCount() throws Exception {
+        //each message is a little over 10000 bytes, so the limit is reached by the third
+        handler.setMessageBatching(100, 25000, MAX_DELAY_MILLIS);
+        store(largeEvent());
+        store(largeEvent());
+        verifyStored(0);
+        store(largeEvent());
+        verifyStored(3);
+        Mockito.verify(dbManager, Mockito.times(1)).beginTransaction();
+    }
+
+    @Test
+    public void testFlushesAfterMaxDelay() throws Exception {
+        handler.setMessageBatching(100, Integer.MAX_VALUE, MAX_DELAY_MILLIS);
+        store(event());
+        store(event());
+        //the delay runs from the first queued message only
+        Mockito.verify(handler, Mockito.times(1)).sendEmptyMessageDelayed(MessageHandler.FLUSH_PENDING_MESSAGES, MAX_DELAY_MILLIS);
+        verifyStored(0);
+        handle(MessageHandler.FLUSH_PENDING_MESSAGES, null);
+        verifyStored(2);
+        Mockito.verify(handler).removeMessages(MessageHandler.FLUSH_PENDING_MESSAGES);
+    }
+
+    @Test
+    public void testBackgroundFlushesPartialBatch() throws Exception {
+        handler.setMessageBatching(100, Integer.MAX_VALUE, MAX_DELAY_MILLIS);
+        store(event());
+        BaseMPMessage foreground = message(Constants.MessageType.APP_STATE_TRANSITION);
+        foreground.put(Constants.MessageKey.STATE_TRANSITION_TYPE, Constants.StateTransitionType.STATE_TRANS_FORE);
+        store(foreground);
+        verifyStored(0);
+        BaseMPMessage background = message(Constants.MessageType.APP_STATE_TRANSITION);
+        background.put(Constants.MessageKey.STATE_TRANSITION_TYPE, Constants.StateTransitionType.STATE_TRANS_BG);
+        store(background);
+        verifyStored(3);
+    }
+
+    @Test
+    public void testFatalErrorFlushesPartialBatch() throws Exception {
+        handler.setMessageBatching(100, Integer.MAX_VALUE, MAX_DELAY_MILLIS);
+        store(event());
+        BaseMPMessage error = message(Constants.MessageType.ERROR);
+        error.put(Constants.MessageKey.ERROR_SEVERITY, "error");
+        store(error);
+        verifyStored(0);
+        BaseMPMessage fatal = message(Constants.MessageType.ERROR);
+        fatal.put(Constants.MessageKey.ERROR_SEVERITY, "fatal");
+        store(fatal);
+        verifyStored(3);
+    }
+
+    @Test
+    public void testOtherMessagesFlushFirst() throws Exception {
+        handler.setMessageBatching(100, Integer.MAX_VALUE, MAX_DELAY_MILLIS);
+        store(event());
+        verifyStored(0);
+        handle(MessageHandler.CLEAR_MESSAGES_FOR_UPLOAD, null);
+        verifyStored(1);
+    }
+
+    @Test
+    public void testOrphanSessionCountersRecoveredBeforeEachEnd() throws Exception {
+        MessageManager messageManager = Mockito.mock(MessageManager.class);
+        Mockito.when(messageManager.getApiKey()).thenReturn("key");
+        handler = Mockito.spy(new MessageHandler(messageManager, new MockContext(), dbManager));
+        Mockito.when(dbManager.getOrphanSessionIds("key")).thenReturn(Arrays.asList("session 1", "session 2"));
+        handle(MessageHandler.END_ORPHAN_SESSIONS, 1L);
+        //each session end message resets the counter, so the next session's count is recovered after it
+        InOrder inOrder = Mockito.inOrder(dbManager);
+        inOrder.verify(dbManager).getLatestEventCounter("session 1");
+        inOrder.verify(dbManager).getSessionForSessionEndMessage(Mockito.eq("session 1"), Mockito.any(Location.class), Mockito.anySetOf(Long.class));
+        inOrder.verify(dbManager).getLatestEventCounter("session 2");
+        inOrder.verify(dbManager).getSessionForSessionEndMessage(Mockito.eq("session 2"), Mockito.any(Location.class), Mockito.anySetOf(Long.class));
+    }
+
+    @Test
+    public void testSessionStoredBeforeQueuedEvent() throws Exception {
+        Mockito.when(callbacks.getDeviceAttributes()).thenReturn(Mockito.mock(DeviceAttributes.class));
+        Mockito.when(callbacks.getEventQueuePosition()).thenReturn(1L);
+        BaseMPMessage event = event();
+        Mockito.when(callbacks.drainEventQueue(1L)).thenReturn(Collections.singletonList(event));
+        //the first event of a session posts the session start, then queues the event and posts the drain
+        BaseMPMessage sessionStart = message(Constants.MessageType.SESSION_START);
+        handler.scheduleDrain();
+        store(sessionStart);
+        handle(MessageHandler.DRAIN_EVENT_QUEUE, null);
+        InOrder inOrder = Mockito.inOrder(dbManager);
+        inOrder.verify(dbManager).insertSession(Mockito.eq(sessionStart), Mockito.eq("key"), Mockito.any(JSONObject.class), Mockito.any(JSONObject.class));
+        inOrder.verify(dbManager).insertMessage(Mockito.eq("key"), Mockito.eq(event), Mockito.anyString());
+    }
+
+    @Test
+    public void testEventsQueuedAfterAnotherMessageDrainAfterIt() throws Exception {
+        Mockito.when(callbacks.getEventQueuePosition()).thenReturn(1L, 2L);
+        handler.scheduleDrain();
+        //another message is sent while the first drain is pending
+        handler.closeDrainWindow();
+        handler.scheduleDrain();
+        Mockito.verify(handler, Mockito.times(2)).sendEmptyMessage(MessageHandler.DRAIN_EVENT_QUEUE);
+        handle(MessageHandler.DRAIN_EVENT_QUEUE, null);
+        handle(MessageHandler.DRAIN_EVENT_QUEUE, null);
+        InOrder inOrder = Mockito.inOrder(callbacks);
+        inOrder.verify(callbacks).drainEventQueue(1L);
+        inOrder.verify(callbacks).drainEventQueue(2L);
+    }
+
+    private void store(BaseMPMessage message) {
+        handle(MessageHandler.STORE_MESSAGE, message);
+    }
+
+    private void handle(int what, Object obj) {
+        Message message = Mockito.mock(Message.class);
+        message.what = what;
+        message.obj = obj;
+        handler.handleMessage(message);
+    }
+
+    private void verifyStored(int count) throws Exception {
+        Mockito.verify(dbManager, Mockito.times(count)).insertMessage(Mockito.eq("key"), Mockito.any(BaseMPMessage.class), Mockito.anyString());
+    }
+
+    private static BaseMPMessage event() throws Exception {
+        return message(Constants.MessageType.EVENT);
+    }
+
+    private static BaseMPMessage largeEvent() throws Exception {
+        BaseMPMessage message = event();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append('a');
+        }
+        message.put(Constants.MessageKey.NAME, builder.toString());
+        return message;
+    }
+
+    private static BaseMPMessage message(String messageType) throws Exception {
+        return new BaseMPMessage.Builder(messageType, new Session(), null, 1).build();
+    }
+}
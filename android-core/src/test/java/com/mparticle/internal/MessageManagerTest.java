@@ -208,10 +208,16 @@ public class MessageManagerTest {
         assertEquals("test event name", message.getName());
         assertEquals(message.get(Constants.MessageKey.EVENT_TYPE), MParticle.EventType.Location);
         assertEquals("test screen name", message.getString(Constants.MessageKey.CURRENT_ACTIVITY));
+        assertEquals(0, message.getInt(Constants.MessageKey.EVENT_COUNTER));
+        MessageManager.checkpointEventCounter();
         assertEquals(1, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
         for (int i = 0; i < 100; i++){
-            manager.logEvent(event, "test screen name");
+            message = manager.logEvent(event, "test screen name");
         }
+        assertEquals(100, message.getInt(Constants.MessageKey.EVENT_COUNTER));
+        //the counter is only written back to prefs when checkpointed
+        assertEquals(1, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
+        MessageManager.checkpointEventCounter();
         JSONObject flags = message.getJSONObject("flags");
         JSONArray flag1 = flags.getJSONArray("flag 1");
         assertEquals(flag1.length(), 2);
@@ -222,6 +228,7 @@ public class MessageManagerTest {
         assertEquals(flag2.get(0), "value 3");
         assertEquals(101, context.getSharedPreferences("name", 0).getInt(Constants.PrefKeys.EVENT_COUNTER, -1));
         Mockito.verify(messageHandler, Mockito.times(101)).sendMessage(Mockito.any(Message.class));
+        Mockito.verify(messageHandler, Mockito.times(2)).sendEmptyMessageDelayed(MessageHandler.CHECKPOINT_COUNTERS, MessageHandler.CHECKPOINT_DELAY_MILLIS);
     }
 
     @Test
@@ -562,4 +569,33 @@ public class MessageManagerTest {
         assertEquals(message.get("ui"), identities);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testReportingMessagesAreBuffered() throws Exception {
+        List<JsonReportingMessage> reportingMessages = new ArrayList<JsonReportingMessage>();
+        reportingMessages.add(Mockito.mock(JsonReportingMessage.class));
+        reportingMessages.add(Mockito.mock(JsonReportingMessage.class));
+        manager.logAll(reportingMessages);
+        manager.log(Mockito.mock(JsonReportingMessage.class));
+        Mockito.verify(messageHandler, Mockito.never()).sendEmptyMessage(MessageHandler.STORE_REPORTING_MESSAGE_LIST);
+
+        List<MessageManager.ReportingMpidMessage> drained = manager.drainReportingMessages();
+        assertEquals(2, drained.size());
+        assertEquals(reportingMessages, drained.get(0).getReportingMessages());
+        assertEquals(defaultId, drained.get(0).getMpid());
+        assertEquals(1, drained.get(1).getReportingMessages().size());
+        assertTrue(manager.drainReportingMessages().isEmpty());
+
+        manager.restoreReportingMessages(drained);
+        assertEquals(drained, manager.drainReportingMessages());
+    }
+
+    @Test
+    public void testFullReportingBufferIsStored() throws Exception {
+        for (int i = 0; i < Constants.REPORTING_MESSAGE_BUFFER_LIMIT - 1; i++) {
+            manager.log(Mockito.mock(JsonReportingMessage.class));
+        }
+        Mockito.verify(messageHandler, Mockito.never()).sendEmptyMessage(MessageHandler.STORE_REPORTING_MESSAGE_LIST);
+        manager.log(Mockito.mock(JsonReportingMessage.class));
+        Mockito.verify(messageHandler).sendEmptyMessage(MessageHandler.STORE_REPORTING_MESSAGE_LIST);
+    }
+}
@@ -18,6 +18,7 @@ import com.mparticle.identity.MParticleUser;
 import org.json.JSONArray;
 
 import java.lang.ref.WeakReference;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -144,6 +145,11 @@ public class MockKitManager implements KitManager {
         return false;
     }
 
+    @Override
+    public Set<Integer> getSlowKits() {
+        return new HashSet<Integer>();
+    }
+
     @Override
     public Object getKitInstance(int kitId) {
         return null;
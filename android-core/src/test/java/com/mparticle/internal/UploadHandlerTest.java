@@ -196,4 +196,35 @@ public class UploadHandlerTest {
         handler.upload(true);
         Mockito.verify(mockApiClient).sendMessageBatch(Mockito.eq("cool message batch!"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testUploadBacklog() throws Exception {
+        AppStateManager stateManager = Mockito.mock(AppStateManager.class);
+        Mockito.when(stateManager.getSession()).thenReturn(new Session());
+        handler = new UploadHandler(new MockContext(), mConfigManager, stateManager, Mockito.mock(MessageManager.class));
+        handler.mParticleDBManager = Mockito.mock(MParticleDBManager.class);
+        MParticleApiClient mockApiClient = Mockito.mock(MParticleApiClient.class);
+        handler.setApiClient(mockApiClient);
+        Mockito.when(handler.mParticleDBManager.getReadyUploads()).thenReturn(new ArrayList<ReadyUpload>(){{add(new ReadyUpload(123, "cool message batch!"));}});
+
+        //keep uploading while the backlog is over the threshold
+        Mockito.when(mockApiClient.sendMessageBatch(Mockito.anyString())).thenReturn(202);
+        Mockito.when(handler.mParticleDBManager.getMessagesForUploadCount()).thenReturn(Constants.DRAIN_BACKLOG_THRESHOLD + 1, Constants.DRAIN_BACKLOG_THRESHOLD + 1, Constants.DRAIN_BACKLOG_THRESHOLD);
+        handler.uploadBacklog();
+        Mockito.verify(mockApiClient, Mockito.times(3)).sendMessageBatch(Mockito.anyString());
+
+        //stop as soon as an upload fails
+        Mockito.reset(mockApiClient);
+        Mockito.when(mockApiClient.sendMessageBatch(Mockito.anyString())).thenReturn(500);
+        Mockito.when(handler.mParticleDBManager.getMessagesForUploadCount()).thenReturn(Constants.DRAIN_BACKLOG_THRESHOLD + 1);
+        handler.uploadBacklog();
+        Mockito.verify(mockApiClient, Mockito.times(1)).sendMessageBatch(Mockito.anyString());
+
+        //or once we're throttled
+        Mockito.reset(mockApiClient);
+        Mockito.when(mockApiClient.sendMessageBatch(Mockito.anyString())).thenReturn(202);
+        Mockito.when(mockApiClient.isThrottled()).thenReturn(true);
+        handler.uploadBacklog();
+        Mockito.verify(mockApiClient, Mockito.times(1)).sendMessageBatch(Mockito.anyString());
+    }
+}
@@ -0,0 +1,77 @@
+package com.mparticle.internal.database.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class UserAttributeCacheTest {
+
+    @Test
+    public void testWritesApplyOnlyToLoadedMpids() throws Exception {
+        UserAttributeCache cache = new UserAttributeCache();
+        cache.setSingle(1, "key", "value");
+        assertFalse(cache.contains(1));
+        assertNull(cache.getSingles(1));
+
+        cache.put(1, cache.getGeneration(), singles("key", "value"), new TreeMap<String, List<String>>());
+        cache.setList(1, "list", Arrays.asList("a", "b"));
+        cache.remove(1, "key");
+        assertTrue(cache.getSingles(1).isEmpty());
+        assertEquals(Arrays.asList("a", "b"), cache.getLists(1).get("list"));
+        assertNull(cache.getSingles(2));
+    }
+
+    @Test
+    public void testKeysAreCaseInsensitive() throws Exception {
+        UserAttributeCache cache = new UserAttributeCache();
+        cache.put(1, cache.getGeneration(), singles("Key", "value"), new TreeMap<String, List<String>>());
+        assertEquals("value", cache.getSingles(1).get("KEY"));
+
+        //the table replaces the row, so the new key's case is kept
+        cache.setList(1, "KEY", Arrays.asList("a"));
+        assertTrue(cache.getSingles(1).isEmpty());
+        assertEquals("KEY", cache.getLists(1).firstKey());
+    }
+
+    @Test
+    public void testStaleLoadIsNotCached() throws Exception {
+        UserAttributeCache cache = new UserAttributeCache();
+        long generation = cache.getGeneration();
+        //written while the table was being read
+        cache.setSingle(1, "key", "new value");
+        cache.put(1, generation, singles("key", "old value"), new TreeMap<String, List<String>>());
+        assertFalse(cache.contains(1));
+
+        cache.put(1, cache.getGeneration(), singles("key", "new value"), new TreeMap<String, List<String>>());
+        cache.invalidate(1);
+        assertFalse(cache.contains(1));
+    }
+
+    @Test
+    public void testCopiesAreReturned() throws Exception {
+        UserAttributeCache cache = new UserAttributeCache();
+        List<String> values = new ArrayList<String>(Arrays.asList("a"));
+        TreeMap<String, List<String>> lists = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        lists.put("list", values);
+        cache.put(1, cache.getGeneration(), singles("key", "value"), lists);
+        values.add("b");
+        cache.getSingles(1).put("other", "value");
+        cache.getLists(1).get("list").add("c");
+        assertEquals(1, cache.getSingles(1).size());
+        assertEquals(Arrays.asList("a"), cache.getLists(1).get("list"));
+    }
+
+    private static TreeMap<String, String> singles(String key, String value) {
+        TreeMap<String, String> singles = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        singles.put(key, value);
+        return singles;
+    }
+}
@@ -51,7 +51,7 @@ public class MParticleBaseClientImplTest {
                     }
 
                     @Override
-                    public void write(@NonNull byte[] b) throws IOException {
+                    public void write(@NonNull byte[] b, int off, int len) throws IOException {
                         writeCalled[0] = true;
                         assertTrue(getSocketFactoruCalled[0]);
 
@@ -4,9 +4,13 @@ import com.mparticle.mock.utils.RandomUtils;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.Map;
 
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 public class NetworkOptionsTest {
@@ -40,6 +44,27 @@ public class NetworkOptionsTest {
 
     }
 
+    @Test
+    public void testConnectionFactory() throws Exception {
+        NetworkOptions defaultOptions = NetworkOptions.builder().build();
+        assertSame(ConnectionFactory.DEFAULT, defaultOptions.getConnectionFactory());
+
+        ConnectionFactory connectionFactory = new ConnectionFactory() {
+            @Override
+            public HttpURLConnection openConnection(URL url) throws IOException {
+                return null;
+            }
+        };
+        NetworkOptions options = NetworkOptions.builder()
+                .setConnectionFactory(connectionFactory)
+                .build();
+        assertSame(connectionFactory, options.getConnectionFactory());
+
+        //a ConnectionFactory can't be persisted, so it falls back to the default
+        NetworkOptions optionsDeserialized = NetworkOptions.withNetworkOptions(options.toString());
+        assertSame(ConnectionFactory.DEFAULT, optionsDeserialized.getConnectionFactory());
+    }
+
     public static boolean equals(NetworkOptions networkOptions1, NetworkOptions networkOptions2) {
         if (networkOptions1 == networkOptions2) {
             return true;
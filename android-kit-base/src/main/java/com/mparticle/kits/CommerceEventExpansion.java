@@ -0,0 +1,57 @@
+package com.mparticle.kits;
+
+import com.mparticle.MPEvent;
+import com.mparticle.commerce.CommerceEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A commerce event's expansion into MPEvents, as given to kits which aren't a
+ * {@link KitIntegration.CommerceListener}.
+ *
+ * The expansion is the same for every kit which doesn't filter the contents of commerce events, so it's
+ * built by {@link CommerceEventUtils#expand(CommerceEvent)} the first time a kit asks for it, and then
+ * shared. Each kit is given MPEvents of its own, whose attributes are copy-on-write views of the shared
+ * attributes, so a large cart's attributes are built once rather than once per kit.
+ */
+final class CommerceEventExpansion {
+    private final CommerceEvent mEvent;
+    private List<MPEvent> mTemplates;
+    private List<Map<String, String>> mAttributes;
+
+    CommerceEventExpansion(CommerceEvent event) {
+        mEvent = event;
+    }
+
+    /**
+     * @return the expanded events, for a single kit
+     */
+    List<MPEvent> expand() {
+        List<MPEvent> templates;
+        List<Map<String, String>> attributes;
+        synchronized (this) {
+            if (mTemplates == null) {
+                List<MPEvent> events = CommerceEventUtils.expand(mEvent);
+                mAttributes = new ArrayList<Map<String, String>>(events.size());
+                for (MPEvent event : events) {
+                    mAttributes.add(event.getInfo());
+                    event.setInfo(null);
+                }
+                mTemplates = events;
+            }
+            templates = mTemplates;
+            attributes = mAttributes;
+        }
+        List<MPEvent> events = new ArrayList<MPEvent>(templates.size());
+        for (int i = 0; i < templates.size(); i++) {
+            MPEvent event = new MPEvent(templates.get(i));
+            if (attributes.get(i) != null) {
+                event.setInfo(new FilteredAttributes<String>(attributes.get(i), null, null));
+            }
+            events.add(event);
+        }
+        return events;
+    }
+}
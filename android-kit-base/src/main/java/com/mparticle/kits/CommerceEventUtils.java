@@ -9,8 +9,8 @@ import com.mparticle.commerce.Promotion;
 import com.mparticle.commerce.TransactionAttributes;
 import com.mparticle.internal.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -24,17 +24,48 @@ public final class CommerceEventUtils {
     }
 
     public static List<MPEvent> expand(CommerceEvent event) {
-        List<MPEvent> eventList = expandProductAction(event);
-        eventList.addAll(expandPromotionAction(event));
-        eventList.addAll(expandProductImpression(event));
+        List<MPEvent> eventList = new ArrayList<MPEvent>(getExpandedEventCount(event));
+        expandProductAction(event, eventList);
+        expandPromotionAction(event, eventList);
+        expandProductImpression(event, eventList);
         return eventList;
     }
 
+    /**
+     * @return the number of events {@link #expand(CommerceEvent)} will create, so that its list is only allocated once
+     */
+    private static int getExpandedEventCount(CommerceEvent event) {
+        int count = 0;
+        if (event.getProductAction() != null) {
+            count++;
+            if (event.getProducts() != null) {
+                count += event.getProducts().size();
+            }
+        }
+        if (event.getPromotionAction() != null && event.getPromotions() != null) {
+            count += event.getPromotions().size();
+        }
+        List<Impression> impressions = event.getImpressions();
+        if (impressions != null) {
+            for (int i = 0; i < impressions.size(); i++) {
+                if (impressions.get(i).getProducts() != null) {
+                    count += impressions.get(i).getProducts().size();
+                }
+            }
+        }
+        return count;
+    }
+
     public static List<MPEvent> expandProductAction(CommerceEvent event) {
-        List<MPEvent> events = new LinkedList<MPEvent>();
+        List<MPEvent> events = new ArrayList<MPEvent>();
+        expandProductAction(event, events);
+        return events;
+    }
+
+    private static void expandProductAction(CommerceEvent event, List<MPEvent> events) {
         String productAction = event.getProductAction();
         if (productAction == null) {
-            return events;
+            return;
         }
         if (productAction.equalsIgnoreCase(Product.PURCHASE) || productAction.equalsIgnoreCase(Product.REFUND)) {
             MPEvent.Builder plusOne = new MPEvent.Builder(String.format(PLUSONE_NAME, event.getProductAction()), MParticle.EventType.Transaction);
@@ -49,8 +80,9 @@ public final class CommerceEventUtils {
         }
         List<Product> products = event.getProducts();
         if (products != null) {
+            String itemName = String.format(ITEM_NAME, productAction);
             for (int i = 0; i < products.size(); i++) {
-                MPEvent.Builder itemEvent = new MPEvent.Builder(String.format(ITEM_NAME, productAction), MParticle.EventType.Transaction);
+                MPEvent.Builder itemEvent = new MPEvent.Builder(itemName, MParticle.EventType.Transaction);
                 Map<String, String> attributes = new HashMap<String, String>();
                 extractProductFields(products.get(i), attributes);
                 extractProductAttributes(products.get(i), attributes);
@@ -58,7 +90,6 @@ public final class CommerceEventUtils {
                 events.add(itemEvent.info(attributes).build());
             }
         }
-        return events;
     }
 
     public static void extractProductFields(Product product, Map<String, String> attributes) {
@@ -153,15 +184,21 @@ public final class CommerceEventUtils {
     }
 
     public static List<MPEvent> expandPromotionAction(CommerceEvent event) {
-        List<MPEvent> events = new LinkedList<MPEvent>();
+        List<MPEvent> events = new ArrayList<MPEvent>();
+        expandPromotionAction(event, events);
+        return events;
+    }
+
+    private static void expandPromotionAction(CommerceEvent event, List<MPEvent> events) {
         String promotionAction = event.getPromotionAction();
         if (promotionAction == null) {
-            return events;
+            return;
         }
         List<Promotion> promotions = event.getPromotions();
         if (promotions != null) {
+            String itemName = String.format(ITEM_NAME, promotionAction);
             for (int i = 0; i < promotions.size(); i++) {
-                MPEvent.Builder itemEvent = new MPEvent.Builder(String.format(ITEM_NAME, promotionAction), MParticle.EventType.Transaction);
+                MPEvent.Builder itemEvent = new MPEvent.Builder(itemName, MParticle.EventType.Transaction);
                 Map<String, String> attributes = new HashMap<String, String>();
                 if (event.getCustomAttributes() != null) {
                     attributes.putAll(event.getCustomAttributes());
@@ -170,7 +207,6 @@ public final class CommerceEventUtils {
                 events.add(itemEvent.info(attributes).build());
             }
         }
-        return events;
     }
 
     public static void extractPromotionAttributes(Promotion promotion, Map<String, String> attributes) {
@@ -191,10 +227,15 @@ public final class CommerceEventUtils {
     }
 
     public static List<MPEvent> expandProductImpression(CommerceEvent event) {
+        List<MPEvent> events = new ArrayList<MPEvent>();
+        expandProductImpression(event, events);
+        return events;
+    }
+
+    private static void expandProductImpression(CommerceEvent event, List<MPEvent> events) {
         List<Impression> impressions = event.getImpressions();
-        List<MPEvent> events = new LinkedList<MPEvent>();
         if (impressions == null) {
-            return events;
+            return;
         }
         for (int i = 0; i < impressions.size(); i++) {
             List<Product> products = impressions.get(i).getProducts();
@@ -212,7 +253,6 @@ public final class CommerceEventUtils {
                 }
             }
         }
-        return events;
     }
 
     private static void extractImpressionAttributes(Impression impression, Map<String, String> attributes) {
@@ -0,0 +1,141 @@
+package com.mparticle.kits;
+
+import com.mparticle.MPEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The filtering hashes of an MPEvent, computed once when the event is forwarded and then shared by
+ * every kit's {@link KitConfiguration}, so that each kit's filters are lookups rather than rehashing
+ * every attribute.
+ *
+ * Hashes are computed lazily, so kits without attribute filters, attribute value filtering or
+ * projections never pay for them. Instances are scoped to a single forwarded event and are not thread
+ * safe, unless {@link #computeAll()} is called before they are shared.
+ */
+final class EventForwardingContext {
+    private final MPEvent mEvent;
+    private final String mEventTypePrefix;
+    private MPEvent mEventTemplate;
+    private int mEventTypeHash;
+    private String[] mAttributeKeys;
+    private int[] mAttributeHashes;
+    private Map<Integer, String> mAttributeHashMap;
+    private Map<Integer, String> mAttributeKeyHashMap;
+
+    EventForwardingContext(MPEvent event) {
+        mEvent = event;
+        mEventTypePrefix = event.getEventType() != null ? Integer.toString(event.getEventType().ordinal()) : "0";
+    }
+
+    MPEvent getEvent() {
+        return mEvent;
+    }
+
+    int getEventTypeHash() {
+        if (mEventTypeHash == 0) {
+            mEventTypeHash = KitUtils.hashForFiltering(mEventTypePrefix);
+        }
+        return mEventTypeHash;
+    }
+
+    int getEventHash() {
+        return mEvent.getEventHash();
+    }
+
+    /**
+     * @return a copy of the event for a single kit, with the kit's own attributes, so that the event's
+     * attributes are not copied once per kit
+     */
+    MPEvent copyEvent(Map<String, String> attributes) {
+        if (mEventTemplate == null) {
+            Map<String, String> info = mEvent.getInfo();
+            mEvent.setInfo(null);
+            mEventTemplate = new MPEvent(mEvent);
+            mEvent.setInfo(info);
+        }
+        MPEvent copy = new MPEvent(mEventTemplate);
+        copy.setInfo(attributes);
+        return copy;
+    }
+
+    /**
+     * @return the keys of the event's attributes, in the same order as {@link #getAttributeHashes()}
+     */
+    String[] getAttributeKeys() {
+        computeAttributeHashes();
+        return mAttributeKeys;
+    }
+
+    /**
+     * @return the hash of event type, event name and key for each of the event's attributes, as used by
+     * attribute filters and projections
+     */
+    int[] getAttributeHashes() {
+        computeAttributeHashes();
+        return mAttributeHashes;
+    }
+
+    /**
+     * @return the attribute keys keyed by {@link #getAttributeHashes()}, in the form used by projections
+     */
+    Map<Integer, String> getAttributeHashMap() {
+        if (mAttributeHashMap == null) {
+            computeAttributeHashes();
+            mAttributeHashMap = new HashMap<Integer, String>(mAttributeHashes.length * 2);
+            for (int i = 0; i < mAttributeHashes.length; i++) {
+                mAttributeHashMap.put(mAttributeHashes[i], mAttributeKeys[i]);
+            }
+        }
+        return mAttributeHashMap;
+    }
+
+    /**
+     * @return the attribute key whose hash, without the event type and name, matches keyHash, as used by
+     * attribute value filtering
+     */
+    String findAttributeKey(int keyHash) {
+        if (mAttributeKeyHashMap == null) {
+            computeAttributeHashes();
+            mAttributeKeyHashMap = new HashMap<Integer, String>(mAttributeKeys.length * 2);
+            for (String key : mAttributeKeys) {
+                int hash = KitUtils.hashForFiltering(key);
+                if (!mAttributeKeyHashMap.containsKey(hash)) {
+                    mAttributeKeyHashMap.put(hash, key);
+                }
+            }
+        }
+        return mAttributeKeyHashMap.get(keyHash);
+    }
+
+    /**
+     * Compute every hash, and the template used by {@link #copyEvent(Map)}, up front, after which the
+     * context is only read, so that it can be shared by kits running on their own threads.
+     */
+    void computeAll() {
+        copyEvent(null);
+        getEventTypeHash();
+        getAttributeHashMap();
+        findAttributeKey(0);
+    }
+
+    private void computeAttributeHashes() {
+        if (mAttributeHashes != null) {
+            return;
+        }
+        Map<String, String> info = mEvent.getInfo();
+        int size = info != null ? info.size() : 0;
+        mAttributeKeys = new String[size];
+        mAttributeHashes = new int[size];
+        if (size > 0) {
+            String prefix = mEventTypePrefix + mEvent.getEventName();
+            int i = 0;
+            for (String key : info.keySet()) {
+                mAttributeKeys[i] = key;
+                mAttributeHashes[i] = KitUtils.hashForFiltering(prefix + key);
+                i++;
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.mparticle.kits;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A kit's filtered view of a map of attributes, used in place of a filtered copy.
+ *
+ * The view reads through to the source map, hiding the keys whose bits are set in the removal mask. Bit i
+ * of the mask refers to the i'th key in the source map's iteration order, so the source must not change
+ * while the view is in use. Kits which only read their attributes never cause a copy. The first change
+ * made through the view copies the visible attributes into a HashMap of its own, and the view
+ * delegates to that copy from then on, leaving the source, and so every other kit, untouched.
+ */
+final class FilteredAttributes<V> extends AbstractMap<String, V> {
+    private final Map<String, V> mSource;
+    private final String[] mKeys;
+    private final long[] mRemoved;
+    private final int mRemovedCount;
+    private Map<String, V> mCopy;
+    private Set<Map.Entry<String, V>> mEntrySet;
+
+    /**
+     * @param source  the attributes being filtered
+     * @param keys    the keys of source by their index in its iteration order, only the removed keys are read
+     * @param removed the removal mask, as built by {@link #markRemoved(long[], int, int)}, or null if nothing is removed
+     */
+    FilteredAttributes(Map<String, V> source, String[] keys, long[] removed) {
+        mSource = source;
+        mKeys = keys;
+        mRemoved = removed;
+        int removedCount = 0;
+        if (removed != null) {
+            for (long word : removed) {
+                removedCount += Long.bitCount(word);
+            }
+        }
+        mRemovedCount = removedCount;
+    }
+
+    /**
+     * Mark the key at index as removed, allocating the mask the first time a key is removed.
+     *
+     * @return the mask
+     */
+    static long[] markRemoved(long[] removed, int keyCount, int index) {
+        if (removed == null) {
+            removed = new long[(keyCount + 63) >>> 6];
+        }
+        removed[index >>> 6] |= 1L << index;
+        return removed;
+    }
+
+    /**
+     * @return whether the view has copied its attributes, which it does the first time it is changed
+     */
+    boolean isMaterialized() {
+        return mCopy != null;
+    }
+
+    @Override
+    public int size() {
+        if (mCopy != null) {
+            return mCopy.size();
+        }
+        return mSource.size() - mRemovedCount;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (mCopy != null) {
+            return mCopy.containsKey(key);
+        }
+        return mSource.containsKey(key) && !isRemoved(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        if (mCopy != null) {
+            return mCopy.get(key);
+        }
+        V value = mSource.get(key);
+        if (value == null || isRemoved(key)) {
+            return null;
+        }
+        return value;
+    }
+
+    @Override
+    public V put(String key, V value) {
+        if (mCopy == null) {
+            V current = get(key);
+            if (current != null && current.equals(value)) {
+                return current;
+            }
+        }
+        return materialize().put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (mCopy == null && !containsKey(key)) {
+            return null;
+        }
+        return materialize().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        if (mCopy == null) {
+            mCopy = new HashMap<String, V>();
+        } else {
+            mCopy.clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        if (mCopy != null) {
+            return mCopy.entrySet();
+        }
+        if (mEntrySet == null) {
+            mEntrySet = new AbstractSet<Map.Entry<String, V>>() {
+                @Override
+                public Iterator<Map.Entry<String, V>> iterator() {
+                    if (mCopy != null) {
+                        return mCopy.entrySet().iterator();
+                    }
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return FilteredAttributes.this.size();
+                }
+            };
+        }
+        return mEntrySet;
+    }
+
+    private boolean isRemoved(Object key) {
+        if (mRemovedCount == 0) {
+            return false;
+        }
+        for (int i = 0; i < mRemoved.length; i++) {
+            long word = mRemoved[i];
+            while (word != 0) {
+                int index = (i << 6) + Long.numberOfTrailingZeros(word);
+                if (mKeys[index].equals(key)) {
+                    return true;
+                }
+                word &= word - 1;
+            }
+        }
+        return false;
+    }
+
+    private boolean isRemoved(int index) {
+        return mRemovedCount != 0 && (mRemoved[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private Map<String, V> materialize() {
+        if (mCopy == null) {
+            Map<String, V> copy = new HashMap<String, V>(Math.max(size() * 2, 4));
+            int index = 0;
+            for (Map.Entry<String, V> entry : mSource.entrySet()) {
+                if (!isRemoved(index++)) {
+                    copy.put(entry.getKey(), entry.getValue());
+                }
+            }
+            mCopy = copy;
+        }
+        return mCopy;
+    }
+
+    /**
+     * Iterates the source, skipping removed keys. Changes made through the iterator or its entries go to
+     * the view's copy, while iteration continues over the source.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, V>> {
+        private final Iterator<Map.Entry<String, V>> mSourceIterator = mSource.entrySet().iterator();
+        private int mIndex = -1;
+        private Map.Entry<String, V> mNext;
+        private Map.Entry<String, V> mLast;
+
+        @Override
+        public boolean hasNext() {
+            while (mNext == null && mSourceIterator.hasNext()) {
+                Map.Entry<String, V> entry = mSourceIterator.next();
+                if (!isRemoved(++mIndex)) {
+                    mNext = entry;
+                }
+            }
+            return mNext != null;
+        }
+
+        @Override
+        public Map.Entry<String, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            mLast = mNext;
+            mNext = null;
+            final String key = mLast.getKey();
+            return new SimpleEntry<String, V>(key, mLast.getValue()) {
+                @Override
+                public V setValue(V value) {
+                    super.setValue(value);
+                    return materialize().put(key, value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (mLast == null) {
+                throw new IllegalStateException();
+            }
+            materialize().remove(mLast.getKey());
+            mLast = null;
+        }
+    }
+}
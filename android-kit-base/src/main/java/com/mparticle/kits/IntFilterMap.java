@@ -0,0 +1,136 @@
+package com.mparticle.kits;
+
+import android.util.SparseBooleanArray;
+
+import com.mparticle.internal.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * A map of filter hashes to whether they are allowed, as used by {@link KitConfiguration}.
+ *
+ * Filters are built once when a configuration is parsed and then looked up for every event that is
+ * forwarded, so they are stored in open-addressed primitive arrays: a lookup is a multiplicative hash
+ * and, usually, a single probe, rather than the binary search of a SparseBooleanArray, and nothing is
+ * boxed. Instances are not thread safe while being built, but may be read from any thread after.
+ */
+final class IntFilterMap {
+    private static final byte EMPTY = 0;
+    private static final byte DENY = 1;
+    private static final byte ALLOW = 2;
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] mKeys;
+    private byte[] mValues;
+    private int mShift;
+    private int mSize;
+
+    IntFilterMap() {
+        this(0);
+    }
+
+    IntFilterMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    static IntFilterMap fromJson(JSONObject json) {
+        IntFilterMap map = new IntFilterMap(json.length());
+        for (Iterator<String> iterator = json.keys(); iterator.hasNext(); ) {
+            try {
+                String key = iterator.next();
+                map.put(Integer.parseInt(key), json.getInt(key) == 1);
+            } catch (JSONException jse) {
+                Logger.error("Issue while parsing kit configuration: " + jse.getMessage());
+            }
+        }
+        return map;
+    }
+
+    boolean get(int key, boolean valueIfKeyNotFound) {
+        if (mSize == 0) {
+            return valueIfKeyNotFound;
+        }
+        int mask = mKeys.length - 1;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            byte value = mValues[i];
+            if (value == EMPTY) {
+                return valueIfKeyNotFound;
+            }
+            if (mKeys[i] == key) {
+                return value == ALLOW;
+            }
+        }
+    }
+
+    void put(int key, boolean allow) {
+        if ((mSize + 1) * 2 > mKeys.length) {
+            resize(mKeys.length * 2);
+        }
+        int mask = mKeys.length - 1;
+        int i = slot(key);
+        while (mValues[i] != EMPTY && mKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (mValues[i] == EMPTY) {
+            mSize++;
+        }
+        mKeys[i] = key;
+        mValues[i] = allow ? ALLOW : DENY;
+    }
+
+    void copyTo(SparseBooleanArray into) {
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mValues[i] != EMPTY) {
+                into.put(mKeys[i], mValues[i] == ALLOW);
+            }
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Fibonacci hashing, so that filter hashes which differ only in their high bits still spread
+     * across the table.
+     */
+    private int slot(int key) {
+        return (key * 0x9E3779B9) >>> mShift;
+    }
+
+    private void resize(int capacity) {
+        int[] keys = mKeys;
+        byte[] values = mValues;
+        allocate(capacity);
+        mSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != EMPTY) {
+                put(keys[i], values[i] == ALLOW);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new int[capacity];
+        mValues = new byte[capacity];
+        mShift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * @return the smallest power of two which keeps the table at most half full
+     */
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
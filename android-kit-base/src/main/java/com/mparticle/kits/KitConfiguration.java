@@ -15,6 +15,7 @@ import com.mparticle.identity.MParticleUser;
 import com.mparticle.internal.Logger;
 import com.mparticle.internal.MPUtility;
 import com.mparticle.kits.mappings.CustomMapping;
+import com.mparticle.kits.mappings.CustomMappingIndex;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -65,43 +66,45 @@ public class KitConfiguration {
     private int avfHashedAttribute = 0;
     private int avfHashedValue = 0;
     private HashMap<String, String> settings = new HashMap<String, String>(0);
-    protected SparseBooleanArray mTypeFilters = new SparseBooleanArray(0);
-    protected SparseBooleanArray mNameFilters = new SparseBooleanArray(0);
-    protected SparseBooleanArray mAttributeFilters = new SparseBooleanArray(0);
-    protected SparseBooleanArray mScreenNameFilters = new SparseBooleanArray(0);
-    protected SparseBooleanArray mScreenAttributeFilters = new SparseBooleanArray(0);
-    protected SparseBooleanArray mUserIdentityFilters = new SparseBooleanArray(0);
-    protected SparseBooleanArray mUserAttributeFilters = new SparseBooleanArray(0);
-    protected SparseBooleanArray mCommerceAttributeFilters = new SparseBooleanArray(0);
-    protected SparseBooleanArray mCommerceEntityFilters = new SparseBooleanArray(0);
-    private Map<Integer, SparseBooleanArray> mCommerceEntityAttributeFilters = new HashMap<Integer, SparseBooleanArray>(0);
+    //the SparseBooleanArray getters below are copies of these, built on demand for kits which read them
+    private IntFilterMap mTypeFilterMap = new IntFilterMap();
+    private IntFilterMap mNameFilterMap = new IntFilterMap();
+    private IntFilterMap mAttributeFilterMap = new IntFilterMap();
+    private IntFilterMap mScreenNameFilterMap = new IntFilterMap();
+    private IntFilterMap mScreenAttributeFilterMap = new IntFilterMap();
+    private IntFilterMap mUserIdentityFilterMap = new IntFilterMap();
+    private IntFilterMap mUserAttributeFilterMap = new IntFilterMap();
+    private IntFilterMap mCommerceAttributeFilterMap = new IntFilterMap();
+    private IntFilterMap mCommerceEntityFilterMap = new IntFilterMap();
+    private Map<Integer, IntFilterMap> mCommerceEntityAttributeFilterMaps = new HashMap<Integer, IntFilterMap>(0);
     protected Map<Integer, Boolean> mConsentForwardingRules = new HashMap<Integer, Boolean>();
     private int lowBracket = 0;
     private int highBracket = 101;
     private LinkedList<CustomMapping> customMappingList;
+    private CustomMappingIndex customMappingIndex;
     private CustomMapping defaultCustomMapping = null;
     private CustomMapping defaultScreenCustomMapping = null;
     private CustomMapping defaultCommerceCustomMapping = null;
     private int kitId;
 
     public SparseBooleanArray getEventTypeFilters() {
-        return mTypeFilters;
+        return toSparseArray(mTypeFilterMap);
     }
 
     public SparseBooleanArray getEventNameFilters() {
-        return mNameFilters;
+        return toSparseArray(mNameFilterMap);
     }
 
     public SparseBooleanArray getEventAttributeFilters() {
-        return mAttributeFilters;
+        return toSparseArray(mAttributeFilterMap);
     }
 
     public SparseBooleanArray getScreenNameFilters() {
-        return mScreenNameFilters;
+        return toSparseArray(mScreenNameFilterMap);
     }
 
     public SparseBooleanArray getScreenAttributeFilters() {
-        return mScreenAttributeFilters;
+        return toSparseArray(mScreenAttributeFilterMap);
     }
 
     public static KitConfiguration createKitConfiguration(JSONObject json) throws JSONException{
@@ -138,60 +141,60 @@ public class KitConfiguration {
         if (json.has(KEY_FILTERS)) {
             JSONObject filterJson = json.getJSONObject(KEY_FILTERS);
             if (filterJson.has(KEY_EVENT_TYPES_FILTER)) {
-                mTypeFilters = convertToSparseArray(filterJson.getJSONObject(KEY_EVENT_TYPES_FILTER));
+                mTypeFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_EVENT_TYPES_FILTER));
             } else {
-                mTypeFilters.clear();
+                mTypeFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_EVENT_NAMES_FILTER)) {
-                mNameFilters = convertToSparseArray(filterJson.getJSONObject(KEY_EVENT_NAMES_FILTER));
+                mNameFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_EVENT_NAMES_FILTER));
             } else {
-                mNameFilters.clear();
+                mNameFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_EVENT_ATTRIBUTES_FILTER)) {
-                mAttributeFilters = convertToSparseArray(filterJson.getJSONObject(KEY_EVENT_ATTRIBUTES_FILTER));
+                mAttributeFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_EVENT_ATTRIBUTES_FILTER));
             } else {
-                mAttributeFilters.clear();
+                mAttributeFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_SCREEN_NAME_FILTER)) {
-                mScreenNameFilters = convertToSparseArray(filterJson.getJSONObject(KEY_SCREEN_NAME_FILTER));
+                mScreenNameFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_SCREEN_NAME_FILTER));
             } else {
-                mScreenNameFilters.clear();
+                mScreenNameFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_SCREEN_ATTRIBUTES_FILTER)) {
-                mScreenAttributeFilters = convertToSparseArray(filterJson.getJSONObject(KEY_SCREEN_ATTRIBUTES_FILTER));
+                mScreenAttributeFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_SCREEN_ATTRIBUTES_FILTER));
             } else {
-                mScreenAttributeFilters.clear();
+                mScreenAttributeFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_USER_IDENTITY_FILTER)) {
-                mUserIdentityFilters = convertToSparseArray(filterJson.getJSONObject(KEY_USER_IDENTITY_FILTER));
+                mUserIdentityFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_USER_IDENTITY_FILTER));
             } else {
-                mUserIdentityFilters.clear();
+                mUserIdentityFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_USER_ATTRIBUTE_FILTER)) {
-                mUserAttributeFilters = convertToSparseArray(filterJson.getJSONObject(KEY_USER_ATTRIBUTE_FILTER));
+                mUserAttributeFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_USER_ATTRIBUTE_FILTER));
             } else {
-                mUserAttributeFilters.clear();
+                mUserAttributeFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_COMMERCE_ATTRIBUTE_FILTER)) {
-                mCommerceAttributeFilters = convertToSparseArray(filterJson.getJSONObject(KEY_COMMERCE_ATTRIBUTE_FILTER));
+                mCommerceAttributeFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_COMMERCE_ATTRIBUTE_FILTER));
             } else {
-                mCommerceAttributeFilters.clear();
+                mCommerceAttributeFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_COMMERCE_ENTITY_FILTERS)) {
-                mCommerceEntityFilters = convertToSparseArray(filterJson.getJSONObject(KEY_COMMERCE_ENTITY_FILTERS));
+                mCommerceEntityFilterMap = IntFilterMap.fromJson(filterJson.getJSONObject(KEY_COMMERCE_ENTITY_FILTERS));
             } else {
-                mCommerceEntityFilters.clear();
+                mCommerceEntityFilterMap = new IntFilterMap();
             }
             if (filterJson.has(KEY_COMMERCE_ENTITY_ATTRIBUTE_FILTERS)) {
                 JSONObject entityAttributeFilters = filterJson.getJSONObject(KEY_COMMERCE_ENTITY_ATTRIBUTE_FILTERS);
-                mCommerceEntityAttributeFilters.clear();
+                mCommerceEntityAttributeFilterMaps.clear();
                 Iterator<String> keys = entityAttributeFilters.keys();
                 while (keys.hasNext()) {
                     String key = keys.next();
-                    mCommerceEntityAttributeFilters.put(Integer.parseInt(key), convertToSparseArray(entityAttributeFilters.getJSONObject(key)));
+                    mCommerceEntityAttributeFilterMaps.put(Integer.parseInt(key), IntFilterMap.fromJson(entityAttributeFilters.getJSONObject(key)));
                 }
             } else {
-                mCommerceEntityAttributeFilters.clear();
+                mCommerceEntityAttributeFilterMaps.clear();
             }
         }
 
@@ -222,6 +225,7 @@ public class KitConfiguration {
                 }
             }
         }
+        customMappingIndex = new CustomMappingIndex(customMappingList);
         mConsentForwardingRules.clear();
         if (json.has(KEY_CONSENT_FORWARDING_RULES)) {
             JSONObject consentForwardingRule = json.getJSONObject(KEY_CONSENT_FORWARDING_RULES);
@@ -262,6 +266,17 @@ public class KitConfiguration {
         return shouldInclude;
     }
 
+    boolean shouldIncludeFromAttributeValueFiltering(EventForwardingContext context) {
+        if (!avfIsActive) {
+            return true;
+        }
+        boolean isMatch = false;
+        String key = context.findAttributeKey(avfHashedAttribute);
+        if (key != null) {
+            isMatch = KitUtils.hashForFiltering(context.getEvent().getInfo().get(key)) == avfHashedValue;
+        }
+        return avfShouldIncludeMatches ? isMatch : !isMatch;
+    }
 
     boolean shouldIncludeFromConsentRules(MParticleUser user) {
         if (mConsentForwardingRules.size() == 0) {
@@ -301,11 +316,7 @@ public class KitConfiguration {
     }
 
     protected CommerceEvent filterCommerceEvent(CommerceEvent event) {
-        if (!shouldIncludeFromAttributeValueFiltering(event.getCustomAttributes())) {
-            return null;
-        }
-        if (mTypeFilters != null &&
-                !mTypeFilters.get(KitUtils.hashForFiltering(CommerceEventUtils.getEventType(event) + ""), true)) {
+        if (!shouldLogCommerceEvent(event)) {
             return null;
         }
         CommerceEvent filteredEvent = new CommerceEvent.Builder(event).build();
@@ -316,14 +327,31 @@ public class KitConfiguration {
     }
 
 
+    boolean shouldLogCommerceEvent(CommerceEvent event) {
+        if (!shouldIncludeFromAttributeValueFiltering(event.getCustomAttributes())) {
+            return false;
+        }
+        return mTypeFilterMap.get(KitUtils.hashForFiltering(CommerceEventUtils.getEventType(event) + ""), true);
+    }
+
+    /**
+     * @return whether {@link #filterCommerceEvent(CommerceEvent)} may remove anything from a commerce event it
+     * lets through. If not, the filtered event is only a copy, and kits can share the original's expansion.
+     */
+    boolean filtersCommerceEventContents() {
+        return !mCommerceEntityFilterMap.isEmpty() ||
+                mCommerceEntityAttributeFilterMaps.size() > 0 ||
+                !mCommerceAttributeFilterMap.isEmpty();
+    }
+
     private CommerceEvent filterCommerceEntityAttributes(CommerceEvent filteredEvent) {
-        if (mCommerceEntityAttributeFilters == null || mCommerceEntityAttributeFilters.size() == 0) {
+        if (mCommerceEntityAttributeFilterMaps.size() == 0) {
             return filteredEvent;
         }
         CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
-        for (Map.Entry<Integer, SparseBooleanArray> entry : mCommerceEntityAttributeFilters.entrySet()) {
+        for (Map.Entry<Integer, IntFilterMap> entry : mCommerceEntityAttributeFilterMaps.entrySet()) {
             int entity = entry.getKey();
-            SparseBooleanArray filters = entry.getValue();
+            IntFilterMap filters = entry.getValue();
             switch (entity) {
                 case ENTITY_PRODUCT:
                     if (filteredEvent.getProducts() != null && filteredEvent.getProducts().size() > 0) {
@@ -398,11 +426,66 @@ public class KitConfiguration {
     }
 
     public final Map<String, String> filterEventAttributes(MPEvent event) {
-        return filterEventAttributes(event.getEventType(), event.getEventName(), mAttributeFilters, event.getInfo());
+        return filterEventAttributes(event.getEventType(), event.getEventName(), mAttributeFilterMap, event.getInfo());
+    }
+
+    /**
+     * Filter the context event's attributes for this kit, using the attribute hashes already computed by the
+     * context.
+     *
+     * @return this kit's own view of the event's attributes, which only copies them if the kit changes them
+     */
+    final Map<String, String> filterEventAttributes(EventForwardingContext context) {
+        Map<String, String> attributes = context.getEvent().getInfo();
+        if (attributes == null) {
+            return null;
+        }
+        long[] removed = null;
+        if (!mAttributeFilterMap.isEmpty()) {
+            int[] hashes = context.getAttributeHashes();
+            for (int i = 0; i < hashes.length; i++) {
+                if (!mAttributeFilterMap.get(hashes[i], true)) {
+                    removed = FilteredAttributes.markRemoved(removed, hashes.length, i);
+                }
+            }
+        }
+        return new FilteredAttributes<String>(attributes, context.getAttributeKeys(), removed);
     }
 
     public final Map<String, String> filterScreenAttributes(MParticle.EventType eventType, String eventName, Map<String, String> eventAttributes) {
-        return filterEventAttributes(eventType, eventName, mScreenNameFilters, eventAttributes);
+        return filterEventAttributes(eventType, eventName, mScreenNameFilterMap, eventAttributes);
+    }
+
+    private static Map<String, String> filterEventAttributes(MParticle.EventType eventType, String eventName, IntFilterMap filter, Map<String, String> eventAttributes) {
+        if (eventAttributes == null || eventAttributes.size() == 0 || filter.isEmpty()) {
+            return eventAttributes;
+        }
+        String prefix = (eventType != null ? Integer.toString(eventType.ordinal()) : "0") + eventName;
+        return filterKeys(filter, prefix, eventAttributes);
+    }
+
+    /**
+     * @return attributes itself if no keys are filtered, otherwise a view of it without the filtered keys
+     */
+    private static <V> Map<String, V> filterKeys(IntFilterMap filter, String prefix, Map<String, V> attributes) {
+        int size = attributes.size();
+        String[] removedKeys = null;
+        long[] removed = null;
+        int i = 0;
+        for (String key : attributes.keySet()) {
+            if (!filter.get(KitUtils.hashForFiltering(prefix == null ? key : prefix + key), true)) {
+                if (removedKeys == null) {
+                    removedKeys = new String[size];
+                }
+                removedKeys[i] = key;
+                removed = FilteredAttributes.markRemoved(removed, size, i);
+            }
+            i++;
+        }
+        if (removed == null) {
+            return attributes;
+        }
+        return new FilteredAttributes<V>(attributes, removedKeys, removed);
     }
 
     public final Map<String, String> filterEventAttributes(MParticle.EventType eventType, String eventName, SparseBooleanArray filter, Map<String, String> eventAttributes) {
@@ -428,13 +511,13 @@ public class KitConfiguration {
     }
 
     private CommerceEvent filterCommerceEntities(CommerceEvent filteredEvent) {
-        if (mCommerceEntityFilters == null || mCommerceEntityFilters.size() == 0) {
+        if (mCommerceEntityFilterMap.isEmpty()) {
             return filteredEvent;
         }
         CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
 
-        boolean removeProducts = !mCommerceEntityFilters.get(ENTITY_PRODUCT, true);
-        boolean removePromotions = !mCommerceEntityFilters.get(ENTITY_PROMOTION, true);
+        boolean removeProducts = !mCommerceEntityFilterMap.get(ENTITY_PRODUCT, true);
+        boolean removePromotions = !mCommerceEntityFilterMap.get(ENTITY_PROMOTION, true);
         if (removeProducts) {
             builder.products(new LinkedList<Product>());
             List<Impression> impressionList = filteredEvent.getImpressions();
@@ -471,9 +554,22 @@ public class KitConfiguration {
         return attributeFilters.get(hash, true);
     }
 
+    static Map<String, ?> filterAttributes(IntFilterMap attributeFilters, Map<String, ?> attributes) {
+        if (attributes != null && attributeFilters != null && !attributeFilters.isEmpty()
+                && attributes.size() > 0) {
+            return filterKeys(attributeFilters, null, attributes);
+        } else {
+            return attributes;
+        }
+    }
+
+    static boolean shouldForwardAttribute(IntFilterMap attributeFilters, String key) {
+        return attributeFilters == null || attributeFilters.isEmpty() || attributeFilters.get(KitUtils.hashForFiltering(key), true);
+    }
+
     private CommerceEvent filterCommerceEventAttributes(CommerceEvent filteredEvent) {
         String eventType = Integer.toString(CommerceEventUtils.getEventType(filteredEvent));
-        if (mCommerceAttributeFilters == null || mCommerceAttributeFilters.size() == 0) {
+        if (mCommerceAttributeFilterMap.isEmpty()) {
             return filteredEvent;
         }
         CommerceEvent.Builder builder = new CommerceEvent.Builder(filteredEvent);
@@ -481,7 +577,7 @@ public class KitConfiguration {
         if (customAttributes != null) {
             Map<String, String> filteredCustomAttributes = new HashMap<String, String>(customAttributes.size());
             for (Map.Entry<String, String> entry : customAttributes.entrySet()) {
-                if (mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + entry.getKey()), true)) {
+                if (mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + entry.getKey()), true)) {
                     filteredCustomAttributes.put(entry.getKey(), entry.getValue());
                 }
             }
@@ -489,37 +585,37 @@ public class KitConfiguration {
         }
 
         if (filteredEvent.getCheckoutStep() != null &&
-                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_STEP), true)) {
+                !mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_STEP), true)) {
             builder.checkoutStep(null);
         }
         if (filteredEvent.getCheckoutOptions() != null &&
-                !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_OPTIONS), true)) {
+                !mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_ACTION_CHECKOUT_OPTIONS), true)) {
             builder.checkoutOptions(null);
         }
         TransactionAttributes attributes = filteredEvent.getTransactionAttributes();
         if (attributes != null) {
             if (attributes.getCouponCode() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TRANSACTION_COUPON_CODE), true)) {
+                    !mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TRANSACTION_COUPON_CODE), true)) {
                 attributes.setCouponCode(null);
             }
             if (attributes.getShipping() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_SHIPPING), true)) {
+                    !mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_SHIPPING), true)) {
                 attributes.setShipping(null);
             }
             if (attributes.getTax() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TAX), true)) {
+                    !mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TAX), true)) {
                 attributes.setTax(null);
             }
             if (attributes.getRevenue() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TOTAL), true)) {
+                    !mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TOTAL), true)) {
                 attributes.setRevenue(0.0);
             }
             if (attributes.getId() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TRANSACTION_ID), true)) {
+                    !mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_TRANSACTION_ID), true)) {
                 attributes.setId(null);
             }
             if (attributes.getAffiliation() != null &&
-                    !mCommerceAttributeFilters.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_AFFILIATION), true)) {
+                    !mCommerceAttributeFilterMap.get(KitUtils.hashForFiltering(eventType + CommerceEventUtils.Constants.ATT_AFFILIATION), true)) {
                 attributes.setAffiliation(null);
             }
             builder.transactionAttributes(attributes);
@@ -530,7 +626,7 @@ public class KitConfiguration {
 
     public boolean shouldLogScreen(String screenName) {
         int nameHash = KitUtils.hashForFiltering("0" + screenName);
-        if (mScreenNameFilters.size() > 0 && !mScreenNameFilters.get(nameHash, true)) {
+        if (!mScreenNameFilterMap.get(nameHash, true)) {
             return false;
         }
         return true;
@@ -542,30 +638,47 @@ public class KitConfiguration {
             return false;
         }
         int typeHash = KitUtils.hashForFiltering(event.getEventType().ordinal() + "");
-        return mTypeFilters.get(typeHash, true) && mNameFilters.get(event.getEventHash(), true);
+        return mTypeFilterMap.get(typeHash, true) && mNameFilterMap.get(event.getEventHash(), true);
+    }
+
+    boolean shouldLogEvent(EventForwardingContext context) {
+        if (!shouldIncludeFromAttributeValueFiltering(context)) {
+            return false;
+        }
+        return mTypeFilterMap.get(context.getEventTypeHash(), true) && mNameFilterMap.get(context.getEventHash(), true);
     }
 
     public boolean passesBracketing(int userBucket) {
         return userBucket >= lowBracket && userBucket < highBracket;
     }
 
-    protected SparseBooleanArray convertToSparseArray(JSONObject json) {
-        SparseBooleanArray map = new SparseBooleanArray();
-        for (Iterator<String> iterator = json.keys(); iterator.hasNext(); ) {
-            try {
-                String key = iterator.next();
-                map.put(Integer.parseInt(key), json.getInt(key) == 1);
-            } catch (JSONException jse) {
-                Logger.error("Issue while parsing kit configuration: " + jse.getMessage());
-            }
-        }
-        return map;
+    /**
+     * @return a copy of the filter, for the getters which expose filters as SparseBooleanArrays
+     */
+    private SparseBooleanArray toSparseArray(IntFilterMap filter) {
+        SparseBooleanArray array = createSparseArray();
+        filter.copyTo(array);
+        return array;
+    }
+
+    protected SparseBooleanArray createSparseArray() {
+        return new SparseBooleanArray();
     }
 
     public final List<CustomMapping> getCustomMappingList() {
         return customMappingList;
     }
 
+    /**
+     * @return the custom mappings, indexed so that only those which could match an event are evaluated
+     */
+    public final CustomMappingIndex getCustomMappingIndex() {
+        if (customMappingIndex == null) {
+            customMappingIndex = new CustomMappingIndex(customMappingList);
+        }
+        return customMappingIndex;
+    }
+
     public final CustomMapping getDefaultEventProjection() {
         return defaultCustomMapping;
     }
@@ -583,7 +696,7 @@ public class KitConfiguration {
     }
 
     public SparseBooleanArray getUserIdentityFilters() {
-        return mUserIdentityFilters;
+        return toSparseArray(mUserIdentityFilterMap);
     }
 
     public Map<String, String> getSettings() {
@@ -599,26 +712,31 @@ public class KitConfiguration {
     }
 
     public final boolean shouldSetIdentity(MParticle.IdentityType identityType) {
-        SparseBooleanArray userIdentityFilters = getUserIdentityFilters();
-        return  userIdentityFilters == null ||
-                userIdentityFilters.size() == 0 ||
-                userIdentityFilters.get(identityType.getValue(), true);
+        return mUserIdentityFilterMap.get(identityType.getValue(), true);
     }
 
     public SparseBooleanArray getUserAttributeFilters() {
-        return mUserAttributeFilters;
+        return toSparseArray(mUserAttributeFilterMap);
+    }
+
+    IntFilterMap getUserAttributeFilterMap() {
+        return mUserAttributeFilterMap;
     }
 
     public SparseBooleanArray getCommerceAttributeFilters() {
-        return mCommerceAttributeFilters;
+        return toSparseArray(mCommerceAttributeFilterMap);
     }
 
     public SparseBooleanArray getCommerceEntityFilters() {
-        return mCommerceEntityFilters;
+        return toSparseArray(mCommerceEntityFilterMap);
     }
 
     public Map<Integer, SparseBooleanArray> getCommerceEntityAttributeFilters() {
-        return mCommerceEntityAttributeFilters;
+        Map<Integer, SparseBooleanArray> filters = new HashMap<Integer, SparseBooleanArray>(mCommerceEntityAttributeFilterMaps.size());
+        for (Map.Entry<Integer, IntFilterMap> entry : mCommerceEntityAttributeFilterMaps.entrySet()) {
+            filters.put(entry.getKey(), toSparseArray(entry.getValue()));
+        }
+        return filters;
     }
 
     public boolean isAttributeValueFilteringActive() {
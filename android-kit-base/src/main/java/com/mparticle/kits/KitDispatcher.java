@@ -0,0 +1,152 @@
+package com.mparticle.kits;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.mparticle.internal.Logger;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls each kit on its own serial, bounded executor, so that a slow or misbehaving kit only delays
+ * itself rather than the caller and every other kit.
+ *
+ * Calls to a single kit still run one at a time, in the order they were dispatched. Kits which
+ * implement {@link KitIntegration.MainThreadListener} are instead called on the main thread, inline if
+ * already there. A call can't be interrupted once it has started, so a kit which exceeds the latency
+ * budget is marked slow rather than cancelled.
+ */
+class KitDispatcher {
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+    private final int mQueueCapacity;
+    private final long mLatencyBudgetMillis;
+    private final Map<Integer, KitExecutor> mExecutors = new ConcurrentHashMap<Integer, KitExecutor>();
+    private final Set<Integer> mSlowKits = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private Handler mMainHandler;
+
+    KitDispatcher(int queueCapacity, long latencyBudgetMillis) {
+        mQueueCapacity = queueCapacity;
+        mLatencyBudgetMillis = latencyBudgetMillis;
+    }
+
+    /**
+     * Run a call to a kit, on that kit's thread.
+     *
+     * @param provider   the kit being called
+     * @param methodName the name of the kit method, used when logging
+     * @param call       the call, which should handle its own exceptions
+     */
+    void dispatch(final KitIntegration provider, final String methodName, final Runnable call) {
+        final int kitId = provider.getConfiguration().getKitId();
+        Runnable timedCall = new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    call.run();
+                } catch (Exception e) {
+                    Logger.warning("Failed to call " + methodName + " for kit: " + provider.getName() + ": " + e.getMessage());
+                }
+                onCallCompleted(provider, kitId, methodName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        };
+        if (provider instanceof KitIntegration.MainThreadListener) {
+            if (Looper.getMainLooper() == Looper.myLooper()) {
+                timedCall.run();
+            } else {
+                getMainHandler().post(timedCall);
+            }
+            return;
+        }
+        KitExecutor executor = getExecutor(kitId);
+        try {
+            executor.execute(timedCall);
+        } catch (RejectedExecutionException e) {
+            executor.onRejected(provider, methodName);
+        }
+    }
+
+    /**
+     * @return the Ids of kits which have taken longer than the latency budget to handle a call
+     */
+    Set<Integer> getSlowKits() {
+        return new HashSet<Integer>(mSlowKits);
+    }
+
+    /**
+     * @return the number of calls to a kit which were dropped because its queue was full, or it had
+     * been removed
+     */
+    long getDroppedCount(int kitId) {
+        KitExecutor executor = mExecutors.get(kitId);
+        return executor != null ? executor.mDropped.get() : 0;
+    }
+
+    /**
+     * Stop the executor of a kit which is no longer active. Calls already queued still run.
+     */
+    void removeKit(int kitId) {
+        KitExecutor executor = mExecutors.remove(kitId);
+        if (executor != null) {
+            executor.shutdown();
+        }
+        mSlowKits.remove(kitId);
+    }
+
+    private void onCallCompleted(KitIntegration provider, int kitId, String methodName, long elapsedMillis) {
+        if (elapsedMillis > mLatencyBudgetMillis && mSlowKits.add(kitId)) {
+            Logger.warning("Kit: " + provider.getName() + " took " + elapsedMillis + "ms to handle " + methodName + ", which exceeds the latency budget of " + mLatencyBudgetMillis + "ms");
+        }
+    }
+
+    private synchronized KitExecutor getExecutor(int kitId) {
+        KitExecutor executor = mExecutors.get(kitId);
+        if (executor == null) {
+            executor = new KitExecutor(kitId, mQueueCapacity);
+            mExecutors.put(kitId, executor);
+        }
+        return executor;
+    }
+
+    private synchronized Handler getMainHandler() {
+        if (mMainHandler == null) {
+            mMainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mMainHandler;
+    }
+
+    private static class KitExecutor extends ThreadPoolExecutor {
+        private final AtomicLong mDropped = new AtomicLong();
+
+        KitExecutor(final int kitId, int queueCapacity) {
+            super(1, 1, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "mParticleKit-" + kitId);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new AbortPolicy());
+            allowCoreThreadTimeOut(true);
+        }
+
+        void onRejected(KitIntegration provider, String methodName) {
+            mDropped.incrementAndGet();
+            if (isShutdown()) {
+                Logger.warning("Failed to call " + methodName + " for kit: " + provider.getName() + ": kit is no longer active");
+            } else {
+                Logger.warning("Failed to call " + methodName + " for kit: " + provider.getName() + ": dispatch queue is full");
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.mparticle.kits;
+
+import android.content.Context;
+
+import com.mparticle.internal.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts kits off the main thread, for {@link KitManagerImpl} when parallel kit initialization is
+ * enabled.
+ *
+ * Kit configurations are prepared on a single thread, so that one update finishes before the next
+ * begins. Kits which implement {@link KitIntegration.ThreadSafeInitialization} are then created
+ * concurrently on a bounded pool, while the preparing thread waits for all of them.
+ */
+class KitInitializer {
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+    private final ThreadPoolExecutor mConfigurationExecutor;
+    private final ThreadPoolExecutor mInitializationExecutor;
+
+    KitInitializer(int threads) {
+        mConfigurationExecutor = createExecutor(1, "mParticleKitConfiguration");
+        mInitializationExecutor = createExecutor(threads, "mParticleKitInit");
+    }
+
+    /**
+     * Run a kit configuration update on the configuration thread, after any earlier updates.
+     */
+    void prepare(Runnable update) {
+        mConfigurationExecutor.execute(update);
+    }
+
+    /**
+     * Call {@link KitIntegration#onKitCreate(Map, Context)} for each of the kits concurrently, and wait
+     * for them all to finish.
+     *
+     * @param initTimes the time each kit took to create, in milliseconds, is put here by kit Id
+     * @return the kits which were created successfully
+     */
+    List<KitIntegration> createKits(List<KitIntegration> kits, final Context context, final Map<Integer, Long> initTimes) {
+        List<Future<KitIntegration>> futures = new ArrayList<Future<KitIntegration>>(kits.size());
+        for (final KitIntegration kit : kits) {
+            futures.add(mInitializationExecutor.submit(new Callable<KitIntegration>() {
+                @Override
+                public KitIntegration call() throws Exception {
+                    Logger.debug("Initializing kit: " + kit.getName());
+                    long start = System.nanoTime();
+                    kit.onKitCreate(kit.getConfiguration().getSettings(), context);
+                    initTimes.put(kit.getConfiguration().getKitId(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    return kit;
+                }
+            }));
+        }
+        List<KitIntegration> created = new ArrayList<KitIntegration>(kits.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                created.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                Logger.error("Exception while starting kit: " + kits.get(i).getName() + ": " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Logger.error("Interrupted while starting kit: " + kits.get(i).getName());
+                Thread.currentThread().interrupt();
+            }
+        }
+        return created;
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
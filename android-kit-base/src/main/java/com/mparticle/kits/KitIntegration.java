@@ -524,6 +524,26 @@ public abstract class KitIntegration {
 
     }
 
+    /**
+     * Kits should implement this interface when their underlying SDK must only be called from the main
+     * thread. When kits are called on their own threads, as configured by
+     * {@link com.mparticle.MParticleOptions.Builder#kitDispatch(int, long)}, these kits will continue
+     * to be called on the main thread.
+     */
+    public interface MainThreadListener {
+
+    }
+
+    /**
+     * Kits should implement this interface when {@link #onKitCreate(Map, Context)} may be called from a
+     * background thread, at the same time as other kits are being created. When kits are started in
+     * parallel, as configured by {@link com.mparticle.MParticleOptions.Builder#parallelKitInitialization(int)},
+     * only these kits are started off the main thread.
+     */
+    public interface ThreadSafeInitialization {
+
+    }
+
     public interface IdentityListener {
 
         void onIdentifyCompleted(MParticleUser mParticleUser, FilteredIdentityApiRequest identityApiRequest);
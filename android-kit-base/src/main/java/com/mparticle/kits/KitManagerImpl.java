@@ -31,6 +31,7 @@ import com.mparticle.internal.MPUtility;
 import com.mparticle.internal.PushRegistrationHelper;
 import com.mparticle.internal.ReportingManager;
 import com.mparticle.kits.mappings.CustomMapping;
+import com.mparticle.kits.mappings.CustomMappingIndex;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -49,6 +50,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 
 public class KitManagerImpl implements KitManager, AttributionListener, UserAttributeListener, IdentityStateListener {
@@ -61,12 +64,18 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     private static final String RESERVED_KEY_LTV = "$Amount";
     private static final String METHOD_NAME = "$MethodName";
     private static final String LOG_LTV = "LogLTVIncrease";
+    //how long the kit configuration thread waits for the main thread to publish the new kits before warning
+    private static final long PUBLISH_WARNING_SECONDS = 10;
 
     private Map<Integer, AttributionResult> mAttributionResultsMap = new TreeMap<>();
 
 
-    ConcurrentHashMap<Integer, KitIntegration> providers = new ConcurrentHashMap<Integer, KitIntegration>();
+    volatile ConcurrentHashMap<Integer, KitIntegration> providers = new ConcurrentHashMap<Integer, KitIntegration>();
     private final Context mContext;
+    KitDispatcher mKitDispatcher;
+    KitInitializer mKitInitializer;
+    private final Map<Integer, Long> mKitInitTimes = new ConcurrentHashMap<Integer, Long>();
+    private final Map<Integer, ParsedKitConfiguration> mParsedConfigurations = new ConcurrentHashMap<Integer, ParsedKitConfiguration>();
 
     public KitManagerImpl(Context context, ReportingManager reportingManager, ConfigManager configManager, AppStateManager appStateManager, BackgroundTaskHandler backgroundTaskHandler) {
         mContext = context;
@@ -75,6 +84,12 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         mAppStateManager = appStateManager;
         mBackgroundTaskHandler = backgroundTaskHandler;
         mKitIntegrationFactory = new KitIntegrationFactory();
+        if (configManager.getKitDispatchQueueCapacity() > 0) {
+            mKitDispatcher = new KitDispatcher(configManager.getKitDispatchQueueCapacity(), configManager.getKitDispatchLatencyBudgetMillis());
+        }
+        if (configManager.getKitInitializationThreads() > 0) {
+            mKitInitializer = new KitInitializer(configManager.getKitInitializationThreads());
+        }
         MParticle.getInstance().Identity().addIdentityStateListener(this);
     }
 
@@ -85,6 +100,42 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         return KitConfiguration.createKitConfiguration(configuration);
     }
 
+    /**
+     * Parse a kit's configuration, reusing the previously parsed configuration if the kit's JSON is
+     * unchanged, which it usually is between config refreshes. Serializing the JSON to compare it is
+     * far cheaper than parsing its filters and projections again.
+     */
+    KitConfiguration parseKitConfiguration(JSONObject json) throws JSONException {
+        String content = json.toString();
+        int kitId = json.getInt(KitConfiguration.KEY_ID);
+        ParsedKitConfiguration parsed = mParsedConfigurations.get(kitId);
+        if (parsed != null && parsed.hash == content.hashCode() && parsed.content.equals(content)) {
+            return parsed.configuration;
+        }
+        KitConfiguration configuration = createKitConfiguration(json);
+        mParsedConfigurations.put(kitId, new ParsedKitConfiguration(content, configuration));
+        return configuration;
+    }
+
+    /**
+     * Forget the parsed configurations of kits which are no longer configured.
+     */
+    private void retainParsedConfigurations(Set<Integer> configuredIds) {
+        mParsedConfigurations.keySet().retainAll(configuredIds);
+    }
+
+    private static class ParsedKitConfiguration {
+        final String content;
+        final int hash;
+        final KitConfiguration configuration;
+
+        ParsedKitConfiguration(String content, KitConfiguration configuration) {
+            this.content = content;
+            this.hash = content.hashCode();
+            this.configuration = configuration;
+        }
+    }
+
     public void setKitFactory(KitIntegrationFactory kitIntegrationFactory) {
         mKitIntegrationFactory = kitIntegrationFactory;
     }
@@ -105,6 +156,21 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         return !mConfigManager.isEnabled();
     }
 
+    boolean isDispatchingToKitThreads() {
+        return mKitDispatcher != null;
+    }
+
+    /**
+     * Call a kit, either on its own thread if kit dispatch is enabled, or immediately on this one.
+     */
+    private void dispatch(KitIntegration provider, String methodName, Runnable call) {
+        if (mKitDispatcher != null) {
+            mKitDispatcher.dispatch(provider, methodName, call);
+        } else {
+            call.run();
+        }
+    }
+
     void setIntegrationAttributes(KitIntegration kitIntegration, Map<String, String> integrationAttributes) {
         mConfigManager.setIntegrationAttributes(kitIntegration.getConfiguration().getKitId(), integrationAttributes);
     }
@@ -135,7 +201,14 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
 
     @Override
     public void updateKits(final JSONArray kitConfigs) {
-        if (Looper.getMainLooper() != Looper.myLooper()) {
+        if (mKitInitializer != null) {
+            mKitInitializer.prepare(new Runnable() {
+                @Override
+                public void run() {
+                    prepareKits(kitConfigs);
+                }
+            });
+        } else if (Looper.getMainLooper() != Looper.myLooper()) {
             Runnable runnable = new UpdateKitRunnable(kitConfigs);
             new Handler(Looper.getMainLooper()).post(runnable);
         } else {
@@ -151,13 +224,15 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     void configureKits(JSONArray kitConfigs) {
         MParticleUser user = MParticle.getInstance().Identity().getCurrentUser();
         HashSet<Integer> activeIds = new HashSet<Integer>();
+        HashSet<Integer> configuredIds = new HashSet<Integer>();
 
         if (kitConfigs != null) {
             for (int i = 0; i < kitConfigs.length(); i++) {
                 try {
                     JSONObject current = kitConfigs.getJSONObject(i);
-                    KitConfiguration configuration = createKitConfiguration(current);
+                    KitConfiguration configuration = parseKitConfiguration(current);
                     int currentModuleID = configuration.getKitId();
+                    configuredIds.add(currentModuleID);
                     if (!mKitIntegrationFactory.isSupported(configuration.getKitId())) {
                         Logger.debug("Kit id configured but is not bundled: " + currentModuleID);
                         continue;
@@ -174,42 +249,218 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
                         initializeKit(activeKit);
                         providers.put(currentModuleID, activeKit);
                     } else {
-                        activeKit.setConfiguration(configuration);
+                        boolean changed = activeKit.getConfiguration() != configuration;
+                        if (changed) {
+                            activeKit.setConfiguration(configuration);
+                        }
                         if (activeKit.isDisabled() ||
                                 !configuration.shouldIncludeFromConsentRules(user)) {
                             continue;
                         }
                         activeIds.add(currentModuleID);
-                        activeKit.onSettingsUpdated(configuration.getSettings());
+                        if (changed) {
+                            activeKit.onSettingsUpdated(configuration.getSettings());
+                        }
                     }
                 } catch (Exception e) {
                     Logger.error("Exception while starting kit: " + e.getMessage());
                 }
             }
         }
+        retainParsedConfigurations(configuredIds);
 
         Iterator<Integer> ids = providers.keySet().iterator();
         while (ids.hasNext()) {
             Integer id = ids.next();
             if (!activeIds.contains(id)) {
-                KitIntegration integration = providers.get(id);
-                if (integration != null) {
-                    Logger.debug("De-initializing kit: " + integration.getName());
-                    clearIntegrationAttributes(integration);
-                    integration.onKitDestroy();
-                    integration.onKitCleanup();
-                }
+                deactivateKit(id, providers.get(id));
                 ids.remove();
-                Intent intent = new Intent(MParticle.ServiceProviders.BROADCAST_DISABLED + id);
-                getContext().sendBroadcast(intent);
             }
         }
         MParticle.getInstance().getKitManager().replayAndDisableQueue();
     }
 
+    /**
+     * The parallel version of {@link #configureKits(JSONArray)}, which runs on the kit configuration
+     * thread. Configurations are parsed and new kits are created here, with the kits which implement
+     * {@link KitIntegration.ThreadSafeInitialization} started concurrently. The main thread then
+     * starts the remaining kits and publishes the new set of kits, while this thread waits for it.
+     */
+    void prepareKits(JSONArray kitConfigs) {
+        long start = System.nanoTime();
+        MParticleUser user = MParticle.getInstance().Identity().getCurrentUser();
+        final List<KitConfiguration> configurations = new ArrayList<KitConfiguration>();
+        final Map<Integer, KitIntegration> newKits = new HashMap<Integer, KitIntegration>();
+        List<KitIntegration> threadSafeKits = new ArrayList<KitIntegration>();
+        Set<Integer> configuredIds = new HashSet<Integer>();
+        if (kitConfigs != null) {
+            for (int i = 0; i < kitConfigs.length(); i++) {
+                try {
+                    KitConfiguration configuration = parseKitConfiguration(kitConfigs.getJSONObject(i));
+                    int currentModuleID = configuration.getKitId();
+                    configuredIds.add(currentModuleID);
+                    if (!mKitIntegrationFactory.isSupported(currentModuleID)) {
+                        Logger.debug("Kit id configured but is not bundled: " + currentModuleID);
+                        continue;
+                    }
+                    configurations.add(configuration);
+                    if (providers.containsKey(currentModuleID) || newKits.containsKey(currentModuleID)) {
+                        continue;
+                    }
+                    KitIntegration kit = mKitIntegrationFactory.createInstance(KitManagerImpl.this, configuration);
+                    if (kit.isDisabled() ||
+                            !configuration.shouldIncludeFromConsentRules(user)) {
+                        Logger.debug("Kit id configured but is filtered or disabled: " + currentModuleID);
+                        continue;
+                    }
+                    newKits.put(currentModuleID, kit);
+                    if (kit instanceof KitIntegration.ThreadSafeInitialization) {
+                        threadSafeKits.add(kit);
+                    }
+                } catch (Exception e) {
+                    Logger.error("Exception while starting kit: " + e.getMessage());
+                }
+            }
+        }
+        retainParsedConfigurations(configuredIds);
+        final Set<KitIntegration> createdKits = new HashSet<KitIntegration>(mKitInitializer.createKits(threadSafeKits, getContext(), mKitInitTimes));
+        for (KitIntegration kit : threadSafeKits) {
+            if (!createdKits.contains(kit)) {
+                newKits.remove(kit.getConfiguration().getKitId());
+            }
+        }
+        final CountDownLatch published = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    publishKits(configurations, newKits, createdKits);
+                } finally {
+                    published.countDown();
+                }
+            }
+        });
+        //keep waiting however long it takes, so the next configuration can't be applied while these kits are still pending
+        boolean warned = false;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (published.await(PUBLISH_WARNING_SECONDS, TimeUnit.SECONDS)) {
+                    break;
+                }
+                if (!warned) {
+                    Logger.warning("Still waiting after " + PUBLISH_WARNING_SECONDS + "s for the main thread to publish the configured kits.");
+                    warned = true;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        StringBuilder report = new StringBuilder();
+        for (KitIntegration kit : newKits.values()) {
+            Long initTime = mKitInitTimes.get(kit.getConfiguration().getKitId());
+            if (initTime != null) {
+                report.append(report.length() == 0 ? "" : ", ").append(kit.getName()).append(": ").append(initTime).append("ms");
+            }
+        }
+        Logger.debug("Kit configuration applied in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms" +
+                (report.length() > 0 ? ", kits started in " + report : ""));
+    }
+
+    /**
+     * Start the new kits which aren't thread safe, and replace the active kits with the newly
+     * configured set in a single step.
+     * <p>
+     * Note: This method is meant to always be run on the main thread
+     *
+     * @param createdKits the new kits which have already been created off the main thread
+     */
+    private void publishKits(List<KitConfiguration> configurations, Map<Integer, KitIntegration> newKits, Set<KitIntegration> createdKits) {
+        MParticleUser user = MParticle.getInstance().Identity().getCurrentUser();
+        ConcurrentHashMap<Integer, KitIntegration> activeKits = new ConcurrentHashMap<Integer, KitIntegration>();
+        for (KitConfiguration configuration : configurations) {
+            int currentModuleID = configuration.getKitId();
+            if (activeKits.containsKey(currentModuleID)) {
+                continue;
+            }
+            try {
+                KitIntegration activeKit = newKits.get(currentModuleID);
+                if (activeKit != null) {
+                    if (createdKits.contains(activeKit)) {
+                        onKitCreated(activeKit);
+                    } else {
+                        initializeKit(activeKit);
+                    }
+                    activeKits.put(currentModuleID, activeKit);
+                } else {
+                    activeKit = providers.get(currentModuleID);
+                    if (activeKit == null) {
+                        continue;
+                    }
+                    boolean changed = activeKit.getConfiguration() != configuration;
+                    if (changed) {
+                        activeKit.setConfiguration(configuration);
+                    }
+                    if (activeKit.isDisabled() ||
+                            !configuration.shouldIncludeFromConsentRules(user)) {
+                        continue;
+                    }
+                    if (changed) {
+                        activeKit.onSettingsUpdated(configuration.getSettings());
+                    }
+                    activeKits.put(currentModuleID, activeKit);
+                }
+            } catch (Exception e) {
+                Logger.error("Exception while starting kit: " + e.getMessage());
+            }
+        }
+        ConcurrentHashMap<Integer, KitIntegration> previousKits = providers;
+        providers = activeKits;
+        for (Map.Entry<Integer, KitIntegration> entry : previousKits.entrySet()) {
+            if (!activeKits.containsKey(entry.getKey())) {
+                deactivateKit(entry.getKey(), entry.getValue());
+            }
+        }
+        MParticle.getInstance().getKitManager().replayAndDisableQueue();
+    }
+
+    private void deactivateKit(Integer id, KitIntegration integration) {
+        if (integration != null) {
+            Logger.debug("De-initializing kit: " + integration.getName());
+            clearIntegrationAttributes(integration);
+            integration.onKitDestroy();
+            integration.onKitCleanup();
+        }
+        if (mKitDispatcher != null) {
+            mKitDispatcher.removeKit(id);
+        }
+        Intent intent = new Intent(MParticle.ServiceProviders.BROADCAST_DISABLED + id);
+        getContext().sendBroadcast(intent);
+    }
+
+    /**
+     * @return the time each kit took to create, in milliseconds, by kit Id
+     */
+    Map<Integer, Long> getKitInitTimes() {
+        return new HashMap<Integer, Long>(mKitInitTimes);
+    }
+
     private void initializeKit(KitIntegration activeKit) {
         Logger.debug("Initializing kit: " + activeKit.getName());
+        long start = System.nanoTime();
         activeKit.onKitCreate(activeKit.getConfiguration().getSettings(), getContext());
+        mKitInitTimes.put(activeKit.getConfiguration().getKitId(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        onKitCreated(activeKit);
+    }
+
+    /**
+     * The rest of starting a kit once {@link KitIntegration#onKitCreate(Map, Context)} has returned,
+     * which always runs on the main thread.
+     */
+    private void onKitCreated(KitIntegration activeKit) {
         if (activeKit instanceof KitIntegration.ActivityListener) {
             WeakReference<Activity> activityWeakReference = getCurrentActivity();
             if (activityWeakReference != null) {
@@ -280,6 +531,14 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         return provider != null && !provider.isDisabled();
     }
 
+    @Override
+    public Set<Integer> getSlowKits() {
+        if (mKitDispatcher != null) {
+            return mKitDispatcher.getSlowKits();
+        }
+        return new HashSet<Integer>();
+    }
+
     @Override
     public Object getKitInstance(int kitId) {
         KitIntegration kit = providers.get(kitId);
@@ -321,8 +580,8 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     public Uri getSurveyUrl(int serviceId, Map<String, String> userAttributes, Map<String, List<String>> userAttributeLists) {
         KitIntegration provider = providers.get(serviceId);
         if (provider != null) {
-            return provider.getSurveyUrl((Map<String, String>) provider.getConfiguration().filterAttributes(provider.getConfiguration().getUserAttributeFilters(), userAttributes),
-                    (Map<String, List<String>>) provider.getConfiguration().filterAttributes(provider.getConfiguration().getUserAttributeFilters(), userAttributeLists));
+            return provider.getSurveyUrl((Map<String, String>) provider.getConfiguration().filterAttributes(provider.getConfiguration().getUserAttributeFilterMap(), userAttributes),
+                    (Map<String, List<String>>) provider.getConfiguration().filterAttributes(provider.getConfiguration().getUserAttributeFilterMap(), userAttributeLists));
         } else {
             return null;
         }
@@ -352,76 +611,93 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     //================================================================================
 
     @Override
-    public void logCommerceEvent(CommerceEvent event) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (!provider.isDisabled()) {
-                    CommerceEvent filteredEvent = provider.getConfiguration().filterCommerceEvent(event);
-                    if (filteredEvent != null) {
-                        if (provider instanceof KitIntegration.CommerceListener) {
-                            List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
-                                    filteredEvent,
-                                    provider.getConfiguration().getCustomMappingList(),
-                                    provider.getConfiguration().getDefaultCommerceCustomMapping()
-                            );
-                            if (projectedEvents != null && projectedEvents.size() > 0) {
-                                ReportingMessage masterMessage = ReportingMessage.fromEvent(provider, filteredEvent);
-                                boolean forwarded = false;
-                                for (int i = 0; i < projectedEvents.size(); i++) {
-                                    CustomMapping.ProjectionResult result = projectedEvents.get(i);
-                                    List<ReportingMessage> report = null;
-                                    String messageType = null;
-                                    if (result.getMPEvent() != null) {
-                                        report = ((KitIntegration.EventListener) provider).logEvent(projectedEvents.get(i).getMPEvent());
-                                        messageType = ReportingMessage.MessageType.EVENT;
+    public void logCommerceEvent(CommerceEvent commerceEvent) {
+        final CommerceEvent event = isDispatchingToKitThreads() ? new CommerceEvent.Builder(commerceEvent).build() : commerceEvent;
+        final CommerceEventExpansion expansion = new CommerceEventExpansion(event);
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "logCommerceEvent", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!provider.isDisabled()) {
+                            if (!(provider instanceof KitIntegration.CommerceListener) && !provider.getConfiguration().filtersCommerceEventContents()) {
+                                //filtering would only copy the event, so share its expansion instead
+                                if (provider instanceof KitIntegration.EventListener && provider.getConfiguration().shouldLogCommerceEvent(event)) {
+                                    logExpandedCommerceEvent(provider, event, expansion.expand());
+                                }
+                                return;
+                            }
+                            CommerceEvent filteredEvent = provider.getConfiguration().filterCommerceEvent(event);
+                            if (filteredEvent != null) {
+                                if (provider instanceof KitIntegration.CommerceListener) {
+                                    List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
+                                            filteredEvent,
+                                            provider.getConfiguration().getCustomMappingIndex(),
+                                            provider.getConfiguration().getDefaultCommerceCustomMapping()
+                                    );
+                                    if (projectedEvents != null && projectedEvents.size() > 0) {
+                                        ReportingMessage masterMessage = ReportingMessage.fromEvent(provider, filteredEvent);
+                                        boolean forwarded = false;
+                                        for (int i = 0; i < projectedEvents.size(); i++) {
+                                            CustomMapping.ProjectionResult result = projectedEvents.get(i);
+                                            List<ReportingMessage> report = null;
+                                            String messageType = null;
+                                            if (result.getMPEvent() != null) {
+                                                report = ((KitIntegration.EventListener) provider).logEvent(projectedEvents.get(i).getMPEvent());
+                                                messageType = ReportingMessage.MessageType.EVENT;
+                                            } else {
+                                                report = ((KitIntegration.CommerceListener) provider).logEvent(projectedEvents.get(i).getCommerceEvent());
+                                                messageType = ReportingMessage.MessageType.COMMERCE_EVENT;
+                                            }
+                                            if (report != null && report.size() > 0) {
+                                                forwarded = true;
+                                                for (ReportingMessage message : report) {
+                                                    masterMessage.addProjectionReport(
+                                                            new ReportingMessage.ProjectionReport(projectedEvents.get(i).getProjectionId(),
+                                                                    messageType,
+                                                                    message.getEventName(),
+                                                                    message.getEventTypeString())
+                                                    );
+                                                }
+                                            }
+                                        }
+                                        if (forwarded) {
+                                            getReportingManager().log(masterMessage);
+                                        }
                                     } else {
-                                        report = ((KitIntegration.CommerceListener) provider).logEvent(projectedEvents.get(i).getCommerceEvent());
-                                        messageType = ReportingMessage.MessageType.COMMERCE_EVENT;
-                                    }
-                                    if (report != null && report.size() > 0) {
-                                        forwarded = true;
-                                        for (ReportingMessage message : report) {
-                                            masterMessage.addProjectionReport(
-                                                    new ReportingMessage.ProjectionReport(projectedEvents.get(i).getProjectionId(),
-                                                            messageType,
-                                                            message.getEventName(),
-                                                            message.getEventTypeString())
+                                        List<ReportingMessage> reporting = ((KitIntegration.CommerceListener) provider).logEvent(filteredEvent);
+                                        if (reporting != null && reporting.size() > 0) {
+                                            getReportingManager().log(
+                                                    ReportingMessage.fromEvent(provider, filteredEvent)
                                             );
                                         }
                                     }
-                                }
-                                if (forwarded) {
-                                    getReportingManager().log(masterMessage);
-                                }
-                            } else {
-                                List<ReportingMessage> reporting = ((KitIntegration.CommerceListener) provider).logEvent(filteredEvent);
-                                if (reporting != null && reporting.size() > 0) {
-                                    getReportingManager().log(
-                                            ReportingMessage.fromEvent(provider, filteredEvent)
-                                    );
+                                } else if (provider instanceof KitIntegration.EventListener) {
+                                    logExpandedCommerceEvent(provider, filteredEvent, CommerceEventUtils.expand(filteredEvent));
                                 }
                             }
-                        } else if (provider instanceof KitIntegration.EventListener) {
-                            List<MPEvent> events = CommerceEventUtils.expand(filteredEvent);
-                            boolean forwarded = false;
-                            if (events != null) {
-                                for (int i = 0; i < events.size(); i++) {
-                                    List<ReportingMessage> reporting = ((KitIntegration.EventListener) provider).logEvent(events.get(i));
-                                    forwarded = forwarded || (reporting != null && reporting.size() > 0);
-                                }
-                            }
-                            if (forwarded) {
-                                getReportingManager().log(
-                                        ReportingMessage.fromEvent(provider, filteredEvent)
-                                );
-                            }
                         }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call logCommerceEvent for kit: " + provider.getName() + ": " + e.getMessage());
                     }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logCommerceEvent for kit: " + provider.getName() + ": " + e.getMessage());
+            });
+        }
+    }
+
+    private void logExpandedCommerceEvent(KitIntegration provider, CommerceEvent event, List<MPEvent> events) {
+        boolean forwarded = false;
+        if (events != null) {
+            for (int i = 0; i < events.size(); i++) {
+                List<ReportingMessage> reporting = ((KitIntegration.EventListener) provider).logEvent(events.get(i));
+                forwarded = forwarded || (reporting != null && reporting.size() > 0);
             }
         }
+        if (forwarded) {
+            getReportingManager().log(
+                    ReportingMessage.fromEvent(provider, event)
+            );
+        }
     }
 
     //================================================================================
@@ -476,9 +752,9 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
             try {
                 if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
                         && !provider.isDisabled()) {
-                    Map<String, String> filteredAttributeSingles = (Map<String, String>) KitConfiguration.filterAttributes(provider.getConfiguration().getUserAttributeFilters(),
+                    Map<String, String> filteredAttributeSingles = (Map<String, String>) KitConfiguration.filterAttributes(provider.getConfiguration().getUserAttributeFilterMap(),
                             userAttributes);
-                    Map<String, List<String>> filteredAttributeLists = (Map<String, List<String>>) KitConfiguration.filterAttributes(provider.getConfiguration().getUserAttributeFilters(),
+                    Map<String, List<String>> filteredAttributeLists = (Map<String, List<String>>) KitConfiguration.filterAttributes(provider.getConfiguration().getUserAttributeFilterMap(),
                             userAttributeLists);
                     if (provider instanceof KitIntegration.AttributeListener) {
                         if (((KitIntegration.AttributeListener) provider).supportsAttributeLists()) {
@@ -524,31 +800,42 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void setUserAttribute(String attributeKey, String attributeValue, long mpid) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                setUserAttribute(provider, attributeKey, attributeValue, mpid);
-            } catch (Exception e) {
-                Logger.warning("Failed to call setUserAttributes/onSetUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+    public void setUserAttribute(final String attributeKey, final String attributeValue, final long mpid) {
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "setUserAttribute", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        setUserAttribute(provider, attributeKey, attributeValue, mpid);
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call setUserAttributes/onSetUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
+                }
+            });
         }
     }
 
     @Override
-    public void setUserAttributeList(String attributeKey, List<String> valuesList, long mpid) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                setUserAttribute(provider, attributeKey, valuesList, mpid);
-            } catch (Exception e) {
-                Logger.warning("Failed to call setUserAttributes/onSetUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+    public void setUserAttributeList(final String attributeKey, List<String> attributeValues, final long mpid) {
+        final List<String> valuesList = isDispatchingToKitThreads() && attributeValues != null ? new ArrayList<String>(attributeValues) : attributeValues;
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "setUserAttributeList", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        setUserAttribute(provider, attributeKey, valuesList, mpid);
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call setUserAttributes/onSetUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
+                }
+            });
         }
     }
 
     private void setUserAttribute(KitIntegration provider, String attributeKey, List<String> valueList, long mpid) {
         if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
                 && !provider.isDisabled()
-                && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), attributeKey)) {
+                && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilterMap(), attributeKey)) {
             if (provider instanceof KitIntegration.AttributeListener) {
                 if (((KitIntegration.AttributeListener) provider).supportsAttributeLists()) {
                     ((KitIntegration.AttributeListener) provider).setUserAttributeList(attributeKey, valueList);
@@ -569,7 +856,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     private void setUserAttribute(KitIntegration provider, String attributeKey, String attributeValue, long mpid) {
         if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
                 && !provider.isDisabled()
-                && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(),
+                && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilterMap(),
                 attributeKey)) {
             if (provider instanceof KitIntegration.AttributeListener) {
                 ((KitIntegration.AttributeListener) provider).setUserAttribute(attributeKey, attributeValue);
@@ -581,22 +868,27 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void removeUserAttribute(String key, long mpid) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
-                        && !provider.isDisabled()
-                        && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), key)) {
-                    if (provider instanceof KitIntegration.AttributeListener) {
-                        ((KitIntegration.AttributeListener) provider).removeUserAttribute(key);
-                    }
-                    if (provider instanceof KitIntegration.UserAttributeListener) {
-                        ((KitIntegration.UserAttributeListener) provider).onRemoveUserAttribute(key, FilteredMParticleUser.getInstance(mpid, provider));
+    public void removeUserAttribute(final String key, final long mpid) {
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "removeUserAttribute", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if ((provider instanceof KitIntegration.AttributeListener || provider instanceof KitIntegration.UserAttributeListener)
+                                && !provider.isDisabled()
+                                && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilterMap(), key)) {
+                            if (provider instanceof KitIntegration.AttributeListener) {
+                                ((KitIntegration.AttributeListener) provider).removeUserAttribute(key);
+                            }
+                            if (provider instanceof KitIntegration.UserAttributeListener) {
+                                ((KitIntegration.UserAttributeListener) provider).onRemoveUserAttribute(key, FilteredMParticleUser.getInstance(mpid, provider));
+                            }
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call removeUserAttribute/onRemoveUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
                     }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call removeUserAttribute/onRemoveUserAttribute for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
@@ -605,7 +897,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         for (KitIntegration provider : providers.values()) {
             try {
                 if (provider instanceof KitIntegration.UserAttributeListener && !provider.isDisabled()
-                        && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), key)) {
+                        && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilterMap(), key)) {
                     ((KitIntegration.UserAttributeListener) provider).onIncrementUserAttribute(key, value, FilteredMParticleUser.getInstance(mpid, provider));
                 }
             } catch (Exception e) {
@@ -619,7 +911,7 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
         for (KitIntegration provider : providers.values()) {
             try {
                 if (provider instanceof KitIntegration.UserAttributeListener && !provider.isDisabled()
-                        && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilters(), tag)) {
+                        && KitConfiguration.shouldForwardAttribute(provider.getConfiguration().getUserAttributeFilterMap(), tag)) {
                     ((KitIntegration.UserAttributeListener) provider).onSetUserTag(tag, FilteredMParticleUser.getInstance(mpid, provider));
                 }
             } catch (Exception e) {
@@ -682,64 +974,77 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void logEvent(MPEvent event) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogEvent(event)) {
-                    MPEvent eventCopy = new MPEvent(event);
-                    eventCopy.setInfo(
-                            provider.getConfiguration().filterEventAttributes(eventCopy)
-                    );
-                    List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
-                            eventCopy,
-                            provider.getConfiguration().getCustomMappingList(),
-                            provider.getConfiguration().getDefaultEventProjection()
-                    );
-                    List<ReportingMessage> reportingMessages = new LinkedList<ReportingMessage>();
-                    if (projectedEvents == null) {
-                        List<ReportingMessage> messages = null;
-                        if (eventCopy.getInfo() != null
-                                && eventCopy.getInfo().containsKey(METHOD_NAME)
-                                && eventCopy.getInfo().get(METHOD_NAME).equals(LOG_LTV)) {
-                            messages = ((KitIntegration.CommerceListener) provider).logLtvIncrease(
-                                    new BigDecimal(eventCopy.getInfo().get(RESERVED_KEY_LTV)),
-                                    new BigDecimal(eventCopy.getInfo().get(RESERVED_KEY_LTV)),
-                                    eventCopy.getEventName(),
-                                    eventCopy.getInfo());
-                        } else {
-                            messages = ((KitIntegration.EventListener) provider).logEvent(eventCopy);
-                        }
-                        if (messages != null && messages.size() > 0) {
-                            reportingMessages.addAll(messages);
-                        }
-                    } else {
-                        ReportingMessage masterMessage = ReportingMessage.fromEvent(provider, eventCopy);
-                        boolean forwarded = false;
-                        for (int i = 0; i < projectedEvents.size(); i++) {
-                            List<ReportingMessage> messages = ((KitIntegration.EventListener) provider).logEvent(projectedEvents.get(i).getMPEvent());
-                            if (messages != null && messages.size() > 0) {
-                                forwarded = true;
-                                for (ReportingMessage message : messages) {
-                                    ReportingMessage.ProjectionReport report = new ReportingMessage.ProjectionReport(
-                                            projectedEvents.get(i).getProjectionId(),
-                                            ReportingMessage.MessageType.EVENT,
-                                            message.getEventName(),
-                                            message.getEventTypeString()
-                                    );
-                                    masterMessage.addProjectionReport(report);
+    public void logEvent(MPEvent mpEvent) {
+        //kits are given views of this copy's attributes, so it's the only copy made of them
+        final MPEvent event = new MPEvent(mpEvent);
+        //event and attribute hashes are the same for every kit, so compute them once
+        final EventForwardingContext context = new EventForwardingContext(event);
+        if (isDispatchingToKitThreads()) {
+            context.computeAll();
+        }
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "logEvent", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogEvent(context)) {
+                            MPEvent eventCopy = context.copyEvent(
+                                    provider.getConfiguration().filterEventAttributes(context)
+                            );
+                            CustomMappingIndex customMappingIndex = provider.getConfiguration().getCustomMappingIndex();
+                            List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
+                                    eventCopy,
+                                    customMappingIndex.isEmpty() ? null : context.getAttributeHashMap(),
+                                    customMappingIndex,
+                                    provider.getConfiguration().getDefaultEventProjection()
+                            );
+                            List<ReportingMessage> reportingMessages = new LinkedList<ReportingMessage>();
+                            if (projectedEvents == null) {
+                                List<ReportingMessage> messages = null;
+                                if (eventCopy.getInfo() != null
+                                        && eventCopy.getInfo().containsKey(METHOD_NAME)
+                                        && eventCopy.getInfo().get(METHOD_NAME).equals(LOG_LTV)) {
+                                    messages = ((KitIntegration.CommerceListener) provider).logLtvIncrease(
+                                            new BigDecimal(eventCopy.getInfo().get(RESERVED_KEY_LTV)),
+                                            new BigDecimal(eventCopy.getInfo().get(RESERVED_KEY_LTV)),
+                                            eventCopy.getEventName(),
+                                            eventCopy.getInfo());
+                                } else {
+                                    messages = ((KitIntegration.EventListener) provider).logEvent(eventCopy);
                                 }
+                                if (messages != null && messages.size() > 0) {
+                                    reportingMessages.addAll(messages);
+                                }
+                            } else {
+                                ReportingMessage masterMessage = ReportingMessage.fromEvent(provider, eventCopy);
+                                boolean forwarded = false;
+                                for (int i = 0; i < projectedEvents.size(); i++) {
+                                    List<ReportingMessage> messages = ((KitIntegration.EventListener) provider).logEvent(projectedEvents.get(i).getMPEvent());
+                                    if (messages != null && messages.size() > 0) {
+                                        forwarded = true;
+                                        for (ReportingMessage message : messages) {
+                                            ReportingMessage.ProjectionReport report = new ReportingMessage.ProjectionReport(
+                                                    projectedEvents.get(i).getProjectionId(),
+                                                    ReportingMessage.MessageType.EVENT,
+                                                    message.getEventName(),
+                                                    message.getEventTypeString()
+                                            );
+                                            masterMessage.addProjectionReport(report);
+                                        }
 
+                                    }
+                                }
+                                if (forwarded) {
+                                    reportingMessages.add(masterMessage);
+                                }
                             }
+                            getReportingManager().logAll(reportingMessages);
                         }
-                        if (forwarded) {
-                            reportingMessages.add(masterMessage);
-                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call logEvent for kit: " + provider.getName() + ": " + e.getMessage());
                     }
-                    getReportingManager().logAll(reportingMessages);
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logEvent for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
@@ -786,58 +1091,64 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void logScreen(MPEvent screenEvent) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogScreen(screenEvent.getEventName())) {
-                    MPEvent filteredEvent = new MPEvent.Builder(screenEvent)
-                            .info(provider.getConfiguration().filterScreenAttributes(null, screenEvent.getEventName(), screenEvent.getInfo()))
-                            .build();
-
-                    List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
-                            filteredEvent,
-                            true,
-                            provider.getConfiguration().getCustomMappingList(),
-                            provider.getConfiguration().getDefaultEventProjection(),
-                            provider.getConfiguration().getDefaultScreenCustomMapping());
-                    if (projectedEvents == null) {
-                        List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logScreen(filteredEvent.getEventName(), filteredEvent.getInfo());
-                        if (report != null && report.size() > 0) {
-                            for (ReportingMessage message : report) {
-                                message.setMessageType(ReportingMessage.MessageType.SCREEN_VIEW);
-                                message.setScreenName(filteredEvent.getEventName());
-                            }
-                        }
-                        getReportingManager().logAll(report);
-                    } else {
-                        ReportingMessage masterMessage = new ReportingMessage(provider,
-                                ReportingMessage.MessageType.SCREEN_VIEW,
-                                System.currentTimeMillis(),
-                                filteredEvent.getInfo());
-                        boolean forwarded = false;
-                        for (int i = 0; i < projectedEvents.size(); i++) {
-                            List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logEvent(projectedEvents.get(i).getMPEvent());
-                            if (report != null && report.size() > 0) {
-                                forwarded = true;
-                                for (ReportingMessage message : report) {
-                                    ReportingMessage.ProjectionReport projectionReport = new ReportingMessage.ProjectionReport(
-                                            projectedEvents.get(i).getProjectionId(),
-                                            ReportingMessage.MessageType.EVENT,
-                                            message.getEventName(),
-                                            message.getEventTypeString()
-                                    );
-                                    masterMessage.addProjectionReport(projectionReport);
+    public void logScreen(MPEvent mpEvent) {
+        final MPEvent screenEvent = isDispatchingToKitThreads() ? new MPEvent(mpEvent) : mpEvent;
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "logScreen", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.EventListener && !provider.isDisabled() && provider.getConfiguration().shouldLogScreen(screenEvent.getEventName())) {
+                            MPEvent filteredEvent = new MPEvent.Builder(screenEvent)
+                                    .info(provider.getConfiguration().filterScreenAttributes(null, screenEvent.getEventName(), screenEvent.getInfo()))
+                                    .build();
+
+                            List<CustomMapping.ProjectionResult> projectedEvents = CustomMapping.projectEvents(
+                                    filteredEvent,
+                                    true,
+                                    provider.getConfiguration().getCustomMappingIndex(),
+                                    provider.getConfiguration().getDefaultEventProjection(),
+                                    provider.getConfiguration().getDefaultScreenCustomMapping());
+                            if (projectedEvents == null) {
+                                List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logScreen(filteredEvent.getEventName(), filteredEvent.getInfo());
+                                if (report != null && report.size() > 0) {
+                                    for (ReportingMessage message : report) {
+                                        message.setMessageType(ReportingMessage.MessageType.SCREEN_VIEW);
+                                        message.setScreenName(filteredEvent.getEventName());
+                                    }
+                                }
+                                getReportingManager().logAll(report);
+                            } else {
+                                ReportingMessage masterMessage = new ReportingMessage(provider,
+                                        ReportingMessage.MessageType.SCREEN_VIEW,
+                                        System.currentTimeMillis(),
+                                        filteredEvent.getInfo());
+                                boolean forwarded = false;
+                                for (int i = 0; i < projectedEvents.size(); i++) {
+                                    List<ReportingMessage> report = ((KitIntegration.EventListener) provider).logEvent(projectedEvents.get(i).getMPEvent());
+                                    if (report != null && report.size() > 0) {
+                                        forwarded = true;
+                                        for (ReportingMessage message : report) {
+                                            ReportingMessage.ProjectionReport projectionReport = new ReportingMessage.ProjectionReport(
+                                                    projectedEvents.get(i).getProjectionId(),
+                                                    ReportingMessage.MessageType.EVENT,
+                                                    message.getEventName(),
+                                                    message.getEventTypeString()
+                                            );
+                                            masterMessage.addProjectionReport(projectionReport);
+                                        }
+                                    }
+                                }
+                                if (forwarded) {
+                                    getReportingManager().log(masterMessage);
                                 }
                             }
                         }
-                        if (forwarded) {
-                            getReportingManager().log(masterMessage);
-                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call logScreen for kit: " + provider.getName() + ": " + e.getMessage());
                     }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call logScreen for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
@@ -846,75 +1157,103 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     //================================================================================
 
     @Override
-    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityCreated(activity, savedInstanceState);
-                    getReportingManager().logAll(reportingMessages);
+    public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onActivityCreated", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
+                            List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityCreated(activity, savedInstanceState);
+                            getReportingManager().logAll(reportingMessages);
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onActivityCreated for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onActivityCreated for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
     @Override
-    public void onActivityStarted(Activity activity) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityStarted(activity);
-                    getReportingManager().logAll(reportingMessages);
+    public void onActivityStarted(final Activity activity) {
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onActivityStarted", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
+                            List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityStarted(activity);
+                            getReportingManager().logAll(reportingMessages);
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onActivityStarted for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onActivityStarted for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
     @Override
-    public void onActivityResumed(Activity activity) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityResumed(activity);
-                    getReportingManager().logAll(reportingMessages);
+    public void onActivityResumed(final Activity activity) {
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onActivityResumed", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
+                            List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityResumed(activity);
+                            getReportingManager().logAll(reportingMessages);
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onActivityResumed for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onActivityResumed for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
     @Override
-    public void onActivityPaused(Activity activity) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityPaused(activity);
-                    getReportingManager().logAll(reportingMessages);
+    public void onActivityPaused(final Activity activity) {
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onActivityPaused", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
+                            List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityPaused(activity);
+                            getReportingManager().logAll(reportingMessages);
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onResume for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onResume for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
     @Override
-    public void onActivityStopped(Activity activity) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityStopped(activity);
-                    getReportingManager().logAll(reportingMessages);
+    public void onActivityStopped(final Activity activity) {
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onActivityStopped", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
+                            List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityStopped(activity);
+                            getReportingManager().logAll(reportingMessages);
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onActivityStopped for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onActivityStopped for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
+    /**
+     * Always called synchronously, since kits must write to outState before the Activity is stopped.
+     */
     @Override
     public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
         for (KitIntegration provider : providers.values()) {
@@ -930,70 +1269,95 @@ public class KitManagerImpl implements KitManager, AttributionListener, UserAttr
     }
 
     @Override
-    public void onActivityDestroyed(Activity activity) {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityDestroyed(activity);
-                    getReportingManager().logAll(reportingMessages);
+    public void onActivityDestroyed(final Activity activity) {
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onActivityDestroyed", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.ActivityListener && !provider.isDisabled()) {
+                            List<ReportingMessage> reportingMessages = ((KitIntegration.ActivityListener) provider).onActivityDestroyed(activity);
+                            getReportingManager().logAll(reportingMessages);
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onActivityDestroyed for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onActivityDestroyed for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
     @Override
     public void onSessionEnd() {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.SessionListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.SessionListener) provider).onSessionEnd();
-                    getReportingManager().logAll(reportingMessages);
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onSessionEnd", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.SessionListener && !provider.isDisabled()) {
+                            List<ReportingMessage> reportingMessages = ((KitIntegration.SessionListener) provider).onSessionEnd();
+                            getReportingManager().logAll(reportingMessages);
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onSessionEnd for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onSessionEnd for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
     @Override
     public void onSessionStart() {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.SessionListener && !provider.isDisabled()) {
-                    List<ReportingMessage> reportingMessages = ((KitIntegration.SessionListener) provider).onSessionStart();
-                    getReportingManager().logAll(reportingMessages);
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onSessionStart", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.SessionListener && !provider.isDisabled()) {
+                            List<ReportingMessage> reportingMessages = ((KitIntegration.SessionListener) provider).onSessionStart();
+                            getReportingManager().logAll(reportingMessages);
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onSessionStart for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onSessionStart for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
     @Override
     public void onApplicationForeground() {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.ApplicationStateListener) {
-                    ((KitIntegration.ApplicationStateListener) provider).onApplicationForeground();
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onApplicationForeground", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.ApplicationStateListener) {
+                            ((KitIntegration.ApplicationStateListener) provider).onApplicationForeground();
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onApplicationForeground for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onApplicationForeground for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
     @Override
     public void onApplicationBackground() {
-        for (KitIntegration provider : providers.values()) {
-            try {
-                if (provider instanceof KitIntegration.ApplicationStateListener) {
-                    ((KitIntegration.ApplicationStateListener) provider).onApplicationBackground();
+        for (final KitIntegration provider : providers.values()) {
+            dispatch(provider, "onApplicationBackground", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (provider instanceof KitIntegration.ApplicationStateListener) {
+                            ((KitIntegration.ApplicationStateListener) provider).onApplicationBackground();
+                        }
+                    } catch (Exception e) {
+                        Logger.warning("Failed to call onApplicationBackground for kit: " + provider.getName() + ": " + e.getMessage());
+                    }
                 }
-            } catch (Exception e) {
-                Logger.warning("Failed to call onApplicationBackground for kit: " + provider.getName() + ": " + e.getMessage());
-            }
+            });
         }
     }
 
@@ -126,8 +126,10 @@ public class CustomMapping {
         return mIsDefault;
     }
 
-    private ProjectionResult projectMPEvent(MPEvent event) {
-        EventWrapper.MPEventWrapper eventWrapper = new EventWrapper.MPEventWrapper(event);
+    private ProjectionResult projectMPEvent(EventWrapper.MPEventWrapper wrapper) {
+        MPEvent event = wrapper.getEvent();
+        //attributes are looked up by their event type hash even for screen views, otherwise reuse the wrapper's hashes
+        EventWrapper.MPEventWrapper eventWrapper = wrapper.isScreenEvent() ? new EventWrapper.MPEventWrapper(event) : wrapper;
         String eventName = MPUtility.isEmpty(mProjectedEventName) ? event.getEventName() : mProjectedEventName;
         MPEvent.Builder builder = new MPEvent.Builder(event);
         builder.eventName(eventName);
@@ -243,7 +245,7 @@ public class CustomMapping {
     public List<ProjectionResult> project(EventWrapper.MPEventWrapper event) {
         List<ProjectionResult> projectionResults = new LinkedList<ProjectionResult>();
 
-        ProjectionResult projectionResult = projectMPEvent(event.getEvent());
+        ProjectionResult projectionResult = projectMPEvent(event);
         if (projectionResult != null) {
             projectionResults.add(projectionResult);
         }
@@ -409,8 +411,22 @@ public class CustomMapping {
         if (CommerceEventUtils.getEventType(event) == CommerceEventUtils.Constants.EVENT_TYPE_IMPRESSION) {
             return null;
         }
-        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
+        return projectEvents(new EventWrapper.CommerceEventWrapper(event), customMappingList, defaultCommerceCustomMapping);
+    }
+
+    /**
+     * Project a commerce event, only evaluating the mappings in the index which could match it.
+     */
+    public static List<CustomMapping.ProjectionResult> projectEvents(CommerceEvent event, CustomMappingIndex customMappingIndex, CustomMapping defaultCommerceCustomMapping) {
+        if (CommerceEventUtils.getEventType(event) == CommerceEventUtils.Constants.EVENT_TYPE_IMPRESSION) {
+            return null;
+        }
         EventWrapper.CommerceEventWrapper wrapper = new EventWrapper.CommerceEventWrapper(event);
+        return projectEvents(wrapper, customMappingIndex.getCandidates(wrapper), defaultCommerceCustomMapping);
+    }
+
+    private static List<CustomMapping.ProjectionResult> projectEvents(EventWrapper.CommerceEventWrapper wrapper, List<CustomMapping> customMappingList, CustomMapping defaultCommerceCustomMapping) {
+        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
         for (int i = 0; i < customMappingList.size(); i++) {
             CustomMapping customMapping = customMappingList.get(i);
             if (customMapping.isMatch(wrapper)) {
@@ -442,10 +458,33 @@ public class CustomMapping {
         return true;
     }
 
+    /**
+     * Project an event whose attribute hashes have already been computed, so that they aren't computed again
+     * for every kit the event is forwarded to, only evaluating the mappings in the index which could match it.
+     *
+     * @param attributeHashes the hash of event type, event name and key for each attribute of the unfiltered
+     *                        event, mapped to the attribute key, or null to compute them from the event
+     */
+    public static List<CustomMapping.ProjectionResult> projectEvents(MPEvent event, Map<Integer, String> attributeHashes, CustomMappingIndex customMappingIndex, CustomMapping defaultCustomMapping) {
+        EventWrapper.MPEventWrapper wrapper = new EventWrapper.MPEventWrapper(event, attributeHashes);
+        return projectEvents(wrapper, false, customMappingIndex.getCandidates(wrapper), defaultCustomMapping, null);
+    }
+
     public static List<CustomMapping.ProjectionResult> projectEvents(MPEvent event, boolean isScreenEvent, List<CustomMapping> customMappingList, CustomMapping defaultCustomMapping, CustomMapping defaultScreenCustomMapping) {
-        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
+        return projectEvents(new EventWrapper.MPEventWrapper(event, isScreenEvent), isScreenEvent, customMappingList, defaultCustomMapping, defaultScreenCustomMapping);
+    }
 
+    /**
+     * Project an event or screen view, only evaluating the mappings in the index which could match it.
+     */
+    public static List<CustomMapping.ProjectionResult> projectEvents(MPEvent event, boolean isScreenEvent, CustomMappingIndex customMappingIndex, CustomMapping defaultCustomMapping, CustomMapping defaultScreenCustomMapping) {
         EventWrapper.MPEventWrapper wrapper = new EventWrapper.MPEventWrapper(event, isScreenEvent);
+        return projectEvents(wrapper, isScreenEvent, customMappingIndex.getCandidates(wrapper), defaultCustomMapping, defaultScreenCustomMapping);
+    }
+
+    private static List<CustomMapping.ProjectionResult> projectEvents(EventWrapper.MPEventWrapper wrapper, boolean isScreenEvent, List<CustomMapping> customMappingList, CustomMapping defaultCustomMapping, CustomMapping defaultScreenCustomMapping) {
+        List<CustomMapping.ProjectionResult> events = new LinkedList<CustomMapping.ProjectionResult>();
+
         for (int i = 0; i < customMappingList.size(); i++) {
             CustomMapping customMapping = customMappingList.get(i);
             if (customMapping.isMatch(wrapper)) {
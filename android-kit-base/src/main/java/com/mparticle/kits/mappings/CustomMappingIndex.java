@@ -0,0 +1,176 @@
+package com.mparticle.kits.mappings;
+
+import com.mparticle.MPEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of a kit's CustomMappings, built once when its configuration is parsed, which narrows the
+ * mappings that need to be evaluated for an event down to those which could possibly match it.
+ *
+ * Every match of a mapping must pass for the mapping to apply, so each mapping is filed under the
+ * message type and either the event hash or the event name of one of its matches. Mappings which only
+ * match on commerce properties are filed under their message type alone. Candidates are still fully
+ * evaluated with {@link CustomMapping#isMatch(EventWrapper)}, and are returned in configuration order,
+ * so projection results are exactly those of a linear scan.
+ */
+public final class CustomMappingIndex {
+    private final List<CustomMapping> mCustomMappings;
+    private final Map<Integer, MessageTypeIndex> mMessageTypeIndexes = new HashMap<Integer, MessageTypeIndex>();
+
+    public CustomMappingIndex(List<CustomMapping> customMappings) {
+        mCustomMappings = customMappings != null ? new ArrayList<CustomMapping>(customMappings) : Collections.<CustomMapping>emptyList();
+        Map<Integer, MessageTypeIndexBuilder> builders = new HashMap<Integer, MessageTypeIndexBuilder>();
+        for (int i = 0; i < mCustomMappings.size(); i++) {
+            CustomMapping customMapping = mCustomMappings.get(i);
+            int messageType = customMapping.getMessageType();
+            MessageTypeIndexBuilder builder = builders.get(messageType);
+            if (builder == null) {
+                builder = new MessageTypeIndexBuilder();
+                builders.put(messageType, builder);
+            }
+            builder.add(customMapping, i);
+        }
+        for (Map.Entry<Integer, MessageTypeIndexBuilder> entry : builders.entrySet()) {
+            mMessageTypeIndexes.put(entry.getKey(), entry.getValue().build());
+        }
+    }
+
+    public boolean isEmpty() {
+        return mCustomMappings.isEmpty();
+    }
+
+    public List<CustomMapping> getCustomMappings() {
+        return mCustomMappings;
+    }
+
+    /**
+     * @return the mappings which may match the event, in configuration order
+     */
+    List<CustomMapping> getCandidates(EventWrapper wrapper) {
+        MessageTypeIndex index = mMessageTypeIndexes.get(wrapper.getMessageType());
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        int[] byHash = index.byEventHash.get(wrapper.getEventHash());
+        int[] byName = null;
+        if (!index.byEventName.isEmpty() && wrapper instanceof EventWrapper.MPEventWrapper) {
+            MPEvent event = ((EventWrapper.MPEventWrapper) wrapper).getEvent();
+            if (event != null && event.getEventName() != null) {
+                byName = index.byEventName.get(foldCase(event.getEventName()));
+            }
+        }
+        int[] positions = merge(merge(byHash, byName), index.unindexed);
+        if (positions == null) {
+            return Collections.emptyList();
+        }
+        List<CustomMapping> candidates = new ArrayList<CustomMapping>(positions.length);
+        for (int position : positions) {
+            candidates.add(mCustomMappings.get(position));
+        }
+        return candidates;
+    }
+
+    /**
+     * Folds case the same way as {@link String#equalsIgnoreCase(String)}, so that two names fold to the
+     * same key exactly when they are equal ignoring case.
+     */
+    static String foldCase(String value) {
+        char[] chars = new char[value.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Merge two ascending, disjoint arrays of positions.
+     */
+    private static int[] merge(int[] first, int[] second) {
+        if (first == null || first.length == 0) {
+            return second;
+        }
+        if (second == null || second.length == 0) {
+            return first;
+        }
+        int[] merged = new int[first.length + second.length];
+        int i = 0, j = 0, k = 0;
+        while (i < first.length && j < second.length) {
+            merged[k++] = first[i] < second[j] ? first[i++] : second[j++];
+        }
+        while (i < first.length) {
+            merged[k++] = first[i++];
+        }
+        while (j < second.length) {
+            merged[k++] = second[j++];
+        }
+        return merged;
+    }
+
+    private static final class MessageTypeIndex {
+        final Map<Integer, int[]> byEventHash;
+        final Map<String, int[]> byEventName;
+        final int[] unindexed;
+
+        MessageTypeIndex(Map<Integer, int[]> byEventHash, Map<String, int[]> byEventName, int[] unindexed) {
+            this.byEventHash = byEventHash;
+            this.byEventName = byEventName;
+            this.unindexed = unindexed;
+        }
+    }
+
+    private static final class MessageTypeIndexBuilder {
+        private final Map<Integer, List<Integer>> mByEventHash = new HashMap<Integer, List<Integer>>();
+        private final Map<String, List<Integer>> mByEventName = new HashMap<String, List<Integer>>();
+        private final List<Integer> mUnindexed = new ArrayList<Integer>();
+
+        void add(CustomMapping customMapping, int position) {
+            if (!customMapping.isDefault()) {
+                for (CustomMappingMatch match : customMapping.getMatchList()) {
+                    if (match.isIndexedByEventHash()) {
+                        add(mByEventHash, match.mEventHash, position);
+                        return;
+                    }
+                    if (match.isIndexedByEventName()) {
+                        add(mByEventName, foldCase(match.mEventName), position);
+                        return;
+                    }
+                }
+            }
+            mUnindexed.add(position);
+        }
+
+        private static <K> void add(Map<K, List<Integer>> map, K key, int position) {
+            List<Integer> positions = map.get(key);
+            if (positions == null) {
+                positions = new ArrayList<Integer>(1);
+                map.put(key, positions);
+            }
+            positions.add(position);
+        }
+
+        MessageTypeIndex build() {
+            Map<Integer, int[]> byEventHash = new HashMap<Integer, int[]>(mByEventHash.size() * 2);
+            for (Map.Entry<Integer, List<Integer>> entry : mByEventHash.entrySet()) {
+                byEventHash.put(entry.getKey(), toArray(entry.getValue()));
+            }
+            Map<String, int[]> byEventName = new HashMap<String, int[]>(mByEventName.size() * 2);
+            for (Map.Entry<String, List<Integer>> entry : mByEventName.entrySet()) {
+                byEventName.put(entry.getKey(), toArray(entry.getValue()));
+            }
+            return new MessageTypeIndex(byEventHash, byEventName, toArray(mUnindexed));
+        }
+
+        private static int[] toArray(List<Integer> positions) {
+            int[] array = new int[positions.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = positions.get(i);
+            }
+            return array;
+        }
+    }
+}
@@ -95,6 +95,27 @@ final class CustomMappingMatch {
         }
     }
 
+    /**
+     * @return true if this can only match events whose hash is mEventHash, so that it can be indexed by hash
+     */
+    boolean isIndexedByEventHash() {
+        return mMatchType.startsWith(MATCH_TYPE_HASH) && !isCommercePropertyMatch();
+    }
+
+    /**
+     * @return true if this can only match events named mEventName, ignoring case, so that it can be indexed by name
+     */
+    boolean isIndexedByEventName() {
+        return mMatchType.startsWith(MATCH_TYPE_STRING) && mEventName != null && !isCommercePropertyMatch();
+    }
+
+    /**
+     * Commerce matches on a property don't look at the event hash at all, see {@link #matchCommerceEvent}.
+     */
+    private boolean isCommercePropertyMatch() {
+        return mMessageType == 16 && commerceMatchProperty != null && commerceMatchPropertyName != null;
+    }
+
     /**
      * This is an optimization - check the basic stuff to see if we have a match before actually trying to do the projection
      */
@@ -208,6 +208,15 @@ abstract class EventWrapper {
             this.mScreenEvent = isScreenEvent;
         }
 
+        /**
+         * @param attributeHashes precomputed attribute hashes, which may include attributes that have since
+         *                        been filtered out of the event
+         */
+        public MPEventWrapper(MPEvent event, Map<Integer, String> attributeHashes) {
+            this(event, false);
+            this.attributeHashes = attributeHashes;
+        }
+
         public Map<Integer, String> getAttributeHashes() {
             if (attributeHashes == null) {
                 attributeHashes = new HashMap<Integer, String>();
@@ -226,6 +235,10 @@ abstract class EventWrapper {
             return mEvent;
         }
 
+        public boolean isScreenEvent() {
+            return mScreenEvent;
+        }
+
         public int getEventTypeOrdinal() {
             if (mScreenEvent) {
                 return 0;
@@ -266,7 +279,7 @@ abstract class EventWrapper {
         public Map.Entry<String, String> findAttribute(String propertyType, int hash, Product product, Promotion promotion) {
             if (CustomMapping.PROPERTY_LOCATION_EVENT_ATTRIBUTE.equalsIgnoreCase(propertyType)) {
                 String key = getAttributeHashes().get(hash);
-                if (key != null) {
+                if (key != null && mEvent.getInfo() != null && mEvent.getInfo().containsKey(key)) {
                     return new AbstractMap.SimpleEntry<String, String>(key, mEvent.getInfo().get(key));
                 }
             }
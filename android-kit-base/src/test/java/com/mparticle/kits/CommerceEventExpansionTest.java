@@ -0,0 +1,73 @@
+package com.mparticle.kits;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.commerce.CommerceEvent;
+import com.mparticle.commerce.Product;
+import com.mparticle.commerce.TransactionAttributes;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommerceEventExpansionTest {
+
+    @BeforeClass
+    public static void setupAll() {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+    }
+
+    @Test
+    public void testExpansionMatchesCommerceEventUtils() throws Exception {
+        CommerceEvent event = createCart(30);
+        List<MPEvent> expected = CommerceEventUtils.expand(event);
+        List<MPEvent> expanded = new CommerceEventExpansion(event).expand();
+        //the total, then one per product
+        assertEquals(31, expected.size());
+        assertEquals(expected.size(), expanded.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getEventName(), expanded.get(i).getEventName());
+            assertEquals(expected.get(i).getEventType(), expanded.get(i).getEventType());
+            assertEquals(expected.get(i).getInfo(), expanded.get(i).getInfo());
+        }
+    }
+
+    @Test
+    public void testKitsShareAttributesUntilChanged() throws Exception {
+        CommerceEventExpansion expansion = new CommerceEventExpansion(createCart(5));
+        List<MPEvent> first = expansion.expand();
+        List<MPEvent> second = expansion.expand();
+        assertTrue(first.get(1) != second.get(1));
+        FilteredAttributes<String> firstAttributes = (FilteredAttributes<String>) first.get(1).getInfo();
+        FilteredAttributes<String> secondAttributes = (FilteredAttributes<String>) second.get(1).getInfo();
+        assertFalse(firstAttributes.isMaterialized());
+
+        firstAttributes.put("changed", "true");
+        assertTrue(firstAttributes.isMaterialized());
+        assertEquals("true", firstAttributes.get("changed"));
+        assertFalse(secondAttributes.containsKey("changed"));
+        assertFalse(expansion.expand().get(1).getInfo().containsKey("changed"));
+    }
+
+    private static CommerceEvent createCart(int productCount) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("cart", "value");
+        CommerceEvent.Builder builder = new CommerceEvent.Builder(Product.PURCHASE, new Product.Builder("name 0", "sku 0", 1).build())
+                .customAttributes(attributes)
+                .transactionAttributes(new TransactionAttributes().setId("some id"));
+        for (int i = 1; i < productCount; i++) {
+            builder.addProduct(new Product.Builder("name " + i, "sku " + i, i).build());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,104 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FilteredAttributesTest {
+
+    @Test
+    public void testReadsHideRemovedKeys() throws Exception {
+        Map<String, String> source = createSource(100);
+        FilteredAttributes<String> view = createView(source, 3, 64, 99);
+        assertEquals(97, view.size());
+        assertFalse(view.containsKey("key 3"));
+        assertFalse(view.containsKey("key 64"));
+        assertNull(view.get("key 99"));
+        assertEquals("value 4", view.get("key 4"));
+        assertTrue(view.containsKey("key 0"));
+        Map<String, String> expected = new HashMap<String, String>(source);
+        expected.remove("key 3");
+        expected.remove("key 64");
+        expected.remove("key 99");
+        assertEquals(expected, view);
+        assertEquals(expected, new HashMap<String, String>(view));
+        assertFalse(view.isMaterialized());
+    }
+
+    @Test
+    public void testWritesCopyOnce() throws Exception {
+        Map<String, String> source = createSource(10);
+        FilteredAttributes<String> view = createView(source, 1);
+        //writing a value that's already there doesn't copy
+        view.put("key 2", "value 2");
+        assertFalse(view.isMaterialized());
+        view.put("key 2", "changed");
+        assertTrue(view.isMaterialized());
+        assertEquals("changed", view.get("key 2"));
+        assertEquals("value 2", source.get("key 2"));
+        view.remove("key 3");
+        assertEquals(8, view.size());
+        assertEquals(10, source.size());
+        //removed keys stay removed once copied
+        assertFalse(view.containsKey("key 1"));
+        view.clear();
+        assertTrue(view.isEmpty());
+        assertEquals(10, source.size());
+    }
+
+    @Test
+    public void testIteratorWritesDoNotReachSource() throws Exception {
+        Map<String, String> source = createSource(10);
+        FilteredAttributes<String> view = createView(source, 5);
+        Iterator<Map.Entry<String, String>> iterator = view.entrySet().iterator();
+        int count = 0;
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            assertNotEquals("key 5", entry.getKey());
+            if (entry.getKey().equals("key 0")) {
+                iterator.remove();
+            } else if (entry.getKey().equals("key 1")) {
+                entry.setValue("changed");
+            }
+            count++;
+        }
+        assertEquals(9, count);
+        assertEquals(8, view.size());
+        assertEquals("changed", view.get("key 1"));
+        assertEquals("value 1", source.get("key 1"));
+        assertEquals(10, source.size());
+    }
+
+    @Test
+    public void testNothingRemoved() throws Exception {
+        Map<String, String> source = createSource(5);
+        FilteredAttributes<String> view = new FilteredAttributes<String>(source, source.keySet().toArray(new String[0]), null);
+        assertEquals(source, view);
+        assertEquals(5, view.size());
+    }
+
+    private static Map<String, String> createSource(int size) {
+        Map<String, String> source = new HashMap<String, String>();
+        for (int i = 0; i < size; i++) {
+            source.put("key " + i, "value " + i);
+        }
+        return source;
+    }
+
+    private static FilteredAttributes<String> createView(Map<String, String> source, int... removedKeys) {
+        String[] keys = source.keySet().toArray(new String[0]);
+        long[] removed = null;
+        for (int removedKey : removedKeys) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals("key " + removedKey)) {
+                    removed = FilteredAttributes.markRemoved(removed, keys.length, i);
+                }
+            }
+        }
+        return new FilteredAttributes<String>(source, keys, removed);
+    }
+}
@@ -0,0 +1,160 @@
+package com.mparticle.kits;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the cost of a filter lookup in an IntFilterMap against a binary search over sorted keys, which
+ * is how SparseBooleanArray looks keys up, and against a boxed HashMap. Each is warmed up before being
+ * measured, and half of the lookups are for hashes which aren't filtered, as with most forwarded events.
+ */
+public class IntFilterMapBenchmark {
+    private static final int[] FILTER_SIZES = {5, 50, 500};
+    private static final int LOOKUPS = 1 << 12;
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int MEASUREMENT_ITERATIONS = 200;
+
+    //consumes results, so that lookups can't be optimised away
+    private int mSink;
+
+    @Test
+    public void testLookup() throws Exception {
+        long[] intFilterMapNanos = new long[FILTER_SIZES.length];
+        long[] binarySearchNanos = new long[FILTER_SIZES.length];
+        for (int i = 0; i < FILTER_SIZES.length; i++) {
+            Random random = new Random(FILTER_SIZES[i]);
+            IntFilterMap intFilterMap = new IntFilterMap(FILTER_SIZES[i]);
+            SortedFilters sortedFilters = new SortedFilters(FILTER_SIZES[i]);
+            Map<Integer, Boolean> hashMap = new HashMap<Integer, Boolean>();
+            int[] filterKeys = new int[FILTER_SIZES[i]];
+            for (int j = 0; j < filterKeys.length; j++) {
+                filterKeys[j] = random.nextInt();
+                boolean allow = random.nextBoolean();
+                intFilterMap.put(filterKeys[j], allow);
+                sortedFilters.put(filterKeys[j], allow);
+                hashMap.put(filterKeys[j], allow);
+            }
+            int[] lookups = new int[LOOKUPS];
+            for (int j = 0; j < lookups.length; j++) {
+                lookups[j] = j % 2 == 0 ? filterKeys[random.nextInt(filterKeys.length)] : random.nextInt();
+            }
+
+            intFilterMapNanos[i] = measure(intFilterMap, lookups);
+            binarySearchNanos[i] = measure(sortedFilters, lookups);
+            long hashMapNanos = measure(hashMap, lookups);
+            System.out.println("Filter lookup with " + FILTER_SIZES[i] + " filters, per lookup: IntFilterMap " + format(intFilterMapNanos[i])
+                    + "ns, binary search " + format(binarySearchNanos[i]) + "ns, HashMap " + format(hashMapNanos) + "ns");
+        }
+        assertTrue(intFilterMapNanos[FILTER_SIZES.length - 1] < binarySearchNanos[FILTER_SIZES.length - 1]);
+    }
+
+    /**
+     * @return the time per lookup, in hundredths of a nanosecond
+     */
+    private long measure(IntFilterMap filters, int[] lookups) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            lookupAll(filters, lookups);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            lookupAll(filters, lookups);
+        }
+        return (System.nanoTime() - start) * 100 / ((long) MEASUREMENT_ITERATIONS * lookups.length);
+    }
+
+    private long measure(SortedFilters filters, int[] lookups) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            lookupAll(filters, lookups);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            lookupAll(filters, lookups);
+        }
+        return (System.nanoTime() - start) * 100 / ((long) MEASUREMENT_ITERATIONS * lookups.length);
+    }
+
+    private long measure(Map<Integer, Boolean> filters, int[] lookups) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            lookupAll(filters, lookups);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            lookupAll(filters, lookups);
+        }
+        return (System.nanoTime() - start) * 100 / ((long) MEASUREMENT_ITERATIONS * lookups.length);
+    }
+
+    private void lookupAll(IntFilterMap filters, int[] lookups) {
+        int allowed = 0;
+        for (int lookup : lookups) {
+            if (filters.get(lookup, true)) {
+                allowed++;
+            }
+        }
+        mSink += allowed;
+    }
+
+    private void lookupAll(SortedFilters filters, int[] lookups) {
+        int allowed = 0;
+        for (int lookup : lookups) {
+            if (filters.get(lookup, true)) {
+                allowed++;
+            }
+        }
+        mSink += allowed;
+    }
+
+    private void lookupAll(Map<Integer, Boolean> filters, int[] lookups) {
+        int allowed = 0;
+        for (int lookup : lookups) {
+            Boolean allow = filters.get(lookup);
+            if (allow == null || allow) {
+                allowed++;
+            }
+        }
+        mSink += allowed;
+    }
+
+    private static String format(long hundredthsOfNanos) {
+        return (hundredthsOfNanos / 100) + "." + String.format("%02d", hundredthsOfNanos % 100);
+    }
+
+    /**
+     * The lookup of a SparseBooleanArray, which isn't available in JVM tests: a binary search over sorted keys.
+     */
+    private static final class SortedFilters {
+        private int[] mKeys;
+        private boolean[] mValues;
+        private int mSize;
+
+        SortedFilters(int capacity) {
+            mKeys = new int[capacity];
+            mValues = new boolean[capacity];
+        }
+
+        void put(int key, boolean value) {
+            int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+            if (i >= 0) {
+                mValues[i] = value;
+                return;
+            }
+            i = ~i;
+            System.arraycopy(mKeys, i, mKeys, i + 1, mSize - i);
+            System.arraycopy(mValues, i, mValues, i + 1, mSize - i);
+            mKeys[i] = key;
+            mValues[i] = value;
+            mSize++;
+        }
+
+        boolean get(int key, boolean valueIfKeyNotFound) {
+            int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+            return i < 0 ? valueIfKeyNotFound : mValues[i];
+        }
+    }
+}
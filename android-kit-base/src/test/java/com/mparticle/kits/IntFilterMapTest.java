@@ -0,0 +1,75 @@
+package com.mparticle.kits;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntFilterMapTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        IntFilterMap map = new IntFilterMap();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.size());
+        assertTrue(map.get(5, true));
+        assertFalse(map.get(5, false));
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        IntFilterMap map = new IntFilterMap();
+        map.put(0, false);
+        map.put(-1, true);
+        map.put(Integer.MIN_VALUE, false);
+        map.put(Integer.MAX_VALUE, true);
+        assertEquals(4, map.size());
+        assertFalse(map.get(0, true));
+        assertTrue(map.get(-1, false));
+        assertFalse(map.get(Integer.MIN_VALUE, true));
+        assertTrue(map.get(Integer.MAX_VALUE, false));
+        assertTrue(map.get(1, true));
+        map.put(0, true);
+        assertEquals(4, map.size());
+        assertTrue(map.get(0, false));
+    }
+
+    @Test
+    public void testMatchesHashMap() throws Exception {
+        Random random = new Random(42);
+        IntFilterMap map = new IntFilterMap(10);
+        Map<Integer, Boolean> expected = new HashMap<Integer, Boolean>();
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt();
+            boolean value = random.nextBoolean();
+            map.put(key, value);
+            expected.put(key, value);
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Boolean> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey(), !entry.getValue()));
+        }
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt();
+            if (!expected.containsKey(key)) {
+                assertTrue(map.get(key, true));
+                assertFalse(map.get(key, false));
+            }
+        }
+    }
+
+    @Test
+    public void testFromJson() throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("123", 0);
+        json.put("-456", 1);
+        IntFilterMap map = IntFilterMap.fromJson(json);
+        assertEquals(2, map.size());
+        assertFalse(map.get(123, true));
+        assertTrue(map.get(-456, false));
+    }
+}
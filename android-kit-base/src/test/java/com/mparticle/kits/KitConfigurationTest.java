@@ -1,5 +1,6 @@
 package com.mparticle.kits;
 
+import com.mparticle.MPEvent;
 import com.mparticle.MParticle;
 import com.mparticle.commerce.CommerceEvent;
 import com.mparticle.commerce.Impression;
@@ -268,6 +269,43 @@ public class KitConfigurationTest {
         assertTrue(result);
     }
 
+    @Test
+    public void testForwardingContextMatchesEventFiltering() throws Exception {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("key1", "val1");
+        attributes.put("key2", "val2");
+        attributes.put("key3", "val3");
+        MPEvent event = new MPEvent.Builder("event name", MParticle.EventType.Navigation).info(attributes).build();
+        String prefix = MParticle.EventType.Navigation.ordinal() + "event name";
+        JSONObject attributeFilters = new JSONObject();
+        attributeFilters.put(Integer.toString(KitUtils.hashForFiltering(prefix + "key2")), 0);
+        JSONObject config = new JSONObject();
+        config.put("id", 42);
+        config.put("hs", new JSONObject().put("ea", attributeFilters));
+        KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(config);
+
+        EventForwardingContext context = new EventForwardingContext(event);
+        Map<String, String> filtered = configuration.filterEventAttributes(context);
+        assertEquals(configuration.filterEventAttributes(event), filtered);
+        assertEquals(2, filtered.size());
+        assertFalse(filtered.containsKey("key2"));
+        assertEquals(configuration.shouldLogEvent(event), configuration.shouldLogEvent(context));
+        assertEquals("key2", context.getAttributeHashMap().get(KitUtils.hashForFiltering(prefix + "key2")));
+    }
+
+    @Test
+    public void testForwardingContextAttributeValueFiltering() throws Exception {
+        KitConfiguration includeTrueConfiguration = MockKitConfiguration.createKitConfiguration(new JSONObject(ATTRIBUTE_VALUE_FILTERING_INCLUDE_TRUE));
+        KitConfiguration includeFalseConfiguration = MockKitConfiguration.createKitConfiguration(new JSONObject(ATTRIBUTE_VALUE_FILTERING_INCLUDE_FALSE));
+        String[][] attributeSets = {{"key1", "val1"}, {"key1", "valWrong"}, {"keyWrong", "valWrong"}};
+        for (String[] attributeSet : attributeSets) {
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put(attributeSet[0], attributeSet[1]);
+            EventForwardingContext context = new EventForwardingContext(new MPEvent.Builder("event", MParticle.EventType.Other).info(attributes).build());
+            assertEquals(includeTrueConfiguration.shouldIncludeFromAttributeValueFiltering(attributes), includeTrueConfiguration.shouldIncludeFromAttributeValueFiltering(context));
+            assertEquals(includeFalseConfiguration.shouldIncludeFromAttributeValueFiltering(attributes), includeFalseConfiguration.shouldIncludeFromAttributeValueFiltering(context));
+        }
+    }
 
     @Test
     public void testUserAttributeFiltering() throws Exception {
@@ -277,6 +315,17 @@ public class KitConfigurationTest {
         assertTrue(configuration.shouldForwardAttribute(configuration.getUserAttributeFilters(), "test key not in config"));
     }
 
+    @Test
+    public void testUserIdentityFiltering() throws Exception {
+        JSONObject filters = new JSONObject().put("uid", new JSONObject().put(Integer.toString(MParticle.IdentityType.Email.getValue()), 0));
+        KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(new JSONObject().put("id", 42).put("hs", filters));
+        assertFalse(configuration.shouldSetIdentity(MParticle.IdentityType.Email));
+        assertTrue(configuration.shouldSetIdentity(MParticle.IdentityType.CustomerId));
+        //the SparseBooleanArray getter is built from the same filter
+        assertFalse(configuration.getUserIdentityFilters().get(MParticle.IdentityType.Email.getValue(), true));
+        assertEquals(1, configuration.getUserIdentityFilters().size());
+    }
+
     @Test
     public void testConsentForwardingRules() throws Exception {
         KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(
@@ -0,0 +1,160 @@
+package com.mparticle.kits;
+
+import com.mparticle.MParticle;
+import com.mparticle.mock.MockKitConfiguration;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KitDispatcherTest {
+
+    @BeforeClass
+    public static void setupAll() {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+    }
+
+    @Test
+    public void testSlowKitIsMarked() throws Exception {
+        KitDispatcher dispatcher = new KitDispatcher(10, 20);
+        KitIntegration slowKit = createKit(1);
+        KitIntegration fastKit = createKit(2);
+        dispatcher.dispatch(slowKit, "logEvent", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    //ignore
+                }
+            }
+        });
+        dispatcher.dispatch(fastKit, "logEvent", new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        awaitIdle(dispatcher, slowKit);
+        awaitIdle(dispatcher, fastKit);
+        assertEquals(1, dispatcher.getSlowKits().size());
+        assertTrue(dispatcher.getSlowKits().contains(1));
+        dispatcher.removeKit(1);
+        assertTrue(dispatcher.getSlowKits().isEmpty());
+    }
+
+    @Test
+    public void testSlowKitDoesNotBlockOtherKits() throws Exception {
+        KitDispatcher dispatcher = new KitDispatcher(10, 1000);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch called = new CountDownLatch(1);
+        dispatcher.dispatch(createKit(1), "logEvent", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    //ignore
+                }
+            }
+        });
+        dispatcher.dispatch(createKit(2), "logEvent", new Runnable() {
+            @Override
+            public void run() {
+                called.countDown();
+            }
+        });
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        blocked.countDown();
+    }
+
+    @Test
+    public void testFullQueueDropsCalls() throws Exception {
+        KitDispatcher dispatcher = new KitDispatcher(1, 1000);
+        KitIntegration kit = createKit(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch queued = new CountDownLatch(1);
+        final AtomicBoolean dropped = new AtomicBoolean(true);
+        //the first call runs immediately and blocks, the second waits in the queue, the third is dropped
+        dispatcher.dispatch(kit, "logEvent", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    //ignore
+                }
+            }
+        });
+        dispatcher.dispatch(kit, "logEvent", new Runnable() {
+            @Override
+            public void run() {
+                queued.countDown();
+            }
+        });
+        dispatcher.dispatch(kit, "logEvent", new Runnable() {
+            @Override
+            public void run() {
+                dropped.set(false);
+            }
+        });
+        assertEquals(1, dispatcher.getDroppedCount(1));
+        blocked.countDown();
+        assertTrue(queued.await(5, TimeUnit.SECONDS));
+        awaitIdle(dispatcher, kit);
+        assertTrue(dropped.get());
+    }
+
+    @Test
+    public void testExceptionIsIsolated() throws Exception {
+        KitDispatcher dispatcher = new KitDispatcher(10, 1000);
+        KitIntegration kit = createKit(1);
+        final CountDownLatch called = new CountDownLatch(1);
+        dispatcher.dispatch(kit, "logEvent", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("kit failure");
+            }
+        });
+        dispatcher.dispatch(kit, "logScreen", new Runnable() {
+            @Override
+            public void run() {
+                called.countDown();
+            }
+        });
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        assertFalse(dispatcher.getSlowKits().contains(1));
+    }
+
+    /**
+     * Calls to a kit are serial, so once a marker call has completed every earlier call has too.
+     */
+    private static void awaitIdle(KitDispatcher dispatcher, KitIntegration kit) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        dispatcher.dispatch(kit, "marker", new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private static KitIntegration createKit(int kitId) throws Exception {
+        KitIntegration kit = Mockito.mock(KitIntegration.class);
+        KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(new JSONObject().put("id", kitId));
+        Mockito.when(kit.getConfiguration()).thenReturn(configuration);
+        Mockito.when(kit.getName()).thenReturn("kit " + kitId);
+        return kit;
+    }
+}
@@ -0,0 +1,215 @@
+package com.mparticle.kits;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.internal.AppStateManager;
+import com.mparticle.internal.BackgroundTaskHandler;
+import com.mparticle.internal.ConfigManager;
+import com.mparticle.internal.JsonReportingMessage;
+import com.mparticle.internal.Logger;
+import com.mparticle.internal.ReportingManager;
+import com.mparticle.mock.MockContext;
+import com.mparticle.mock.MockKit;
+import com.mparticle.mock.MockKitConfiguration;
+import com.mparticle.mock.MockMParticle;
+
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that each kit is given a view of the forwarded event's attributes rather than its own copy, so the
+ * cost of each additional kit doesn't depend on how many attributes the event has.
+ */
+public class KitForwardingAllocationTest {
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 2000;
+    private static final int KIT_COUNT = 10;
+
+    @Test
+    public void testFilteredAttributesAreAView() throws Exception {
+        MPEvent event = createEvent(100);
+        Map<String, String> attributes = createConfiguration(event).filterEventAttributes(new EventForwardingContext(event));
+        assertTrue(attributes instanceof FilteredAttributes);
+        assertEquals(99, attributes.size());
+        assertFalse(attributes.containsKey("key 0"));
+        //changes to the event's attributes show through, so they weren't copied
+        event.getInfo().put("key 1", "changed");
+        assertEquals("changed", attributes.get("key 1"));
+    }
+
+    @Test
+    public void testKitsAreGivenViews() throws Exception {
+        MParticle.setInstance(new MockMParticle());
+        MPEvent event = createEvent(100);
+        KitManagerImpl manager = createKitManager(KIT_COUNT, event);
+        manager.logEvent(event);
+        for (KitIntegration kit : manager.providers.values()) {
+            Map<String, String> attributes = ((EventKit) kit).lastEvent.getInfo();
+            assertTrue(attributes instanceof FilteredAttributes);
+            assertEquals(99, attributes.size());
+        }
+    }
+
+    /**
+     * A benchmark only, reporting the bytes allocated on this thread for each additional kit, since the
+     * absolute numbers depend on the JVM.
+     */
+    @Test
+    public void testPerKitAllocation() throws Exception {
+        Assume.assumeTrue(isAllocationCountingSupported());
+        MParticle.setInstance(new MockMParticle());
+
+        long smallEventBytes = measurePerKitBytes(5);
+        long largeEventBytes = measurePerKitBytes(100);
+        long copyingBytes = measureCopyingPerKitBytes(100);
+        Logger.info("Bytes allocated per kit per event: 5 attributes " + smallEventBytes + ", 100 attributes " + largeEventBytes
+                + ", copying 100 attributes for each kit " + copyingBytes);
+    }
+
+    /**
+     * @return the bytes allocated by logEvent for each kit after the first
+     */
+    private long measurePerKitBytes(int attributeCount) throws Exception {
+        MPEvent event = createEvent(attributeCount);
+        KitManagerImpl oneKit = createKitManager(1, event);
+        KitManagerImpl manyKits = createKitManager(KIT_COUNT, event);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            oneKit.logEvent(event);
+            manyKits.logEvent(event);
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            oneKit.logEvent(event);
+        }
+        long oneKitBytes = allocatedBytes() - start;
+        start = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            manyKits.logEvent(event);
+        }
+        long manyKitsBytes = allocatedBytes() - start;
+        return (manyKitsBytes - oneKitBytes) / ((long) ITERATIONS * (KIT_COUNT - 1));
+    }
+
+    /**
+     * @return the bytes allocated by copying the event and its filtered attributes, as each kit used to be given
+     */
+    private long measureCopyingPerKitBytes(int attributeCount) throws Exception {
+        MPEvent event = createEvent(attributeCount);
+        KitConfiguration configuration = createConfiguration(event);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            copyForKit(configuration, event);
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            copyForKit(configuration, event);
+        }
+        return (allocatedBytes() - start) / ITERATIONS;
+    }
+
+    private static MPEvent copyForKit(KitConfiguration configuration, MPEvent event) {
+        MPEvent eventCopy = new MPEvent(event);
+        eventCopy.setInfo(new HashMap<String, String>(configuration.filterEventAttributes(event)));
+        return eventCopy;
+    }
+
+    private static KitManagerImpl createKitManager(int kitCount, MPEvent event) throws Exception {
+        KitManagerImpl manager = new KitManagerImpl(
+                new MockContext(),
+                new ReportingManager() {
+                    @Override
+                    public void log(JsonReportingMessage message) {
+                    }
+
+                    @Override
+                    public void logAll(List<? extends JsonReportingMessage> messageList) {
+                    }
+                },
+                Mockito.mock(ConfigManager.class),
+                Mockito.mock(AppStateManager.class),
+                new BackgroundTaskHandler() {
+                    @Override
+                    public void executeNetworkRequest(Runnable runnable) {
+                    }
+                });
+        for (int i = 0; i < kitCount; i++) {
+            KitIntegration kit = new EventKit();
+            kit.setConfiguration(createConfiguration(event));
+            manager.providers.put(i, kit);
+        }
+        return manager;
+    }
+
+    /**
+     * A configuration which filters out one of the event's attributes.
+     */
+    private static KitConfiguration createConfiguration(MPEvent event) throws Exception {
+        String filteredKey = event.getEventType().ordinal() + event.getEventName() + "key 0";
+        JSONObject attributeFilters = new JSONObject().put(Integer.toString(KitUtils.hashForFiltering(filteredKey)), 0);
+        return MockKitConfiguration.createKitConfiguration(new JSONObject()
+                .put("id", 42)
+                .put("hs", new JSONObject().put("ea", attributeFilters)));
+    }
+
+    private static MPEvent createEvent(int attributeCount) {
+        Map<String, String> info = new HashMap<String, String>();
+        for (int i = 0; i < attributeCount; i++) {
+            info.put("key " + i, "value " + i);
+        }
+        return new MPEvent.Builder("event", MParticle.EventType.Other).info(info).build();
+    }
+
+    private static boolean isAllocationCountingSupported() {
+        try {
+            java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            return threadMXBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported();
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class EventKit extends MockKit implements KitIntegration.EventListener {
+        MPEvent lastEvent;
+
+        @Override
+        public List<ReportingMessage> leaveBreadcrumb(String breadcrumb) {
+            return null;
+        }
+
+        @Override
+        public List<ReportingMessage> logError(String message, Map<String, String> errorAttributes) {
+            return null;
+        }
+
+        @Override
+        public List<ReportingMessage> logException(Exception exception, Map<String, String> exceptionAttributes, String message) {
+            return null;
+        }
+
+        @Override
+        public List<ReportingMessage> logEvent(MPEvent event) {
+            lastEvent = event;
+            return null;
+        }
+
+        @Override
+        public List<ReportingMessage> logScreen(String screenName, Map<String, String> screenAttributes) {
+            return null;
+        }
+    }
+}
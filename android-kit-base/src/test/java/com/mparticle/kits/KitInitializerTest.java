@@ -0,0 +1,117 @@
+package com.mparticle.kits;
+
+import android.content.Context;
+
+import com.mparticle.MParticle;
+import com.mparticle.mock.MockContext;
+import com.mparticle.mock.MockKit;
+import com.mparticle.mock.MockKitConfiguration;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KitInitializerTest {
+
+    @BeforeClass
+    public static void setupAll() {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+    }
+
+    @Test
+    public void testKitsAreCreatedConcurrently() throws Exception {
+        KitInitializer initializer = new KitInitializer(3);
+        //each kit waits for the others to start, so this only completes if all 3 are created at once
+        CountDownLatch started = new CountDownLatch(3);
+        List<KitIntegration> kits = new ArrayList<KitIntegration>();
+        for (int i = 1; i <= 3; i++) {
+            kits.add(createKit(i, started, false));
+        }
+        Map<Integer, Long> initTimes = new ConcurrentHashMap<Integer, Long>();
+        List<KitIntegration> created = initializer.createKits(kits, new MockContext(), initTimes);
+        assertEquals(3, created.size());
+        assertEquals(3, initTimes.size());
+    }
+
+    @Test
+    public void testFailedKitIsExcluded() throws Exception {
+        KitInitializer initializer = new KitInitializer(2);
+        List<KitIntegration> kits = new ArrayList<KitIntegration>();
+        kits.add(createKit(1, null, false));
+        kits.add(createKit(2, null, true));
+        Map<Integer, Long> initTimes = new ConcurrentHashMap<Integer, Long>();
+        List<KitIntegration> created = initializer.createKits(kits, new MockContext(), initTimes);
+        assertEquals(1, created.size());
+        assertEquals(1, created.get(0).getConfiguration().getKitId());
+        assertTrue(initTimes.containsKey(1));
+        assertEquals(1, initTimes.size());
+    }
+
+    @Test
+    public void testUpdatesAreSerial() throws Exception {
+        KitInitializer initializer = new KitInitializer(2);
+        final List<Integer> order = new ArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            final int update = i;
+            initializer.prepare(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(update);
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    private static KitIntegration createKit(int kitId, CountDownLatch started, boolean fail) throws Exception {
+        KitIntegration kit = new ThreadSafeKit(started, fail);
+        kit.setConfiguration(MockKitConfiguration.createKitConfiguration(new JSONObject().put("id", kitId)));
+        return kit;
+    }
+
+    private static class ThreadSafeKit extends MockKit implements KitIntegration.ThreadSafeInitialization {
+        private final CountDownLatch mStarted;
+        private final boolean mFail;
+
+        ThreadSafeKit(CountDownLatch started, boolean fail) {
+            mStarted = started;
+            mFail = fail;
+        }
+
+        @Override
+        protected List<ReportingMessage> onKitCreate(Map<String, String> settings, Context context) {
+            if (mFail) {
+                throw new IllegalArgumentException("kit failure");
+            }
+            if (mStarted != null) {
+                mStarted.countDown();
+                try {
+                    if (!mStarted.await(5, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("kits were not created concurrently");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return null;
+        }
+    }
+}
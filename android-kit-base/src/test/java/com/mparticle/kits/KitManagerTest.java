@@ -173,4 +173,30 @@ public class KitManagerTest  {
     public void testGetContext() throws Exception {
         assertNotNull(manager.getContext());
     }
-}
\ No newline at end of file
+
+    @Test
+    @PrepareForTest({Looper.class})
+    public void testUnchangedKitConfigurationIsReused() throws Exception {
+        PowerMockito.mockStatic(Looper.class);
+        Looper looper = PowerMockito.mock(Looper.class);
+        Mockito.when(Looper.myLooper()).thenReturn(looper);
+        Mockito.when(Looper.getMainLooper()).thenReturn(looper);
+        manager.updateKits(new JSONObject(TestConstants.SAMPLE_EK_CONFIG).optJSONArray(ConfigManager.KEY_EMBEDDED_KITS));
+        KitConfiguration configuration = manager.providers.get(64).getConfiguration();
+
+        //an identical config, parsed again, keeps the same configuration
+        JSONArray array = new JSONObject(TestConstants.SAMPLE_EK_CONFIG).optJSONArray(ConfigManager.KEY_EMBEDDED_KITS);
+        manager.updateKits(array);
+        assertTrue(configuration == manager.providers.get(64).getConfiguration());
+
+        for (int i = 0; i < array.length(); i++) {
+            if (array.getJSONObject(i).getInt("id") == 64) {
+                array.getJSONObject(i).put("as", new JSONObject().put("changed", "true"));
+            }
+        }
+        manager.updateKits(array);
+        KitConfiguration changedConfiguration = manager.providers.get(64).getConfiguration();
+        assertTrue(configuration != changedConfiguration);
+        assertEquals("true", changedConfiguration.getSettings().get("changed"));
+    }
+}
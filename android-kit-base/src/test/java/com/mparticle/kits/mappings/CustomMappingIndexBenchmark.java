@@ -0,0 +1,68 @@
+package com.mparticle.kits.mappings;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.kits.KitConfiguration;
+import com.mparticle.mock.MockKitConfiguration;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares projecting events by scanning every custom mapping against projecting through the
+ * CustomMappingIndex, for synthetic configurations of 10, 100 and 1000 mappings.
+ */
+public class CustomMappingIndexBenchmark {
+    private static final int ITERATIONS = 20;
+
+    @BeforeClass
+    public static void setupAll() {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+    }
+
+    @Test
+    public void testIndexedProjection() throws Exception {
+        long[] linearNanos = new long[3];
+        long[] indexedNanos = new long[3];
+        int[] mappingCounts = {10, 100, 1000};
+        for (int i = 0; i < mappingCounts.length; i++) {
+            KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(CustomMappingIndexTest.createConfiguration(mappingCounts[i]));
+            List<MPEvent> events = CustomMappingIndexTest.createEvents(mappingCounts[i]);
+            //warm up, and check the results are the same
+            for (MPEvent event : events) {
+                CustomMappingIndexTest.assertProjectionIds(projectLinear(configuration, event), projectIndexed(configuration, event));
+            }
+            long start = System.nanoTime();
+            for (int j = 0; j < ITERATIONS; j++) {
+                for (MPEvent event : events) {
+                    projectLinear(configuration, event);
+                }
+            }
+            linearNanos[i] = (System.nanoTime() - start) / (ITERATIONS * events.size());
+            start = System.nanoTime();
+            for (int j = 0; j < ITERATIONS; j++) {
+                for (MPEvent event : events) {
+                    projectIndexed(configuration, event);
+                }
+            }
+            indexedNanos[i] = (System.nanoTime() - start) / (ITERATIONS * events.size());
+            System.out.println("CustomMapping projection with " + mappingCounts[i] + " mappings, per event: linear " + linearNanos[i] + "ns, indexed " + indexedNanos[i] + "ns");
+        }
+        assertTrue(indexedNanos[2] < linearNanos[2]);
+    }
+
+    private static List<CustomMapping.ProjectionResult> projectLinear(KitConfiguration configuration, MPEvent event) {
+        return CustomMapping.projectEvents(event, configuration.getCustomMappingList(), configuration.getDefaultEventProjection());
+    }
+
+    private static List<CustomMapping.ProjectionResult> projectIndexed(KitConfiguration configuration, MPEvent event) {
+        return CustomMapping.projectEvents(event, null, configuration.getCustomMappingIndex(), configuration.getDefaultEventProjection());
+    }
+}
@@ -0,0 +1,153 @@
+package com.mparticle.kits.mappings;
+
+import com.mparticle.MPEvent;
+import com.mparticle.MParticle;
+import com.mparticle.kits.KitConfiguration;
+import com.mparticle.mock.MockKitConfiguration;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CustomMappingIndexTest {
+
+    @BeforeClass
+    public static void setupAll() {
+        MParticle mockMp = Mockito.mock(MParticle.class);
+        Mockito.when(mockMp.getEnvironment()).thenReturn(MParticle.Environment.Development);
+        MParticle.setInstance(mockMp);
+    }
+
+    @Test
+    public void testFoldCase() {
+        assertEquals(CustomMappingIndex.foldCase("Product View"), CustomMappingIndex.foldCase("pRODUCT vIEW"));
+        assertTrue(!CustomMappingIndex.foldCase("Product View").equals(CustomMappingIndex.foldCase("Product Views")));
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        CustomMappingIndex index = new CustomMappingIndex(null);
+        assertTrue(index.isEmpty());
+        MPEvent event = new MPEvent.Builder("event", MParticle.EventType.Other).build();
+        assertNull(CustomMapping.projectEvents(event, null, index, null));
+    }
+
+    /**
+     * Projecting through the index must give exactly the same results, in the same order, as scanning every mapping.
+     */
+    @Test
+    public void testMatchesLinearScan() throws Exception {
+        KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(createConfiguration(50));
+        CustomMappingIndex index = configuration.getCustomMappingIndex();
+        assertEquals(configuration.getCustomMappingList().size(), index.getCustomMappings().size());
+        for (MPEvent event : createEvents(50)) {
+            assertProjectionIds(
+                    CustomMapping.projectEvents(event, configuration.getCustomMappingList(), configuration.getDefaultEventProjection()),
+                    CustomMapping.projectEvents(event, null, index, configuration.getDefaultEventProjection()));
+            assertProjectionIds(
+                    CustomMapping.projectEvents(event, true, configuration.getCustomMappingList(), configuration.getDefaultEventProjection(), configuration.getDefaultScreenCustomMapping()),
+                    CustomMapping.projectEvents(event, true, index, configuration.getDefaultEventProjection(), configuration.getDefaultScreenCustomMapping()));
+        }
+    }
+
+    @Test
+    public void testOrderIsPreserved() throws Exception {
+        JSONArray projections = new JSONArray();
+        //a hash match, a string match and an unindexable match, all for the same event, interleaved
+        projections.put(createHashMapping(1, "event"));
+        projections.put(createStringMapping(2, "EVENT", "key", "value"));
+        projections.put(createMapping(3, new JSONObject().put("message_type", 4).put("event_match_type", "Field")));
+        projections.put(createHashMapping(4, "event"));
+        projections.put(createStringMapping(5, "Event", "key", "VALUE"));
+        KitConfiguration configuration = MockKitConfiguration.createKitConfiguration(new JSONObject().put("id", 42).put("pr", projections));
+        Map<String, String> info = new HashMap<String, String>();
+        info.put("key", "value");
+        MPEvent event = new MPEvent.Builder("event", MParticle.EventType.Other).info(info).build();
+        List<CustomMapping.ProjectionResult> results = CustomMapping.projectEvents(event, null, configuration.getCustomMappingIndex(), null);
+        assertEquals(4, results.size());
+        assertEquals(1, results.get(0).getProjectionId());
+        assertEquals(2, results.get(1).getProjectionId());
+        assertEquals(4, results.get(2).getProjectionId());
+        assertEquals(5, results.get(3).getProjectionId());
+    }
+
+    static void assertProjectionIds(List<CustomMapping.ProjectionResult> expected, List<CustomMapping.ProjectionResult> actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getProjectionId(), actual.get(i).getProjectionId());
+        }
+    }
+
+    /**
+     * A configuration with the given number of mappings, alternating between hash and string matches, and a default.
+     */
+    static JSONObject createConfiguration(int mappingCount) throws Exception {
+        JSONArray projections = new JSONArray();
+        for (int i = 0; i < mappingCount; i++) {
+            if (i % 2 == 0) {
+                projections.put(createHashMapping(i, "event " + i));
+            } else {
+                projections.put(createStringMapping(i, "Event " + i, "key", "value " + i));
+            }
+        }
+        JSONObject defaultMapping = createHashMapping(mappingCount, "default");
+        defaultMapping.getJSONObject("behavior").put("is_default", true);
+        projections.put(defaultMapping);
+        return new JSONObject().put("id", 42).put("pr", projections);
+    }
+
+    /**
+     * Events for every mapping in a configuration of the given size, along with some that match nothing.
+     */
+    static List<MPEvent> createEvents(int mappingCount) {
+        List<MPEvent> events = new ArrayList<MPEvent>();
+        for (int i = 0; i < mappingCount; i++) {
+            Map<String, String> info = new HashMap<String, String>();
+            info.put("key", "value " + i);
+            events.add(new MPEvent.Builder("event " + i, MParticle.EventType.Other).info(info).build());
+            events.add(new MPEvent.Builder("unmapped " + i, MParticle.EventType.Navigation).info(info).build());
+        }
+        return events;
+    }
+
+    static JSONObject createHashMapping(int id, String eventName) throws Exception {
+        int hash = new MPEvent.Builder(eventName, MParticle.EventType.Other).build().getEventHash();
+        return createMapping(id, new JSONObject()
+                .put("message_type", 4)
+                .put("event_match_type", "Hash")
+                .put("event", Integer.toString(hash)));
+    }
+
+    static JSONObject createStringMapping(int id, String eventName, String attributeKey, String attributeValue) throws Exception {
+        return createMapping(id, new JSONObject()
+                .put("message_type", 4)
+                .put("event_match_type", "String")
+                .put("event", eventName)
+                .put("attribute_key", attributeKey)
+                .put("attribute_values", new JSONArray().put(attributeValue)));
+    }
+
+    private static JSONObject createMapping(int id, JSONObject match) throws Exception {
+        return new JSONObject()
+                .put("id", id)
+                .put("pmmid", 1)
+                .put("matches", new JSONArray().put(match))
+                .put("behavior", new JSONObject().put("append_unmapped_as_is", true))
+                .put("action", new JSONObject().put("projected_event_name", "projected " + id).put("attribute_maps", new JSONArray()));
+    }
+}
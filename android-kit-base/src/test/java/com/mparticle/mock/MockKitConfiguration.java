@@ -2,14 +2,12 @@ package com.mparticle.mock;
 
 import android.util.SparseBooleanArray;
 
-import com.mparticle.internal.Logger;
 import com.mparticle.kits.KitConfiguration;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -17,20 +15,6 @@ import java.util.Map;
  */
 public class MockKitConfiguration extends KitConfiguration {
 
-    @Override
-    public KitConfiguration parseConfiguration(JSONObject json) throws JSONException {
-        mTypeFilters = new MockSparseBooleanArray();
-        mNameFilters = new MockSparseBooleanArray();
-        mAttributeFilters = new MockSparseBooleanArray();
-        mScreenNameFilters = new MockSparseBooleanArray();
-        mScreenAttributeFilters = new MockSparseBooleanArray();
-        mUserIdentityFilters = new MockSparseBooleanArray();
-        mUserAttributeFilters = new MockSparseBooleanArray();
-        mCommerceAttributeFilters = new MockSparseBooleanArray();
-        mCommerceEntityFilters = new MockSparseBooleanArray();
-        return super.parseConfiguration(json);
-    }
-
     public static KitConfiguration createKitConfiguration(JSONObject json) throws JSONException{
         return new MockKitConfiguration().parseConfiguration(json);
     }
@@ -42,17 +26,8 @@ public class MockKitConfiguration extends KitConfiguration {
     }
 
     @Override
-    protected SparseBooleanArray convertToSparseArray(JSONObject json) {
-        SparseBooleanArray map = new MockSparseBooleanArray();
-        for (Iterator<String> iterator = json.keys(); iterator.hasNext();) {
-            try {
-                String key = iterator.next();
-                map.put(Integer.parseInt(key), json.getInt(key) == 1);
-            }catch (JSONException jse){
-                Logger.error("Issue while parsing kit configuration: " + jse.getMessage());
-            }
-        }
-        return map;
+    protected SparseBooleanArray createSparseArray() {
+        return new MockSparseBooleanArray();
     }
     class MockSparseBooleanArray extends SparseBooleanArray {
         @Override
@@ -1,6 +1,7 @@
 package com.mparticle.identity;
 
 import android.content.Context;
+import android.os.Handler;
 
 import com.mparticle.MParticle;
 import com.mparticle.networking.BaseNetworkConnection;
@@ -15,6 +16,10 @@ public class AccessUtils {
         return MParticle.getInstance().Identity().getApiClient();
     }
 
+    public static Handler getIdentityHandler() {
+        return MParticle.getInstance().Identity().mIdentityExecutor.getHandler();
+    }
+
     public static void setIdentityApiClientScheme(String scheme) {
         ((MParticleBaseClientImpl)MParticle.getInstance().Identity().getApiClient()).setScheme(scheme);
     }
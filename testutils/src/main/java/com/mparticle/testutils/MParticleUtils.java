@@ -62,6 +62,15 @@ public class MParticleUtils {
         return;
     }
 
+    public static void awaitIdentityRunnables() throws InterruptedException {
+        Handler identityHandler = com.mparticle.identity.AccessUtils.getIdentityHandler();
+        do {
+            Thread.sleep(1000);
+        }
+        while (identityHandler.hasMessages(0));
+        return;
+    }
+
     public static void clear() {
         Context context = InstrumentationRegistry.getContext();
         MParticle.setInstance(null);
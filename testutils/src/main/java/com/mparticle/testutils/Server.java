@@ -5,6 +5,7 @@ import android.util.Log;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.VerificationException;
 import com.github.tomakehurst.wiremock.common.Notifier;
+import com.github.tomakehurst.wiremock.http.trafficlistener.WiremockNetworkTrafficListener;
 import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
 import com.github.tomakehurst.wiremock.matching.UrlPathPattern;
 import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
@@ -14,8 +15,11 @@ import com.mparticle.MParticle;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
@@ -28,9 +32,27 @@ import static junit.framework.Assert.fail;
 public class Server {
     private WireMockServer mWireMockServer;
     StubMapping mConfigMapping;
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
 
     public Server() {
-        mWireMockServer = new WireMockServer(wireMockConfig().port(8080).notifier(new Notifier() {
+        mWireMockServer = new WireMockServer(wireMockConfig().port(8080).networkTrafficListener(new WiremockNetworkTrafficListener() {
+            @Override
+            public void opened(Socket socket) {
+                mConnectionCount.incrementAndGet();
+            }
+
+            @Override
+            public void incoming(Socket socket, ByteBuffer bytes) {
+            }
+
+            @Override
+            public void outgoing(Socket socket, ByteBuffer bytes) {
+            }
+
+            @Override
+            public void closed(Socket socket) {
+            }
+        }).notifier(new Notifier() {
             @Override
             public void info(String s) {
                 Log.i("WIREMOCK", s);
@@ -59,6 +81,7 @@ public class Server {
 
     public void reset(long currentMpid) {
         mWireMockServer.resetAll();
+        mConnectionCount.set(0);
         setUpHappyConfig();
         setupHappyEvents();
         setupHappyIdentify(currentMpid);
@@ -76,6 +99,18 @@ public class Server {
         return mWireMockServer;
     }
 
+    /**
+     * The number of connections clients have opened since the last reset, each of which would
+     * require a new TLS handshake against a real server.
+     */
+    public int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    public void resetConnectionCount() {
+        mConnectionCount.set(0);
+    }
+
     public Server setUpHappyConfig() {
         return setupConfigResponse("{response:\"hello\"}");
     }